@@ -27,6 +27,7 @@ import android.content.pm.ResolveInfo;
 import android.media.audiofx.AudioEffect;
 import android.os.Bundle;
 import android.preference.CheckBoxPreference;
+import android.preference.ListPreference;
 import android.preference.Preference;
 import android.widget.Toast;
 
@@ -55,6 +56,7 @@ public class SettingsAudioFragment extends SettingsFragment implements
     private Preference mEqualizer;
     private CheckBoxPreference mBroadcastMeta;
     private CheckBoxPreference mMediaStyleNotif;
+    private ListPreference mCrossfade;
 
     @Override
     public void onAttach(Activity activity) {
@@ -85,6 +87,10 @@ public class SettingsAudioFragment extends SettingsFragment implements
             mPrefSet.removePreference(mPrefSet.findPreference("service.usemediastylenotif"));
         }
 
+        mCrossfade = (ListPreference) mPrefSet.findPreference("service.crossfade");
+        mCrossfade.setValue(String.valueOf(mIndexClient.crossfadeDuration()));
+        mCrossfade.setOnPreferenceChangeListener(this);
+
     }
 
     @Override
@@ -111,6 +117,11 @@ public class SettingsAudioFragment extends SettingsFragment implements
         } else if (preference == mMediaStyleNotif) {
             mIndexClient.setUseMediaStyleNotification((Boolean)newValue);
             return true;
+        } else if (preference == mCrossfade) {
+            final int millis = Integer.parseInt((String) newValue);
+            mIndexClient.setCrossfadeDuration(millis);
+            mMusicService.setCrossfadeDuration(millis);
+            return true;
         }
         return false;
     }
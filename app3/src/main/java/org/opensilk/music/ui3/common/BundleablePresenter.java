@@ -42,11 +42,13 @@ import org.opensilk.music.artwork.requestor.ArtworkRequestManager;
 import org.opensilk.music.index.client.IndexClient;
 import org.opensilk.music.library.client.BundleableLoader;
 import org.opensilk.music.model.Model;
+import org.opensilk.music.model.compare.FolderTrackCompare;
 import org.opensilk.music.playback.control.PlaybackController;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -58,6 +60,7 @@ import mortar.Presenter;
 import mortar.bundler.BundleService;
 import rx.Subscriber;
 import rx.Subscription;
+import rx.functions.Action1;
 import timber.log.Timber;
 
 /**
@@ -67,6 +70,13 @@ import timber.log.Timber;
 public class BundleablePresenter extends Presenter<BundleableRecyclerView>
         implements RxLoader.ContentChangedListener, HasOptionsMenu, ActionBarMenuHandler {
 
+    //about a screenful, so the first chunk can render right away
+    static final int STREAM_CHUNK_SIZE = 30;
+    //start fetching the next page when this close to the end
+    static final int PAGE_PREFETCH_DISTANCE = 20;
+    //pages held in the adapter, pages further away than this are dropped
+    static final int MAX_PAGES_KEPT = 4;
+
     protected final AppPreferences preferences;
     protected final ArtworkRequestManager requestor;
     protected final BundleableLoader loader;
@@ -79,11 +89,16 @@ public class BundleablePresenter extends Presenter<BundleableRecyclerView>
     protected final IndexClient indexClient;
     protected final BundleablePresenterConfig presenterConfig;
     protected final DialogPresenter dialogPresenter;
+    protected final int pageSize;
 
     protected boolean wantGrid;
     protected Subscription subscription;
     protected boolean adapterIsDirty;
     private boolean isLoading;
+    //provider offsets of the first item in the adapter and the one after the last
+    private int firstOffset;
+    private int nextOffset;
+    private boolean hasMorePages;
 
     @Inject
     public BundleablePresenter(
@@ -100,7 +115,8 @@ public class BundleablePresenter extends Presenter<BundleableRecyclerView>
     ) {
         this.preferences = preferences;
         this.requestor = requestor;
-        this.loader = loader.setUri(uri).setSortOrder(preferences.getSortOrder(uri, config.defaultSortOrder));
+        this.loader = loader.setUri(uri).setSortOrder(preferences.getSortOrder(uri, config.defaultSortOrder))
+                .setChunkSize(STREAM_CHUNK_SIZE);
         this.fm = fm;
         this.wantGrid = StringUtils.equals(preferences.getLayout(uri, config.wantsGrid), AppPreferences.GRID);
         this.itemClickListener = config.itemClickListener;
@@ -111,6 +127,7 @@ public class BundleablePresenter extends Presenter<BundleableRecyclerView>
         this.indexClient = indexClient;
         this.presenterConfig = config;
         this.dialogPresenter = dialogPresenter;
+        this.pageSize = config.pageSize;
     }
 
     @Override
@@ -167,12 +184,25 @@ public class BundleablePresenter extends Presenter<BundleableRecyclerView>
     // start the loader
     @DebugLog
     protected void load() {
+        if (pageSize > 0) {
+            firstOffset = nextOffset = 0;
+            hasMorePages = false;
+            loadPage();
+            return;
+        }
         isLoading = true;
         subscription = loader.getListObservable().subscribe(new Subscriber<List<Bundleable>>() {
+            int chunks = 0;
+
             @Override
             public void onNext(List<Bundleable> bundleables) {
-                Timber.d("onNext items=%d", bundleables.size());
-                addAll(bundleables);
+                Timber.d("onNext chunk=%d items=%d", chunks, bundleables.size());
+                //the provider's order is trusted, only later chunks of a stream need merging
+                if (chunks++ == 0) {
+                    addAll(bundleables);
+                } else {
+                    addChunk(bundleables);
+                }
             }
 
             @Override
@@ -195,6 +225,122 @@ public class BundleablePresenter extends Presenter<BundleableRecyclerView>
         });
     }
 
+    // fetches the page at nextOffset, the first page replaces whatever the adapter has
+    protected void loadPage() {
+        isLoading = true;
+        final boolean firstPage = nextOffset == 0;
+        if (firstPage) {
+            adapterIsDirty = true;
+        }
+        subscription = loader.getPageObservable(nextOffset, pageSize).subscribe(new Subscriber<List<Bundleable>>() {
+            int received = 0;
+
+            @Override
+            public void onNext(List<Bundleable> bundleables) {
+                Timber.d("onNext offset=%d items=%d", nextOffset, bundleables.size());
+                received += bundleables.size();
+                nextOffset += bundleables.size();
+                addPage(bundleables);
+                dropPagesFromTop();
+            }
+
+            @Override
+            public void onCompleted() {
+                isLoading = false;
+                //a provider that can't page sends more, either way there is nothing left
+                hasMorePages = received == pageSize;
+                if (firstPage && hasView() && getView().getAdapter().isEmpty()) {
+                    getView().setEmptyText(R.string.empty_music);
+                    getView().showEmpty(true);
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                isLoading = false;
+                hasMorePages = false;
+                if (firstPage && hasView()) {
+                    getView().setEmptyText(R.string.error_loading_list);
+                    getView().showEmpty(true);
+                }
+            }
+        });
+    }
+
+    // fetches the page before firstOffset, it was dropped when we scrolled past it
+    protected void loadPreviousPage() {
+        isLoading = true;
+        final int offset = Math.max(0, firstOffset - pageSize);
+        final int limit = firstOffset - offset;
+        subscription = loader.getPageObservable(offset, limit).subscribe(new Subscriber<List<Bundleable>>() {
+            @Override
+            public void onNext(List<Bundleable> bundleables) {
+                Timber.d("onNext previous offset=%d items=%d", offset, bundleables.size());
+                if (hasView() && !adapterIsDirty && bundleables.size() == limit) {
+                    getView().getAdapter().addAll(loaderSeed.size(), bundleables);
+                    firstOffset = offset;
+                    dropPagesFromBottom();
+                } else {
+                    //the list changed under us, start over
+                    reload();
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+                isLoading = false;
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                isLoading = false;
+            }
+        });
+    }
+
+    // keeps memory flat while scrolling down
+    private void dropPagesFromTop() {
+        if (!hasView() || nextOffset - firstOffset <= MAX_PAGES_KEPT * pageSize) {
+            return;
+        }
+        final int drop = Math.min(pageSize, getView().getAdapter().getItemCount() - loaderSeed.size());
+        getView().getAdapter().removeRange(loaderSeed.size(), drop);
+        firstOffset += drop;
+    }
+
+    // keeps memory flat while scrolling back up
+    private void dropPagesFromBottom() {
+        if (!hasView() || nextOffset - firstOffset <= MAX_PAGES_KEPT * pageSize) {
+            return;
+        }
+        final int count = getView().getAdapter().getItemCount();
+        //back down to MAX_PAGES_KEPT, firstOffset is on a page boundary so nextOffset will be too
+        final int drop = Math.min(nextOffset - (firstOffset + MAX_PAGES_KEPT * pageSize), count - loaderSeed.size());
+        getView().getAdapter().removeRange(count - drop, drop);
+        nextOffset -= drop;
+        hasMorePages = true;
+    }
+
+    /**
+     * Called by the view as it scrolls, fetches the next or previous page if paging
+     * and one isn't already loading
+     */
+    public void onScrolledTo(int firstVisiblePosition, int lastVisiblePosition, int itemCount) {
+        if (pageSize <= 0 || isLoading) {
+            return;
+        }
+        if (hasMorePages && lastVisiblePosition >= itemCount - PAGE_PREFETCH_DISTANCE) {
+            loadPage();
+        } else if (firstOffset > 0 && firstVisiblePosition >= 0
+                && firstVisiblePosition <= loaderSeed.size() + PAGE_PREFETCH_DISTANCE) {
+            loadPreviousPage();
+        }
+    }
+
+    public boolean isPaged() {
+        return pageSize > 0;
+    }
+
     // cancels any ongoing load and starts a new one
     @DebugLog
     public void reload() {
@@ -224,6 +370,80 @@ public class BundleablePresenter extends Presenter<BundleableRecyclerView>
         }
     }
 
+    // later chunks of a stream are merged into what we already have
+    protected void addChunk(Collection<Bundleable> collection) {
+        if (hasView()) {
+            if (adapterIsDirty) {
+                addAll(collection);
+            } else {
+                mergeAll(collection);
+                getView().showList(true);
+            }
+        }
+    }
+
+    // pages arrive in order so are appended as is
+    protected void addPage(Collection<Bundleable> collection) {
+        if (hasView()) {
+            if (adapterIsDirty) {
+                addAll(collection);
+            } else {
+                getView().getAdapter().addAll(collection);
+                getView().showList(true);
+            }
+        }
+    }
+
+    /*
+     * Streaming providers sort each chunk on its own with the FolderTrackCompare
+     * ordering, so merge the chunk into the (already sorted) adapter. The chunk is
+     * sorted too so insert positions never go backwards, items landing in the same
+     * spot are inserted together.
+     */
+    protected void mergeAll(Collection<Bundleable> collection) {
+        final BundleableRecyclerAdapter adapter = getView().getAdapter();
+        final List<Bundleable> items = adapter.getItems();
+        final Comparator<Model> comparator = FolderTrackCompare.comparator(loader.getSortOrder());
+        //skip over any seeded items (not models) at the top
+        int start = 0;
+        while (start < items.size() && !(items.get(start) instanceof Model)) {
+            start++;
+        }
+        //insert position for each run, computed against the adapter as it is now
+        final List<Integer> positions = new ArrayList<>();
+        final List<List<Bundleable>> runs = new ArrayList<>();
+        int lo = start;
+        for (Bundleable b : collection) {
+            if (b instanceof Model) {
+                //upper bound, so equal items keep arrival order
+                final Model m = (Model) b;
+                int hi = items.size();
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    Bundleable other = items.get(mid);
+                    if (other instanceof Model && comparator.compare((Model) other, m) > 0) {
+                        hi = mid;
+                    } else {
+                        lo = mid + 1;
+                    }
+                }
+            } //else stays with whatever came before it
+            final int pos = lo;
+            if (!positions.isEmpty() && positions.get(positions.size() - 1) == pos) {
+                runs.get(runs.size() - 1).add(b);
+            } else {
+                positions.add(pos);
+                List<Bundleable> run = new ArrayList<>();
+                run.add(b);
+                runs.add(run);
+            }
+        }
+        //back to front so the earlier positions stay valid
+        for (int ii = runs.size() - 1; ii >= 0; ii--) {
+            adapter.addAll(positions.get(ii), runs.get(ii));
+        }
+    }
+
     protected void addItem(Bundleable item) {
         if (hasView()) {
             if (adapterIsDirty) {
@@ -248,6 +468,38 @@ public class BundleablePresenter extends Presenter<BundleableRecyclerView>
         return Collections.emptyList();
     }
 
+    /**
+     * Like {@link #getItems()} but when paging fetches the whole list first, since pages
+     * we haven't reached or have dropped aren't in the adapter. The action is called once.
+     */
+    public void withAllItems(final Action1<List<Model>> action) {
+        if (pageSize <= 0 || (!hasMorePages && firstOffset == 0)) {
+            action.call(getItems());
+            return;
+        }
+        //no limit means the provider may send it in chunks, gather them up first
+        loader.getPageObservable(0, 0).toList().subscribe(new Action1<List<List<Bundleable>>>() {
+            @Override
+            public void call(List<List<Bundleable>> chunks) {
+                List<Model> models = new ArrayList<>(loaderSeed.size());
+                for (Bundleable b : loaderSeed) {
+                    models.add((Model) b);
+                }
+                for (List<Bundleable> chunk : chunks) {
+                    for (Bundleable b : chunk) {
+                        models.add((Model) b);
+                    }
+                }
+                action.call(models);
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(Throwable throwable) {
+                Timber.w(throwable, "withAllItems");
+            }
+        });
+    }
+
     public List<Model> getSelectedItems() {
         if (hasView()) {
             List<Bundleable> bundleables = getView().getAdapter().getSelectedItems();
@@ -331,11 +583,16 @@ public class BundleablePresenter extends Presenter<BundleableRecyclerView>
         if (presenterConfig.fabClickAction != null) {
             presenterConfig.fabClickAction.call(view.getContext(), this);
         } else {
-            List<Uri> toPlay = UtilsCommon.filterTracks(getItems());
-            if (toPlay.isEmpty()) {
-                return; //TODO toast?
-            }
-            getPlaybackController().playAll(toPlay, 0);
+            withAllItems(new Action1<List<Model>>() {
+                @Override
+                public void call(List<Model> models) {
+                    List<Uri> toPlay = UtilsCommon.filterTracks(models);
+                    if (toPlay.isEmpty()) {
+                        return; //TODO toast?
+                    }
+                    getPlaybackController().playAll(toPlay, 0);
+                }
+            });
         }
     }
 
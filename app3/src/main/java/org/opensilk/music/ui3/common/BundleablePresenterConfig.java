@@ -32,6 +32,9 @@ import rx.functions.Action2;
  * Created by drew on 5/6/15.
  */
 public class BundleablePresenterConfig {
+    //a few screenfuls
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
     public final boolean wantsGrid;
     public final boolean wantsNumberedTracks;
     public final ItemClickListener itemClickListener;
@@ -41,6 +44,7 @@ public class BundleablePresenterConfig {
     public final boolean allowLongPressSelection;
     public final String toolbarTitle;
     public final Action2<Context, BundleablePresenter> fabClickAction;
+    public final int pageSize;
 
     public BundleablePresenterConfig(
             Builder builder
@@ -54,6 +58,7 @@ public class BundleablePresenterConfig {
         this.allowLongPressSelection = builder.allowLongPressSelection;
         this.toolbarTitle = builder.toolbarTitle;
         this.fabClickAction = builder.fabClickAction;
+        this.pageSize = builder.pageSize;
     }
 
     public static Builder builder() {
@@ -70,6 +75,7 @@ public class BundleablePresenterConfig {
         boolean allowLongPressSelection = true;
         String toolbarTitle = "";
         Action2<Context, BundleablePresenter> fabClickAction;
+        int pageSize;
 
         public Builder setWantsGrid(boolean wantsGrid) {
             this.wantsGrid = wantsGrid;
@@ -127,6 +133,15 @@ public class BundleablePresenterConfig {
             return this;
         }
 
+        /**
+         * Fetch the list pageSize items at a time as the user scrolls instead of all at once.
+         * Only for uris whose provider honors LibraryExtras.LIMIT (the index)
+         */
+        public Builder setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
         public BundleablePresenterConfig build() {
             return new BundleablePresenterConfig(this);
         }
@@ -97,6 +97,7 @@ public class BundleableRecyclerCoordinator extends RecyclerListCoordinator imple
     protected void initRecyclerView() {
         getListView().setHasFixedSize(true);
         getListView().setAdapter(mAdapter);
+        getListView().addOnScrollListener(new PagingScrollListener(mPresenter));
     }
 
     public void setupRecyclerView() {
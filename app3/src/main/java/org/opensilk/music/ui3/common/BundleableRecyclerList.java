@@ -63,6 +63,7 @@ public class BundleableRecyclerList extends RecyclerListFrame implements Bundlea
     protected void initRecyclerView() {
         getListView().setHasFixedSize(true);
         getListView().setAdapter(mAdapter);
+        getListView().addOnScrollListener(new PagingScrollListener(mPresenter));
     }
 
     public void setupRecyclerView() {
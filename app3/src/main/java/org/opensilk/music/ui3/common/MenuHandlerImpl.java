@@ -91,13 +91,18 @@ public abstract class MenuHandlerImpl extends MenuHandler {
         presenter.resetRecyclerView();
     }
 
-    public void addItemsToQueue(BundleablePresenter presenter) {
-        List<Uri> toPlay = UtilsCommon.filterTracks(presenter.getItems());
-        if (toPlay.isEmpty()) {
-            Timber.e("No tracks in list");
-            return; //TODO toast?
-        }
-        presenter.getPlaybackController().enqueueAllEnd(toPlay);
+    public void addItemsToQueue(final BundleablePresenter presenter) {
+        presenter.withAllItems(new Action1<List<Model>>() {
+            @Override
+            public void call(List<Model> models) {
+                List<Uri> toPlay = UtilsCommon.filterTracks(models);
+                if (toPlay.isEmpty()) {
+                    Timber.e("No tracks in list");
+                    return; //TODO toast?
+                }
+                presenter.getPlaybackController().enqueueAllEnd(toPlay);
+            }
+        });
     }
 
     public void addSelectedItemsToQueue(BundleablePresenter presenter) {
@@ -109,13 +114,18 @@ public abstract class MenuHandlerImpl extends MenuHandler {
         presenter.getPlaybackController().enqueueAllEnd(toPlay);
     }
 
-    public void playItemsNext(BundleablePresenter presenter) {
-        List<Uri> toPlay = UtilsCommon.filterTracks(presenter.getItems());
-        if (toPlay.isEmpty()) {
-            Timber.e("No tracks in list");
-            return; //TODO toast?
-        }
-        presenter.getPlaybackController().enqueueAllNext(toPlay);
+    public void playItemsNext(final BundleablePresenter presenter) {
+        presenter.withAllItems(new Action1<List<Model>>() {
+            @Override
+            public void call(List<Model> models) {
+                List<Uri> toPlay = UtilsCommon.filterTracks(models);
+                if (toPlay.isEmpty()) {
+                    Timber.e("No tracks in list");
+                    return; //TODO toast?
+                }
+                presenter.getPlaybackController().enqueueAllNext(toPlay);
+            }
+        });
     }
 
     public void playSelectedItemsNext(BundleablePresenter presenter) {
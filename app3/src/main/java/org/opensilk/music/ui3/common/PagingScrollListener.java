@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.ui3.common;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * Tells the presenter which part of the list is showing so it can fetch the next
+ * or previous page
+ *
+ * Created by drew on 12/5/15.
+ */
+public class PagingScrollListener extends RecyclerView.OnScrollListener {
+
+    final BundleablePresenter presenter;
+
+    public PagingScrollListener(BundleablePresenter presenter) {
+        this.presenter = presenter;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0 || !presenter.isPaged()) {
+            return;
+        }
+        RecyclerView.LayoutManager lm = recyclerView.getLayoutManager();
+        if (lm instanceof LinearLayoutManager) {
+            LinearLayoutManager llm = (LinearLayoutManager) lm;
+            presenter.onScrolledTo(llm.findFirstVisibleItemPosition(),
+                    llm.findLastVisibleItemPosition(), llm.getItemCount());
+        }
+    }
+}
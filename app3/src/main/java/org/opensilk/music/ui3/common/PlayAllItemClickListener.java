@@ -24,20 +24,27 @@ import org.opensilk.music.model.Model;
 
 import java.util.List;
 
+import rx.functions.Action1;
+
 /**
  * Created by drew on 10/7/15.
  */
 public class PlayAllItemClickListener implements ItemClickListener {
 
     @Override
-    public void onItemClicked(BundleablePresenter presenter, Context context, Model item) {
-        List<Uri> toPlay = UtilsCommon.filterTracks(presenter.getItems());
-        if (toPlay.isEmpty()) {
-            return; //TODO toast?
-        }
-        //find its new pos in case there were folders before it in the adapteritems
-        int pos = toPlay.indexOf(item.getUri());
-        presenter.getPlaybackController().playAll(toPlay, pos);
+    public void onItemClicked(final BundleablePresenter presenter, Context context, final Model item) {
+        presenter.withAllItems(new Action1<List<Model>>() {
+            @Override
+            public void call(List<Model> models) {
+                List<Uri> toPlay = UtilsCommon.filterTracks(models);
+                if (toPlay.isEmpty()) {
+                    return; //TODO toast?
+                }
+                //find its new pos in case there were folders before it in the adapteritems
+                int pos = toPlay.indexOf(item.getUri());
+                presenter.getPlaybackController().playAll(toPlay, pos);
+            }
+        });
     }
 
 }
@@ -72,6 +72,7 @@ public class AlbumsScreenModule {
                 .setWantsGrid(true)
                 .setItemClickListener(itemClickListener)
                 .setMenuConfig(menuConfig)
+                .setPageSize(BundleablePresenterConfig.DEFAULT_PAGE_SIZE)
                 .build();
     }
 
@@ -76,6 +76,7 @@ public class ArtistsScreenModule {
                 .setWantsGrid(true)
                 .setItemClickListener(itemClickListener)
                 .setMenuConfig(menuConfig)
+                .setPageSize(BundleablePresenterConfig.DEFAULT_PAGE_SIZE)
                 .build();
     }
 
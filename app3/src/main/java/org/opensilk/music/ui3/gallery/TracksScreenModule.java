@@ -65,6 +65,7 @@ public class TracksScreenModule {
                 .setWantsGrid(false)
                 .setItemClickListener(itemClickListener)
                 .setMenuConfig(menuConfig)
+                .setPageSize(BundleablePresenterConfig.DEFAULT_PAGE_SIZE)
                 .build();
     }
 
@@ -60,6 +60,9 @@ import static org.opensilk.common.core.rx.RxUtils.isSubscribed;
 @ScreenScope
 public class QueueScreenPresenter extends ViewPresenter<QueueScreenView> {
 
+    //how far either side of an unresolved item we ask the service to fill in
+    static final int QUEUE_WINDOW = 30;
+
     final PlaybackController playbackController;
     final ArtworkRequestManager requestor;
     final IndexClient indexClient;
@@ -74,6 +77,8 @@ public class QueueScreenPresenter extends ViewPresenter<QueueScreenView> {
     long lastPlayingId;
     boolean selfChange;
     final ArrayList<QueueItem> queue = new ArrayList<>();
+    int windowFirst = -1;
+    int windowLast = -1;
 
     @Inject
     public QueueScreenPresenter(
@@ -141,6 +146,15 @@ public class QueueScreenPresenter extends ViewPresenter<QueueScreenView> {
         playbackController.removeQueueItemAt(pos);
     }
 
+    void onUnresolvedItemBound(int pos) {
+        if (pos >= windowFirst && pos <= windowLast) {
+            return;
+        }
+        windowFirst = Math.max(0, pos - QUEUE_WINDOW);
+        windowLast = pos + QUEUE_WINDOW;
+        playbackController.showQueueWindow(windowFirst, windowLast);
+    }
+
     void onItemClicked(QueueItem item) {
         playbackController.skipToQueueItem(item.getQueueId());
     }
@@ -203,6 +217,8 @@ public class QueueScreenPresenter extends ViewPresenter<QueueScreenView> {
                                 }
                             }
                         }
+                        //anything still unresolved after an update gets asked for again
+                        windowFirst = windowLast = -1;
                         queue.clear();
                         queue.addAll(queueItems);
                         queue.trimToSize();
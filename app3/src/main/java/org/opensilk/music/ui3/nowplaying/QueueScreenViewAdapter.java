@@ -92,6 +92,10 @@ public class QueueScreenViewAdapter extends RecyclerListAdapter<QueueItem,
         QueueItem item = getItem(position);
         holder.reset();
         MediaDescriptionCompat desc = item.getDescription();
+        if (desc.getTitle() == null) {
+            //service hasn't looked this one up yet
+            presenter.onUnresolvedItemBound(position);
+        }
         holder.title.setText(desc.getTitle());
         holder.subtitle.setText(desc.getSubtitle());
         Uri uri = desc.getIconUri();
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.bundleable;
+
+import android.os.Parcel;
+
+/**
+ * Optional compact encoding for a {@link Bundleable}, used by {@link BundleableListSlice}
+ * when both ends support it. Avoids the Bundle (and its string keys) for every item.
+ * <br/>
+ * To be found by {@link BundleableUtil#getCodec(String)} the codec must be defined
+ * in a public static field named BUNDLE_CODEC.
+ * <br/>
+ * The writers version is sent along once per type, new fields must only ever be appended
+ * and guarded by a version bump. Readers may receive data from an older or newer version,
+ * anything past the fields they know about is skipped.
+ *
+ * Created by drew on 12/4/15.
+ */
+public interface BundleableCodec<T extends Bundleable> {
+
+    int getVersion();
+
+    void write(T item, Parcel dest);
+
+    /**
+     * @param version the writers {@link #getVersion()}
+     */
+    T read(Parcel source, int version) throws IllegalArgumentException;
+
+}
@@ -25,7 +25,9 @@ import android.os.RemoteException;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Transfer a large list of Parcelable objects across an IPC.  Splits into
@@ -37,7 +39,10 @@ import java.util.List;
  * a different result if the class name encoded in the Parcelable is a Base type.
  * See b/17671747.
  *
- * OpenSilk: Modified for Bundleables
+ * OpenSilk: Modified for Bundleables. When the receiver supports it items with a
+ * {@link BundleableCodec} are written compactly, the class name and codec version are
+ * written once per type and each item is prefixed with its length so readers can skip
+ * anything they don't understand.
  */
 public class BundleableListSlice<T extends Bundleable> implements Parcelable {
     private static String TAG = "BundleableListSlice";
@@ -46,10 +51,27 @@ public class BundleableListSlice<T extends Bundleable> implements Parcelable {
 
     private static final int MAX_IPC_SIZE = 64 * 1024;
 
+    //first int of a compact slice, legacy slices start with the (non negative) count
+    private static final int COMPACT_MAGIC = -0x4f53;
+
+    private static final int ITEM_END = 0;
+    private static final int ITEM_BUNDLE = 1;
+    private static final int ITEM_CODEC = 2;
+    private static final int ITEM_CODEC_NEW_TYPE = 3;
+
     private final List<T> mList;
+    private final boolean mCompact;
 
     public BundleableListSlice(List<T> list) {
+        this(list, false);
+    }
+
+    /**
+     * @param compact true if the receiver is known to understand the compact encoding
+     */
+    public BundleableListSlice(List<T> list, boolean compact) {
         mList = list;
+        mCompact = compact;
     }
 
     private BundleableListSlice(Parcel p, ClassLoader loader) {
@@ -58,26 +80,26 @@ public class BundleableListSlice<T extends Bundleable> implements Parcelable {
             loader = getClass().getClassLoader();
         }
 
-        final int N = p.readInt();
+        int N = p.readInt();
+        mCompact = N == COMPACT_MAGIC;
+        if (mCompact) {
+            N = p.readInt();
+        }
         mList = new ArrayList<T>(N);
-        if (DEBUG) Log.d(TAG, "Retrieving " + N + " items");
+        if (DEBUG) Log.d(TAG, "Retrieving " + N + " items compact=" + mCompact);
         if (N <= 0) {
             return;
         }
 
+        final List<ReadType> types = new ArrayList<>();
         int i = 0;
         while (i < N) {
-            if (p.readInt() == 0) {
+            final int tag = p.readInt();
+            if (tag == ITEM_END) {
                 break;
             }
 
-            final Bundle bundle = p.readBundle(loader);
-            try {
-                final T bundleable = BundleableUtil.materializeBundle(bundle);
-                mList.add(bundleable);
-            } catch (BadBundleableException e) {
-                Log.e(TAG, "Unable to materialize bundle", e);
-            }
+            readItem(p, tag, loader, types);
 
             if (LOGVV) Log.v(TAG, "Read inline #" + i + ": " + mList.get(mList.size() - 1));
             i++;
@@ -97,20 +119,57 @@ public class BundleableListSlice<T extends Bundleable> implements Parcelable {
                 Log.w(TAG, "Failure retrieving array; only received " + i + " of " + N, e);
                 return;
             }
-            while (i < N && reply.readInt() != 0) {
-                final Bundle bundle = reply.readBundle(loader);
+            int tag;
+            while (i < N && (tag = reply.readInt()) != ITEM_END) {
+                readItem(reply, tag, loader, types);
+
+                if (LOGVV) Log.v(TAG, "Read extra #" + i + ": " + mList.get(mList.size() - 1));
+                i++;
+            }
+            reply.recycle();
+            data.recycle();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readItem(Parcel p, int tag, ClassLoader loader, List<ReadType> types) {
+        switch (tag) {
+            case ITEM_BUNDLE: {
+                final Bundle bundle = p.readBundle(loader);
                 try {
                     final T bundleable = BundleableUtil.materializeBundle(bundle);
                     mList.add(bundleable);
                 } catch (BadBundleableException e) {
                     Log.e(TAG, "Unable to materialize bundle", e);
                 }
-
-                if (LOGVV) Log.v(TAG, "Read extra #" + i + ": " + mList.get(mList.size() - 1));
-                i++;
+                break;
+            }
+            case ITEM_CODEC_NEW_TYPE: {
+                final String name = p.readString();
+                final int version = p.readInt();
+                types.add(new ReadType(BundleableUtil.<T>getCodec(name), name, version));
+                //fall through, a new type is always followed by an item
+            }
+            case ITEM_CODEC: {
+                final ReadType type = types.get(p.readInt());
+                final int len = p.readInt();
+                final int start = p.dataPosition();
+                if (type.codec != null) {
+                    try {
+                        mList.add((T) type.codec.read(p, type.version));
+                    } catch (IllegalArgumentException|ClassCastException e) {
+                        //same as BundleableUtil.materializeBundle, a bad item is skipped not fatal
+                        Log.e(TAG, "Unable to read " + type.name, e);
+                    }
+                } else {
+                    Log.e(TAG, "No codec for " + type.name);
+                }
+                p.setDataPosition(start + len);
+                break;
+            }
+            default: {
+                throw new IllegalStateException("Unknown item tag " + tag);
             }
-            reply.recycle();
-            data.recycle();
         }
     }
 
@@ -131,21 +190,23 @@ public class BundleableListSlice<T extends Bundleable> implements Parcelable {
     @Override
     public void writeToParcel(Parcel dest, int flags) {
         final int N = mList.size();
+        if (mCompact) {
+            dest.writeInt(COMPACT_MAGIC);
+        }
         dest.writeInt(N);
-        if (DEBUG) Log.d(TAG, "Writing " + N + " items");
+        if (DEBUG) Log.d(TAG, "Writing " + N + " items compact=" + mCompact);
         if (N > 0) {
+            //shared with the retriever, the reader keeps the same table across transactions
+            final Map<String, Integer> types = new HashMap<>();
             int i = 0;
             while (i < N && dest.dataSize() < MAX_IPC_SIZE) {
-                dest.writeInt(1);
-
-                final T bundleable = mList.get(i);
-                dest.writeBundle(bundleable.toBundle());
+                writeItem(dest, mList.get(i), types);
 
                 if (LOGVV) Log.v(TAG, "Wrote inline #" + i + ": " + mList.get(i));
                 i++;
             }
             if (i < N) {
-                dest.writeInt(0);
+                dest.writeInt(ITEM_END);
                 Binder retriever = new Binder() {
                     @Override
                     protected boolean onTransact(int code, Parcel data, Parcel reply, int flags)
@@ -156,17 +217,14 @@ public class BundleableListSlice<T extends Bundleable> implements Parcelable {
                         int i = data.readInt();
                         if (DEBUG) Log.d(TAG, "Writing more @" + i + " of " + N);
                         while (i < N && reply.dataSize() < MAX_IPC_SIZE) {
-                            reply.writeInt(1);
-
-                            final T bundleable = mList.get(i);
-                            reply.writeBundle(bundleable.toBundle());
+                            writeItem(reply, mList.get(i), types);
 
                             if (LOGVV) Log.v(TAG, "Wrote extra #" + i + ": " + mList.get(i));
                             i++;
                         }
                         if (i < N) {
                             if (DEBUG) Log.d(TAG, "Breaking @" + i + " of " + N);
-                            reply.writeInt(0);
+                            reply.writeInt(ITEM_END);
                         }
                         return true;
                     }
@@ -177,6 +235,47 @@ public class BundleableListSlice<T extends Bundleable> implements Parcelable {
         }
     }
 
+    private void writeItem(Parcel dest, T bundleable, Map<String, Integer> types) {
+        final String name = bundleable.getClass().getName();
+        final BundleableCodec<T> codec = mCompact ? BundleableUtil.<T>getCodec(name) : null;
+        if (codec == null) {
+            dest.writeInt(ITEM_BUNDLE);
+            dest.writeBundle(bundleable.toBundle());
+            return;
+        }
+        Integer type = types.get(name);
+        if (type == null) {
+            type = types.size();
+            types.put(name, type);
+            dest.writeInt(ITEM_CODEC_NEW_TYPE);
+            dest.writeString(name);
+            dest.writeInt(codec.getVersion());
+        } else {
+            dest.writeInt(ITEM_CODEC);
+        }
+        dest.writeInt(type);
+        //length placeholder, filled in after so readers can skip what they don't know
+        final int lenPos = dest.dataPosition();
+        dest.writeInt(0);
+        codec.write(bundleable, dest);
+        final int end = dest.dataPosition();
+        dest.setDataPosition(lenPos);
+        dest.writeInt(end - lenPos - 4);
+        dest.setDataPosition(end);
+    }
+
+    private static final class ReadType {
+        final BundleableCodec codec;
+        final String name;
+        final int version;
+
+        ReadType(BundleableCodec codec, String name, int version) {
+            this.codec = codec;
+            this.name = name;
+            this.version = version;
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public static final Parcelable.ClassLoaderCreator<BundleableListSlice> CREATOR =
             new Parcelable.ClassLoaderCreator<BundleableListSlice>() {
@@ -19,6 +19,7 @@ package org.opensilk.bundleable;
 
 import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import java.lang.reflect.Field;
 import java.util.HashMap;
@@ -71,6 +72,33 @@ public class BundleableUtil {
         }
     }
 
+    /**
+     * @param name Class name of the {@link Bundleable}
+     * @return the classes {@link BundleableCodec} or null if it doesn't have one
+     */
+    @Nullable @SuppressWarnings("unchecked")
+    public static <T extends Bundleable> BundleableCodec<T> getCodec(String name) {
+        if (name == null) {
+            return null;
+        }
+        synchronized (sCodecCache) {
+            if (sCodecCache.containsKey(name)) {
+                return sCodecCache.get(name);
+            }
+            BundleableCodec codec = null;
+            try {
+                Class clz = Class.forName(name);
+                Field f = clz.getDeclaredField("BUNDLE_CODEC");
+                codec = (BundleableCodec) f.get(null);
+            } catch (Exception ignored) {
+                //no codec, they'll go as bundles
+            }
+            sCodecCache.put(name, codec);
+            return codec;
+        }
+    }
+
+    private static final HashMap<String, BundleableCodec> sCodecCache = new HashMap<>();
     private static final HashMap<String, Bundleable.BundleCreator> sCreatorCache = new HashMap<>();
     private static Bundleable.BundleCreator getCreator(String name) throws BadBundleableException {
         if (name == null) {
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.bundleable;
+
+import android.os.Parcel;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 12/4/15.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config( manifest = Config.NONE)
+public class BundleableListSliceTest {
+
+    @Test
+    public void testLegacyRoundTrip() {
+        List<TestBundleable> list = makeList(10);
+        BundleableListSlice<TestBundleable> read = roundTrip(new BundleableListSlice<>(list));
+        assertThat(read.getList()).containsExactlyElementsOf(list);
+    }
+
+    @Test
+    public void testCompactRoundTrip() {
+        List<TestBundleable> list = makeList(10);
+        BundleableListSlice<TestBundleable> read = roundTrip(new BundleableListSlice<>(list, true));
+        assertThat(read.getList()).containsExactlyElementsOf(list);
+    }
+
+    @Test
+    public void testCompactIsSmaller() {
+        List<TestBundleable> list = makeList(100);
+        Parcel legacy = Parcel.obtain();
+        new BundleableListSlice<>(list).writeToParcel(legacy, 0);
+        Parcel compact = Parcel.obtain();
+        new BundleableListSlice<>(list, true).writeToParcel(compact, 0);
+        assertThat(compact.dataSize()).isLessThan(legacy.dataSize());
+        legacy.recycle();
+        compact.recycle();
+    }
+
+    static List<TestBundleable> makeList(int num) {
+        List<TestBundleable> list = new ArrayList<>(num);
+        for (int ii=0; ii<num; ii++) {
+            list.add(new TestBundleable("name" + ii, ii));
+        }
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    static BundleableListSlice<TestBundleable> roundTrip(BundleableListSlice<TestBundleable> slice) {
+        Parcel p = Parcel.obtain();
+        slice.writeToParcel(p, 0);
+        p.setDataPosition(0);
+        BundleableListSlice<TestBundleable> read = BundleableListSlice.CREATOR.createFromParcel(p);
+        p.recycle();
+        return read;
+    }
+
+}
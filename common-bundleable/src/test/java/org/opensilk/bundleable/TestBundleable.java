@@ -18,6 +18,7 @@
 package org.opensilk.bundleable;
 
 import android.os.Bundle;
+import android.os.Parcel;
 
 /**
  * Created by drew on 10/2/15.
@@ -69,4 +70,25 @@ public class TestBundleable implements Bundleable {
                     return new TestBundleable(name, age);
                 }
             };
+
+    public static final BundleableCodec<TestBundleable> BUNDLE_CODEC =
+            new BundleableCodec<TestBundleable>() {
+                @Override
+                public int getVersion() {
+                    return 1;
+                }
+
+                @Override
+                public void write(TestBundleable item, Parcel dest) {
+                    dest.writeString(item.name);
+                    dest.writeInt(item.age);
+                }
+
+                @Override
+                public TestBundleable read(Parcel source, int version) throws IllegalArgumentException {
+                    final String name = source.readString();
+                    final int age = source.readInt();
+                    return new TestBundleable(name, age);
+                }
+            };
 }
@@ -42,6 +42,7 @@ public class BundleHelper {
     public static final String LIST_ART = "listarg";
     public static final String PARCELABLE_ARG = "parcelablearg";
     public static final String BOOL_ARG = "boolarg";
+    public static final String INT_ARRAY_ARG = "intarrayarg";
 
     public static int getInt(Bundle b) {
         return b.getInt(INT_ARG);
@@ -91,6 +92,10 @@ public class BundleHelper {
         return b.getBoolean(BOOL_ARG);
     }
 
+    public static int[] getIntArray(Bundle b) {
+        return b.getIntArray(INT_ARRAY_ARG);
+    }
+
     public static Builder b() {
         return builder();
     }
@@ -169,6 +174,11 @@ public class BundleHelper {
             return this;
         }
 
+        public Builder putIntArray(int[] val) {
+            b.putIntArray(INT_ARRAY_ARG, val);
+            return this;
+        }
+
         public Bundle get() {
             return b;
         }
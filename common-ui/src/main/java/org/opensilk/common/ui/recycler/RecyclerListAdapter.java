@@ -121,6 +121,11 @@ public abstract class RecyclerListAdapter<T, VH extends RecyclerView.ViewHolder>
         return item;
     }
 
+    public void removeRange(int pos, int count) {
+        items.subList(pos, pos + count).clear();
+        notifyItemRangeRemoved(pos, count);
+    }
+
     public int indexOf(T item) {
         return items.indexOf(item);
     }
@@ -24,7 +24,7 @@ import android.content.UriMatcher;
  */
 public class ArtworkUris {
 
-    static final String artInfo = "artInfo";
+    public static final String artInfo = "artInfo";
 
     public interface MATCH {
         int ARTINFO = 1;
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.artwork.cache;
+
+import android.graphics.Rect;
+import android.support.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Sidecar stored next to the image bytes in the disk cache. Describes the stored image
+ * and what part of the source image it shows.
+ *
+ * Created by drew on 12/8/15.
+ */
+public class ArtHeader {
+    static final int VERSION = 1;
+
+    public final int width;
+    public final int height;
+    //region of the source image, in source pixels
+    public final Rect crop;
+    public final String mimeType;
+
+    public ArtHeader(int width, int height, Rect crop, String mimeType) {
+        this.width = width;
+        this.height = height;
+        this.crop = crop;
+        this.mimeType = mimeType;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(VERSION);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeInt(crop.left);
+        data.writeInt(crop.top);
+        data.writeInt(crop.right);
+        data.writeInt(crop.bottom);
+        data.writeUTF(mimeType);
+        data.flush();
+    }
+
+    static @Nullable ArtHeader readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != VERSION) {
+            return null;
+        }
+        int width = data.readInt();
+        int height = data.readInt();
+        Rect crop = new Rect(data.readInt(), data.readInt(), data.readInt(), data.readInt());
+        return new ArtHeader(width, height, crop, data.readUTF());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ArtHeader{%dx%d, crop=%s, %s}", width, height, crop.toShortString(), mimeType);
+    }
+}
@@ -18,12 +18,31 @@
 package org.opensilk.music.artwork.cache;
 
 import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.support.annotation.Nullable;
+
+import java.io.File;
 
 /**
  * Created by drew on 12/23/14.
  */
 public interface BitmapDiskCache extends BitmapCache {
     byte[] getBytes(String key);
+    /**
+     * @return bytes of the size class variant, remade from the source if needed
+     */
+    @Nullable byte[] getVariantBytes(String key, int sizeClass);
+    /**
+     * @return file holding the image bytes of the size class variant, or null if there isn't one
+     */
+    @Nullable File getVariantFile(String key, int sizeClass);
+    @Nullable ArtHeader getHeader(String key);
+    /**
+     * Stores the source bytes when they can be served as is, else re-encodes the bitmap
+     *
+     * @param crop region of the source the bitmap was cropped to, null if it wasn't
+     */
+    void putSource(String key, byte[] source, Bitmap bitmap, @Nullable Rect crop);
     //ugly hack TODO find another way
     byte[] bitmapToBytes(Bitmap bitmap);
 }
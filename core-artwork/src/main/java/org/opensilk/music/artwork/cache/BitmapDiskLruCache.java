@@ -3,23 +3,32 @@ package org.opensilk.music.artwork.cache;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.support.annotation.Nullable;
 import android.support.v4.util.Pools;
 
 import com.jakewharton.disklrucache.DiskLruCache;
 
 import org.apache.commons.io.IOUtils;
+import org.opensilk.music.model.ArtInfo;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 import timber.log.Timber;
 
 /**
  * Implementation of DiskLruCache by Jake Wharton
  * modified from http://stackoverflow.com/questions/10185898/using-disklrucache-in-android-4-0-does-not-provide-for-opencache-method
+ *
+ * Each entry is the image bytes and an {@link ArtHeader} sidecar. Source bytes are kept
+ * as is when they need no cropping or scaling, everything else is re-encoded in the
+ * configured format. Smaller variants for each {@link ArtInfo#SIZE_CLASSES} are stored
+ * under their own keys when the source is written, and remade from the source if evicted.
  */
 public class BitmapDiskLruCache implements BitmapDiskCache {
 
@@ -28,26 +37,43 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
     private final File mDiskCacheDir;
     private final int mDiskCacheSize;
     private final ByteArrayPool mBytePool;
-    private static final Bitmap.CompressFormat COMPRESS_FORMAT = Bitmap.CompressFormat.PNG;
-    private static final int COMPRESS_QUALITY = 100;
-    private static final int APP_VERSION = 2;
-    private static final int VALUE_COUNT = 1;
+    private final DecodeScheduler mDecoder = DecodeScheduler.getDefault();
+    private final AtomicLong mSourceWrites = new AtomicLong();
+    private final AtomicLong mEncodedWrites = new AtomicLong();
+    private final AtomicLong mVariantWrites = new AtomicLong();
+    private final AtomicLong mBytesWritten = new AtomicLong();
+    private final AtomicLong mWriteNanos = new AtomicLong();
+    private final Bitmap.CompressFormat mCompressFormat;
+    private final int mCompressQuality;
+    private static final int APP_VERSION = 3;
+    private static final int VALUE_COUNT = 2;
+    private static final int VALUE_IMAGE = 0;
+    private static final int VALUE_HEADER = 1;
+    //anything bigger is scaled down before storing
+    static final int MAX_STORED_SIZE = 1024;
     private static final int DEFAULT_BUFFER_SIZE = 1024 * 8;
     private static final int OUTPUT_BUFFER_SIZE = 1024 * 64;
     private final Pools.Pool<ByteArrayOutputStream> mOutputPool = new Pools.SynchronizedPool<>(5);
     private final Semaphore mOutputSemaphore = new Semaphore(5, true);
 
-    public static final Object sDecodeLock = new Object();
-
-    private BitmapDiskLruCache(File diskCacheDir, int diskCacheSize, ByteArrayPool bytePool) {
-        Timber.d("new BitmapDiskLruCache path=%s size=%d", diskCacheDir.getAbsolutePath(), diskCacheSize);
+    private BitmapDiskLruCache(File diskCacheDir, int diskCacheSize, ByteArrayPool bytePool,
+                               Bitmap.CompressFormat compressFormat) {
+        Timber.d("new BitmapDiskLruCache path=%s size=%d format=%s",
+                diskCacheDir.getAbsolutePath(), diskCacheSize, compressFormat);
         mDiskCacheDir = diskCacheDir;
         mDiskCacheSize = diskCacheSize;
         mBytePool = bytePool;
+        mCompressFormat = compressFormat;
+        mCompressQuality = compressFormat == Bitmap.CompressFormat.PNG ? 100 : 90;
     }
 
     public static BitmapDiskLruCache open(File diskCacheDir, int diskCacheSize, ByteArrayPool bytePool) {
-        return new BitmapDiskLruCache(diskCacheDir, diskCacheSize, bytePool);
+        return open(diskCacheDir, diskCacheSize, bytePool, Bitmap.CompressFormat.JPEG);
+    }
+
+    public static BitmapDiskLruCache open(File diskCacheDir, int diskCacheSize, ByteArrayPool bytePool,
+                                          Bitmap.CompressFormat compressFormat) {
+        return new BitmapDiskLruCache(diskCacheDir, diskCacheSize, bytePool, compressFormat);
     }
 
     //lazily created to avoid blocking on main thread during app startup
@@ -101,7 +127,7 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
         try {
             snapshot = getDiskCache().get(CacheUtil.md5(url));
             if (snapshot != null) {
-                long copied = IOUtils.copyLarge(snapshot.getInputStream(0), out, buff);
+                long copied = IOUtils.copyLarge(snapshot.getInputStream(VALUE_IMAGE), out, buff);
                 if (copied > 0) {
                     return out.toByteArray();
                 }
@@ -116,11 +142,71 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
         return null;
     }
 
+    /**
+     * @return file DiskLruCache keeps the image value of a readable entry in, or null
+     */
+    public @Nullable File getFile(String url) {
+        final String key = CacheUtil.md5(url);
+        DiskLruCache.Snapshot snapshot = null;
+        try {
+            //makes sure the entry is readable and marks it used
+            snapshot = getDiskCache().get(key);
+            if (snapshot != null) {
+                //DiskLruCache names clean files <key>.<index>
+                final File file = new File(mDiskCacheDir, key + "." + VALUE_IMAGE);
+                return file.exists() ? file : null;
+            }
+        } catch (IOException e) {
+            Timber.e(e, "getFile(%s)", url);
+        } finally {
+            IOUtils.closeQuietly(snapshot);
+        }
+        return null;
+    }
+
+    @Override
+    public @Nullable File getVariantFile(String url, int sizeClass) {
+        if (sizeClass == ArtInfo.SIZE_ORIGINAL) {
+            return getFile(url);
+        }
+        final String variantKey = ArtInfo.variantKey(url, sizeClass);
+        File file = getFile(variantKey);
+        if (file != null) {
+            return file;
+        }
+        if (getVariantBytes(url, sizeClass) == null) {
+            return null;
+        }
+        file = getFile(variantKey);
+        //source was small enough to stand in for the variant
+        return file != null ? file : getFile(url);
+    }
+
+    @Override
+    public @Nullable ArtHeader getHeader(String url) {
+        DiskLruCache.Snapshot snapshot = null;
+        try {
+            snapshot = getDiskCache().get(CacheUtil.md5(url));
+            if (snapshot != null) {
+                return ArtHeader.readFrom(snapshot.getInputStream(VALUE_HEADER));
+            }
+        } catch (IOException e) {
+            Timber.e(e, "getHeader(%s)", url);
+        } finally {
+            IOUtils.closeQuietly(snapshot);
+        }
+        return null;
+    }
+
     @Override
     public byte[] bitmapToBytes(Bitmap bitmap) {
+        return bitmapToBytes(bitmap, formatFor(bitmap));
+    }
+
+    private byte[] bitmapToBytes(Bitmap bitmap, Bitmap.CompressFormat format) {
         final ByteArrayOutputStream out = getOutput();
         try {
-            if (bitmap.compress(COMPRESS_FORMAT, COMPRESS_QUALITY, out)) {
+            if (bitmap.compress(format, format == Bitmap.CompressFormat.PNG ? 100 : mCompressQuality, out)) {
                 return out.toByteArray();
             } else {
                 return null;
@@ -133,18 +219,12 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
     public Bitmap getBitmap(String url) {
         byte[] bytes = getBytes(url);
         if (bytes != null) {
-            synchronized (sDecodeLock) {
-                try {
-                    BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
-                    decodeOptions.inPreferredConfig = Bitmap.Config.RGB_565;
-                    return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, decodeOptions);
-                } catch (OutOfMemoryError e) {
-                    Timber.w(e, "getBitmap(%s)", url);
-                } finally {
-                    //dont return huge buffers to the pool
-                    if (bytes.length <= OUTPUT_BUFFER_SIZE) {
-                        mBytePool.returnBuf(bytes);
-                    }
+            try {
+                return mDecoder.decode(bytes, Bitmap.Config.RGB_565);
+            } finally {
+                //dont return huge buffers to the pool
+                if (bytes.length <= OUTPUT_BUFFER_SIZE) {
+                    mBytePool.returnBuf(bytes);
                 }
             }
         }
@@ -152,28 +232,149 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
     }
 
     public void putBitmap(String url, Bitmap data) {
+        putEncoded(url, data, null);
+    }
+
+    @Override
+    public void putSource(String url, byte[] source, Bitmap bitmap, @Nullable Rect crop) {
+        if (crop == null) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(source, 0, source.length, options);
+            final String mimeType = options.outMimeType != null
+                    ? options.outMimeType : sniffMimeType(source);
+            if (options.outWidth > 0 && options.outHeight > 0
+                    && Math.max(options.outWidth, options.outHeight) <= MAX_STORED_SIZE
+                    && isServable(mimeType)) {
+                final long start = System.nanoTime();
+                final Rect region = new Rect(0, 0, options.outWidth, options.outHeight);
+                if (writeEntry(url, source, new ArtHeader(options.outWidth, options.outHeight,
+                        region, mimeType))) {
+                    mSourceWrites.incrementAndGet();
+                    mWriteNanos.addAndGet(System.nanoTime() - start);
+                }
+                putVariants(url, bitmap, region);
+                return;
+            }
+        }
+        putEncoded(url, bitmap, crop);
+    }
+
+    private void putEncoded(String url, Bitmap data, @Nullable Rect crop) {
+        final long start = System.nanoTime();
+        final Rect region = crop != null ? crop : new Rect(0, 0, data.getWidth(), data.getHeight());
+        final Bitmap scaled = scaleToFit(data, MAX_STORED_SIZE);
+        final Bitmap.CompressFormat format = formatFor(scaled);
+        byte[] bytes = bitmapToBytes(scaled, format);
+        try {
+            if (bytes != null && writeEntry(url, bytes, new ArtHeader(scaled.getWidth(),
+                    scaled.getHeight(), region, mimeTypeOf(format)))) {
+                mEncodedWrites.incrementAndGet();
+                mWriteNanos.addAndGet(System.nanoTime() - start);
+            }
+        } finally {
+            //dont return huge buffers to the pool
+            if (bytes != null && bytes.length <= OUTPUT_BUFFER_SIZE) {
+                mBytePool.returnBuf(bytes);
+            }
+            if (scaled != data) {
+                scaled.recycle();
+            }
+        }
+        putVariants(url, data, region);
+    }
+
+    /*
+     * Stores every size class smaller than the bitmap
+     */
+    private void putVariants(String url, Bitmap data, Rect region) {
+        final int max = Math.max(data.getWidth(), data.getHeight());
+        for (int size : ArtInfo.SIZE_CLASSES) {
+            if (size < max) {
+                putVariant(url, data, size, region);
+            }
+        }
+    }
+
+    private @Nullable byte[] putVariant(String url, Bitmap data, int sizeClass, Rect region) {
+        final Bitmap scaled = scaleToFit(data, sizeClass);
+        try {
+            final Bitmap.CompressFormat format = formatFor(scaled);
+            final byte[] bytes = bitmapToBytes(scaled, format);
+            if (bytes != null && writeEntry(ArtInfo.variantKey(url, sizeClass), bytes, new ArtHeader(
+                    scaled.getWidth(), scaled.getHeight(), region, mimeTypeOf(format)))) {
+                mVariantWrites.incrementAndGet();
+            }
+            return bytes;
+        } finally {
+            if (scaled != data) {
+                scaled.recycle();
+            }
+        }
+    }
+
+    @Override
+    public @Nullable byte[] getVariantBytes(String url, int sizeClass) {
+        if (sizeClass == ArtInfo.SIZE_ORIGINAL) {
+            return getBytes(url);
+        }
+        final byte[] bytes = getBytes(ArtInfo.variantKey(url, sizeClass));
+        if (bytes != null) {
+            return bytes;
+        }
+        final ArtHeader header = getHeader(url);
+        final byte[] source = getBytes(url);
+        if (header == null || source == null) {
+            return source;
+        }
+        if (Math.max(header.width, header.height) <= sizeClass) {
+            //source is already small enough
+            return source;
+        }
+        //evicted, remake it from the source without decoding all of it
+        final Bitmap bitmap = mDecoder.decode(source, Bitmap.Config.ARGB_8888, sizeClass);
+        if (bitmap == null) {
+            return null;
+        }
+        try {
+            return putVariant(url, bitmap, sizeClass, header.crop);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    static Bitmap scaleToFit(Bitmap data, int size) {
+        final int max = Math.max(data.getWidth(), data.getHeight());
+        if (max <= size) {
+            return data;
+        }
+        final float scale = (float) size / max;
+        return Bitmap.createScaledBitmap(data, Math.max(1, Math.round(data.getWidth() * scale)),
+                Math.max(1, Math.round(data.getHeight() * scale)), true);
+    }
+
+    private boolean writeEntry(String url, byte[] bytes, ArtHeader header) {
         final DiskLruCache cache = getDiskCache();
         DiskLruCache.Editor editor = null;
         try {
             editor = cache.edit(CacheUtil.md5(url));
             if (editor != null) {
-                byte[] bytes = bitmapToBytes(data);
-                if (bytes != null) {
-                    OutputStream out = null;
-                    try {
-                        out = editor.newOutputStream(0);
-                        IOUtils.write(bytes, out);
-                    } finally {
-                        //dont return huge buffers to the pool
-                        if (bytes.length <= OUTPUT_BUFFER_SIZE) {
-                            mBytePool.returnBuf(bytes);
-                        }
-                        IOUtils.closeQuietly(out);
-                    }
-                    editor.commit();
-                } else {
-                    editor.abort();
+                OutputStream out = null;
+                try {
+                    out = editor.newOutputStream(VALUE_IMAGE);
+                    IOUtils.write(bytes, out);
+                } finally {
+                    IOUtils.closeQuietly(out);
+                }
+                try {
+                    out = editor.newOutputStream(VALUE_HEADER);
+                    header.writeTo(out);
+                } finally {
+                    IOUtils.closeQuietly(out);
                 }
+                editor.commit();
+                mBytesWritten.addAndGet(bytes.length);
+                return true;
             }
         } catch (IOException|IllegalStateException e) {
             try {
@@ -184,6 +385,53 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
                 cache.flush();
             } catch (IOException ignored) {}
         }
+        return false;
+    }
+
+    static boolean isServable(String mimeType) {
+        return "image/jpeg".equals(mimeType) || "image/png".equals(mimeType)
+                || "image/webp".equals(mimeType);
+    }
+
+    /*
+     * Jpeg has no alpha channel, transparent art is stored lossless instead
+     */
+    Bitmap.CompressFormat formatFor(Bitmap bitmap) {
+        if (mCompressFormat == Bitmap.CompressFormat.JPEG && bitmap.hasAlpha()) {
+            return Bitmap.CompressFormat.PNG;
+        }
+        return mCompressFormat;
+    }
+
+    /*
+     * BitmapFactory leaves outMimeType unset for some decoders, fall back to the magic numbers
+     */
+    static @Nullable String sniffMimeType(byte[] bytes) {
+        if (bytes.length >= 3 && (bytes[0] & 0xff) == 0xff && (bytes[1] & 0xff) == 0xd8
+                && (bytes[2] & 0xff) == 0xff) {
+            return "image/jpeg";
+        }
+        if (bytes.length >= 8 && (bytes[0] & 0xff) == 0x89 && bytes[1] == 'P'
+                && bytes[2] == 'N' && bytes[3] == 'G') {
+            return "image/png";
+        }
+        if (bytes.length >= 12 && bytes[0] == 'R' && bytes[1] == 'I' && bytes[2] == 'F'
+                && bytes[3] == 'F' && bytes[8] == 'W' && bytes[9] == 'E' && bytes[10] == 'B'
+                && bytes[11] == 'P') {
+            return "image/webp";
+        }
+        return null;
+    }
+
+    static String mimeTypeOf(Bitmap.CompressFormat format) {
+        switch (format) {
+            case JPEG:
+                return "image/jpeg";
+            case WEBP:
+                return "image/webp";
+            default:
+                return "image/png";
+        }
     }
 
     public boolean containsKey(String url) {
@@ -210,4 +458,13 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
         }
     }
 
+    @Override
+    public String toString() {
+        final long writes = mSourceWrites.get() + mEncodedWrites.get();
+        return String.format("BitmapDiskLruCache{format=%s, source=%d, encoded=%d, variants=%d, avgBytes=%d, avgWriteMs=%.2f}",
+                mCompressFormat, mSourceWrites.get(), mEncodedWrites.get(), mVariantWrites.get(),
+                writes > 0 ? mBytesWritten.get() / writes : 0,
+                writes > 0 ? mWriteNanos.get() / 1e6 / writes : 0d);
+    }
+
 }
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.artwork.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import timber.log.Timber;
+
+/**
+ * Replaces the old global decode lock. Lets several bitmaps decode at once as long as
+ * the pixels they will allocate fit in a memory budget. The size of every image is read
+ * from its header first so a huge image waits for room instead of a thread.
+ *
+ * Created by drew on 12/8/15.
+ */
+public class DecodeScheduler {
+
+    private static DecodeScheduler sDefault;
+
+    private static final int STREAM_BUFFER_SIZE = 1024 * 16;
+    //marks are cheap until used, art with big exif blocks still fits
+    static final int MAX_HEADER_SIZE = 1024 * 1024;
+
+    /**
+     * Process wide scheduler, one decode per core and an eighth of the heap
+     */
+    public static synchronized DecodeScheduler getDefault() {
+        if (sDefault == null) {
+            sDefault = new DecodeScheduler(Runtime.getRuntime().availableProcessors(),
+                    Runtime.getRuntime().maxMemory() / 8);
+        }
+        return sDefault;
+    }
+
+    private final int mMaxDecodes;
+    private final long mBudget;
+
+    private int mActive;
+    private long mInUse;
+    private int mPeakActive;
+    private long mWaits;
+
+    public DecodeScheduler(int maxDecodes, long budget) {
+        if (maxDecodes < 1 || budget < 1) {
+            throw new IllegalArgumentException("Need at least one decode and some budget");
+        }
+        mMaxDecodes = maxDecodes;
+        mBudget = budget;
+    }
+
+    /**
+     * Decodes the image in the bytes, blocking until there is room in the budget
+     *
+     * @param reqSize longest edge wanted, the image is subsampled down towards it, 0 for full size
+     * @return the bitmap or null if it can't be decoded or we ran out of memory
+     */
+    public @Nullable Bitmap decode(byte[] data, int offset, int length, Bitmap.Config config, int reqSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeBounds(data, offset, length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inSampleSize = sampleSizeFor(options.outWidth, options.outHeight, reqSize);
+        //anything over the budget still gets to go, but only by itself
+        final long cost = Math.min(estimateBytes(options.outWidth / options.inSampleSize,
+                options.outHeight / options.inSampleSize, config), mBudget);
+        try {
+            acquire(cost);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            options.inJustDecodeBounds = false;
+            options.inPreferredConfig = config;
+            return decodePixels(data, offset, length, options);
+        } catch (OutOfMemoryError e) {
+            Timber.w(e, "decode %dx%d", options.outWidth, options.outHeight);
+            return null;
+        } finally {
+            release(cost);
+        }
+    }
+
+    /**
+     * Decodes straight from the stream, only the header is buffered (under a mark) so
+     * the size can be read before waiting for room in the budget
+     *
+     * @param reqSize longest edge wanted, the image is subsampled down towards it, 0 for full size
+     * @return the bitmap or null if it can't be decoded or we ran out of memory
+     */
+    public @Nullable Bitmap decode(InputStream in, Bitmap.Config config, int reqSize) {
+        final BufferedInputStream stream = new BufferedInputStream(in, STREAM_BUFFER_SIZE);
+        stream.mark(MAX_HEADER_SIZE);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeBounds(stream, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        try {
+            stream.reset();
+        } catch (IOException e) {
+            Timber.w("decode header larger than %d bytes", MAX_HEADER_SIZE);
+            return null;
+        }
+        options.inSampleSize = sampleSizeFor(options.outWidth, options.outHeight, reqSize);
+        final long cost = Math.min(estimateBytes(options.outWidth / options.inSampleSize,
+                options.outHeight / options.inSampleSize, config), mBudget);
+        try {
+            acquire(cost);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            options.inJustDecodeBounds = false;
+            options.inPreferredConfig = config;
+            return decodePixels(stream, options);
+        } catch (OutOfMemoryError e) {
+            Timber.w(e, "decode %dx%d", options.outWidth, options.outHeight);
+            return null;
+        } finally {
+            release(cost);
+        }
+    }
+
+    public @Nullable Bitmap decode(byte[] data, int offset, int length, Bitmap.Config config) {
+        return decode(data, offset, length, config, 0);
+    }
+
+    public @Nullable Bitmap decode(byte[] data, Bitmap.Config config) {
+        return decode(data, 0, data.length, config, 0);
+    }
+
+    public @Nullable Bitmap decode(byte[] data, Bitmap.Config config, int reqSize) {
+        return decode(data, 0, data.length, config, reqSize);
+    }
+
+    /**
+     * @return largest power of two that keeps the longest edge at least reqSize
+     */
+    static int sampleSizeFor(int width, int height, int reqSize) {
+        int sample = 1;
+        if (reqSize > 0) {
+            final int longest = Math.max(width, height);
+            while (longest / (sample * 2) >= reqSize) {
+                sample *= 2;
+            }
+        }
+        return sample;
+    }
+
+    //overridden by the tests
+    void decodeBounds(byte[] data, int offset, int length, BitmapFactory.Options options) {
+        BitmapFactory.decodeByteArray(data, offset, length, options);
+    }
+
+    //overridden by the tests
+    Bitmap decodePixels(byte[] data, int offset, int length, BitmapFactory.Options options) {
+        return BitmapFactory.decodeByteArray(data, offset, length, options);
+    }
+
+    //overridden by the tests
+    void decodeBounds(InputStream in, BitmapFactory.Options options) {
+        BitmapFactory.decodeStream(in, null, options);
+    }
+
+    //overridden by the tests
+    Bitmap decodePixels(InputStream in, BitmapFactory.Options options) {
+        return BitmapFactory.decodeStream(in, null, options);
+    }
+
+    synchronized void acquire(long cost) throws InterruptedException {
+        boolean waited = false;
+        while (mActive >= mMaxDecodes || mInUse + cost > mBudget) {
+            waited = true;
+            wait();
+        }
+        if (waited) {
+            mWaits++;
+        }
+        mActive++;
+        mInUse += cost;
+        mPeakActive = Math.max(mPeakActive, mActive);
+    }
+
+    synchronized void release(long cost) {
+        mActive--;
+        mInUse -= cost;
+        notifyAll();
+    }
+
+    public synchronized int getPeakActive() {
+        return mPeakActive;
+    }
+
+    public synchronized long getWaits() {
+        return mWaits;
+    }
+
+    static long estimateBytes(int width, int height, Bitmap.Config config) {
+        final int bpp;
+        if (config == null || config == Bitmap.Config.ARGB_8888) {
+            bpp = 4;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            bpp = 1;
+        } else {
+            bpp = 2;
+        }
+        return (long) width * height * bpp;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("DecodeScheduler{max=%d, budget=%d, peak=%d, waits=%d}",
+                mMaxDecodes, mBudget, mPeakActive, mWaits);
+    }
+
+}
@@ -24,5 +24,5 @@ import org.opensilk.music.model.ArtInfo;
  */
 public interface ArtworkFetcher {
     boolean newRequest(ArtInfo artInfo, CompletionListener listener);
-    boolean cancelRequest(ArtInfo artInfo);
+    boolean cancelRequest(ArtInfo artInfo, CompletionListener listener);
 }
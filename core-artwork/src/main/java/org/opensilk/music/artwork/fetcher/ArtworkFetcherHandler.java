@@ -26,7 +26,6 @@ import org.opensilk.music.model.ArtInfo;
 
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
-import java.util.WeakHashMap;
 
 import javax.inject.Inject;
 
@@ -52,7 +51,8 @@ public class ArtworkFetcherHandler extends Handler {
     final WeakReference<ArtworkFetcherService> mService;
     final ArtworkFetcherManager mFetcherManager;
     final ArtworkPreferences mArtworkPrefs;
-    final WeakHashMap<String, Subscription> mActiveSubscriptions = new WeakHashMap<>();
+    //every requester of a key, the fetch itself is shared by the manager
+    final HashMap<String, HashMap<CompletionListener, Subscription>> mActiveSubscriptions = new HashMap<>();
 
     @Inject
     public ArtworkFetcherHandler(
@@ -71,16 +71,33 @@ public class ArtworkFetcherHandler extends Handler {
         switch (msg.what) {
             case MSG.NEW_TASK: {
                 final Task task = (Task) msg.obj;
+                final String key = task.artInfo.cacheKey();
+                final Subscription s = mFetcherManager.fetch(task.artInfo, task.listener);
+                if (s.isUnsubscribed()) {
+                    //already done
+                    stopService();
+                    break;
+                }
+                HashMap<CompletionListener, Subscription> subs = mActiveSubscriptions.get(key);
+                if (subs == null) {
+                    subs = new HashMap<>();
+                    mActiveSubscriptions.put(key, subs);
+                }
+                subs.put(task.listener, s);
                 task.listener.add(Subscriptions.create(new Action0() {
                     @Override
                     public void call() {
-                        Timber.d("Removing task %s", task.artInfo.cacheKey());
-                        mActiveSubscriptions.remove(task.artInfo.cacheKey());
-                        stopService();
+                        //can be called from any thread
+                        post(new Runnable() {
+                            @Override
+                            public void run() {
+                                Timber.d("Removing task %s", key);
+                                removeSubscription(key, task.listener, s);
+                                stopService();
+                            }
+                        });
                     }
                 }));
-                Subscription s = mFetcherManager.fetch(task.artInfo, task.listener);
-                mActiveSubscriptions.put(task.artInfo.cacheKey(), s);
                 break;
             } case MSG.CLEAR_CACHES: {
                 mFetcherManager.clearCaches();
@@ -91,19 +108,24 @@ public class ArtworkFetcherHandler extends Handler {
                 stopService();
                 break;
             }case MSG.ON_LOW_MEM: {
-                //copy map here since subscriptions remove themselves from map above
-                HashMap<String, Subscription> subs = new HashMap<>(mActiveSubscriptions);
-                for (Subscription s : subs.values()) {
-                    if (s != null) {
+                //removal is posted so we can iterate here
+                for (HashMap<CompletionListener, Subscription> subs : mActiveSubscriptions.values()) {
+                    for (Subscription s : subs.values()) {
                         s.unsubscribe();
                     }
                 }
                 mActiveSubscriptions.clear();
                 break;
             }case MSG.CANCEL_TASK: {
-                ArtInfo artInfo = (ArtInfo) msg.obj;
-                Subscription s = mActiveSubscriptions.remove(artInfo.cacheKey());
+                //cancels only this requester, the fetch goes on while others still want it
+                final Task task = (Task) msg.obj;
+                final String key = task.artInfo.cacheKey();
+                HashMap<CompletionListener, Subscription> subs = mActiveSubscriptions.get(key);
+                Subscription s = subs != null ? subs.remove(task.listener) : null;
                 if (s != null) {
+                    if (subs.isEmpty()) {
+                        mActiveSubscriptions.remove(key);
+                    }
                     s.unsubscribe();
                 }
                 stopService();
@@ -141,8 +163,8 @@ public class ArtworkFetcherHandler extends Handler {
         obtainMessage(MSG.NEW_TASK, new Task(artInfo, listener)).sendToTarget();
     }
 
-    void cancelTask(ArtInfo artInfo) {
-        obtainMessage(MSG.CANCEL_TASK, artInfo).sendToTarget();
+    void cancelTask(ArtInfo artInfo, CompletionListener listener) {
+        obtainMessage(MSG.CANCEL_TASK, new Task(artInfo, listener)).sendToTarget();
     }
 
     void onDestroy() {
@@ -150,6 +172,17 @@ public class ArtworkFetcherHandler extends Handler {
         mFetcherManager.onDestroy();
     }
 
+    private void removeSubscription(String key, CompletionListener listener, Subscription s) {
+        HashMap<CompletionListener, Subscription> subs = mActiveSubscriptions.get(key);
+        //the listener could have been canceled and sent again since
+        if (subs != null && subs.get(listener) == s) {
+            subs.remove(listener);
+            if (subs.isEmpty()) {
+                mActiveSubscriptions.remove(key);
+            }
+        }
+    }
+
     private void stopService() {
         if (mActiveSubscriptions.isEmpty()) {
             ArtworkFetcherService s = mService != null ? mService.get() : null;
@@ -20,7 +20,7 @@ package org.opensilk.music.artwork.fetcher;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.Rect;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
@@ -38,6 +38,7 @@ import org.opensilk.common.core.dagger2.ForApplication;
 import org.opensilk.common.core.util.ConnectionUtils;
 import org.opensilk.common.core.util.VersionUtils;
 import org.opensilk.music.artwork.cache.BitmapDiskCache;
+import org.opensilk.music.artwork.cache.DecodeScheduler;
 import org.opensilk.music.artwork.coverartarchive.CoverArtArchive;
 import org.opensilk.music.artwork.coverartarchive.Metadata;
 import org.opensilk.music.artwork.shared.ArtworkPreferences;
@@ -45,6 +46,8 @@ import org.opensilk.music.model.ArtInfo;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -58,6 +61,7 @@ import rx.Scheduler;
 import rx.Subscriber;
 import rx.Subscription;
 import rx.exceptions.OnErrorThrowable;
+import rx.functions.Action0;
 import rx.functions.Func1;
 import timber.log.Timber;
 
@@ -78,6 +82,11 @@ public class ArtworkFetcherManager {
     final Scheduler mObserveOn;
     final Scheduler mSubscribeOn;
 
+    //fetches in progress keyed on cacheKey(), later requests for the same art join them
+    final HashMap<String, Observable<Bitmap>> mInFlight = new HashMap<>();
+    final AtomicLong mFetchesStarted = new AtomicLong();
+    final AtomicLong mFetchesJoined = new AtomicLong();
+
     @Inject
     public ArtworkFetcherManager(
             @ForApplication Context mContext,
@@ -110,7 +119,7 @@ public class ArtworkFetcherManager {
                 return Observable.<Bitmap>error(new Exception("Invalid artInfo: " +
                         "must have artistName set")).subscribe(l);
             } else {
-                return fetchArtistImage(artInfo).observeOn(mObserveOn).subscribe(l);
+                return coalesce(artInfo.cacheKey(), fetchArtistImage(artInfo)).observeOn(mObserveOn).subscribe(l);
             }
         } else {
             if ((StringUtils.isEmpty(artInfo.artistName)
@@ -119,7 +128,7 @@ public class ArtworkFetcherManager {
                 return Observable.<Bitmap>error(new Exception("Invalid artInfo: must have artistName " +
                         "and albumName set or valid artworkUri")).subscribe(l);
             } else {
-                return fetchAlbumCover(artInfo).observeOn(mObserveOn).subscribe(l);
+                return coalesce(artInfo.cacheKey(), fetchAlbumCover(artInfo)).observeOn(mObserveOn).subscribe(l);
             }
         }
     }
@@ -132,12 +141,81 @@ public class ArtworkFetcherManager {
     }
 
     public void onDestroy() {
+        Timber.d("%s", this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ArtworkFetcherManager{started=%d, joined=%d}",
+                mFetchesStarted.get(), mFetchesJoined.get());
     }
 
     /*
      * End public methods
      */
 
+    /*
+     * Only the first requester of a key runs the fetch, everyone else attaches to it.
+     * The fetch is only unsubscribed when the last requester leaves. Listeners recycle
+     * what they are given so only the first gets the fetched bitmap, the rest read
+     * their own copy back from the L2 cache the fetch just wrote.
+     */
+    Observable<Bitmap> coalesce(final String key, Observable<Bitmap> fetch) {
+        synchronized (mInFlight) {
+            final Observable<Bitmap> pending = mInFlight.get(key);
+            if (pending != null) {
+                mFetchesJoined.incrementAndGet();
+                Timber.d("Joining in flight fetch for %s", key);
+                return pending.flatMap(new Func1<Bitmap, Observable<Bitmap>>() {
+                    @Override
+                    public Observable<Bitmap> call(Bitmap ignored) {
+                        return readFromL2(key);
+                    }
+                });
+            }
+            mFetchesStarted.incrementAndGet();
+            final Object[] self = new Object[1];
+            final Action0 done = new Action0() {
+                @Override
+                public void call() {
+                    synchronized (mInFlight) {
+                        //a newer fetch may have taken the key
+                        if (mInFlight.get(key) == self[0]) {
+                            mInFlight.remove(key);
+                        }
+                    }
+                }
+            };
+            //replay so anyone joining between the result and removal still sees it
+            final Observable<Bitmap> shared = fetch
+                    .doOnTerminate(done)
+                    .doOnUnsubscribe(done)
+                    .replay(1)
+                    .refCount();
+            self[0] = shared;
+            mInFlight.put(key, shared);
+            return shared;
+        }
+    }
+
+    private Observable<Bitmap> readFromL2(final String key) {
+        return Observable.create(new Observable.OnSubscribe<Bitmap>() {
+            @Override
+            public void call(Subscriber<? super Bitmap> subscriber) {
+                Bitmap bitmap = mL2Cache.getBitmap(key);
+                if (subscriber.isUnsubscribed()) {
+                    return;
+                }
+                if (bitmap != null) {
+                    subscriber.onNext(bitmap);
+                    subscriber.onCompleted();
+                } else {
+                    subscriber.onError(new Exception("Joined fetch for " + key + " left nothing in cache"));
+                }
+            }
+        }).subscribeOn(mSubscribeOn);
+    }
+
     private Observable<Boolean> baseObservable(final ArtInfo artInfo) {
         return Observable.create(new Observable.OnSubscribe<Boolean>() {
             @Override
@@ -395,49 +473,51 @@ public class ArtworkFetcherManager {
         }).subscribeOn(mSubscribeOn);
     }
 
-    private static final Object sDecodeLock = new Object();
     @DebugLog
-    private Bitmap decodeBitmap(InputStream is, ArtInfo artInfo) {
+    private Bitmap decodeBitmap(InputStream is, ArtInfo artInfo) throws IOException {
         if (is == null) return null;
         Bitmap bitmap = null;
-        synchronized (sDecodeLock) {
-            Bitmap tempBitmap2 = BitmapFactory.decodeStream(is);
-            if (tempBitmap2 != null) {
-                // Clip to squares so our circles dont become ovals
-                int w = tempBitmap2.getWidth();
-                int h = tempBitmap2.getHeight();
-                StringBuilder sb = new StringBuilder();
-                if (w > h) {
-                    sb.append("Center cropping: ");
-                    //center crop
-                    bitmap = Bitmap.createBitmap(tempBitmap2, w / 2 - h / 2, 0, h, h);
-                    if (bitmap != tempBitmap2) {
-                        tempBitmap2.recycle();
-                    }
-                } else if (h > w) {
-                    sb.append("Top cropping: ");
-                    // top crop
-                    bitmap = Bitmap.createBitmap(tempBitmap2, 0, 0, w, w);
-                    if (bitmap != tempBitmap2) {
-                        tempBitmap2.recycle();
-                    }
-                } else {
-                    sb.append("Not cropping: ");
-                    bitmap = tempBitmap2;
+        Rect crop = null;
+        //read it all so the scheduler can size it before decoding
+        byte[] bytes = IOUtils.toByteArray(is);
+        Bitmap tempBitmap2 = DecodeScheduler.getDefault().decode(bytes, Bitmap.Config.ARGB_8888);
+        if (tempBitmap2 != null) {
+            // Clip to squares so our circles dont become ovals
+            int w = tempBitmap2.getWidth();
+            int h = tempBitmap2.getHeight();
+            StringBuilder sb = new StringBuilder();
+            if (w > h) {
+                sb.append("Center cropping: ");
+                //center crop
+                crop = new Rect(w / 2 - h / 2, 0, w / 2 - h / 2 + h, h);
+                bitmap = Bitmap.createBitmap(tempBitmap2, crop.left, crop.top, h, h);
+                if (bitmap != tempBitmap2) {
+                    tempBitmap2.recycle();
                 }
-                Timber.v(sb.append(" from %dx%d to %dx%d for %s").toString(),
-                        w, h, bitmap.getWidth(), bitmap.getHeight(), artInfo.toString());
+            } else if (h > w) {
+                sb.append("Top cropping: ");
+                // top crop
+                crop = new Rect(0, 0, w, w);
+                bitmap = Bitmap.createBitmap(tempBitmap2, 0, 0, w, w);
+                if (bitmap != tempBitmap2) {
+                    tempBitmap2.recycle();
+                }
+            } else {
+                sb.append("Not cropping: ");
+                bitmap = tempBitmap2;
             }
+            Timber.v(sb.append(" from %dx%d to %dx%d for %s").toString(),
+                    w, h, bitmap.getWidth(), bitmap.getHeight(), artInfo.toString());
         }
         if (bitmap != null) {
-            writeToL2(artInfo.cacheKey(), bitmap);
+            writeToL2(artInfo.cacheKey(), bytes, bitmap, crop);
         }
         return bitmap;
     }
 
-    private void writeToL2(final String key, final Bitmap bitmap) {
+    private void writeToL2(final String key, final byte[] source, final Bitmap bitmap, final Rect crop) {
         Timber.v("writeToL2(%s)", key);
-        mL2Cache.putBitmap(key, bitmap);
+        mL2Cache.putSource(key, source, bitmap, crop);
     }
 
     //for testing
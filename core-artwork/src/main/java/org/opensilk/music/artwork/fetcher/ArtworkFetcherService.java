@@ -191,10 +191,10 @@ public class ArtworkFetcherService extends MortarService {
         }
 
         @Override
-        public boolean cancelRequest(ArtInfo artInfo) {
+        public boolean cancelRequest(ArtInfo artInfo, CompletionListener listener) {
             ArtworkFetcherService s = mService.get();
             if (s != null) {
-                s.mHandler.cancelTask(artInfo);
+                s.mHandler.cancelTask(artInfo, listener);
                 return true;
             }
             return false;
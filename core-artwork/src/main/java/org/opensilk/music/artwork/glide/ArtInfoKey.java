@@ -53,6 +53,6 @@ public class ArtInfoKey implements Key {
 
     @Override
     public void updateDiskCacheKey(MessageDigest messageDigest) {
-        messageDigest.update(artInfo.cacheKey().getBytes(CHARSET));
+        messageDigest.update(artInfo.variantKey().getBytes(CHARSET));
     }
 }
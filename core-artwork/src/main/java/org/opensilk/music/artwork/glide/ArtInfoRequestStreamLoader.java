@@ -24,6 +24,7 @@ import com.bumptech.glide.load.Options;
 import com.bumptech.glide.load.model.ModelLoader;
 
 import org.opensilk.common.core.util.VersionUtils;
+import org.opensilk.music.model.ArtInfo;
 
 import java.io.InputStream;
 
@@ -41,9 +42,12 @@ public class ArtInfoRequestStreamLoader implements ModelLoader<ArtInfoRequest, I
 
     @Nullable @Override
     public LoadData<InputStream> buildLoadData(ArtInfoRequest artInfoRequest, int width, int height, Options options) {
-        return new LoadData<>(new ArtInfoKey(artInfoRequest.artInfo),
-                hasKitkat ? new ArtInfoRequestStreamFetcherK(context, artInfoRequest)
-                        : new ArtInfoRequestStreamFetcher(context, artInfoRequest));
+        //ask for the smallest variant that still fills the target
+        final ArtInfoRequest request = new ArtInfoRequest(artInfoRequest.authority,
+                artInfoRequest.artInfo.withSize(ArtInfo.sizeClassFor(Math.max(width, height))));
+        return new LoadData<>(new ArtInfoKey(request.artInfo),
+                hasKitkat ? new ArtInfoRequestStreamFetcherK(context, request)
+                        : new ArtInfoRequestStreamFetcher(context, request));
     }
 
     @Override
@@ -17,6 +17,7 @@
 package org.opensilk.music.artwork.provider;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 
 import org.opensilk.common.core.dagger2.ForApplication;
 import org.opensilk.common.core.dagger2.SystemServicesModule;
@@ -39,6 +40,8 @@ import rx.schedulers.Schedulers;
 
 import static org.opensilk.music.artwork.Constants.DISK_CACHE_DIRECTORY;
 import static org.opensilk.music.artwork.shared.ArtworkPreferences.IMAGE_DISK_CACHE_DEFAULT;
+import static org.opensilk.music.artwork.shared.ArtworkPreferences.IMAGE_DISK_CACHE_FORMAT;
+import static org.opensilk.music.artwork.shared.ArtworkPreferences.IMAGE_DISK_CACHE_FORMAT_DEFAULT;
 import static org.opensilk.music.artwork.shared.ArtworkPreferences.IMAGE_DISK_CACHE_SIZE;
 
 /**
@@ -63,7 +66,13 @@ public class ArtworkModule {
             preferences.putString(IMAGE_DISK_CACHE_SIZE, IMAGE_DISK_CACHE_DEFAULT);
             sizeMB = Integer.decode(IMAGE_DISK_CACHE_DEFAULT);
         }
-        return BitmapDiskLruCache.open(CacheUtil.getCacheDir(context, DISK_CACHE_DIRECTORY), sizeMB * 1024 * 1024, byteArrayPool);
+        Bitmap.CompressFormat format;
+        try {
+            format = Bitmap.CompressFormat.valueOf(preferences.getString(IMAGE_DISK_CACHE_FORMAT, IMAGE_DISK_CACHE_FORMAT_DEFAULT));
+        } catch (IllegalArgumentException e) {
+            format = Bitmap.CompressFormat.valueOf(IMAGE_DISK_CACHE_FORMAT_DEFAULT);
+        }
+        return BitmapDiskLruCache.open(CacheUtil.getCacheDir(context, DISK_CACHE_DIRECTORY), sizeMB * 1024 * 1024, byteArrayPool, format);
     }
 
     @Provides @Singleton @Named("artworkscheduler")
@@ -39,6 +39,7 @@ import org.opensilk.music.artwork.fetcher.ArtworkFetcherService;
 import org.opensilk.music.artwork.fetcher.CompletionListener;
 import org.opensilk.music.model.ArtInfo;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -86,6 +87,7 @@ public class ArtworkProvider extends ContentProvider {
     @DebugLog
     public void onTrimMemory(int level) {
         if (level >= TRIM_MEMORY_BACKGROUND) {
+            Timber.d("%s", mL2Cache);
             mL2Cache.onTrimMemory();
         }
     }
@@ -163,10 +165,16 @@ public class ArtworkProvider extends ContentProvider {
     }
 
     /**
-     * Pulls bitmap from diskcache
+     * Pulls bitmap from diskcache, handing out the cache file itself when we can
      */
-    private @Nullable ParcelFileDescriptor createPipe(final ArtInfo artInfo, final @Nullable Cancellation cancellation) {
-        final byte[] bytes = mL2Cache.getBytes(artInfo.cacheKey());
+    //Exposed for testing
+    /*package*/ @Nullable ParcelFileDescriptor createPipe(final ArtInfo artInfo, final @Nullable Cancellation cancellation) {
+        final ParcelFileDescriptor cached = openCached(
+                mL2Cache.getVariantFile(artInfo.cacheKey(), artInfo.sizeClass));
+        if (cached != null) {
+            return cached;
+        }
+        final byte[] bytes = mL2Cache.getVariantBytes(artInfo.cacheKey(), artInfo.sizeClass);
         if (bytes == null) {
             return null;
         }
@@ -174,6 +182,26 @@ public class ArtworkProvider extends ContentProvider {
             Timber.i("createPipe(%s) CANCELED", artInfo);
             return null;
         }
+        return pipeBytes(artInfo, bytes);
+    }
+
+    /**
+     * @return the file opened read only, or null if there is none or it was evicted since we looked
+     */
+    static @Nullable ParcelFileDescriptor openCached(@Nullable File file) {
+        if (file != null) {
+            try {
+                //no copies and no worker, the fd stays valid even if the entry is evicted
+                return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+            } catch (FileNotFoundException e) {
+                Timber.d("openCached(%s) evicted before open", file.getName());
+            }
+        }
+        return null;
+    }
+
+    //overridden by the tests
+    @Nullable ParcelFileDescriptor pipeBytes(final ArtInfo artInfo, final byte[] bytes) {
         try {
             final ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
             final OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]);
@@ -216,21 +244,21 @@ public class ArtworkProvider extends ContentProvider {
                 public void call() {
                     OptionalBitmap bitmap = null;
                     ArtworkFetcherService.Connection binder = null;
+                    final BlockingQueue<OptionalBitmap> queue = new LinkedBlockingQueue<>(1);
+                    final CompletionListener listener =
+                            new CompletionListener() {
+                                @Override public void onError(Throwable e) {
+                                    Timber.w("onError(%s) %s", artInfo, e.getMessage());
+                                    queue.offer(new OptionalBitmap(null));
+                                }
+                                @Override public void onNext(Bitmap o) {
+                                    queue.offer(new OptionalBitmap(o));
+                                }
+                            };
                     try {
                         //make a new request and wait for it to come in.
                         binder = ArtworkFetcherService.bindService(getContext());
-                        final BlockingQueue<OptionalBitmap> queue = new LinkedBlockingQueue<>(1);
-                        final CompletionListener listener =
-                                new CompletionListener() {
-                                    @Override public void onError(Throwable e) {
-                                        Timber.w("onError(%s) %s", artInfo, e.getMessage());
-                                        queue.offer(new OptionalBitmap(null));
-                                    }
-                                    @Override public void onNext(Bitmap o) {
-                                        queue.offer(new OptionalBitmap(o));
-                                    }
-                                };
-                        if (!binder.getService().newRequest(artInfo, listener)) {
+                        if (!binder.getService().newRequest(artInfo.withSize(ArtInfo.SIZE_ORIGINAL), listener)) {
                             return;
                         }
                         if (cancellation != null) {
@@ -239,21 +267,21 @@ public class ArtworkProvider extends ContentProvider {
                                 @Override
                                 public void call() {
                                     Timber.d("createPipe2(%s) CANCELED INFLIGHT", artInfo);
-                                    finalBinder.getService().cancelRequest(artInfo);
+                                    finalBinder.getService().cancelRequest(artInfo.withSize(ArtInfo.SIZE_ORIGINAL), listener);
                                     queue.offer(new OptionalBitmap(null));
                                 }
                             });
                         }
                         bitmap = queue.take();
                         if (bitmap.hasBitmap()) {
-                            byte[] bytes = mL2Cache.bitmapToBytes(bitmap.getBitmap());
+                            byte[] bytes = getFetchedBytes(artInfo, bitmap.getBitmap());
                             IOUtils.write(bytes, out);
                             out.flush();
                         }
                     } catch (InterruptedException|IOException e) {
                         Timber.w("createPipe2(%s) %s", artInfo, e.getMessage());
                         if (binder != null) {
-                            binder.getService().cancelRequest(artInfo);
+                            binder.getService().cancelRequest(artInfo.withSize(ArtInfo.SIZE_ORIGINAL), listener);
                         }
                     } finally {
                         if (bitmap != null) bitmap.recycle();
@@ -270,6 +298,17 @@ public class ArtworkProvider extends ContentProvider {
         }
     }
 
+    /*
+     * The fetcher already stored what it got and its variants, serve that instead of encoding again
+     */
+    private byte[] getFetchedBytes(ArtInfo artInfo, Bitmap bitmap) {
+        byte[] bytes = mL2Cache.getVariantBytes(artInfo.cacheKey(), artInfo.sizeClass);
+        if (bytes == null) {
+            bytes = mL2Cache.bitmapToBytes(bitmap);
+        }
+        return bytes;
+    }
+
     /**
      * This version of createPipe2 blocks on the binder thread, this is to take advantage of
      * cancellations propagated to us from {@link org.opensilk.music.artwork.glide.ArtInfoRequestStreamFetcherK},
@@ -280,6 +319,17 @@ public class ArtworkProvider extends ContentProvider {
     private @Nullable ParcelFileDescriptor createPipe2(final ArtInfo artInfo, final @Nullable Cancellation cancellation) {
         OptionalBitmap bitmap = null;
         ArtworkFetcherService.Connection binder = null;
+        final BlockingQueue<OptionalBitmap> queue = new LinkedBlockingQueue<>(1);
+        final CompletionListener listener =
+                new CompletionListener() {
+                    @Override public void onError(Throwable e) {
+                        Timber.w("onError(%s) %s", artInfo, e.getMessage());
+                        queue.offer(new OptionalBitmap(null));
+                    }
+                    @Override public void onNext(Bitmap o) {
+                        queue.offer(new OptionalBitmap(o));
+                    }
+                };
         try {
             //make a new request and wait for it to come in.
             binder = ArtworkFetcherService.bindService(getContext());
@@ -287,18 +337,7 @@ public class ArtworkProvider extends ContentProvider {
                 Timber.d("createPipe2(%s) canceled");
                 return null;
             }
-            final BlockingQueue<OptionalBitmap> queue = new LinkedBlockingQueue<>(1);
-            final CompletionListener listener =
-                    new CompletionListener() {
-                        @Override public void onError(Throwable e) {
-                            Timber.w("onError(%s) %s", artInfo, e.getMessage());
-                            queue.offer(new OptionalBitmap(null));
-                        }
-                        @Override public void onNext(Bitmap o) {
-                            queue.offer(new OptionalBitmap(o));
-                        }
-                    };
-            if (!binder.getService().newRequest(artInfo, listener)) {
+            if (!binder.getService().newRequest(artInfo.withSize(ArtInfo.SIZE_ORIGINAL), listener)) {
                 return null;
             }
             if (cancellation != null) {
@@ -307,7 +346,7 @@ public class ArtworkProvider extends ContentProvider {
                     @Override
                     public void call() {
                         Timber.d("Canceling %s", artInfo);
-                        finalBinder.getService().cancelRequest(artInfo);
+                        finalBinder.getService().cancelRequest(artInfo.withSize(ArtInfo.SIZE_ORIGINAL), listener);
                         queue.offer(new OptionalBitmap(null));
                     }
                 });
@@ -317,7 +356,7 @@ public class ArtworkProvider extends ContentProvider {
                 final ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
                 final OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]);
                 final ParcelFileDescriptor in = pipe[0];
-                final byte[] bytes = mL2Cache.bitmapToBytes(bitmap.getBitmap());
+                final byte[] bytes = getFetchedBytes(artInfo, bitmap.getBitmap());
                 final Scheduler.Worker worker = mScheduler.createWorker();
                 worker.schedule(new Action0() {
                     @Override
@@ -338,7 +377,7 @@ public class ArtworkProvider extends ContentProvider {
         } catch (InterruptedException|IOException e) {
             Timber.w("createPipe2(%s) %s", artInfo, e.getMessage());
             if (binder != null) {
-                binder.getService().cancelRequest(artInfo);
+                binder.getService().cancelRequest(artInfo.withSize(ArtInfo.SIZE_ORIGINAL), listener);
             }
         } finally {
             if (bitmap != null) bitmap.recycle();
@@ -365,7 +404,7 @@ public class ArtworkProvider extends ContentProvider {
     }
 
     /** Wrapper for CancellationSignal backwards compat*/
-    private interface Cancellation {
+    interface Cancellation {
         boolean isCanceled();
         void setCancelAction(Action0 action0);
     }
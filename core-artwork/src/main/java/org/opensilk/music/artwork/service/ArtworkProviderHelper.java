@@ -19,7 +19,6 @@ package org.opensilk.music.artwork.service;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.os.CancellationSignal;
@@ -30,9 +29,12 @@ import android.support.v4.content.ContextCompat;
 
 import org.opensilk.common.core.dagger2.ForApplication;
 import org.opensilk.common.core.util.VersionUtils;
+import org.opensilk.music.artwork.ArtworkUris;
 import org.opensilk.music.artwork.R;
 import org.opensilk.music.artwork.cache.BitmapLruCache;
+import org.opensilk.music.artwork.cache.DecodeScheduler;
 
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
@@ -55,8 +57,6 @@ import timber.log.Timber;
  */
 @Singleton
 public class ArtworkProviderHelper {
-    private static final Object sDecodeLock = new Object();
-
     private final Context mContext;
     private final BitmapLruCache mL1Cache;
 
@@ -84,15 +84,9 @@ public class ArtworkProviderHelper {
                             pfd = getParcelFileDescriptior(uri);
                         }
                         if (pfd != null) {
-                            synchronized (sDecodeLock) {
-                                try {
-                                    BitmapFactory.Options options = new BitmapFactory.Options();
-                                    options.inPreferredConfig = Bitmap.Config.RGB_565;
-                                    bitmap = BitmapFactory.decodeFileDescriptor(pfd.getFileDescriptor(), null, options);
-                                } catch (OutOfMemoryError e) {
-                                    bitmap = null;
-                                }
-                            }
+                            //decode from the descriptor, only the header is buffered
+                            bitmap = DecodeScheduler.getDefault().decode(
+                                    new FileInputStream(pfd.getFileDescriptor()), Bitmap.Config.RGB_565, 0);
                             if (bitmap != null) {
                                 mL1Cache.putBitmap(cacheKey, bitmap);
                             }
@@ -145,6 +139,17 @@ public class ArtworkProviderHelper {
         }
     }
 
+    /**
+     * @return the artinfo uri asking for the size class, other uris are returned as is
+     */
+    public static @Nullable Uri withSize(@Nullable Uri uri, int sizeClass) {
+        if (uri == null || !ArtworkUris.artInfo.equals(uri.getLastPathSegment())
+                || uri.getQueryParameter("size") != null) {
+            return uri;
+        }
+        return uri.buildUpon().appendQueryParameter("size", String.valueOf(sizeClass)).build();
+    }
+
     @DebugLog
     public void evictL1() {
         mL1Cache.evictAll();
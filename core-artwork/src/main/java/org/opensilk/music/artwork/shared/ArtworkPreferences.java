@@ -43,8 +43,11 @@ public class ArtworkPreferences extends PreferencesWrapper {
     public static final String DOWNLOAD_MISSING_ARTIST_IMAGES = "download_missing_artist_images";
     public static final String IMAGE_DISK_CACHE_SIZE = "image_cache_size";
     public static final String WANT_LOW_RESOLUTION_ART = "want_low_resolution";
+    //Bitmap.CompressFormat name for art that can't be stored as downloaded
+    public static final String IMAGE_DISK_CACHE_FORMAT = "image_cache_format";
 
     public static final String IMAGE_DISK_CACHE_DEFAULT = "100";
+    public static final String IMAGE_DISK_CACHE_FORMAT_DEFAULT = "JPEG";
 
     final Context appcontext;
     private final Object sPrefLock = new Object();
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.artwork.cache;
+
+import android.graphics.Rect;
+import android.os.Build;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.artwork.BuildConfig;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 12/8/15.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class,
+        sdk = Build.VERSION_CODES.LOLLIPOP
+)
+public class ArtHeaderTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        ArtHeader header = new ArtHeader(300, 200, new Rect(10, 20, 610, 420), "image/webp");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.writeTo(out);
+        ArtHeader read = ArtHeader.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(read).isNotNull();
+        assertThat(read.width).isEqualTo(300);
+        assertThat(read.height).isEqualTo(200);
+        assertThat(read.crop).isEqualTo(new Rect(10, 20, 610, 420));
+        assertThat(read.mimeType).isEqualTo("image/webp");
+    }
+
+    @Test
+    public void testOtherVersionIsIgnored() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ArtHeader(1, 1, new Rect(0, 0, 1, 1), "image/png").writeTo(out);
+        byte[] bytes = out.toByteArray();
+        //version is the leading int
+        bytes[3] = (byte) (ArtHeader.VERSION + 1);
+        assertThat(ArtHeader.readFrom(new ByteArrayInputStream(bytes))).isNull();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.artwork.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.Build;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.opensilk.music.artwork.BuildConfig;
+import org.opensilk.music.model.ArtInfo;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 12/8/15.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class,
+        sdk = Build.VERSION_CODES.LOLLIPOP
+)
+public class BitmapDiskLruCacheTest {
+
+    static final String URL = "http://example.com/cover.jpg";
+
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    BitmapDiskLruCache mCache;
+
+    @Before
+    public void setup() throws Exception {
+        mCache = BitmapDiskLruCache.open(folder.newFolder("art"), 10 * 1024 * 1024,
+                new ByteArrayPool(1024 * 1024));
+        //between grid and full, so only the two smaller classes get variants
+        mCache.putBitmap(URL, Bitmap.createBitmap(300, 300, Bitmap.Config.ARGB_8888));
+    }
+
+    @After
+    public void teardown() {
+        mCache.close();
+    }
+
+    @Test
+    public void testPutStoresSmallerVariants() {
+        assertThat(mCache.containsKey(URL)).isTrue();
+        assertThat(mCache.containsKey(ArtInfo.variantKey(URL, ArtInfo.SIZE_THUMB))).isTrue();
+        assertThat(mCache.containsKey(ArtInfo.variantKey(URL, ArtInfo.SIZE_GRID))).isTrue();
+        assertThat(mCache.containsKey(ArtInfo.variantKey(URL, ArtInfo.SIZE_FULL))).isFalse();
+    }
+
+    @Test
+    public void testVariantBytesReadsStoredVariant() {
+        byte[] expected = mCache.getBytes(ArtInfo.variantKey(URL, ArtInfo.SIZE_THUMB));
+        assertThat(expected).isNotNull();
+        assertThat(mCache.getVariantBytes(URL, ArtInfo.SIZE_THUMB)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testVariantBytesUsesSourceWhenSmallEnough() {
+        byte[] source = mCache.getBytes(URL);
+        assertThat(source).isNotNull();
+        assertThat(mCache.getVariantBytes(URL, ArtInfo.SIZE_FULL)).isEqualTo(source);
+        assertThat(mCache.getVariantBytes(URL, ArtInfo.SIZE_ORIGINAL)).isEqualTo(source);
+        //nothing new got written for it
+        assertThat(mCache.containsKey(ArtInfo.variantKey(URL, ArtInfo.SIZE_FULL))).isFalse();
+    }
+
+    @Test
+    public void testEvictedVariantIsRemadeFromSource() {
+        final String key = ArtInfo.variantKey(URL, ArtInfo.SIZE_GRID);
+        File file = mCache.getFile(key);
+        assertThat(file).isNotNull();
+        assertThat(file.delete()).isTrue();
+        assertThat(mCache.containsKey(key)).isFalse();
+        assertThat(mCache.getVariantBytes(URL, ArtInfo.SIZE_GRID)).isNotNull();
+        assertThat(mCache.containsKey(key)).isTrue();
+    }
+
+    @Test
+    public void testMissingEntryHasNoVariants() {
+        assertThat(mCache.getVariantBytes("http://example.com/nothing.jpg", ArtInfo.SIZE_THUMB)).isNull();
+        assertThat(mCache.getVariantFile("http://example.com/nothing.jpg", ArtInfo.SIZE_THUMB)).isNull();
+    }
+
+    @Test
+    public void testPutSourceStoresOriginalBytes() {
+        final String url = "http://example.com/source.jpg";
+        //jpeg magic followed by whatever, the bytes must come back untouched
+        byte[] source = new byte[] {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0, 1, 2, 3, 4, 5};
+        mCache.putSource(url, source, Bitmap.createBitmap(100, 100, Bitmap.Config.RGB_565), null);
+        assertThat(mCache.getBytes(url)).isEqualTo(source);
+        ArtHeader header = mCache.getHeader(url);
+        assertThat(header).isNotNull();
+        assertThat(header.mimeType).isEqualTo("image/jpeg");
+        assertThat(header.crop).isEqualTo(new Rect(0, 0, header.width, header.height));
+    }
+
+    @Test
+    public void testAlphaIsNotStoredAsJpeg() {
+        final String url = "http://example.com/transparent.png";
+        Bitmap bitmap = Bitmap.createBitmap(300, 300, Bitmap.Config.ARGB_8888);
+        bitmap.setHasAlpha(true);
+        mCache.putBitmap(url, bitmap);
+        assertThat(mCache.getHeader(url).mimeType).isEqualTo("image/png");
+        assertThat(mCache.getHeader(ArtInfo.variantKey(url, ArtInfo.SIZE_THUMB)).mimeType)
+                .isEqualTo("image/png");
+
+        final String opaqueUrl = "http://example.com/opaque.jpg";
+        Bitmap opaque = Bitmap.createBitmap(300, 300, Bitmap.Config.RGB_565);
+        opaque.setHasAlpha(false);
+        mCache.putBitmap(opaqueUrl, opaque);
+        assertThat(mCache.getHeader(opaqueUrl).mimeType).isEqualTo("image/jpeg");
+    }
+
+    @Test
+    public void testSniffMimeType() {
+        assertThat(BitmapDiskLruCache.sniffMimeType(new byte[] {(byte) 0xff, (byte) 0xd8, (byte) 0xff}))
+                .isEqualTo("image/jpeg");
+        assertThat(BitmapDiskLruCache.sniffMimeType(new byte[] {(byte) 0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a}))
+                .isEqualTo("image/png");
+        assertThat(BitmapDiskLruCache.sniffMimeType(new byte[] {1, 2, 3})).isNull();
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.artwork.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.artwork.BuildConfig;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fills a grid of covers the way a fling does, lots of io threads all wanting
+ * a decode at once. Decoding is simulated since robolectric doesn't decode, one
+ * permit is what the old global lock gave us. Timings are only printed, remove the
+ * @Ignore to run it by hand, the scheduling rules are covered by {@link DecodeSchedulerTest}.
+ *
+ * Created by drew on 12/8/15.
+ */
+@Ignore("benchmark, run by hand")
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class,
+        sdk = Build.VERSION_CODES.LOLLIPOP
+)
+public class DecodeSchedulerBenchmark {
+
+    static final int GRID = 2000;
+    static final int THREADS = 8;
+    static final int COVER = 500;
+    static final long COVER_BYTES = DecodeScheduler.estimateBytes(COVER, COVER, Bitmap.Config.RGB_565);
+
+    @Test
+    public void benchGridFill() throws Exception {
+        long locked = fillGrid(new FakeDecoder(1, COVER_BYTES * 64, COVER));
+        long scheduled = fillGrid(new FakeDecoder(4, COVER_BYTES * 64, COVER));
+        System.out.printf("DecodeScheduler grid of %d: lock=%.2fms scheduler=%.2fms%n",
+                GRID, locked / 1e6, scheduled / 1e6);
+    }
+
+    long fillGrid(final DecodeScheduler decoder) throws Exception {
+        final int size = GRID;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final byte[] data = new byte[16];
+        List<Callable<Bitmap>> tasks = new ArrayList<>(size);
+        for (int ii=0; ii<size; ii++) {
+            tasks.add(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() throws Exception {
+                    return decoder.decode(data, Bitmap.Config.RGB_565);
+                }
+            });
+        }
+        long start = System.nanoTime();
+        executor.invokeAll(tasks);
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        return elapsed;
+    }
+
+    static class FakeDecoder extends DecodeScheduler {
+        final int size;
+
+        FakeDecoder(int maxDecodes, long budget, int size) {
+            super(maxDecodes, budget);
+            this.size = size;
+        }
+
+        @Override
+        void decodeBounds(byte[] data, int offset, int length, BitmapFactory.Options options) {
+            options.outWidth = size;
+            options.outHeight = size;
+        }
+
+        @Override
+        Bitmap decodePixels(byte[] data, int offset, int length, BitmapFactory.Options options) {
+            try {
+                //stand in for the real work
+                Thread.sleep(1);
+            } catch (InterruptedException ignored) {
+            }
+            return Bitmap.createBitmap(1, 1, Bitmap.Config.RGB_565);
+        }
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.artwork.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.artwork.BuildConfig;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Decodes park inside a gate until the test lets them go, so who got in and who is
+ * still waiting on the budget is known exactly, no clocks involved.
+ *
+ * Created by drew on 12/8/15.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class,
+        sdk = Build.VERSION_CODES.LOLLIPOP
+)
+public class DecodeSchedulerTest {
+
+    static final int COVER = 500;
+    static final long COVER_BYTES = DecodeScheduler.estimateBytes(COVER, COVER, Bitmap.Config.RGB_565);
+
+    @Test
+    public void testBudgetLimitsParallelDecodes() throws Exception {
+        GatedDecoder decoder = new GatedDecoder(8, COVER_BYTES * 2, COVER);
+        List<Thread> threads = startDecodes(decoder, 3);
+        awaitParked(decoder, threads, 2);
+        assertThat(decoder.entered.get()).isEqualTo(2);
+        decoder.gate.countDown();
+        joinAll(threads);
+        assertThat(decoder.entered.get()).isEqualTo(3);
+        assertThat(decoder.getPeakActive()).isEqualTo(2);
+        assertThat(decoder.getWaits()).isEqualTo(1);
+    }
+
+    @Test
+    public void testOversizedDecodesAlone() throws Exception {
+        //four times the budget, still decodes but nothing else gets in beside it
+        GatedDecoder decoder = new GatedDecoder(8, COVER_BYTES, COVER * 2);
+        List<Thread> threads = startDecodes(decoder, 2);
+        awaitParked(decoder, threads, 1);
+        assertThat(decoder.entered.get()).isEqualTo(1);
+        decoder.gate.countDown();
+        joinAll(threads);
+        assertThat(decoder.entered.get()).isEqualTo(2);
+        assertThat(decoder.getPeakActive()).isEqualTo(1);
+    }
+
+    @Test
+    public void testUnreadableImageSkipsTheBudget() throws Exception {
+        GatedDecoder decoder = new GatedDecoder(1, COVER_BYTES, 0);
+        decoder.gate.countDown();
+        assertThat(decoder.decode(new byte[16], Bitmap.Config.RGB_565)).isNull();
+        assertThat(decoder.entered.get()).isEqualTo(0);
+        assertThat(decoder.getPeakActive()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSampleSizeKeepsLongestEdgeAtLeastRequested() {
+        assertThat(DecodeScheduler.sampleSizeFor(1000, 1000, 0)).isEqualTo(1);
+        assertThat(DecodeScheduler.sampleSizeFor(1000, 1000, -1)).isEqualTo(1);
+        assertThat(DecodeScheduler.sampleSizeFor(1000, 1000, 1000)).isEqualTo(1);
+        assertThat(DecodeScheduler.sampleSizeFor(1000, 1000, 2000)).isEqualTo(1);
+        assertThat(DecodeScheduler.sampleSizeFor(1000, 1000, 500)).isEqualTo(2);
+        assertThat(DecodeScheduler.sampleSizeFor(1000, 1000, 501)).isEqualTo(1);
+        assertThat(DecodeScheduler.sampleSizeFor(1000, 1000, 96)).isEqualTo(8);
+        //longest edge decides, not the shortest
+        assertThat(DecodeScheduler.sampleSizeFor(2048, 512, 512)).isEqualTo(4);
+        assertThat(DecodeScheduler.sampleSizeFor(512, 2048, 512)).isEqualTo(4);
+    }
+
+    static List<Thread> startDecodes(final DecodeScheduler decoder, int count) {
+        final byte[] data = new byte[16];
+        List<Thread> threads = new ArrayList<>(count);
+        for (int ii=0; ii<count; ii++) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    decoder.decode(data, Bitmap.Config.RGB_565);
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        return threads;
+    }
+
+    /**
+     * Waits until numInside decodes are held at the gate and everyone else is
+     * blocked in acquire, the only other place a decode can wait.
+     */
+    static void awaitParked(GatedDecoder decoder, List<Thread> threads, int numInside) throws Exception {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (decoder.entered.get() < numInside || !allWaiting(threads)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("decodes never settled " + decoder);
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testStreamDecodeRewindsAfterHeader() throws Exception {
+        final byte[] data = new byte[4096];
+        for (int ii=0; ii<data.length; ii++) {
+            data[ii] = (byte) ii;
+        }
+        final AtomicInteger firstByte = new AtomicInteger(-1);
+        DecodeScheduler decoder = new DecodeScheduler(1, COVER_BYTES) {
+            @Override
+            void decodeBounds(InputStream in, BitmapFactory.Options options) {
+                try {
+                    //header parsing eats into the stream
+                    in.skip(1000);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                options.outWidth = COVER * 2;
+                options.outHeight = COVER * 2;
+            }
+
+            @Override
+            Bitmap decodePixels(InputStream in, BitmapFactory.Options options) {
+                try {
+                    firstByte.set(in.read());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return Bitmap.createBitmap(options.outWidth / options.inSampleSize,
+                        options.outHeight / options.inSampleSize, Bitmap.Config.RGB_565);
+            }
+        };
+        Bitmap bitmap = decoder.decode(new ByteArrayInputStream(data), Bitmap.Config.RGB_565, COVER);
+        assertThat(firstByte.get()).isEqualTo(0);
+        assertThat(bitmap).isNotNull();
+        assertThat(bitmap.getWidth()).isEqualTo(COVER);
+    }
+
+    static boolean allWaiting(List<Thread> threads) {
+        for (Thread t : threads) {
+            if (t.getState() != Thread.State.WAITING) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void joinAll(List<Thread> threads) throws Exception {
+        for (Thread t : threads) {
+            t.join(10000);
+            assertThat(t.isAlive()).isFalse();
+        }
+    }
+
+    static class GatedDecoder extends DecodeScheduler {
+        final int size;
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicInteger entered = new AtomicInteger();
+
+        GatedDecoder(int maxDecodes, long budget, int size) {
+            super(maxDecodes, budget);
+            this.size = size;
+        }
+
+        @Override
+        void decodeBounds(byte[] data, int offset, int length, BitmapFactory.Options options) {
+            options.outWidth = size;
+            options.outHeight = size;
+        }
+
+        @Override
+        Bitmap decodePixels(byte[] data, int offset, int length, BitmapFactory.Options options) {
+            entered.incrementAndGet();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Bitmap.createBitmap(1, 1, Bitmap.Config.RGB_565);
+        }
+    }
+
+}
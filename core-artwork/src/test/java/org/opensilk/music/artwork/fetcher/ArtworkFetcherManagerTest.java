@@ -54,13 +54,21 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Named;
 
 import de.umass.lastfm.LastFM;
 import okio.Buffer;
+import rx.Observable;
 import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.observers.TestSubscriber;
 import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -579,4 +587,67 @@ public class ArtworkFetcherManagerTest {
         verifyZeroInteractions(mContext);
     }
 
+    @Test
+    public void testConcurrentFetchesAreCoalesced() {
+        final String key = ArtInfo.forAlbum("alvvays", "alvvays", null).cacheKey();
+        final AtomicInteger upstreamSubscribes = new AtomicInteger();
+        final AtomicBoolean upstreamUnsubscribed = new AtomicBoolean();
+        final PublishSubject<Bitmap> network = PublishSubject.create();
+        Observable<Bitmap> fetch = network
+                .doOnSubscribe(new Action0() {
+                    @Override public void call() {
+                        upstreamSubscribes.incrementAndGet();
+                    }
+                })
+                .doOnUnsubscribe(new Action0() {
+                    @Override public void call() {
+                        upstreamUnsubscribed.set(true);
+                    }
+                });
+        Bitmap fetched = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap cached = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        when(mL2Cache.getBitmap(key)).thenReturn(cached);
+
+        TestSubscriber<Bitmap> first = new TestSubscriber<>();
+        TestSubscriber<Bitmap> second = new TestSubscriber<>();
+        TestSubscriber<Bitmap> third = new TestSubscriber<>();
+        mFetcher.coalesce(key, fetch).subscribe(first);
+        mFetcher.coalesce(key, fetch).subscribe(second);
+        mFetcher.coalesce(key, fetch).subscribe(third);
+        assertThat(upstreamSubscribes.get()).isEqualTo(1);
+        assertThat(mFetcher.mFetchesJoined.get()).isEqualTo(2);
+
+        //leaving early doesn't cancel the others
+        second.unsubscribe();
+        assertThat(upstreamUnsubscribed.get()).isFalse();
+
+        network.onNext(fetched);
+        network.onCompleted();
+        first.assertReceivedOnNext(Collections.singletonList(fetched));
+        first.assertTerminalEvent();
+        //joiners get their own copy
+        third.assertReceivedOnNext(Collections.singletonList(cached));
+        third.assertTerminalEvent();
+        assertThat(mFetcher.mInFlight).isEmpty();
+    }
+
+    @Test
+    public void testCoalescedFetchCanceledByLastRequester() {
+        final String key = ArtInfo.forAlbum("alvvays", "alvvays", null).cacheKey();
+        final AtomicBoolean upstreamUnsubscribed = new AtomicBoolean();
+        Observable<Bitmap> fetch = PublishSubject.<Bitmap>create()
+                .doOnUnsubscribe(new Action0() {
+                    @Override public void call() {
+                        upstreamUnsubscribed.set(true);
+                    }
+                });
+        Subscription first = mFetcher.coalesce(key, fetch).subscribe(new TestSubscriber<Bitmap>());
+        Subscription second = mFetcher.coalesce(key, fetch).subscribe(new TestSubscriber<Bitmap>());
+        first.unsubscribe();
+        assertThat(upstreamUnsubscribed.get()).isFalse();
+        second.unsubscribe();
+        assertThat(upstreamUnsubscribed.get()).isTrue();
+        assertThat(mFetcher.mInFlight).isEmpty();
+    }
+
 }
@@ -18,9 +18,11 @@
 package org.opensilk.music.index.client;
 
 import android.net.Uri;
+import android.support.annotation.Nullable;
 import android.support.v4.media.MediaDescriptionCompat;
 import android.support.v4.media.MediaMetadataCompat;
 
+import org.opensilk.music.index.model.QueueOp;
 import org.opensilk.music.model.Container;
 import org.opensilk.music.model.Model;
 import org.opensilk.music.model.Playlist;
@@ -60,11 +62,20 @@ public interface IndexClient {
     int getLastQueuePosition();
     int getLastQueueShuffleMode();
     int getLastQueueRepeatMode();
+    @Nullable int[] getLastQueueShuffleOrder();
 
-    void saveQueue(List<Uri> queue);
+    /**
+     * @return false if the queue wasn't saved, what was saved before is left as is
+     */
+    boolean saveQueue(List<Uri> queue);
+    /**
+     * @return false if the edits weren't saved
+     */
+    boolean appendQueueOps(List<QueueOp> ops);
     void saveQueuePosition(int pos);
     void saveQueueShuffleMode(int mode);
     void saveQueueRepeatMode(int mode);
+    void saveQueueShuffleOrder(@Nullable int[] order);
 
     long getLastSeekPosition();
     void saveLastSeekPosition(long pos);
@@ -75,6 +86,12 @@ public interface IndexClient {
     boolean useMediaStyleNotification();
     void setUseMediaStyleNotification(boolean use);
 
+    /**
+     * @return millis tracks overlap for, 0 means gapless
+     */
+    int crossfadeDuration();
+    void setCrossfadeDuration(int millis);
+
     /*
      * Queue / Playback helper
      */
@@ -36,6 +36,7 @@ import org.opensilk.common.core.util.BundleHelper;
 import org.opensilk.common.core.util.VersionUtils;
 import org.opensilk.music.artwork.UtilsArt;
 import org.opensilk.music.index.R;
+import org.opensilk.music.index.model.QueueOp;
 import org.opensilk.music.index.provider.IndexUris;
 import org.opensilk.music.index.provider.Methods;
 import org.opensilk.music.index.scanner.ScannerService;
@@ -53,7 +54,6 @@ import org.opensilk.music.model.Playlist;
 import org.opensilk.music.model.Track;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -86,6 +86,9 @@ import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_TITLE;
 @Singleton
 public class IndexClientImpl implements IndexClient {
 
+    //uris per call when moving the queue across
+    static final int QUEUE_PAGE_SIZE = 500;
+
     final Context appContext;
     final Uri callUri;
     final String indexAuthority;
@@ -218,11 +221,21 @@ public class IndexClientImpl implements IndexClient {
 
     @Override
     public List<Uri> getLastQueue() {
-        Bundle repl = makeCall(Methods.LAST_QUEUE_LIST, null);
-        if (checkCall(repl)) {
-            return BundleHelper.<Uri>getList(repl);
+        //paged so big queues don't blow the binder transaction limit
+        List<Uri> queue = new ArrayList<>();
+        while (true) {
+            Bundle repl = makeCall(Methods.LAST_QUEUE_LIST, BundleHelper.b()
+                    .putInt(queue.size()).putInt2(QUEUE_PAGE_SIZE).get());
+            if (!checkCall(repl)) {
+                break;
+            }
+            List<Uri> page = BundleHelper.<Uri>getList(repl);
+            queue.addAll(page);
+            if (page.size() < QUEUE_PAGE_SIZE) {
+                break;
+            }
         }
-        return Collections.emptyList();
+        return queue;
     }
 
     @Override
@@ -253,8 +266,31 @@ public class IndexClientImpl implements IndexClient {
     }
 
     @Override
-    public void saveQueue(List<Uri> queue) {
-        makeCheckedCall(Methods.SAVE_QUEUE_LIST, BundleHelper.b().putList(queue).get());
+    public int[] getLastQueueShuffleOrder() {
+        Bundle repl = makeCall(Methods.LAST_QUEUE_SHUFFLE_ORDER, null);
+        if (checkCall(repl)) {
+            return BundleHelper.getIntArray(repl);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean saveQueue(List<Uri> queue) {
+        int offset = 0;
+        do {
+            List<Uri> page = queue.subList(offset, Math.min(offset + QUEUE_PAGE_SIZE, queue.size()));
+            if (!makeCheckedCall(Methods.SAVE_QUEUE_LIST,
+                    BundleHelper.b().putList(page).putInt(offset).putInt2(queue.size()).get())) {
+                return false;
+            }
+            offset += page.size();
+        } while (offset < queue.size());
+        return true;
+    }
+
+    @Override
+    public boolean appendQueueOps(List<QueueOp> ops) {
+        return makeCheckedCall(Methods.APPEND_QUEUE_OPS, BundleHelper.b().putList(ops).get());
     }
 
     @Override
@@ -272,6 +308,11 @@ public class IndexClientImpl implements IndexClient {
         makeCheckedCall(Methods.SAVE_QUEUE_REPEAT, BundleHelper.b().putInt(mode).get());
     }
 
+    @Override
+    public void saveQueueShuffleOrder(int[] order) {
+        makeCheckedCall(Methods.SAVE_QUEUE_SHUFFLE_ORDER, BundleHelper.b().putIntArray(order).get());
+    }
+
     @Override
     public long getLastSeekPosition() {
         Bundle repl = makeCall(Methods.LAST_SEEK_POSITION, null);
@@ -314,6 +355,20 @@ public class IndexClientImpl implements IndexClient {
         makeCheckedCall(Methods.SAVE_USE_MEDIASTYLE_NOTIF, BundleHelper.b().putInt(use ? 1 : 0).get());
     }
 
+    @Override
+    public int crossfadeDuration() {
+        Bundle repl = makeCall(Methods.GET_CROSSFADE_DURATION, null);
+        if (checkCall(repl)) {
+            return BundleHelper.getInt(repl);
+        }
+        return 0;
+    }
+
+    @Override
+    public void setCrossfadeDuration(int millis) {
+        makeCheckedCall(Methods.SAVE_CROSSFADE_DURATION, BundleHelper.b().putInt(millis).get());
+    }
+
     @Override
     public Observable<Track> getTrack(Uri uri) {
         Bundle repl = makeCall(Methods.GET_TRACK, BundleHelper.b().putUri(uri).get());
@@ -429,7 +484,9 @@ public class IndexClientImpl implements IndexClient {
                             track.getArtistName(), track.getAlbumName(),
                             track.getArtworkUri());
                     if (artInfo != ArtInfo.NULLINSTANCE) {
-                        description.setIconUri(artInfo.asContentUri(artworkAuthority));
+                        //only ever shown in lists
+                        description.setIconUri(artInfo.withSize(ArtInfo.SIZE_THUMB)
+                                .asContentUri(artworkAuthority));
                     }
                     mediaDescriptions.add(description.build());
                 }
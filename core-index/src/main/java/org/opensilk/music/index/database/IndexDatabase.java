@@ -24,6 +24,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Pair;
 
+import org.opensilk.music.index.model.QueueOp;
 import org.opensilk.music.model.Album;
 import org.opensilk.music.model.Artist;
 import org.opensilk.music.model.Genre;
@@ -32,6 +33,7 @@ import org.opensilk.music.model.Model;
 import org.opensilk.music.model.Playlist;
 import org.opensilk.music.model.Track;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -45,24 +47,38 @@ public interface IndexDatabase {
     long insert(String table, String nullColumnHack, ContentValues values,int conflictAlgorithm);
     int update(String table, ContentValues values, String whereClause, String[] whereArgs);
     List<Artist> getAlbumArtists(String sortOrder, String[] authorities);
+    List<Artist> getAlbumArtists(String sortOrder, String[] authorities, int offset, int limit);
     List<Artist> getArtists(String sortOrder, String[] authorities);
+    List<Artist> getArtists(String sortOrder, String[] authorities, int offset, int limit);
     List<Album> getArtistAlbums(String id, String sortOrder);
     List<Model> getArtistDetails(String id, String sortOrder);
     List<Track> getArtistTracks(String id, String sortOrder);
+    List<Track> getArtistTracks(String id, String sortOrder, int offset, int limit);
     @Nullable Artist getArtist(String id);
     @Nullable String getArtistMbid(String id);
     List<Album> getAlbums(String sortOrder, String[] authorities);
+    List<Album> getAlbums(String sortOrder, String[] authorities, int offset, int limit);
     List<Track> getAlbumTracks(String id, String sortOrder);
     List<Model> getAlbumDetails(String id, String sortOrder);
     @Nullable Album getAlbum(String id);
     @Nullable String getAlbumMbid(String id);
     List<Track> getTracks(String sortOrder, String[] authorities);
+    /**
+     * @param limit max rows to return starting at offset, 0 for all of them
+     */
+    List<Track> getTracks(String sortOrder, String[] authorities, int offset, int limit);
     List<Track> getTracksInList(List<Uri> uris);
     Track getTrack(Uri uri);
     List<Genre> getGenres(String sortOrder, String[] authorities);
     List<Album> getGenreAlbums(String id, String sortOrder);
     List<Model> getGenreDetails(String id, String sortOrder);
     List<Track> getGenreTracks(String id, String sortOrder);
+    /**
+     * Prefix matches each word of the query against artist, album, genre and track names
+     * @param authorities libraries to search, null for all of them, empty for none
+     * @return artists, albums, genres then tracks, at most limit of each, best matches first
+     */
+    List<Model> search(String query, int limit, String[] authorities);
     List<Playlist> getPlaylists(String sortOrder);
     Playlist getPlaylist(String id);
     List<Track> getPlaylistTracks(String id, String sortOrder);
@@ -77,30 +93,66 @@ public interface IndexDatabase {
     long hasContainer(Uri uri);
     @NonNull List<Pair<Uri, Uri>> findTopLevelContainers(@Nullable String authority);
     long insertContainer(Uri uri, Uri parentUri);
+    /**
+     * @return the change stamp recorded at the last successful scan of the container
+     */
+    @Nullable String getContainerChangeStamp(Uri uri);
+    boolean setContainerChangeStamp(Uri uri, @Nullable String stamp);
     int removeContainer(Uri uri);
     boolean markContainerInError(Uri uri);
     void removeContainersInError();
     boolean hasContainersInError();
     long insertTrack(Track track, Metadata metadata);
+    /**
+     * Inserts all the tracks in a single transaction
+     * @return the track_meta ids in the same order as tracks, -1 for tracks that failed
+     */
+    long[] insertTracks(List<Pair<Track, Metadata>> tracks);
     boolean trackNeedsScan(Track track);
     TreeNode buildTree(Uri uri, Uri parentUri);
     boolean removeTrack(Uri uri, Uri parentUri);
+    /**
+     * Removes the tracks and containers (along with everything under them) in a single transaction
+     * @return number of rows removed
+     */
+    int removeStale(Collection<Uri> trackUris, Collection<Uri> containerUris);
+    /**
+     * @return artists and albums still waiting on lastfm info, least attempted first
+     */
+    List<PendingEnrichment> getPendingEnrichments(int maxAttempts, int limit);
+    /**
+     * Fills in the lastfm info and removes the entries from the queue, entries
+     * with a null Metadata have their attempts incremented instead.
+     * @return number of artists and albums updated
+     */
+    int applyEnrichments(List<Pair<PendingEnrichment, Metadata>> results);
     void notifyObservers();
     void clearMusic();
 
     List<Uri> getLastQueue();
+    List<Uri> getLastQueue(int offset, int limit);
     void saveQueue(List<Uri> queue);
+    /**
+     * Stages a page of the queue, the saved queue is replaced once the page ending at total arrives
+     * @return false if the page didn't follow the last one
+     */
+    boolean saveQueue(List<Uri> page, int offset, int total);
+    void appendQueueOps(List<QueueOp> ops);
     int getLastQueuePosition();
     void saveQueuePosition(int pos);
     int getLastQueueShuffleMode();
     void saveQueueShuffleMode(int mode);
     int getLastQueueRepeatMode();
     void saveQueueRepeatMode(int mode);
+    @Nullable int[] getLastQueueShuffleOrder();
+    void saveQueueShuffleOrder(@Nullable int[] order);
     long getLastSeekPosition();
     void saveLastSeekPosition(long pos);
     boolean getBroadcastMeta();
     void setBroadcastMeta(boolean broadcast);
     boolean getUseMediaStyleNotif();
     void setUseMediaStyleNotif(boolean use);
+    int getCrossfadeDuration();
+    void setCrossfadeDuration(int millis);
 
 }
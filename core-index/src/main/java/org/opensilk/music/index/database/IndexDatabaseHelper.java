@@ -18,11 +18,15 @@
 package org.opensilk.music.index.database;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.DatabaseErrorHandler;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.opensilk.common.core.dagger2.ForApplication;
 
 import java.io.File;
@@ -36,7 +40,7 @@ import javax.inject.Singleton;
 @Singleton
 public class IndexDatabaseHelper extends SQLiteOpenHelper {
 
-    public static final int DB_VERSION = 43;
+    public static final int DB_VERSION = 47;
     public static final String DB_NAME = "music.db";
 
     @Inject
@@ -499,6 +503,160 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
                     "LEFT OUTER JOIN genre_meta g1 ON t1.genre_id = g1._id " +
                     ";");
         }
+
+        if (oldVersion < 44) {
+            //artists and albums waiting on lastfm info
+            db.execSQL("CREATE TABLE IF NOT EXISTS enrichment_queue (" +
+                    "_id INTEGER PRIMARY KEY, " +
+                    "kind INTEGER NOT NULL, " +
+                    "meta_id INTEGER NOT NULL, " +
+                    "attempts INTEGER DEFAULT 0, " +
+                    "UNIQUE(kind,meta_id) ON CONFLICT IGNORE" +
+                    ");");
+            db.execSQL("CREATE VIEW IF NOT EXISTS enrichment_queue_info AS SELECT " +
+                    "q._id, " +
+                    "q.kind, " +
+                    "q.meta_id, " +
+                    "q.attempts, " +
+                    "coalesce(a1.artist_name, a2.album_name) as name, " +
+                    "a3.artist_name as artist " +
+                    "FROM enrichment_queue q " +
+                    "LEFT OUTER JOIN artist_meta a1 ON q.kind = 0 AND q.meta_id = a1._id " +
+                    "LEFT OUTER JOIN album_meta a2 ON q.kind = 1 AND q.meta_id = a2._id " +
+                    "LEFT OUTER JOIN artist_meta a3 ON a2.album_artist_id = a3._id " +
+                    ";");
+            db.execSQL("CREATE TRIGGER enrichment_queue_cleanup_artist_delete AFTER DELETE ON artist_meta " +
+                    "FOR EACH ROW " +
+                    "BEGIN " +
+                    "DELETE FROM enrichment_queue WHERE kind=0 AND meta_id=OLD._id; " +
+                    "END");
+            db.execSQL("CREATE TRIGGER enrichment_queue_cleanup_album_delete AFTER DELETE ON album_meta " +
+                    "FOR EACH ROW " +
+                    "BEGIN " +
+                    "DELETE FROM enrichment_queue WHERE kind=1 AND meta_id=OLD._id; " +
+                    "END");
+            //queue up everything we already have that never got info
+            db.execSQL("INSERT INTO enrichment_queue (kind, meta_id) " +
+                    "SELECT 0, _id FROM artist_meta WHERE artist_mbid IS NULL;");
+            db.execSQL("INSERT INTO enrichment_queue (kind, meta_id) " +
+                    "SELECT 1, _id FROM album_meta WHERE album_mbid IS NULL;");
+        }
+
+        if (oldVersion < 45) {
+            //provider supplied fingerprint of the containers children as of our last scan
+            db.execSQL("ALTER TABLE containers ADD COLUMN change_stamp TEXT;");
+        }
+
+        if (oldVersion < 46) {
+            //full text search over names, docid is the _id of the meta row
+            //prefix indexes need 3.7.7, older versions still work just slower
+            final String ftsOpts = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                    ? ", prefix=\"2,3\"" : "";
+            db.execSQL("CREATE VIRTUAL TABLE artist_search USING fts4(name" + ftsOpts + ");");
+            db.execSQL("CREATE VIRTUAL TABLE album_search USING fts4(name" + ftsOpts + ");");
+            db.execSQL("CREATE VIRTUAL TABLE genre_search USING fts4(name" + ftsOpts + ");");
+            db.execSQL("CREATE VIRTUAL TABLE track_search USING fts4(name, artist, album" + ftsOpts + ");");
+            createSearchTriggers(db, "artist_search", "artist_meta", "artist_name");
+            createSearchTriggers(db, "album_search", "album_meta", "album_name");
+            createSearchTriggers(db, "genre_search", "genre_meta", "genre_name");
+            db.execSQL("CREATE TRIGGER track_search_insert AFTER INSERT ON track_meta " +
+                    "FOR EACH ROW " +
+                    "BEGIN " +
+                    TRACK_SEARCH_INSERT +
+                    "END");
+            db.execSQL("CREATE TRIGGER track_search_update AFTER UPDATE ON track_meta " +
+                    "FOR EACH ROW " +
+                    "BEGIN " +
+                    "DELETE FROM track_search WHERE docid=OLD._id; " +
+                    TRACK_SEARCH_INSERT +
+                    "END");
+            db.execSQL("CREATE TRIGGER track_search_delete AFTER DELETE ON track_meta " +
+                    "FOR EACH ROW " +
+                    "BEGIN " +
+                    "DELETE FROM track_search WHERE docid=OLD._id; " +
+                    "END");
+            //index everything we already have
+            db.execSQL("INSERT INTO artist_search (docid, name) SELECT _id, artist_name FROM artist_meta;");
+            db.execSQL("INSERT INTO album_search (docid, name) SELECT _id, album_name FROM album_meta;");
+            db.execSQL("INSERT INTO genre_search (docid, name) SELECT _id, genre_name FROM genre_meta;");
+            db.execSQL("INSERT INTO track_search (docid, name, artist, album) SELECT " +
+                    "t1._id, " +
+                    "coalesce(t1.track_name, t2.track_name), " +
+                    "coalesce(a1.artist_name, t2.artist_name), " +
+                    "coalesce(a2.album_name, t2.album_name) " +
+                    "FROM track_meta t1 " +
+                    "JOIN tracks t2 ON t1.track_id = t2._id " +
+                    "LEFT OUTER JOIN artist_meta a1 ON t1.artist_id = a1._id " +
+                    "LEFT OUTER JOIN album_meta a2 ON t1.album_id = a2._id " +
+                    ";");
+        }
+
+        if (oldVersion < 47) {
+            //queue gets its own table plus a journal of edits instead of one big csv
+            db.execSQL("CREATE TABLE IF NOT EXISTS playback_queue (" +
+                    "pos INTEGER PRIMARY KEY, " +
+                    "uri TEXT NOT NULL" +
+                    ");");
+            db.execSQL("CREATE TABLE IF NOT EXISTS playback_queue_journal (" +
+                    "_id INTEGER PRIMARY KEY, " +
+                    "op INTEGER NOT NULL, " +
+                    "pos INTEGER, " +
+                    "arg INTEGER, " +
+                    "data TEXT" +
+                    ");");
+            migrateQueue(db);
+        }
+    }
+
+    static void migrateQueue(SQLiteDatabase db) {
+        Cursor c = null;
+        try {
+            c = db.query("playback_settings", new String[]{"textVal"}, "key=?",
+                    new String[]{"last_queue_list"}, null, null, null);
+            if (c != null && c.moveToFirst() && !StringUtils.isEmpty(c.getString(0))) {
+                String[] uris = StringUtils.split(c.getString(0), ',');
+                SQLiteStatement insert = db.compileStatement(
+                        "INSERT INTO playback_queue (pos, uri) VALUES (?,?)");
+                for (int ii=0; ii<uris.length; ii++) {
+                    insert.bindLong(1, ii);
+                    insert.bindString(2, uris[ii]);
+                    insert.executeInsert();
+                }
+                insert.close();
+            }
+        } finally {
+            if (c != null) c.close();
+        }
+        db.delete("playback_settings", "key=?", new String[]{"last_queue_list"});
+    }
+
+    //trigger body, NEW is the track_meta row
+    static final String TRACK_SEARCH_INSERT = "INSERT INTO track_search (docid, name, artist, album) SELECT " +
+            "NEW._id, " +
+            "coalesce(NEW.track_name, t2.track_name), " +
+            "coalesce(a1.artist_name, t2.artist_name), " +
+            "coalesce(a2.album_name, t2.album_name) " +
+            "FROM tracks t2 " +
+            "LEFT OUTER JOIN artist_meta a1 ON a1._id = NEW.artist_id " +
+            "LEFT OUTER JOIN album_meta a2 ON a2._id = NEW.album_id " +
+            "WHERE t2._id = NEW.track_id; ";
+
+    static void createSearchTriggers(SQLiteDatabase db, String searchTable, String metaTable, String nameCol) {
+        db.execSQL("CREATE TRIGGER " + searchTable + "_insert AFTER INSERT ON " + metaTable + " " +
+                "FOR EACH ROW " +
+                "BEGIN " +
+                "INSERT INTO " + searchTable + " (docid, name) VALUES (NEW._id, NEW." + nameCol + "); " +
+                "END");
+        db.execSQL("CREATE TRIGGER " + searchTable + "_update AFTER UPDATE OF " + nameCol + " ON " + metaTable + " " +
+                "FOR EACH ROW " +
+                "BEGIN " +
+                "UPDATE " + searchTable + " SET name=NEW." + nameCol + " WHERE docid=OLD._id; " +
+                "END");
+        db.execSQL("CREATE TRIGGER " + searchTable + "_delete AFTER DELETE ON " + metaTable + " " +
+                "FOR EACH ROW " +
+                "BEGIN " +
+                "DELETE FROM " + searchTable + " WHERE docid=OLD._id; " +
+                "END");
     }
 
     public void clearMusic() {
@@ -511,6 +669,7 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
         db.execSQL("DELETE FROM track_meta;");
         db.execSQL("DELETE FROM playlist_meta;");
         db.execSQL("DELETE FROM playlist_track_meta;");
+        db.execSQL("DELETE FROM enrichment_queue;");
     }
 
     @Override
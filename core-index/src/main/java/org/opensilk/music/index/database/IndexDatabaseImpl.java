@@ -20,7 +20,11 @@ package org.opensilk.music.index.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
@@ -32,8 +36,8 @@ import org.apache.commons.lang3.StringUtils;
 import org.opensilk.common.core.dagger2.ForApplication;
 import org.opensilk.music.index.BuildConfig;
 import org.opensilk.music.index.model.BioSummary;
+import org.opensilk.music.index.model.QueueOp;
 import org.opensilk.music.index.provider.IndexUris;
-import org.opensilk.music.index.provider.LastFMHelper;
 import org.opensilk.music.model.Album;
 import org.opensilk.music.model.ArtInfo;
 import org.opensilk.music.model.Artist;
@@ -47,6 +51,7 @@ import org.opensilk.music.model.sort.TrackSortOrder;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -54,6 +59,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -75,19 +81,16 @@ public class IndexDatabaseImpl implements IndexDatabase {
     final ReadWriteLock mLock = new ReentrantReadWriteLock(true);
     final IndexDatabaseHelper helper;
     final String indexAuthority;
-    final LastFMHelper mLastFM;
     final Context mAppContext;
 
     @Inject
     public IndexDatabaseImpl(
             IndexDatabaseHelper helper,
             @Named("IndexProviderAuthority") String indexAuthority,
-            LastFMHelper lastFMHelper,
             @ForApplication Context context
     ) {
         this.helper = helper;
         this.indexAuthority = indexAuthority;
-        this.mLastFM = lastFMHelper;
         this.mAppContext = context;
     }
 
@@ -108,6 +111,34 @@ public class IndexDatabaseImpl implements IndexDatabase {
         }
     }
 
+    /**
+     * Paged query, the _id is appended to the sort so rows with equal keys
+     * land on the same page every time
+     */
+    Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+                 String orderBy, int offset, int limit) {
+        if (limit > 0) {
+            orderBy = StringUtils.isEmpty(orderBy) ? BaseColumns._ID : orderBy + "," + BaseColumns._ID;
+        }
+        try {
+            mLock.readLock().lock();
+            return helper.getReadableDatabase().query(table, columns, selection,
+                    selectionArgs, null, null, orderBy, limitClause(offset, limit));
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return sqlite limit clause or null if limit is not positive
+     */
+    static @Nullable String limitClause(int offset, int limit) {
+        if (limit <= 0) {
+            return null;
+        }
+        return Math.max(offset, 0) + "," + limit;
+    }
+
     @Override
     public int delete(String table, String whereClause, String[] whereArgs) {
         try {
@@ -165,6 +196,11 @@ public class IndexDatabaseImpl implements IndexDatabase {
 
     @Override
     public List<Artist> getArtists(String sortOrder, String[] authorities) {
+        return getArtists(sortOrder, authorities, 0, 0);
+    }
+
+    @Override
+    public List<Artist> getArtists(String sortOrder, String[] authorities, int offset, int limit) {
         List<Artist> lst = new ArrayList<>();
         Cursor c = null;
         try {
@@ -179,7 +215,7 @@ public class IndexDatabaseImpl implements IndexDatabase {
                 sel = sb.toString();
                 selArgs = authorities;
             }
-            c = query(IndexSchema.Info.Artist.TABLE, artists_cols, sel, selArgs, null, null, sortOrder);
+            c = query(IndexSchema.Info.Artist.TABLE, artists_cols, sel, selArgs, sortOrder, offset, limit);
             if (c != null && c.moveToFirst()) {
                 final Uri parentUri = IndexUris.artists(indexAuthority);
                 do {
@@ -194,6 +230,11 @@ public class IndexDatabaseImpl implements IndexDatabase {
 
     @Override
     public List<Artist> getAlbumArtists(String sortOrder, String[] authorities) {
+        return getAlbumArtists(sortOrder, authorities, 0, 0);
+    }
+
+    @Override
+    public List<Artist> getAlbumArtists(String sortOrder, String[] authorities, int offset, int limit) {
         List<Artist> lst = new ArrayList<>();
         Cursor c = null;
         try {
@@ -208,7 +249,7 @@ public class IndexDatabaseImpl implements IndexDatabase {
                 sel = sb.toString();
                 selArgs = authorities;
             }
-            c = query(IndexSchema.Info.Artist.ALBUM_ARSTIST_TABLE, artists_cols, sel, selArgs, null, null, sortOrder);
+            c = query(IndexSchema.Info.Artist.ALBUM_ARSTIST_TABLE, artists_cols, sel, selArgs, sortOrder, offset, limit);
             if (c != null && c.moveToFirst()) {
                 final Uri parentUri = IndexUris.albumArtists(indexAuthority);
                 do {
@@ -309,11 +350,16 @@ public class IndexDatabaseImpl implements IndexDatabase {
 
     @Override
     public List<Track> getArtistTracks(String id, String sortOrder) {
+        return getArtistTracks(id, sortOrder, 0, 0);
+    }
+
+    @Override
+    public List<Track> getArtistTracks(String id, String sortOrder, int offset, int limit) {
         List<Track> lst = new ArrayList<>();
         Cursor c = null;
         try {
             c = query(IndexSchema.Info.Track.TABLE, tracks_cols,
-                    artist_tracks_sel, new String[]{id}, null, null, sortOrder);
+                    artist_tracks_sel, new String[]{id}, sortOrder, offset, limit);
             if (c != null && c.moveToFirst()) {
                 do {
                     lst.add(buildTrack(c));
@@ -387,6 +433,11 @@ public class IndexDatabaseImpl implements IndexDatabase {
 
     @Override
     public List<Album> getAlbums(String sortOrder, String[] authorities) {
+        return getAlbums(sortOrder, authorities, 0, 0);
+    }
+
+    @Override
+    public List<Album> getAlbums(String sortOrder, String[] authorities, int offset, int limit) {
         List<Album> lst = new ArrayList<>();
         Cursor c = null;
         try {
@@ -401,7 +452,7 @@ public class IndexDatabaseImpl implements IndexDatabase {
                 sel = sb.toString();
                 selArgs = authorities;
             }
-            c = query(IndexSchema.Info.Album.TABLE, albums_cols, sel, selArgs, null, null, sortOrder);
+            c = query(IndexSchema.Info.Album.TABLE, albums_cols, sel, selArgs, sortOrder, offset, limit);
             if (c != null && c.moveToFirst()) {
                 final Uri parentUri = IndexUris.albums(indexAuthority);
                 do {
@@ -924,6 +975,11 @@ public class IndexDatabaseImpl implements IndexDatabase {
 
     @Override
     public List<Track> getTracks(String sortOrder, String[] authorities) {
+        return getTracks(sortOrder, authorities, 0, 0);
+    }
+
+    @Override
+    public List<Track> getTracks(String sortOrder, String[] authorities, int offset, int limit) {
         List<Track> lst = new ArrayList<>();
         Cursor c = null;
         try {
@@ -938,7 +994,7 @@ public class IndexDatabaseImpl implements IndexDatabase {
                 sel = sb.toString();
                 selArgs = authorities;
             }
-            c = query(IndexSchema.Info.Track.TABLE, tracks_cols, sel, selArgs, null, null, sortOrder);
+            c = query(IndexSchema.Info.Track.TABLE, tracks_cols, sel, selArgs, sortOrder, offset, limit);
             if (c != null && c.moveToFirst()) {
                 do {
                     lst.add(buildTrack(c));
@@ -1010,6 +1066,190 @@ public class IndexDatabaseImpl implements IndexDatabase {
                 sel.toString(), selArgs, null, null, null);
     }
 
+    Cursor rawQuery(String sql, String[] selectionArgs) {
+        try {
+            mLock.readLock().lock();
+            return helper.getReadableDatabase().rawQuery(sql, selectionArgs);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Model> search(String query, int limit, String[] authorities) {
+        final String match = toMatchQuery(query);
+        if (match == null || (authorities != null && authorities.length == 0)) {
+            //no libraries available means nothing to find, not everything
+            return Collections.emptyList();
+        }
+        //names starting with the query as typed rank above matches on later words
+        final String prefix = escapeLike(query.trim()) + "%";
+        List<Model> lst = new ArrayList<>();
+        Cursor c = null;
+        try {
+            String[] ids = searchIds(IndexSchema.Search.ARTIST_TABLE,
+                    " JOIN " + IndexSchema.Meta.Artist.TABLE + " m ON m._id = docid",
+                    "m." + IndexSchema.Meta.Artist.AUTHORITY, match, prefix, limit, authorities);
+            if (ids.length > 0) {
+                c = query(IndexSchema.Info.Artist.TABLE, artists_cols,
+                        inSelection(IndexSchema.Info.Artist._ID, ids.length), ids, null, null, null);
+                Map<String, Model> found = new HashMap<>(ids.length);
+                if (c != null && c.moveToFirst()) {
+                    final Uri parentUri = IndexUris.artists(indexAuthority);
+                    do {
+                        found.put(c.getString(0), buildArtist(c, parentUri));
+                    } while (c.moveToNext());
+                }
+                closeCursor(c);
+                c = null;
+                addInOrder(lst, ids, found);
+            }
+            ids = searchIds(IndexSchema.Search.ALBUM_TABLE,
+                    " JOIN " + IndexSchema.Meta.Album.TABLE + " m ON m._id = docid",
+                    "m." + IndexSchema.Meta.Album.AUTHORITY, match, prefix, limit, authorities);
+            if (ids.length > 0) {
+                c = query(IndexSchema.Info.Album.TABLE, albums_cols,
+                        inSelection(IndexSchema.Info.Album._ID, ids.length), ids, null, null, null);
+                Map<String, Model> found = new HashMap<>(ids.length);
+                if (c != null && c.moveToFirst()) {
+                    final Uri parentUri = IndexUris.albums(indexAuthority);
+                    do {
+                        found.put(c.getString(0), buildAlbum(c, parentUri));
+                    } while (c.moveToNext());
+                }
+                closeCursor(c);
+                c = null;
+                addInOrder(lst, ids, found);
+            }
+            ids = searchIds(IndexSchema.Search.GENRE_TABLE,
+                    " JOIN " + IndexSchema.Meta.Genre.TABLE + " m ON m._id = docid",
+                    "m." + IndexSchema.Meta.Genre.AUTHORITY, match, prefix, limit, authorities);
+            if (ids.length > 0) {
+                c = query(IndexSchema.Info.Genre.TABLE, genres_cols,
+                        inSelection(IndexSchema.Info.Genre._ID, ids.length), ids, null, null, null);
+                Map<String, Model> found = new HashMap<>(ids.length);
+                if (c != null && c.moveToFirst()) {
+                    final Uri parentUri = IndexUris.genres(indexAuthority);
+                    do {
+                        //skip the artwork, not worth the album map query here
+                        found.put(c.getString(0), buildGenre(c, parentUri, null));
+                    } while (c.moveToNext());
+                }
+                closeCursor(c);
+                c = null;
+                addInOrder(lst, ids, found);
+            }
+            ids = searchIds(IndexSchema.Search.TRACK_TABLE,
+                    " JOIN " + IndexSchema.Meta.Track.TABLE + " tm ON tm._id = docid" +
+                            " JOIN " + IndexSchema.Tracks.TABLE + " m ON m._id = tm." +
+                            IndexSchema.Meta.Track.TRACK_ID,
+                    "m." + IndexSchema.Tracks.AUTHORITY, match, prefix, limit, authorities);
+            if (ids.length > 0) {
+                c = query(IndexSchema.Info.Track.TABLE, tracks_cols,
+                        inSelection(IndexSchema.Info.Track._ID, ids.length), ids, null, null, null);
+                Map<String, Model> found = new HashMap<>(ids.length);
+                if (c != null && c.moveToFirst()) {
+                    do {
+                        found.put(c.getString(0), buildTrack(c));
+                    } while (c.moveToNext());
+                }
+                closeCursor(c);
+                c = null;
+                addInOrder(lst, ids, found);
+            }
+        } finally {
+            closeCursor(c);
+        }
+        return lst;
+    }
+
+    /**
+     * @return docids of the best matches in rank order
+     */
+    String[] searchIds(String table, String join, String authorityCol, String match,
+                       String prefix, int limit, String[] authorities) {
+        final boolean filter = authorities != null;
+        StringBuilder sql = new StringBuilder("SELECT ").append(table).append(".docid FROM ").append(table);
+        if (filter) {
+            sql.append(join);
+        }
+        sql.append(" WHERE ").append(table).append(" MATCH ?");
+        if (filter) {
+            sql.append(" AND ").append(inSelection(authorityCol, authorities.length));
+        }
+        sql.append(" ORDER BY ").append(table).append(".name LIKE ? ESCAPE '\\' DESC, ")
+                .append("length(").append(table).append(".name), ")
+                .append(table).append(".name")
+                .append(" LIMIT ").append(limit);
+        String[] args = new String[]{match};
+        if (filter) {
+            args = ArrayUtils.addAll(args, authorities);
+        }
+        args = ArrayUtils.add(args, prefix);
+        List<String> ids = new ArrayList<>(limit);
+        Cursor c = null;
+        try {
+            c = rawQuery(sql.toString(), args);
+            if (c != null && c.moveToFirst()) {
+                do {
+                    ids.add(c.getString(0));
+                } while (c.moveToNext());
+            }
+        } finally {
+            closeCursor(c);
+        }
+        return ids.toArray(new String[ids.size()]);
+    }
+
+    static void addInOrder(List<Model> lst, String[] ids, Map<String, Model> found) {
+        for (String id : ids) {
+            Model m = found.get(id);
+            if (m != null) {
+                lst.add(m);
+            }
+        }
+    }
+
+    static String inSelection(String column, int num) {
+        StringBuilder sb = new StringBuilder(column).append(" IN (?");
+        for (int ii=1; ii<num; ii++) {
+            sb.append(",?");
+        }
+        return sb.append(")").toString();
+    }
+
+    /**
+     * Turns user input into an fts query matching all words as prefixes.
+     * Splits on the same characters as the simple tokenizer so we never emit query syntax.
+     * @return null if there is nothing to search for
+     */
+    static @Nullable String toMatchQuery(String query) {
+        if (StringUtils.isBlank(query)) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(query.length() + 8);
+        int start = -1;
+        for (int ii=0; ii<=query.length(); ii++) {
+            final char ch = ii < query.length() ? query.charAt(ii) : ' ';
+            final boolean sep = ch < 128 && !Character.isLetterOrDigit(ch);
+            if (!sep && start < 0) {
+                start = ii;
+            } else if (sep && start >= 0) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(query, start, ii).append('*');
+                start = -1;
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    static String escapeLike(String str) {
+        return StringUtils.replaceEach(str, new String[]{"\\", "%", "_"},
+                new String[]{"\\\\", "\\%", "\\_"});
+    }
+
     static final String containerUriSel = IndexSchema.Containers.URI + "=?";
 
     Cursor getContainerCursor(Uri uri) {
@@ -1083,6 +1323,36 @@ public class IndexDatabaseImpl implements IndexDatabase {
         return insert(IndexSchema.Containers.TABLE, null, cv, SQLiteDatabase.CONFLICT_IGNORE);
     }
 
+    static final String[] containerChangeStampCols = new String[] {
+            IndexSchema.Containers.CHANGE_STAMP,
+    };
+
+    @Override
+    public @Nullable String getContainerChangeStamp(Uri uri) {
+        Cursor c = null;
+        try {
+            c = query(IndexSchema.Containers.TABLE, containerChangeStampCols,
+                    containerUriSel, new String[]{uri.toString()}, null, null, null);
+            if (c != null && c.moveToFirst()) {
+                return c.getString(0);
+            }
+        } finally {
+            closeCursor(c);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean setContainerChangeStamp(Uri uri, @Nullable String stamp) {
+        ContentValues cv = new ContentValues(1);
+        if (stamp != null) {
+            cv.put(IndexSchema.Containers.CHANGE_STAMP, stamp);
+        } else {
+            cv.putNull(IndexSchema.Containers.CHANGE_STAMP);
+        }
+        return update(IndexSchema.Containers.TABLE, cv, containerUriSel, new String[]{uri.toString()}) > 0;
+    }
+
     static final String removeContainerSel = IndexSchema.Containers.URI + "=?";
 
     @Override
@@ -1110,22 +1380,58 @@ public class IndexDatabaseImpl implements IndexDatabase {
         Timber.d("Removing containers %s", Arrays.toString(containers));
         int num = 0;
 
-        String[][] chunks = chunkArray(containers, 50);
         mLock.writeLock().lock();
         SQLiteDatabase _db = helper.getWritableDatabase();
         _db.beginTransaction();
         try {
-            for (String[] chunk : chunks) {
-                StringBuilder where = new StringBuilder();
-                where.append(IndexSchema.Containers._ID).append(" IN (");
-                where.append("?");
-                for (int ii=1; ii<chunk.length; ii++) {
-                    where.append(",?");
-                }
-                where.append(")");
+            num += deleteInChunks(_db, IndexSchema.Containers.TABLE, IndexSchema.Containers._ID, containers);
+            _db.setTransactionSuccessful();
+        } finally {
+            _db.endTransaction();
+            mLock.writeLock().unlock();
+        }
 
-                num += _db.delete(IndexSchema.Containers.TABLE, where.toString(), chunk);
+        if (num > 0) {
+            //notify everyone
+            mAppContext.getContentResolver().notifyChange(IndexUris.call(indexAuthority), null);
+            clearCaches();
+        }
+        return num;
+    }
+
+    @Override
+    public int removeStale(Collection<Uri> trackUris, Collection<Uri> containerUris) {
+        if (trackUris.isEmpty() && containerUris.isEmpty()) {
+            return 0;
+        }
+        //resolve the containers first, we take the whole subtree with us
+        Set<String> containers = new HashSet<>();
+        for (Uri uri : containerUris) {
+            long id = hasContainer(uri);
+            if (id > 0) {
+                containers.add(String.valueOf(id));
+                String[] children = findChildrenUnder(uri, true);
+                if (children != null) {
+                    Collections.addAll(containers, children);
+                }
             }
+        }
+        String[] tracks = new String[trackUris.size()];
+        int ii = 0;
+        for (Uri uri : trackUris) {
+            tracks[ii++] = uri.toString();
+        }
+
+        Timber.d("Removing %d stale tracks and %d stale containers", tracks.length, containers.size());
+        int num = 0;
+
+        mLock.writeLock().lock();
+        SQLiteDatabase _db = helper.getWritableDatabase();
+        _db.beginTransaction();
+        try {
+            num += deleteInChunks(_db, IndexSchema.Tracks.TABLE, IndexSchema.Tracks.URI, tracks);
+            num += deleteInChunks(_db, IndexSchema.Containers.TABLE, IndexSchema.Containers._ID,
+                    containers.toArray(new String[containers.size()]));
             _db.setTransactionSuccessful();
         } finally {
             _db.endTransaction();
@@ -1135,7 +1441,27 @@ public class IndexDatabaseImpl implements IndexDatabase {
         if (num > 0) {
             //notify everyone
             mAppContext.getContentResolver().notifyChange(IndexUris.call(indexAuthority), null);
-            clearCaches();
+        }
+        clearCaches();
+        return num;
+    }
+
+    /**
+     * Deletes rows where column is in args, 50 at a time to stay under the bind arg limit.
+     * Caller must hold the write lock.
+     */
+    static int deleteInChunks(SQLiteDatabase db, String table, String column, String[] args) {
+        int num = 0;
+        for (String[] chunk : chunkArray(args, 50)) {
+            StringBuilder where = new StringBuilder();
+            where.append(column).append(" IN (");
+            where.append("?");
+            for (int ii=1; ii<chunk.length; ii++) {
+                where.append(",?");
+            }
+            where.append(")");
+
+            num += db.delete(table, where.toString(), chunk);
         }
         return num;
     }
@@ -1330,17 +1656,178 @@ public class IndexDatabaseImpl implements IndexDatabase {
         return -1;
     }
 
-    //TODO this is ridiculously inefficient and soooo slow
     @Override
     public long insertTrack(Track track, Metadata metadata) {
-        ContentValues cv = new ContentValues(10);
+        return insertTracks(Collections.singletonList(Pair.create(track, metadata)))[0];
+    }
+
+    static final String insertTracksSql = "INSERT INTO " + IndexSchema.Tracks.TABLE + " (" +
+            IndexSchema.Tracks.CONTAINER_ID + "," +
+            IndexSchema.Tracks.AUTHORITY + "," +
+            IndexSchema.Tracks.TRACK_NAME + "," +
+            IndexSchema.Tracks.TRACK_KEY + "," +
+            IndexSchema.Tracks.ARTIST_NAME + "," +
+            IndexSchema.Tracks.ARTIST_KEY + "," + //6
+            IndexSchema.Tracks.ALBUM_NAME + "," +
+            IndexSchema.Tracks.ALBUM_KEY + "," +
+            IndexSchema.Tracks.ALBUM_ARTIST_NAME + "," +
+            IndexSchema.Tracks.ALBUM_ARTIST_KEY + "," + //10
+            IndexSchema.Tracks.TRACK_NUMBER + "," +
+            IndexSchema.Tracks.DISC_NUMBER + "," +
+            IndexSchema.Tracks.COMPILATION + "," +
+            IndexSchema.Tracks.GENRE + "," +
+            IndexSchema.Tracks.GENRE_KEY + "," + //15
+            IndexSchema.Tracks.ARTWORK_URI + "," +
+            IndexSchema.Tracks.RES_URI + "," +
+            IndexSchema.Tracks.RES_HEADERS + "," +
+            IndexSchema.Tracks.RES_SIZE + "," +
+            IndexSchema.Tracks.RES_MIME_TYPE + "," + //20
+            IndexSchema.Tracks.RES_BITRATE + "," +
+            IndexSchema.Tracks.RES_LAST_MOD + "," +
+            IndexSchema.Tracks.RES_DURATION + "," +
+            IndexSchema.Tracks.DATE_ADDED + "," +
+            IndexSchema.Tracks.URI + //25
+            ") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+    static final String updateTracksSql = "UPDATE " + IndexSchema.Tracks.TABLE + " SET " +
+            IndexSchema.Tracks.CONTAINER_ID + "=?," +
+            IndexSchema.Tracks.AUTHORITY + "=?," +
+            IndexSchema.Tracks.TRACK_NAME + "=?," +
+            IndexSchema.Tracks.TRACK_KEY + "=?," +
+            IndexSchema.Tracks.ARTIST_NAME + "=?," +
+            IndexSchema.Tracks.ARTIST_KEY + "=?," + //6
+            IndexSchema.Tracks.ALBUM_NAME + "=?," +
+            IndexSchema.Tracks.ALBUM_KEY + "=?," +
+            IndexSchema.Tracks.ALBUM_ARTIST_NAME + "=?," +
+            IndexSchema.Tracks.ALBUM_ARTIST_KEY + "=?," + //10
+            IndexSchema.Tracks.TRACK_NUMBER + "=?," +
+            IndexSchema.Tracks.DISC_NUMBER + "=?," +
+            IndexSchema.Tracks.COMPILATION + "=?," +
+            IndexSchema.Tracks.GENRE + "=?," +
+            IndexSchema.Tracks.GENRE_KEY + "=?," + //15
+            IndexSchema.Tracks.ARTWORK_URI + "=?," +
+            IndexSchema.Tracks.RES_URI + "=?," +
+            IndexSchema.Tracks.RES_HEADERS + "=?," +
+            IndexSchema.Tracks.RES_SIZE + "=?," +
+            IndexSchema.Tracks.RES_MIME_TYPE + "=?," + //20
+            IndexSchema.Tracks.RES_BITRATE + "=?," +
+            IndexSchema.Tracks.RES_LAST_MOD + "=?," +
+            IndexSchema.Tracks.RES_DURATION + "=?," +
+            IndexSchema.Tracks.DATE_ADDED + "=?" +
+            " WHERE " + IndexSchema.Tracks._ID + "=?"; //25
+    static final String tracksIdSql = "SELECT " + IndexSchema.Tracks._ID + " FROM " +
+            IndexSchema.Tracks.TABLE + " WHERE " + IndexSchema.Tracks.URI + "=?";
+    static final String deleteTrackSql = "DELETE FROM " + IndexSchema.Tracks.TABLE +
+            " WHERE " + IndexSchema.Tracks._ID + "=?";
+    static final String insertTrackMetaSql = "INSERT INTO " + IndexSchema.Meta.Track.TABLE + " (" +
+            IndexSchema.Meta.Track.TRACK_ID + "," +
+            IndexSchema.Meta.Track.ARTIST_ID + "," +
+            IndexSchema.Meta.Track.ALBUM_ID + "," +
+            IndexSchema.Meta.Track.GENRE_ID + "," +
+            IndexSchema.Meta.Track.TRACK_NAME + "," +
+            IndexSchema.Meta.Track.TRACK_KEY + "," + //6
+            IndexSchema.Meta.Track.TRACK_NUMBER + "," +
+            IndexSchema.Meta.Track.DISC_NUMBER + "," +
+            IndexSchema.Meta.Track.COMPILATION + "," +
+            IndexSchema.Meta.Track.MIME_TYPE + "," + //10
+            IndexSchema.Meta.Track.BITRATE + "," +
+            IndexSchema.Meta.Track.DURATION + //12
+            ") VALUES (?,?,?,?,?,?,?,?,?,?,?,?)";
+
+    /**
+     * Compiled statements reused for every track in a batch
+     */
+    static class TrackStatements {
+        final SQLiteStatement insertTrack;
+        final SQLiteStatement updateTrack;
+        final SQLiteStatement trackId;
+        final SQLiteStatement insertMeta;
+        final SQLiteStatement deleteTrack;
+        //id of the row the last insertTrackLocked created, -1 if it updated an existing one
+        long newTrackId = -1;
+
+        TrackStatements(SQLiteDatabase db) {
+            insertTrack = db.compileStatement(insertTracksSql);
+            updateTrack = db.compileStatement(updateTracksSql);
+            trackId = db.compileStatement(tracksIdSql);
+            insertMeta = db.compileStatement(insertTrackMetaSql);
+            deleteTrack = db.compileStatement(deleteTrackSql);
+        }
+
+        void close() {
+            insertTrack.close();
+            updateTrack.close();
+            trackId.close();
+            insertMeta.close();
+            deleteTrack.close();
+        }
+    }
+
+    @Override
+    public long[] insertTracks(List<Pair<Track, Metadata>> tracks) {
+        final long[] ids = new long[tracks.size()];
+        Arrays.fill(ids, -1);
+        if (tracks.isEmpty()) {
+            return ids;
+        }
+        boolean success = false;
+        mLock.writeLock().lock();
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        TrackStatements stmts = null;
+        try {
+            stmts = new TrackStatements(db);
+            int ii = 0;
+            for (Pair<Track, Metadata> pair : tracks) {
+                long id;
+                try {
+                    id = insertTrackLocked(pair.first, pair.second, stmts);
+                } catch (SQLException e) {
+                    //only this statement was aborted, the rest of the batch is still good
+                    Timber.e(e, "Unable to insert track %s", pair.first.getUri());
+                    id = -1;
+                }
+                if (id < 0) {
+                    discardNewTrackLocked(stmts);
+                }
+                ids[ii++] = id;
+            }
+            db.setTransactionSuccessful();
+            success = true;
+        } finally {
+            if (stmts != null) {
+                stmts.close();
+            }
+            db.endTransaction();
+            mLock.writeLock().unlock();
+            if (!success) {
+                //the id caches may reference rows that were rolled back
+                clearCaches();
+            }
+        }
+        return ids;
+    }
 
-        final long trackId = insertTrack(track);
+    /**
+     * Removes the raw track row if the failed track was a new one, so it doesn't linger without metadata
+     */
+    void discardNewTrackLocked(TrackStatements stmts) {
+        if (stmts.newTrackId > 0) {
+            try {
+                stmts.deleteTrack.bindLong(1, stmts.newTrackId);
+                stmts.deleteTrack.executeUpdateDelete();
+            } catch (SQLException e) {
+                Timber.e(e, "Unable to remove track %d", stmts.newTrackId);
+            }
+            stmts.newTrackId = -1;
+        }
+    }
+
+    long insertTrackLocked(Track track, Metadata metadata, TrackStatements stmts) {
+        final long trackId = insertTrackLocked(track, stmts);
         if (trackId < 0) {
             Timber.e("Unable to insert raw track %s", track);
             return -1;
         }
-        cv.put(IndexSchema.Meta.Track.TRACK_ID, trackId);
 
         final String authority = track.getUri().getAuthority();
 
@@ -1350,7 +1837,6 @@ public class IndexDatabaseImpl implements IndexDatabase {
             Timber.e("Unable to insert artist %s", artistName);
             return -1;
         }
-        cv.put(IndexSchema.Meta.Track.ARTIST_ID, artistId);
 
         final String albumArtistName = coalesceOrUnknown(metadata.getString(Metadata.KEY_ALBUM_ARTIST_NAME), track.getAlbumArtistName());
         final String albumName = coalesceOrUnknown(metadata.getString(Metadata.KEY_ALBUM_NAME), track.getAlbumName());
@@ -1359,7 +1845,6 @@ public class IndexDatabaseImpl implements IndexDatabase {
             Timber.e("Unable to insert album %s by %s", albumName, albumArtistName);
             return -1;
         }
-        cv.put(IndexSchema.Meta.Track.ALBUM_ID, albumId);
 
         String genreName = coalesce(metadata.getString(Metadata.KEY_GENRE_NAME), track.getGenre());
         if (StringUtils.isEmpty(genreName)) {
@@ -1370,47 +1855,166 @@ public class IndexDatabaseImpl implements IndexDatabase {
             Timber.e("Unable to insert genre %s", genreName);
             return -1;
         }
-        cv.put(IndexSchema.Meta.Track.GENRE_ID, genreId);
 
+        final SQLiteStatement stmt = stmts.insertMeta;
+        stmt.clearBindings();
+        stmt.bindLong(1, trackId);
+        stmt.bindLong(2, artistId);
+        stmt.bindLong(3, albumId);
+        stmt.bindLong(4, genreId);
         String trackName = coalesce(metadata.getString(Metadata.KEY_TRACK_NAME), track.getName());
         if (!StringUtils.isEmpty(trackName)) {
-            cv.put(IndexSchema.Meta.Track.TRACK_NAME, trackName);
-            cv.put(IndexSchema.Meta.Track.TRACK_KEY, keyFor(trackName));
+            stmt.bindString(5, trackName);
+            stmt.bindString(6, keyFor(trackName));
         }
-
         int trackNum = metadata.getInt(Metadata.KEY_TRACK_NUMBER);
         if (trackNum > 0) {
-            cv.put(IndexSchema.Meta.Track.TRACK_NUMBER, trackNum);
+            stmt.bindLong(7, trackNum);
         }
-
         int discNum = metadata.getInt(Metadata.KEY_DISC_NUMBER);
         if (discNum > 0) {
-            cv.put(IndexSchema.Meta.Track.DISC_NUMBER, discNum);
+            stmt.bindLong(8, discNum);
         }
-
         int compilation = metadata.getInt(Metadata.KEY_IS_COMPILATION);
         if (compilation >= 0) {
-            cv.put(IndexSchema.Meta.Track.COMPILATION, compilation);
+            stmt.bindLong(9, compilation);
         }
-
         String mime = metadata.getString(Metadata.KEY_MIME_TYPE);
         if (!StringUtils.isEmpty(mime)) {
-            cv.put(IndexSchema.Meta.Track.MIME_TYPE, mime);
+            stmt.bindString(10, mime);
         }
-
         long bitrate = metadata.getLong(Metadata.KEY_BITRATE);
         if (bitrate > 0) {
-            cv.put(IndexSchema.Meta.Track.BITRATE, bitrate);
+            stmt.bindLong(11, bitrate);
         }
         long duration = metadata.getLong(Metadata.KEY_DURATION);
         if (duration > 0) {
-            cv.put(IndexSchema.Meta.Track.DURATION, duration);
+            stmt.bindLong(12, duration);
         }
 
-        long id = insert(IndexSchema.Meta.Track.TABLE, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+        long id = stmt.executeInsert();
         if (id > 0) {
-            cv.remove(IndexSchema.Meta.Track.TRACK_KEY);
-            Timber.v("Inserted track metadata %s", cv.toString());
+            Timber.v("Inserted track metadata %s for %s", id, track.getUri());
+        }
+        return id;
+    }
+
+    /**
+     * Binds the track to the first 24 args of the insert/update statements
+     */
+    static void bindTrack(SQLiteStatement stmt, Track track, long containerId) {
+        stmt.clearBindings();
+        stmt.bindLong(1, containerId);
+        bindStringOrNull(stmt, 2, track.getUri().getAuthority());
+        String name = track.getName();
+        if (name != null) {
+            stmt.bindString(3, name);
+            stmt.bindString(4, keyFor(name));
+        }
+        String artistName = track.getArtistName();
+        if (!StringUtils.isEmpty(artistName)) {
+            stmt.bindString(5, artistName);
+            stmt.bindString(6, keyFor(artistName));
+        }
+        String albumName = track.getAlbumName();
+        if (!StringUtils.isEmpty(albumName)) {
+            stmt.bindString(7, albumName);
+            stmt.bindString(8, keyFor(albumName));
+        }
+        String albumArtistName = track.getAlbumArtistName();
+        if (!StringUtils.isEmpty(albumArtistName)) {
+            stmt.bindString(9, albumArtistName);
+            stmt.bindString(10, keyFor(albumArtistName));
+        }
+        int trackNum = track.getTrackNumber();
+        if (trackNum > 0) {
+            stmt.bindLong(11, trackNum);
+        }
+        int discNum = track.getDiscNumber();
+        if (discNum > 0) {
+            stmt.bindLong(12, discNum);
+        }
+        stmt.bindLong(13, track.isCompilation() ? 1 : 0);
+        String genre = track.getGenre();
+        if (!StringUtils.isEmpty(genre)) {
+            stmt.bindString(14, genre);
+            stmt.bindString(15, keyFor(genre));
+        }
+        Uri artworkUri = track.getArtworkUri();
+        if (artworkUri != null && !Uri.EMPTY.equals(artworkUri)) {
+            stmt.bindString(16, artworkUri.toString());
+        }
+        Track.Res res = track.getResources().get(0);
+        stmt.bindString(17, res.getUri().toString());
+        Map<String,String> headers = res.getHeaders();
+        if (!headers.isEmpty()) {
+            StringBuilder sb = new StringBuilder(10);
+            for (Map.Entry<String,String> entry : headers.entrySet()) {
+                sb.append(entry.getKey()).append(":").append(entry.getValue()).append("\n");
+            }
+            stmt.bindString(18, sb.toString());
+        }
+        long size = res.getSize();
+        if (size > 0) {
+            stmt.bindLong(19, size);
+        }
+        String mime = res.getMimeType();
+        if (mime != null) {
+            stmt.bindString(20, mime);
+        }
+        long bitrate = res.getBitrate();
+        if (bitrate > 0) {
+            stmt.bindLong(21, bitrate);
+        }
+        long lastmod = res.getLastMod();
+        if (lastmod > 0) {
+            stmt.bindLong(22, lastmod);
+        }
+        long duration = res.getDuration();
+        if (duration > 0) {
+            stmt.bindLong(23, duration);
+        }
+        stmt.bindLong(24, System.currentTimeMillis());
+    }
+
+    static void bindStringOrNull(SQLiteStatement stmt, int index, String value) {
+        if (value != null) {
+            stmt.bindString(index, value);
+        } else {
+            stmt.bindNull(index);
+        }
+    }
+
+    long insertTrackLocked(Track track, TrackStatements stmts) {
+        stmts.newTrackId = -1;
+        long containerId = hasContainer(track.getParentUri());
+        if (containerId < 0) {
+            Timber.e("No container for track %s", track.getName());
+            return -1;
+        }
+        long id;
+        stmts.trackId.bindString(1, track.getUri().toString());
+        try {
+            id = stmts.trackId.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            id = -1;
+        }
+        if (id > 0) {
+            bindTrack(stmts.updateTrack, track, containerId);
+            stmts.updateTrack.bindLong(25, id);
+            if (stmts.updateTrack.executeUpdateDelete() != 1) {
+                Timber.e("Error updating track %s", track.getUri());
+            } else {
+                Timber.d("Updated track %s", track.getUri());
+            }
+        } else {
+            bindTrack(stmts.insertTrack, track, containerId);
+            stmts.insertTrack.bindString(25, track.getUri().toString());
+            id = stmts.insertTrack.executeInsert();
+            if (id > 0) {
+                stmts.newTrackId = id;
+                Timber.d("Inserted track %s", track.getUri());
+            }
         }
         return id;
     }
@@ -1544,16 +2148,15 @@ public class IndexDatabaseImpl implements IndexDatabase {
                     Timber.e("Unable to insert albumArtist %s", albumArtist);
                     return -1;
                 }
-                //try to populate from lastfm info
-                Metadata albumMeta = mLastFM.lookupAlbumInfo(albumArtist, album);
-                if (albumMeta == null) {
-                    //lookup failed, used bare minimum
-                    albumMeta = Metadata.builder()
-                            .putString(Metadata.KEY_ALBUM_NAME, album)
-                            .putString(Metadata.KEY_ARTIST_NAME, albumArtist)
-                            .build();
-                }
+                //insert the bare minimum, lastfm info is filled in later
+                Metadata albumMeta = Metadata.builder()
+                        .putString(Metadata.KEY_ALBUM_NAME, album)
+                        .putString(Metadata.KEY_ARTIST_NAME, albumArtist)
+                        .build();
                 id = insertAlbum(albumMeta, artistId, authority);
+                if (id > 0) {
+                    queueEnrichment(IndexSchema.EnrichmentQueue.KIND_ALBUM, id);
+                }
             }
             if (id > 0) {
                 synchronized (mAlbumIdsCache) {
@@ -1610,24 +2213,14 @@ public class IndexDatabaseImpl implements IndexDatabase {
             if (c != null && c.moveToFirst()) {
                 id = c.getLong(0);
             } else {
-                //try to populate from lastfm info
-                Metadata artistMeta = mLastFM.lookupArtistInfo(artist);
-                if (artistMeta == null) {
-                    //lookup failed, use bare minimum
-                    artistMeta = Metadata.builder()
-                            .putString(Metadata.KEY_ARTIST_NAME, artist)
-                            .build();
-                } else {
-                    String lfmname = artistMeta.getString(Metadata.KEY_ARTIST_NAME);
-                    if (StringUtils.equalsIgnoreCase(artist, lfmname)) {
-                        // unless we were auto corrected we will prefer our name
-                        // this is to preserve capitalization in CHVRCHES
-                        artistMeta = artistMeta.buildUpon()
-                                .putString(Metadata.KEY_ARTIST_NAME, artist)
-                                .build();
-                    }
-                }
+                //insert the bare minimum, lastfm info is filled in later
+                Metadata artistMeta = Metadata.builder()
+                        .putString(Metadata.KEY_ARTIST_NAME, artist)
+                        .build();
                 id = insertArtist(artistMeta, authority);
+                if (id > 0) {
+                    queueEnrichment(IndexSchema.EnrichmentQueue.KIND_ARTIST, id);
+                }
             }
             if (id > 0) {
                 synchronized (mArtistIdsCache) {
@@ -1718,6 +2311,101 @@ public class IndexDatabaseImpl implements IndexDatabase {
         return id;
     }
 
+    void queueEnrichment(int kind, long metaId) {
+        ContentValues cv = new ContentValues(2);
+        cv.put(IndexSchema.EnrichmentQueue.KIND, kind);
+        cv.put(IndexSchema.EnrichmentQueue.META_ID, metaId);
+        insert(IndexSchema.EnrichmentQueue.TABLE, null, cv, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    static final String[] pendingEnrichmentCols = new String[] {
+            IndexSchema.EnrichmentQueue._ID,
+            IndexSchema.EnrichmentQueue.KIND,
+            IndexSchema.EnrichmentQueue.META_ID,
+            IndexSchema.EnrichmentQueue.ATTEMPTS,
+            IndexSchema.EnrichmentQueue.NAME,
+            IndexSchema.EnrichmentQueue.ARTIST,
+    };
+    static final String pendingEnrichmentSel = IndexSchema.EnrichmentQueue.ATTEMPTS + "<?";
+
+    @Override
+    public List<PendingEnrichment> getPendingEnrichments(int maxAttempts, int limit) {
+        List<PendingEnrichment> lst = new ArrayList<>(limit);
+        Cursor c = null;
+        try {
+            mLock.readLock().lock();
+            c = helper.getReadableDatabase().query(IndexSchema.EnrichmentQueue.INFO_VIEW,
+                    pendingEnrichmentCols, pendingEnrichmentSel, new String[]{String.valueOf(maxAttempts)},
+                    null, null, IndexSchema.EnrichmentQueue.ATTEMPTS + "," + IndexSchema.EnrichmentQueue._ID,
+                    String.valueOf(limit));
+            if (c != null && c.moveToFirst()) {
+                do {
+                    lst.add(new PendingEnrichment(c.getLong(0), c.getInt(1), c.getLong(2),
+                            c.getInt(3), getStringOrNull(c, 4), getStringOrNull(c, 5)));
+                } while (c.moveToNext());
+            }
+        } finally {
+            closeCursor(c);
+            mLock.readLock().unlock();
+        }
+        return lst;
+    }
+
+    static final String enrichmentIdSel = IndexSchema.EnrichmentQueue._ID + "=?";
+
+    @Override
+    public int applyEnrichments(List<Pair<PendingEnrichment, Metadata>> results) {
+        int num = 0;
+        mLock.writeLock().lock();
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Pair<PendingEnrichment, Metadata> pair : results) {
+                final PendingEnrichment pending = pair.first;
+                final Metadata meta = pair.second;
+                final String[] queueArgs = new String[]{String.valueOf(pending.id)};
+                if (meta == null) {
+                    db.execSQL("UPDATE " + IndexSchema.EnrichmentQueue.TABLE + " SET " +
+                            IndexSchema.EnrichmentQueue.ATTEMPTS + "=" +
+                            IndexSchema.EnrichmentQueue.ATTEMPTS + "+1 WHERE " +
+                            enrichmentIdSel, queueArgs);
+                    continue;
+                }
+                final ContentValues cv = new ContentValues(3);
+                final String table;
+                long lastMod = meta.getLong(Metadata.KEY_LAST_MODIFIED);
+                if (pending.isArtist()) {
+                    table = IndexSchema.Meta.Artist.TABLE;
+                    cv.put(IndexSchema.Meta.Artist.ARTIST_MBID, meta.getString(Metadata.KEY_ARTIST_MBID));
+                    String bioSummary = meta.getString(Metadata.KEY_ARTIST_SUMMARY);
+                    if (!StringUtils.isEmpty(bioSummary)) {
+                        cv.put(IndexSchema.Meta.Artist.ARTIST_BIO_SUMMARY, bioSummary);
+                        cv.put(IndexSchema.Meta.Artist.ARTIST_BIO_DATE_MOD, lastMod > 0 ? lastMod : System.currentTimeMillis());
+                    }
+                } else {
+                    table = IndexSchema.Meta.Album.TABLE;
+                    cv.put(IndexSchema.Meta.Album.ALBUM_MBID, meta.getString(Metadata.KEY_ALBUM_MBID));
+                    String bioSummary = meta.getString(Metadata.KEY_ALBUM_SUMMARY);
+                    if (!StringUtils.isEmpty(bioSummary)) {
+                        cv.put(IndexSchema.Meta.Album.ALBUM_BIO_SUMMARY, bioSummary);
+                        cv.put(IndexSchema.Meta.Album.ALBUM_BIO_DATE_MOD, lastMod > 0 ? lastMod : System.currentTimeMillis());
+                    }
+                }
+                num += db.updateWithOnConflict(table, cv, idSelection,
+                        new String[]{String.valueOf(pending.metaId)}, SQLiteDatabase.CONFLICT_IGNORE);
+                db.delete(IndexSchema.EnrichmentQueue.TABLE, enrichmentIdSel, queueArgs);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mLock.writeLock().unlock();
+        }
+        if (num > 0) {
+            notifyObservers();
+        }
+        return num;
+    }
+
     public long insertPlaylist(String name) {
         ContentValues cv = new ContentValues(5);
         cv.put(IndexSchema.Meta.Playlist.NAME, name);
@@ -2034,9 +2722,6 @@ public class IndexDatabaseImpl implements IndexDatabase {
     static final String[] textValCols = new String[] {
             IndexSchema.PlaybackSettings.TEXT_VALUE,
     };
-    static final String[] lastQueueListKey = new String[] {
-            IndexSchema.PlaybackSettings.KEY_LAST_QUEUE_LIST,
-    };
     static final String[] lastQueuePosKey = new String[] {
             IndexSchema.PlaybackSettings.KEY_LAST_QUEUE_POS,
     };
@@ -2046,6 +2731,9 @@ public class IndexDatabaseImpl implements IndexDatabase {
     static final String[] lastQueueShuffleKey = new String[] {
             IndexSchema.PlaybackSettings.KEY_LAST_QUEUE_SHUFFLE,
     };
+    static final String[] lastQueueShuffleOrderKey = new String[] {
+            IndexSchema.PlaybackSettings.KEY_LAST_QUEUE_SHUFFLE_ORDER,
+    };
     static final String[] lastSeekPosKey = new String[] {
             IndexSchema.PlaybackSettings.KEY_LAST_SEEK_POS,
     };
@@ -2055,40 +2743,215 @@ public class IndexDatabaseImpl implements IndexDatabase {
     static final String[] useMediaStyleNotif = new String[] {
             IndexSchema.PlaybackSettings.MEDIASTYLE_NOTIF,
     };
+    static final String[] crossfadeDurationKey = new String[] {
+            IndexSchema.PlaybackSettings.CROSSFADE_DURATION,
+    };
 
+    /**
+     * Journal entries we let pile up before folding them into the queue table
+     */
+    static final int QUEUE_JOURNAL_MAX = 64;
+
+    static final String[] queueCols = new String[] {
+            IndexSchema.PlaybackQueue.URI,
+    };
+    static final String[] queueJournalCols = new String[] {
+            IndexSchema.PlaybackQueueJournal.OP,
+            IndexSchema.PlaybackQueueJournal.POS,
+            IndexSchema.PlaybackQueueJournal.ARG,
+            IndexSchema.PlaybackQueueJournal.DATA,
+    };
+
+    @Override
     public List<Uri> getLastQueue() {
+        return getLastQueue(0, 0);
+    }
+
+    @Override
+    public List<Uri> getLastQueue(int offset, int limit) {
+        if (offset <= 0) {
+            //start of a restore, fold in any pending edits so we can page the table
+            compactQueue();
+        }
         Cursor c = null;
+        mLock.readLock().lock();
         try {
-            c = query(IndexSchema.PlaybackSettings.TABLE, textValCols,
-                    playbackSettingsSel, lastQueueListKey, null, null, null);
+            c = helper.getReadableDatabase().query(IndexSchema.PlaybackQueue.TABLE, queueCols,
+                    null, null, null, null, IndexSchema.PlaybackQueue.POS, limitClause(offset, limit));
             if (c != null && c.moveToFirst()) {
-                String q = c.getString(0);
-                if (!StringUtils.isEmpty(q)) {
-                    String[] strings = StringUtils.split(q, ',');
-                    List<Uri> lst = new ArrayList<>(strings.length);
-                    for (String s : strings) {
-                        lst.add(Uri.parse(s));
-                    }
-                    return lst;
-                }
+                List<Uri> lst = new ArrayList<>(c.getCount());
+                do {
+                    lst.add(Uri.parse(c.getString(0)));
+                } while (c.moveToNext());
+                return lst;
             }
         } finally {
             closeCursor(c);
+            mLock.readLock().unlock();
         }
         return Collections.emptyList();
     }
 
     @Override
     public void saveQueue(List<Uri> queue) {
-        if (queue != null && queue.size() > 0) {
-            ContentValues cv = new ContentValues(2);
-            cv.put(IndexSchema.PlaybackSettings.KEY, IndexSchema.PlaybackSettings.KEY_LAST_QUEUE_LIST);
-            String q = StringUtils.join(queue, ',');
-            cv.put(IndexSchema.PlaybackSettings.TEXT_VALUE, q);
-            insert(IndexSchema.PlaybackSettings.TABLE, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
-        } else {
-            delete(IndexSchema.PlaybackSettings.TABLE, playbackSettingsSel, lastQueueListKey);
+        mLock.writeLock().lock();
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(IndexSchema.PlaybackQueue.TABLE, null, null);
+            db.delete(IndexSchema.PlaybackQueueJournal.TABLE, null, null);
+            if (queue != null) {
+                insertQueueRowsLocked(db, queue, 0);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mLock.writeLock().unlock();
+        }
+    }
+
+    //pages of a queue being sent over several calls, nothing is written until the last one arrives
+    final ArrayList<Uri> mStagedQueue = new ArrayList<>();
+
+    @Override
+    public boolean saveQueue(List<Uri> page, int offset, int total) {
+        final List<Uri> queue;
+        synchronized (mStagedQueue) {
+            if (offset <= 0) {
+                mStagedQueue.clear();
+            } else if (offset != mStagedQueue.size()) {
+                Timber.e("Queue page at %d but have %d staged, dropping", offset, mStagedQueue.size());
+                mStagedQueue.clear();
+                return false;
+            }
+            if (page != null) {
+                mStagedQueue.addAll(page);
+            }
+            if (mStagedQueue.size() < total) {
+                return true;
+            }
+            queue = new ArrayList<>(mStagedQueue);
+            mStagedQueue.clear();
+            mStagedQueue.trimToSize();
+        }
+        //whole rewrite in one transaction so a crash can't leave half a queue
+        saveQueue(queue);
+        return true;
+    }
+
+    @Override
+    public void appendQueueOps(List<QueueOp> ops) {
+        if (ops == null || ops.isEmpty()) {
+            return;
+        }
+        long numEntries;
+        mLock.writeLock().lock();
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " +
+                    IndexSchema.PlaybackQueueJournal.TABLE + " (" +
+                    IndexSchema.PlaybackQueueJournal.OP + "," +
+                    IndexSchema.PlaybackQueueJournal.POS + "," +
+                    IndexSchema.PlaybackQueueJournal.ARG + "," +
+                    IndexSchema.PlaybackQueueJournal.DATA + ") VALUES (?,?,?,?)");
+            for (QueueOp op : ops) {
+                insert.clearBindings();
+                insert.bindLong(1, op.op);
+                insert.bindLong(2, op.pos);
+                insert.bindLong(3, op.to);
+                if (op.op == QueueOp.ADD) {
+                    insert.bindString(4, StringUtils.join(op.uris, ','));
+                } else if (op.op == QueueOp.REMOVE) {
+                    insert.bindString(4, StringUtils.join(op.positions, ','));
+                }
+                insert.executeInsert();
+            }
+            insert.close();
+            numEntries = DatabaseUtils.queryNumEntries(db, IndexSchema.PlaybackQueueJournal.TABLE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mLock.writeLock().unlock();
+        }
+        if (numEntries > QUEUE_JOURNAL_MAX) {
+            compactQueue();
+        }
+    }
+
+    /**
+     * Applies the journal to the queue table and clears it
+     */
+    void compactQueue() {
+        mLock.writeLock().lock();
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        Cursor c = null;
+        try {
+            c = db.query(IndexSchema.PlaybackQueueJournal.TABLE, queueJournalCols,
+                    null, null, null, null, IndexSchema.PlaybackQueueJournal._ID);
+            if (c == null || !c.moveToFirst()) {
+                return;
+            }
+            List<QueueOp> ops = new ArrayList<>(c.getCount());
+            do {
+                ops.add(readQueueOp(c));
+            } while (c.moveToNext());
+            closeCursor(c);
+            c = db.query(IndexSchema.PlaybackQueue.TABLE, queueCols,
+                    null, null, null, null, IndexSchema.PlaybackQueue.POS);
+            List<Uri> queue = new ArrayList<>(c != null ? c.getCount() : 0);
+            if (c != null && c.moveToFirst()) {
+                do {
+                    queue.add(Uri.parse(c.getString(0)));
+                } while (c.moveToNext());
+            }
+            for (QueueOp op : ops) {
+                op.apply(queue);
+            }
+            db.delete(IndexSchema.PlaybackQueue.TABLE, null, null);
+            db.delete(IndexSchema.PlaybackQueueJournal.TABLE, null, null);
+            insertQueueRowsLocked(db, queue, 0);
+            db.setTransactionSuccessful();
+            Timber.d("Compacted %d queue edits", ops.size());
+        } finally {
+            closeCursor(c);
+            db.endTransaction();
+            mLock.writeLock().unlock();
+        }
+    }
+
+    static void insertQueueRowsLocked(SQLiteDatabase db, List<Uri> queue, int offset) {
+        SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " +
+                IndexSchema.PlaybackQueue.TABLE + " (" +
+                IndexSchema.PlaybackQueue.POS + "," +
+                IndexSchema.PlaybackQueue.URI + ") VALUES (?,?)");
+        for (int ii=0; ii<queue.size(); ii++) {
+            insert.bindLong(1, offset + ii);
+            insert.bindString(2, queue.get(ii).toString());
+            insert.executeInsert();
+        }
+        insert.close();
+    }
+
+    static QueueOp readQueueOp(Cursor c) {
+        final int op = c.getInt(0);
+        final String data = c.getString(3);
+        final String[] parts = StringUtils.isEmpty(data) ? new String[0] : StringUtils.split(data, ',');
+        List<Uri> uris = Collections.emptyList();
+        int[] positions = new int[0];
+        if (op == QueueOp.ADD) {
+            uris = new ArrayList<>(parts.length);
+            for (String s : parts) {
+                uris.add(Uri.parse(s));
+            }
+        } else if (op == QueueOp.REMOVE) {
+            positions = new int[parts.length];
+            for (int ii=0; ii<parts.length; ii++) {
+                positions[ii] = Integer.parseInt(parts[ii]);
+            }
         }
+        return new QueueOp(op, c.getInt(1), c.getInt(2), uris, positions);
     }
 
     @Override
@@ -2145,6 +3008,43 @@ public class IndexDatabaseImpl implements IndexDatabase {
         }
     }
 
+    @Override
+    public int[] getLastQueueShuffleOrder() {
+        Cursor c = null;
+        try {
+            c = query(IndexSchema.PlaybackSettings.TABLE, textValCols,
+                    playbackSettingsSel, lastQueueShuffleOrderKey, null, null, null);
+            if (c != null && c.moveToFirst()) {
+                String o = c.getString(0);
+                if (!StringUtils.isEmpty(o)) {
+                    String[] strings = StringUtils.split(o, ',');
+                    int[] order = new int[strings.length];
+                    for (int ii=0; ii<strings.length; ii++) {
+                        order[ii] = Integer.parseInt(strings[ii]);
+                    }
+                    return order;
+                }
+            }
+        } catch (NumberFormatException e) {
+            Timber.w(e, "Bad shuffle order");
+        } finally {
+            closeCursor(c);
+        }
+        return null;
+    }
+
+    @Override
+    public void saveQueueShuffleOrder(int[] order) {
+        if (order != null && order.length > 0) {
+            ContentValues cv = new ContentValues(2);
+            cv.put(IndexSchema.PlaybackSettings.KEY, IndexSchema.PlaybackSettings.KEY_LAST_QUEUE_SHUFFLE_ORDER);
+            cv.put(IndexSchema.PlaybackSettings.TEXT_VALUE, StringUtils.join(order, ','));
+            insert(IndexSchema.PlaybackSettings.TABLE, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+        } else {
+            delete(IndexSchema.PlaybackSettings.TABLE, playbackSettingsSel, lastQueueShuffleOrderKey);
+        }
+    }
+
     @Override
     public int getLastQueueRepeatMode() {
         Cursor c = null;
@@ -2245,6 +3145,29 @@ public class IndexDatabaseImpl implements IndexDatabase {
         insert(IndexSchema.PlaybackSettings.TABLE, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
     }
 
+    @Override
+    public int getCrossfadeDuration() {
+        Cursor c = null;
+        try {
+            c = query(IndexSchema.PlaybackSettings.TABLE, intValCols,
+                    playbackSettingsSel, crossfadeDurationKey, null, null, null);
+            if (c != null && c.moveToFirst()) {
+                return Math.max(getIntOrNeg(c, 0), 0);
+            }
+        } finally {
+            closeCursor(c);
+        }
+        return 0;
+    }
+
+    @Override
+    public void setCrossfadeDuration(int millis) {
+        ContentValues cv = new ContentValues(2);
+        cv.put(IndexSchema.PlaybackSettings.KEY, IndexSchema.PlaybackSettings.CROSSFADE_DURATION);
+        cv.put(IndexSchema.PlaybackSettings.INT_VALUE, Math.max(millis, 0));
+        insert(IndexSchema.PlaybackSettings.TABLE, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
     static String coalesce(String string1, String string2) {
         return !StringUtils.isEmpty(string1) ? string1 : string2;
     }
@@ -210,6 +210,7 @@ public class IndexSchema {
         String PARENT_URI = "parent_uri";
         String AUTHORITY = "authority";
         String IN_ERROR = "in_error";
+        String CHANGE_STAMP = "change_stamp";
     }
 
     public interface Tracks extends BaseColumns {
@@ -241,12 +242,62 @@ public class IndexSchema {
         String DATE_ADDED = "date_added";
     }
 
+    public interface EnrichmentQueue extends BaseColumns {
+        String TABLE = "enrichment_queue";
+        String INFO_VIEW = "enrichment_queue_info";
+        String KIND = "kind";
+        String META_ID = "meta_id";
+        String ATTEMPTS = "attempts";
+        //view only
+        String NAME = "name";
+        String ARTIST = "artist";
+
+        int KIND_ARTIST = 0;
+        int KIND_ALBUM = 1;
+    }
+
+    /**
+     * FTS4 tables over the meta names, docid is the _id of the meta row
+     */
+    public interface Search {
+        String ARTIST_TABLE = "artist_search";
+        String ALBUM_TABLE = "album_search";
+        String GENRE_TABLE = "genre_search";
+        String TRACK_TABLE = "track_search";
+        String DOCID = "docid";
+        String NAME = "name";
+        //track only
+        String ARTIST = "artist";
+        String ALBUM = "album";
+    }
+
+    /**
+     * Saved playback queue, one row per position
+     */
+    public interface PlaybackQueue {
+        String TABLE = "playback_queue";
+        String POS = "pos";
+        String URI = "uri";
+    }
+
+    /**
+     * Edits made to the playback queue since it was last compacted, applied in _id order
+     */
+    public interface PlaybackQueueJournal extends BaseColumns {
+        String TABLE = "playback_queue_journal";
+        String OP = "op";
+        String POS = "pos";
+        String ARG = "arg";
+        //comma separated uris for add, positions for remove
+        String DATA = "data";
+    }
+
     public interface PlaybackSettings {
         String TABLE = "playback_settings";
         String KEY = "key";
         String INT_VALUE = "intVal";
         String TEXT_VALUE = "textVal";
-        //TEXT
+        //TEXT, only read to migrate to PlaybackQueue
         String KEY_LAST_QUEUE_LIST = "last_queue_list";
         //INT
         String KEY_LAST_QUEUE_POS = "last_queue_pos";
@@ -254,12 +305,16 @@ public class IndexSchema {
         String KEY_LAST_QUEUE_REPEAT = "last_queue_repeat";
         //INT
         String KEY_LAST_QUEUE_SHUFFLE = "last_queue_shuffle";
+        //TEXT
+        String KEY_LAST_QUEUE_SHUFFLE_ORDER = "last_queue_shuffle_order";
         //LONG
         String KEY_LAST_SEEK_POS = "last_seek_pos";
         //INT
         String BROADCAST_META = "broadcast_meta";
         //INT
         String MEDIASTYLE_NOTIF = "mediastyle_notif";
+        //INT millis
+        String CROSSFADE_DURATION = "crossfade_duration";
     }
 
 }
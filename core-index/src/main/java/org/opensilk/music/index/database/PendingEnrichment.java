@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.index.database;
+
+/**
+ * An artist or album inserted by the scanner that is still waiting on lastfm info.
+ *
+ * Created by drew on 12/2/15.
+ */
+public class PendingEnrichment {
+    public final long id;
+    public final int kind;
+    public final long metaId;
+    public final int attempts;
+    /** artist or album name */
+    public final String name;
+    /** album artist, null for artists */
+    public final String artist;
+
+    public PendingEnrichment(long id, int kind, long metaId, int attempts, String name, String artist) {
+        this.id = id;
+        this.kind = kind;
+        this.metaId = metaId;
+        this.attempts = attempts;
+        this.name = name;
+        this.artist = artist;
+    }
+
+    public boolean isArtist() {
+        return kind == IndexSchema.EnrichmentQueue.KIND_ARTIST;
+    }
+
+    public boolean isAlbum() {
+        return kind == IndexSchema.EnrichmentQueue.KIND_ALBUM;
+    }
+}
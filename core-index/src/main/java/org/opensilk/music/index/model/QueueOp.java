@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.index.model;
+
+import android.net.Uri;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single edit to the playback queue, saved to the queue journal so we don't have to
+ * rewrite the whole queue every time it changes.
+ *
+ * Created by drew on 12/9/15.
+ */
+public class QueueOp implements Parcelable {
+
+    public static final int ADD = 1;
+    public static final int REMOVE = 2;
+    public static final int MOVE = 3;
+
+    /**
+     * One of {@link #ADD}, {@link #REMOVE}, {@link #MOVE}
+     */
+    public final int op;
+    /**
+     * Insert position for add, from position for move
+     */
+    public final int pos;
+    /**
+     * To position for move
+     */
+    public final int to;
+    /**
+     * Added uris
+     */
+    public final List<Uri> uris;
+    /**
+     * Removed positions, ascending
+     */
+    public final int[] positions;
+
+    public QueueOp(int op, int pos, int to, List<Uri> uris, int[] positions) {
+        this.op = op;
+        this.pos = pos;
+        this.to = to;
+        this.uris = uris;
+        this.positions = positions;
+    }
+
+    public static QueueOp add(int pos, List<Uri> uris) {
+        return new QueueOp(ADD, pos, -1, new ArrayList<>(uris), new int[0]);
+    }
+
+    public static QueueOp remove(int[] positions) {
+        return new QueueOp(REMOVE, -1, -1, Collections.<Uri>emptyList(), positions);
+    }
+
+    public static QueueOp move(int from, int to) {
+        return new QueueOp(MOVE, from, to, Collections.<Uri>emptyList(), new int[0]);
+    }
+
+    /**
+     * Applies the edit to the list
+     */
+    public void apply(List<Uri> list) {
+        switch (op) {
+            case ADD: {
+                list.addAll(Math.max(0, Math.min(pos, list.size())), uris);
+                break;
+            }
+            case REMOVE: {
+                //single pass so removing lots of positions stays linear
+                int write = 0;
+                int ri = 0;
+                for (int read=0; read<list.size(); read++) {
+                    if (ri < positions.length && positions[ri] == read) {
+                        ri++;
+                    } else {
+                        list.set(write++, list.get(read));
+                    }
+                }
+                list.subList(write, list.size()).clear();
+                break;
+            }
+            case MOVE: {
+                if (pos >= 0 && pos < list.size()) {
+                    Uri uri = list.remove(pos);
+                    list.add(Math.max(0, Math.min(to, list.size())), uri);
+                }
+                break;
+            }
+        }
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(op);
+        dest.writeInt(pos);
+        dest.writeInt(to);
+        dest.writeTypedList(uris);
+        dest.writeIntArray(positions);
+    }
+
+    private static QueueOp readParcel(Parcel in) {
+        int op = in.readInt();
+        int pos = in.readInt();
+        int to = in.readInt();
+        List<Uri> uris = in.createTypedArrayList(Uri.CREATOR);
+        int[] positions = in.createIntArray();
+        return new QueueOp(op, pos, to, uris, positions);
+    }
+
+    public static final Creator<QueueOp> CREATOR = new Creator<QueueOp>() {
+        @Override
+        public QueueOp createFromParcel(Parcel source) {
+            return readParcel(source);
+        }
+
+        @Override
+        public QueueOp[] newArray(int size) {
+            return new QueueOp[size];
+        }
+    };
+
+}
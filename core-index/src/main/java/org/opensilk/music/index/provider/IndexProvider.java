@@ -19,6 +19,7 @@ package org.opensilk.music.index.provider;
 
 import android.content.Intent;
 import android.content.UriMatcher;
+import android.database.SQLException;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.IBinder;
@@ -31,6 +32,7 @@ import org.opensilk.common.core.util.BundleHelper;
 import org.opensilk.music.index.IndexComponent;
 import org.opensilk.music.index.database.IndexDatabase;
 import org.opensilk.music.index.model.BioContent;
+import org.opensilk.music.index.model.QueueOp;
 import org.opensilk.music.index.model.SimilarArtist;
 import org.opensilk.music.index.scanner.ScannerService;
 import org.opensilk.music.library.LibraryConfig;
@@ -91,6 +93,7 @@ import static org.opensilk.music.index.provider.IndexUris.M_GENRE_DETAILS;
 import static org.opensilk.music.index.provider.IndexUris.M_GENRE_TRACKS;
 import static org.opensilk.music.index.provider.IndexUris.M_PLAYLISTS;
 import static org.opensilk.music.index.provider.IndexUris.M_PLAYLIST_TRACKS;
+import static org.opensilk.music.index.provider.IndexUris.M_SEARCH;
 import static org.opensilk.music.index.provider.IndexUris.M_TRACKS;
 import static org.opensilk.music.index.provider.IndexUris.makeMatcher;
 
@@ -99,6 +102,9 @@ import static org.opensilk.music.index.provider.IndexUris.makeMatcher;
  */
 public class IndexProvider extends LibraryProvider implements PlaylistLibraryAddOn.Handler, GalleryLibraryAddOn.Handler {
 
+    //max results of each kind
+    static final int SEARCH_LIMIT = 50;
+
     @Inject @Named("IndexProviderAuthority") String mAuthority;
     @Inject IndexDatabase mDataBase;
     @Inject LastFMHelper mLastFmH;
@@ -155,7 +161,9 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 return reply.putOk(numremoved > 0).get();
             }
             case Methods.LAST_QUEUE_LIST: {
-                final List<Uri> queue = mDataBase.getLastQueue();
+                //int is the offset, int2 the page size
+                final List<Uri> queue = mDataBase.getLastQueue(
+                        BundleHelper.getInt(extras), BundleHelper.getInt2(extras));
                 if (queue.isEmpty()) {
                     return reply.putOk(false).get();
                 } else {
@@ -190,9 +198,32 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                             .putInt(shuf).get();
                 }
             }
+            case Methods.LAST_QUEUE_SHUFFLE_ORDER: {
+                final int[] order = mDataBase.getLastQueueShuffleOrder();
+                if (order == null) {
+                    return reply.putOk(false).get();
+                } else {
+                    return BundleHelper.from(reply.putOk(true).get())
+                            .putIntArray(order).get();
+                }
+            }
             case Methods.SAVE_QUEUE_LIST: {
-                mDataBase.saveQueue(BundleHelper.<Uri>getList(extras));
-                return reply.putOk(true).get();
+                try {
+                    return reply.putOk(mDataBase.saveQueue(BundleHelper.<Uri>getList(extras),
+                            BundleHelper.getInt(extras), BundleHelper.getInt2(extras))).get();
+                } catch (SQLException e) {
+                    Timber.e(e, "saveQueue");
+                    return reply.putOk(false).get();
+                }
+            }
+            case Methods.APPEND_QUEUE_OPS: {
+                try {
+                    mDataBase.appendQueueOps(BundleHelper.<QueueOp>getList(extras));
+                    return reply.putOk(true).get();
+                } catch (SQLException e) {
+                    Timber.e(e, "appendQueueOps");
+                    return reply.putOk(false).get();
+                }
             }
             case Methods.SAVE_QUEUE_POSITION: {
                 mDataBase.saveQueuePosition(BundleHelper.getInt(extras));
@@ -206,6 +237,10 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 mDataBase.saveQueueShuffleMode(BundleHelper.getInt(extras));
                 return reply.putOk(true).get();
             }
+            case Methods.SAVE_QUEUE_SHUFFLE_ORDER: {
+                mDataBase.saveQueueShuffleOrder(BundleHelper.getIntArray(extras));
+                return reply.putOk(true).get();
+            }
             case Methods.LAST_SEEK_POSITION: {
                 final long pos = mDataBase.getLastSeekPosition();
                 if (pos < 0) {
@@ -237,6 +272,14 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 mDataBase.setUseMediaStyleNotif(BundleHelper.getInt(extras) == 1);
                 return reply.putOk(true).get();
             }
+            case Methods.GET_CROSSFADE_DURATION: {
+                return BundleHelper.from(reply.putOk(true).get())
+                        .putInt(mDataBase.getCrossfadeDuration()).get();
+            }
+            case Methods.SAVE_CROSSFADE_DURATION: {
+                mDataBase.setCrossfadeDuration(BundleHelper.getInt(extras));
+                return reply.putOk(true).get();
+            }
             case Methods.GET_TRACK: {
                 Track track = mDataBase.getTrack(BundleHelper.getUri(extras));
                 if (track == null) {
@@ -319,18 +362,19 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
     protected void listObjsInternal(Uri uri, final IBinder binder, final Bundle args) {
         switch (mUriMatcher.match(uri)) {
             case M_ALBUMS: {
-                final BundleableSubscriber<Album> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Album> subscriber = newSubscriber(binder, args);
                 Subscription s = availableLibrariesObservable()
                         .map(new Func1<String[], List<Album>>() {
                             @Override
                             public List<Album> call(String[] strings) {
-                                return mDataBase.getAlbums(LibraryExtras.getSortOrder(args), strings);
+                                return mDataBase.getAlbums(LibraryExtras.getSortOrder(args), strings,
+                                        LibraryExtras.getOffset(args), LibraryExtras.getLimit(args));
                             }
                         }).subscribe(subscriber);
                 break;
             }
             case M_ALBUM_TRACKS: {
-                final BundleableSubscriber<Track> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Track> subscriber = newSubscriber(binder, args);
                 List<String> segments = uri.getPathSegments();
                 String id = segments.get(segments.size() - 2);
                 final List<Track> lst = mDataBase.getAlbumTracks(id, LibraryExtras.getSortOrder(args));
@@ -341,7 +385,7 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 break;
             }
             case M_ALBUM_DETAILS: {
-                final BundleableSubscriber<Model> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Model> subscriber = newSubscriber(binder, args);
                 List<String> segments = uri.getPathSegments();
                 String id = segments.get(segments.size() - 2);
                 final List<Model> lst = mDataBase.getAlbumDetails(id, LibraryExtras.getSortOrder(args));
@@ -352,29 +396,31 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 break;
             }
             case M_ARTISTS: {
-                final BundleableSubscriber<Artist> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Artist> subscriber = newSubscriber(binder, args);
                 Subscription s = availableLibrariesObservable()
                         .map(new Func1<String[], List<Artist>>() {
                             @Override
                             public List<Artist> call(String[] strings) {
-                                return mDataBase.getArtists(LibraryExtras.getSortOrder(args), strings);
+                                return mDataBase.getArtists(LibraryExtras.getSortOrder(args), strings,
+                                        LibraryExtras.getOffset(args), LibraryExtras.getLimit(args));
                             }
                         }).subscribe(subscriber);
                 break;
             }
             case M_ALBUM_ARTISTS: {
-                final BundleableSubscriber<Artist> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Artist> subscriber = newSubscriber(binder, args);
                 Subscription s = availableLibrariesObservable()
                         .map(new Func1<String[], List<Artist>>() {
                             @Override
                             public List<Artist> call(String[] strings) {
-                                return mDataBase.getAlbumArtists(LibraryExtras.getSortOrder(args), strings);
+                                return mDataBase.getAlbumArtists(LibraryExtras.getSortOrder(args), strings,
+                                        LibraryExtras.getOffset(args), LibraryExtras.getLimit(args));
                             }
                         }).subscribe(subscriber);
                 break;
             }
             case M_ARTIST_ALBUMS: {
-                final BundleableSubscriber<Album> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Album> subscriber = newSubscriber(binder, args);
                 List<String> segments = uri.getPathSegments();
                 String id = segments.get(segments.size() - 2);
                 final List<Album> lst = mDataBase.getArtistAlbums(id, LibraryExtras.getSortOrder(args));
@@ -385,7 +431,7 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 break;
             }
             case M_ARTIST_DETAILS: {
-                final BundleableSubscriber<Model> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Model> subscriber = newSubscriber(binder, args);
                 List<String> segments = uri.getPathSegments();
                 String id = segments.get(segments.size() - 2);
                 final List<Model> lst = mDataBase.getArtistDetails(id, LibraryExtras.getSortOrder(args));
@@ -396,10 +442,11 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 break;
             }
             case M_ARTIST_TRACKS: {
-                final BundleableSubscriber<Track> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Track> subscriber = newSubscriber(binder, args);
                 List<String> segments = uri.getPathSegments();
                 String id = segments.get(segments.size() - 2);
-                final List<Track> lst = mDataBase.getArtistTracks(id, LibraryExtras.getSortOrder(args));
+                final List<Track> lst = mDataBase.getArtistTracks(id, LibraryExtras.getSortOrder(args),
+                        LibraryExtras.getOffset(args), LibraryExtras.getLimit(args));
                 if (!subscriber.isUnsubscribed()) {
                     subscriber.onNext(lst);
                     subscriber.onCompleted();
@@ -407,18 +454,19 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 break;
             }
             case M_TRACKS: {
-                final BundleableSubscriber<Track> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Track> subscriber = newSubscriber(binder, args);
                 Subscription s = availableLibrariesObservable()
                         .map(new Func1<String[], List<Track>>() {
                             @Override
                             public List<Track> call(String[] strings) {
-                                return mDataBase.getTracks(LibraryExtras.getSortOrder(args), strings);
+                                return mDataBase.getTracks(LibraryExtras.getSortOrder(args), strings,
+                                        LibraryExtras.getOffset(args), LibraryExtras.getLimit(args));
                             }
                         }).subscribe(subscriber);
                 break;
             }
             case M_GENRES: {
-                final BundleableSubscriber<Genre> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Genre> subscriber = newSubscriber(binder, args);
                 Subscription s = availableLibrariesObservable()
                         .map(new Func1<String[], List<Genre>>() {
                             @Override
@@ -429,7 +477,7 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 break;
             }
             case M_GENRE_DETAILS: {
-                final BundleableSubscriber<Model> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Model> subscriber = newSubscriber(binder, args);
                 List<String> segments = uri.getPathSegments();
                 String id = segments.get(segments.size() - 2);
                 final List<Model> lst = mDataBase.getGenreDetails(id, LibraryExtras.getSortOrder(args));
@@ -440,7 +488,7 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 break;
             }
             case M_GENRE_ALBUMS: {
-                final BundleableSubscriber<Album> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Album> subscriber = newSubscriber(binder, args);
                 List<String> segments = uri.getPathSegments();
                 String id = segments.get(segments.size() - 2);
                 final List<Album> lst = mDataBase.getGenreAlbums(id, LibraryExtras.getSortOrder(args));
@@ -451,7 +499,7 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 break;
             }
             case M_GENRE_TRACKS: {
-                final BundleableSubscriber<Track> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Track> subscriber = newSubscriber(binder, args);
                 List<String> segments = uri.getPathSegments();
                 String id = segments.get(segments.size() - 2);
                 final List<Track> lst = mDataBase.getGenreTracks(id, LibraryExtras.getSortOrder(args));
@@ -462,7 +510,7 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 break;
             }
             case M_ALBUM_BIO: {
-                final BundleableSubscriber<Model> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Model> subscriber = newSubscriber(binder, args);
                 final String id = uri.getLastPathSegment();
                 final String mbid = mDataBase.getAlbumMbid(id);
                 if (StringUtils.isEmpty(mbid) && !subscriber.isUnsubscribed()) {
@@ -494,7 +542,7 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 break;
             }
             case M_ARTIST_BIO: {
-                final BundleableSubscriber<Model> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Model> subscriber = newSubscriber(binder, args);
                 final String id = uri.getLastPathSegment();
                 final String mbid = mDataBase.getArtistMbid(id);
                 if (StringUtils.isEmpty(mbid) && !subscriber.isUnsubscribed()) {
@@ -536,7 +584,7 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 break;
             }
             case M_PLAYLISTS: {
-                final BundleableSubscriber<Playlist> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Playlist> subscriber = newSubscriber(binder, args);
                 String sort = LibraryExtras.getSortOrder(args);
                 List<Playlist> list = mDataBase.getPlaylists(sort);
                 if (!subscriber.isUnsubscribed()) {
@@ -546,7 +594,7 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 break;
             }
             case M_PLAYLIST_TRACKS: {
-                final BundleableSubscriber<Track> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Track> subscriber = newSubscriber(binder, args);
                 List<String> segments = uri.getPathSegments();
                 String id = segments.get(segments.size() - 2);
                 String sort = LibraryExtras.getSortOrder(args);
@@ -557,8 +605,20 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                 }
                 break;
             }
+            case M_SEARCH: {
+                final BundleableSubscriber<Model> subscriber = newSubscriber(binder, args);
+                final String query = IndexUris.getSearchQuery(uri);
+                Subscription s = availableLibrariesObservable()
+                        .map(new Func1<String[], List<Model>>() {
+                            @Override
+                            public List<Model> call(String[] strings) {
+                                return mDataBase.search(query, SEARCH_LIMIT, strings);
+                            }
+                        }).subscribe(subscriber);
+                break;
+            }
             case M_FOLDERS: {
-                final BundleableSubscriber<Container> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Container> subscriber = newSubscriber(binder, args);
                 List<Pair<Uri, Uri>> list = mDataBase.findTopLevelContainers(null);
                 if (list.isEmpty()) {
                     subscriber.onCompleted();
@@ -601,12 +661,13 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
                                 return Observable.from(containers);
                             }
                         })
-                        .compose(new BundleableListTransformer<Container>(BaseCompare.<Container>func(sortOrder)))
+                        .compose(new BundleableListTransformer<Container>(BaseCompare.<Container>func(sortOrder),
+                                LibraryExtras.getChunkSize(args)))
                         .subscribe(subscriber);
                 break;
             }
             default: {
-                final BundleableSubscriber<Bundleable> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Bundleable> subscriber = newSubscriber(binder, args);
                 subscriber.onError(new LibraryException(LibraryException.Kind.ILLEGAL_URI,
                         new IllegalArgumentException("Unknown uri: " + uri.toString())));
             }
@@ -644,7 +705,7 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
 //                break;
 //            }
             default: {
-                final BundleableSubscriber<Bundleable> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Bundleable> subscriber = newSubscriber(binder, args);
                 subscriber.onError(new LibraryException(LibraryException.Kind.ILLEGAL_URI,
                         new IllegalArgumentException("Unknown uri: " + uri.toString())));
             }
@@ -652,7 +713,7 @@ public class IndexProvider extends LibraryProvider implements PlaylistLibraryAdd
     }
 
     void getTracksInList(final List<Uri> uris, IBinder binder, Bundle args) {
-        final BundleableSubscriber<Track> subscriber = new BundleableSubscriber<>(binder);
+        final BundleableSubscriber<Track> subscriber = newSubscriber(binder, args);
         Observable.create(new Observable.OnSubscribe<List<Track>>() {
             @Override
             public void call(Subscriber<? super List<Track>> subscriber) {
@@ -51,6 +51,8 @@ public class IndexUris {
     static final String artistBio = "artistBio";
     static final String albumBio = "albumBio";
     static final String folders = "folders";
+    static final String search = "search";
+    static final String searchQuery = "q";
 
     private static Uri.Builder baseUriBuilder(String authority) {
         return new Uri.Builder().scheme(scheme).authority(authority);
@@ -199,6 +201,17 @@ public class IndexUris {
         return modelBase(authority).appendPath(folders).build();
     }
 
+    /**
+     * Artists, albums, genres and tracks with names matching query, words are prefix matched
+     */
+    public static Uri search(String authority, String query) {
+        return modelBase(authority).appendPath(search).appendQueryParameter(searchQuery, query).build();
+    }
+
+    public static String getSearchQuery(Uri uri) {
+        return uri.getQueryParameter(searchQuery);
+    }
+
     public static Uri call(String authority) {
         return baseUriBuilder(authority).build();
     }
@@ -228,6 +241,7 @@ public class IndexUris {
     public static final int M_ALBUM_ARTISTS = 23;
     public static final int M_ARTIST_BIO = 24;
     public static final int M_ALBUM_BIO = 25;
+    public static final int M_SEARCH = 26;
 
     private static final String slash_wild = "/*";
     private static final String slash_wild_slash = "/*/";
@@ -269,6 +283,8 @@ public class IndexUris {
 
         uriMatcher.addURI(authority, model_base_match + folders, M_FOLDERS);
 
+        uriMatcher.addURI(authority, model_base_match + search, M_SEARCH);
+
         return uriMatcher;
     }
 
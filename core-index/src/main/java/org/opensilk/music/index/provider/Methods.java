@@ -28,16 +28,21 @@ public interface Methods {
     String LAST_QUEUE_POSITION = "idx.lastqueue.position";
     String LAST_QUEUE_REPEAT = "idx.lastqueue.repeat";
     String LAST_QUEUE_SHUFFLE = "idx.lastqueu.shuffle";
+    String LAST_QUEUE_SHUFFLE_ORDER = "idx.lastqueue.shuffleorder";
     String SAVE_QUEUE_LIST = "idx.savequeue.list";
+    String APPEND_QUEUE_OPS = "idx.savequeue.ops";
     String SAVE_QUEUE_POSITION = "idx.savequeue.position";
     String SAVE_QUEUE_REPEAT = "idx.savequeue.repeat";
     String SAVE_QUEUE_SHUFFLE = "idx.savequeue.shuffle";
+    String SAVE_QUEUE_SHUFFLE_ORDER = "idx.savequeue.shuffleorder";
     String LAST_SEEK_POSITION = "idx.lastseekposition";
     String SAVE_SEEK_POSITION = "idx.saveseekposition";
     String GET_BROADCAST_META = "idx.get.broadcastmeta";
     String SAVE_BROADCAST_META = "idx.save.broadcastmeta";
     String GET_USE_MEDIASTYLE_NOTIF = "idx.get.usemediastylenotif";
     String SAVE_USE_MEDIASTYLE_NOTIF = "idx.save.usemediastylenotif";
+    String GET_CROSSFADE_DURATION = "idx.get.crossfadeduration";
+    String SAVE_CROSSFADE_DURATION = "idx.save.crossfadeduration";
     String GET_TRACK = "idx.get.track";
     String GET_TRACK_LIST = "idx.get.track.list";
 }
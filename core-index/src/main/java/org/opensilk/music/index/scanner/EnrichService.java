@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.index.scanner;
+
+import android.content.Intent;
+
+import org.opensilk.common.core.mortar.DaggerService;
+import org.opensilk.common.core.mortar.MortarIntentService;
+import org.opensilk.music.index.IndexComponent;
+
+import javax.inject.Inject;
+
+import hugo.weaving.DebugLog;
+import mortar.MortarScope;
+
+/**
+ * Runs the lastfm lookups off the scanner queue so they never hold up a scan,
+ * the enricher stops between lookups as soon as a scan is queued.
+ *
+ * Created by drew on 12/2/15.
+ */
+public class EnrichService extends MortarIntentService {
+
+    @Inject MetaEnricher mMetaEnricher;
+
+    public EnrichService() {
+        super(EnrichService.class.getSimpleName());
+    }
+
+    @Override
+    protected void onBuildScope(MortarScope.Builder builder) {
+        IndexComponent acc = DaggerService.getDaggerComponent(getApplicationContext());
+        builder.withService(DaggerService.DAGGER_SERVICE, EnrichComponent.FACTORY.call(acc));
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        EnrichComponent acc = DaggerService.getDaggerComponent(this);
+        acc.inject(this);
+    }
+
+    @Override
+    @DebugLog
+    protected void onHandleIntent(Intent intent) {
+        //runs quietly in the background, we'll try again after the next scan if offline
+        mMetaEnricher.enrich();
+    }
+
+}
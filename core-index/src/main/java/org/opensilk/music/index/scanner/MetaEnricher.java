@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.index.scanner;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Pair;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opensilk.common.core.dagger2.ForApplication;
+import org.opensilk.common.core.util.ConnectionUtils;
+import org.opensilk.music.index.database.IndexDatabase;
+import org.opensilk.music.index.database.PendingEnrichment;
+import org.opensilk.music.index.provider.LastFMHelper;
+import org.opensilk.music.model.Metadata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import timber.log.Timber;
+
+/**
+ * Drains the enrichment queue, looking up artists and albums on lastfm a batch at a time.
+ * Gives way to the scanner, anything left over is picked up when the scan finishes.
+ *
+ * Created by drew on 12/2/15.
+ */
+@ScannerScope
+public class MetaEnricher {
+
+    static final int BATCH_SIZE = 25;
+    static final int MAX_ATTEMPTS = 3;
+    //lastfm asks for no more than 5 requests per second
+    static final long MIN_REQUEST_INTERVAL = 250;
+
+    final Context mAppContext;
+    final IndexDatabase mIndexDatabase;
+    final LastFMHelper mLastFM;
+
+    long mLastRequest;
+
+    @Inject
+    public MetaEnricher(
+            @ForApplication Context appContext,
+            IndexDatabase indexDatabase,
+            LastFMHelper lastFMHelper
+    ) {
+        mAppContext = appContext;
+        mIndexDatabase = indexDatabase;
+        mLastFM = lastFMHelper;
+    }
+
+    /**
+     * Blocks until the queue is empty, we lose our connection, or a scan wants to run
+     * @return number of artists and albums updated
+     */
+    public int enrich() {
+        int num = 0;
+        while (!shouldYield() && ConnectionUtils.hasInternetConnection(mAppContext)) {
+            List<PendingEnrichment> batch = mIndexDatabase.getPendingEnrichments(MAX_ATTEMPTS, BATCH_SIZE);
+            if (batch.isEmpty()) {
+                break;
+            }
+            List<Pair<PendingEnrichment, Metadata>> results = new ArrayList<>(batch.size());
+            for (PendingEnrichment pending : batch) {
+                if (shouldYield()) {
+                    //save what we have, the rest stay queued untouched
+                    break;
+                }
+                results.add(Pair.create(pending, lookup(pending)));
+            }
+            if (!ConnectionUtils.hasInternetConnection(mAppContext)) {
+                //failures are probably due to the connection, dont count them against the entries
+                List<Pair<PendingEnrichment, Metadata>> successes = new ArrayList<>(results.size());
+                for (Pair<PendingEnrichment, Metadata> pair : results) {
+                    if (pair.second != null) {
+                        successes.add(pair);
+                    }
+                }
+                results = successes;
+            }
+            num += mIndexDatabase.applyEnrichments(results);
+        }
+        Timber.i("Enriched %d artists and albums", num);
+        return num;
+    }
+
+    boolean shouldYield() {
+        return ScannerService.isScanPending();
+    }
+
+    Metadata lookup(PendingEnrichment pending) {
+        if (StringUtils.isEmpty(pending.name)) {
+            return null;
+        }
+        throttle();
+        if (pending.isArtist()) {
+            return mLastFM.lookupArtistInfo(pending.name);
+        } else if (pending.isAlbum() && !StringUtils.isEmpty(pending.artist)) {
+            return mLastFM.lookupAlbumInfo(pending.artist, pending.name);
+        }
+        return null;
+    }
+
+    void throttle() {
+        long wait = mLastRequest + MIN_REQUEST_INTERVAL - SystemClock.elapsedRealtime();
+        if (wait > 0) {
+            SystemClock.sleep(wait);
+        }
+        mLastRequest = SystemClock.elapsedRealtime();
+    }
+
+}
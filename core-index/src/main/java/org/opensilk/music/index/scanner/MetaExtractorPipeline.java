@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.index.scanner;
+
+import android.os.Process;
+import android.support.annotation.Nullable;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opensilk.music.model.Metadata;
+import org.opensilk.music.model.Track;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+
+import timber.log.Timber;
+
+/**
+ * Runs {@link MetaExtractor#extractMetadata(Track.Res)} on a small pool of workers.
+ *
+ * Each authority gets its own set of permits so a slow remote library can't saturate
+ * the server (or starve other authorities) and the producer blocks once an authority
+ * has {@link #MAX_PER_AUTHORITY} extractions outstanding.
+ *
+ * Created by drew on 12/1/15.
+ */
+@ScannerScope
+public class MetaExtractorPipeline {
+
+    static final int NUM_WORKERS = 6;
+    static final int MAX_PER_AUTHORITY = 3;
+
+    final MetaExtractor mMetaExtractor;
+    final Map<String, Semaphore> mPermits = new HashMap<>();
+    ExecutorService mExecutor;
+
+    @Inject
+    public MetaExtractorPipeline(MetaExtractor metaExtractor) {
+        this.mMetaExtractor = metaExtractor;
+    }
+
+    /**
+     * Queues extraction for the tracks primary resource. May block if the authority
+     * already has too many extractions in flight.
+     */
+    public Future<Metadata> submit(final Track track) {
+        final Semaphore permits = getPermits(track.getUri().getAuthority());
+        permits.acquireUninterruptibly();
+        try {
+            return getExecutor().submit(new Callable<Metadata>() {
+                @Override
+                public Metadata call() throws Exception {
+                    try {
+                        return mMetaExtractor.extractMetadata(track.getResources().get(0));
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Blocks until the extraction completes
+     * @return the metadata or null if the extraction failed
+     */
+    public static @Nullable Metadata await(Future<Metadata> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Timber.w(e.getCause(), "extractMetadata");
+                    return null;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            if (mExecutor != null) {
+                mExecutor.shutdown();
+                mExecutor = null;
+            }
+        }
+    }
+
+    synchronized ExecutorService getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = Executors.newFixedThreadPool(NUM_WORKERS, new WorkerThreadFactory());
+        }
+        return mExecutor;
+    }
+
+    Semaphore getPermits(String authority) {
+        final String key = StringUtils.defaultString(authority);
+        synchronized (mPermits) {
+            Semaphore s = mPermits.get(key);
+            if (s == null) {
+                s = new Semaphore(MAX_PER_AUTHORITY);
+                mPermits.put(key, s);
+            }
+            return s;
+        }
+    }
+
+    static class WorkerThreadFactory implements ThreadFactory {
+        final AtomicInteger count = new AtomicInteger(1);
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "MetaExtractor-" + count.getAndIncrement());
+        }
+    }
+}
@@ -74,6 +74,10 @@ public class NotificationHelper {
         builder.setContentTitle(appContext.getString(title));
         builder.setContentText(appContext.getString(R.string.scan_progress,
                 service.numProcessed.get(), service.numTotal.get(), service.numError.get()));
+        float throughput = service.getThroughput();
+        if (throughput > 0) {
+            builder.setSubText(appContext.getString(R.string.scan_throughput, throughput));
+        }
         Notification notification = builder.build();
 
         if (running) {
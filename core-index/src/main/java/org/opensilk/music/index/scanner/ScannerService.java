@@ -21,6 +21,7 @@ import android.content.Intent;
 import android.net.ConnectivityManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Pair;
 
 import org.apache.commons.lang3.StringUtils;
@@ -40,14 +41,20 @@ import org.opensilk.music.model.Container;
 import org.opensilk.music.model.Metadata;
 import org.opensilk.music.model.Track;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Inject;
@@ -76,12 +83,21 @@ public class ScannerService extends MortarIntentService {
 
     @Inject IndexDatabase mIndexDatabase;
     @Inject NotificationHelper mNotifHelper;
-    @Inject MetaExtractor mMetaExtractor;
+    @Inject MetaExtractorPipeline mExtractorPipeline;
+
+    //number of containers allowed to wait on the extractors before we start inserting
+    static final int MAX_PENDING_NODES = 4;
+    //scans queued or running, the enricher backs off while there are any
+    static final AtomicInteger sPendingScans = new AtomicInteger(0);
 
     final AtomicInteger numTotal = new AtomicInteger(0);
     final AtomicInteger numError = new AtomicInteger(0);
     final AtomicInteger numProcessed = new AtomicInteger(0);
+    //tracks new to the db, only these can queue enrichment
+    final AtomicInteger numInserted = new AtomicInteger(0);
     final AtomicReference<Status> status = new AtomicReference<>();
+    final AtomicLong startTime = new AtomicLong(0);
+    final Queue<PendingNode> mPendingNodes = new ArrayDeque<>();
 
     public ScannerService() {
         super(ScannerService.class.getSimpleName());
@@ -103,17 +119,51 @@ public class ScannerService extends MortarIntentService {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        mNotifHelper.updateNotification(false);
+        mExtractorPipeline.shutdown();
+        if (status.get() != null) {
+            mNotifHelper.updateNotification(false);
+        }
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        scanQueued();
+        return super.onStartCommand(intent, flags, startId);
+    }
+
+    static void scanQueued() {
+        sPendingScans.incrementAndGet();
+    }
+
+    /**
+     * @return true if a scan is running or waiting to run
+     */
+    public static boolean isScanPending() {
+        return sPendingScans.get() > 0;
     }
 
     @Override
     @DebugLog
     protected void onHandleIntent(Intent intent) {
+        try {
+            handleScan(intent);
+        } finally {
+            sPendingScans.decrementAndGet();
+        }
+        //fill in lastfm info for any new artists/albums we just added
+        if (numInserted.get() > 0 && !mIndexDatabase.getPendingEnrichments(
+                MetaEnricher.MAX_ATTEMPTS, 1).isEmpty()) {
+            startService(new Intent(this, EnrichService.class));
+        }
+    }
+
+    void handleScan(Intent intent) {
         if (!ConnectionUtils.hasInternetConnection(this)) {
             mNotifHelper.showNoConnection();
             return;
         }
         status.set(Status.SCANNING);
+        startTime.compareAndSet(0, SystemClock.elapsedRealtime());
         final Subscription notifSubs = Observable.interval(1, 5, TimeUnit.SECONDS, AndroidSchedulers.mainThread())
                 .subscribe(new Action1<Long>() {
                     @Override
@@ -126,13 +176,13 @@ public class ScannerService extends MortarIntentService {
                 Bundleable b = LibraryExtras.getBundleable(intent.getBundleExtra(EXTRA_LIBRARY_EXTRAS));
                 if (b != null && (b instanceof Container)) {
                     Container c = (Container)b;
-                    scan(c.getUri(), c.getParentUri());
+                    scan(c.getUri(), c.getParentUri(), c.getChangeStamp());
                 }
             } else {
                 String authority = intent.getStringExtra(EXTRA_AUTHORITY);
                 List<Pair<Uri, Uri>> topLevel = mIndexDatabase.findTopLevelContainers(authority);
                 for (Pair<Uri,Uri> p : topLevel) {
-                    scan(p.first, p.second);
+                    scan(p.first, p.second, null);
                 }
             }
         } else {
@@ -140,7 +190,7 @@ public class ScannerService extends MortarIntentService {
             if (extras != null) {
                 Container container = LibraryExtras.getBundleable(extras);
                 if (container != null) {
-                    scan(container.getUri(), container.getParentUri());
+                    scan(container.getUri(), container.getParentUri(), container.getChangeStamp());
                 } else {
                     Timber.e("No container in extras");
                 }
@@ -150,12 +200,27 @@ public class ScannerService extends MortarIntentService {
         }
         notifSubs.unsubscribe();
         status.set(Status.COMPLETED);
+        Timber.i("Scan completed %d/%d tracks, %d errors, %.1f tracks/sec",
+                numProcessed.get(), numTotal.get(), numError.get(), getThroughput());
         stopForeground(true);
     }
 
+    /**
+     * @return tracks processed (successful or not) per second since the scan started
+     */
+    float getThroughput() {
+        final long start = startTime.get();
+        final long elapsed = SystemClock.elapsedRealtime() - start;
+        if (start == 0 || elapsed <= 0) {
+            return 0f;
+        }
+        return (numProcessed.get() + numError.get()) * 1000f / elapsed;
+    }
+
     void notifySuccess(Uri uri) {
         Timber.v("Indexed %s", uri);
         numProcessed.incrementAndGet();
+        numInserted.incrementAndGet();
     }
 
     void notifySkipped(Uri uri) {
@@ -168,32 +233,97 @@ public class ScannerService extends MortarIntentService {
         numError.incrementAndGet();
     }
 
-    void scan(Uri uri, Uri parentUri) {
+    void scan(Uri uri, Uri parentUri, String changeStamp) {
         Timber.i("scan(%s)", uri);
         final TreeNode currentTree = mIndexDatabase.buildTree(uri, parentUri);
-        final TreeNode newTree = scanChildren(uri, parentUri);
-        indexTree(newTree);
+        final StampNode stamps = new StampNode(uri, changeStamp);
+        final TreeNode newTree = scanChildren(uri, parentUri, changeStamp, currentTree, stamps);
+        //finish anything still waiting on the extractors
+        drainPendingNodes(0);
+        commitStamps(stamps);
         removeDifference(currentTree, newTree);
         mIndexDatabase.notifyObservers();
     }
 
-    private TreeNode scanChildren(Uri uri, Uri parentUri) {
+    /**
+     * @param changeStamp the stamp the provider gave us for the container (from its parents listing),
+     *                    it covers the whole subtree so if it matches we don't descend at all
+     * @param currentNode the container as it exists in the db, or null if new
+     */
+    private TreeNode scanChildren(Uri uri, Uri parentUri, String changeStamp,
+                                  TreeNode currentNode, StampNode stamps) {
         Timber.d("scanChildren(%s)", uri);
+        if (currentNode != null && changeStamp != null
+                && changeStamp.equals(mIndexDatabase.getContainerChangeStamp(uri))) {
+            Timber.d("Skipping unchanged subtree %s", uri);
+            skipTree(currentNode);
+            stamps.skipped = true;
+            return currentNode;
+        }
         List<Bundleable> bundleableList = getChildren(uri);
         TreeNode node = new TreeNode(uri, parentUri);
+        List<Container> containers = new ArrayList<>();
         for (Bundleable b : bundleableList) {
             if (b instanceof Track) {
                 node.tracks.add((Track)b);
             } else if (b instanceof Container) {
-                Container c = (Container)b;
-                node.children.add(scanChildren(c.getUri(), c.getParentUri()));
+                containers.add((Container)b);
             } else {
                 Timber.w("Passed an unsupported bundle to scanner class=%s", b.getClass());
             }
         }
+        //start extracting our tracks while we walk down the tree
+        stamps.pending = queueNode(node);
+        final Map<Uri, TreeNode> currentChildren = childrenByUri(currentNode);
+        for (Container c : containers) {
+            final StampNode childStamps = new StampNode(c.getUri(), c.getChangeStamp());
+            stamps.children.add(childStamps);
+            node.children.add(scanChildren(c.getUri(), c.getParentUri(),
+                    c.getChangeStamp(), currentChildren.get(c.getUri()), childStamps));
+        }
         return node;
     }
 
+    private void skipTree(TreeNode tree) {
+        for (Track item : tree.tracks) {
+            numTotal.incrementAndGet();
+            notifySkipped(item.getUri());
+        }
+        for (TreeNode child : tree.children) {
+            skipTree(child);
+        }
+    }
+
+    static Map<Uri, TreeNode> childrenByUri(TreeNode parent) {
+        if (parent == null || parent.children.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<Uri, TreeNode> map = new HashMap<>(parent.children.size() * 2);
+        for (TreeNode child : parent.children) {
+            map.put(child.self, child);
+        }
+        return map;
+    }
+
+    /**
+     * Stamps are carried up the tree, a container only keeps its stamp if everything under
+     * it made it into the db, so failures anywhere below are retried next scan
+     *
+     * @return true if the whole subtree is current
+     */
+    private boolean commitStamps(StampNode stamps) {
+        if (stamps.skipped) {
+            return true;
+        }
+        boolean current = stamps.pending == null || stamps.pending.allIndexed;
+        for (StampNode child : stamps.children) {
+            //no short circuit, every child needs its own stamp written
+            current &= commitStamps(child);
+        }
+        mIndexDatabase.setContainerChangeStamp(stamps.uri, current ? stamps.changeStamp : null);
+        return current && stamps.changeStamp != null;
+    }
+
     protected List<Bundleable> getChildren(Uri uri) {
         final List<Bundleable> bundleableList =
                 Collections.synchronizedList(new ArrayList<Bundleable>());
@@ -221,24 +351,45 @@ public class ScannerService extends MortarIntentService {
         return bundleableList;
     }
 
-    private void indexTree(TreeNode tree) {
-        Timber.i("indexTree(%s)", tree.self);
-        //first extract metadata from all tracks in container
-        List<Pair<Track,Metadata>> trackMeta = new ArrayList<>(tree.tracks.size());
+    /**
+     * Submits the tracks in the node to the extractors, once we have more than
+     * {@link #MAX_PENDING_NODES} outstanding the oldest is drained into the db
+     */
+    private PendingNode queueNode(TreeNode tree) {
+        Timber.i("queueNode(%s)", tree.self);
+        final PendingNode pending = new PendingNode(tree);
         for (Track item : tree.tracks) {
             numTotal.incrementAndGet();
             if (mIndexDatabase.trackNeedsScan(item)) {
-                Track.Res res = item.getResources().get(0);
-                final Metadata meta = mMetaExtractor.extractMetadata(res);
-                if (meta != null) {
-                    trackMeta.add(Pair.create(item, meta));
-                } else {
-                    notifyError(item.getUri());
-                }
+                pending.extractions.add(Pair.create(item, mExtractorPipeline.submit(item)));
             } else {
                 notifySkipped(item.getUri());
             }
         }
+        mPendingNodes.add(pending);
+        drainPendingNodes(MAX_PENDING_NODES);
+        return pending;
+    }
+
+    private void drainPendingNodes(int maxRemaining) {
+        while (mPendingNodes.size() > maxRemaining) {
+            indexNode(mPendingNodes.poll());
+        }
+    }
+
+    private void indexNode(PendingNode pending) {
+        final TreeNode tree = pending.node;
+        Timber.i("indexNode(%s)", tree.self);
+        //first collect the extracted metadata from all tracks in container
+        List<Pair<Track,Metadata>> trackMeta = new ArrayList<>(pending.extractions.size());
+        for (Pair<Track, Future<Metadata>> extraction : pending.extractions) {
+            final Metadata meta = MetaExtractorPipeline.await(extraction.second);
+            if (meta != null) {
+                trackMeta.add(Pair.create(extraction.first, meta));
+            } else {
+                notifyError(extraction.first.getUri());
+            }
+        }
         //Second fixup any descrepancies with albumartist/trackartist
         int numTracksWithAlbumArtists = 0;
         int numTrackArtists = 0;
@@ -273,67 +424,47 @@ public class ScannerService extends MortarIntentService {
         }
         //add everyone to the db
         mIndexDatabase.insertContainer(tree.self, tree.parent);
-        for (Pair<Track, Metadata> pair : trackMeta) {
-            final Track track = pair.first;
-            final Metadata meta = pair.second;
-            final boolean success =
-                    mIndexDatabase.insertTrack(track, meta) > 0;
-            if (success) {
+        final long[] ids = mIndexDatabase.insertTracks(trackMeta);
+        boolean allIndexed = trackMeta.size() == pending.extractions.size();
+        for (int ii=0; ii<ids.length; ii++) {
+            final Track track = trackMeta.get(ii).first;
+            if (ids[ii] > 0) {
                 notifySuccess(track.getUri());
             } else {
                 notifyError(track.getUri());
+                allIndexed = false;
             }
         }
-        //continue walking the tree
-        for (TreeNode node : tree.children) {
-            indexTree(node);
-        }
+        pending.allIndexed = allIndexed;
     }
 
-    void removeDifference(TreeNode currentTree, TreeNode newTree) {
-        if (!currentTree.self.equals(newTree.self)) {
-            Timber.e("Mismatched trees not continuing %s != %s", currentTree.self, newTree.self);
-            return;
+    static class PendingNode {
+        final TreeNode node;
+        final List<Pair<Track, Future<Metadata>>> extractions = new ArrayList<>();
+        boolean allIndexed;
+
+        PendingNode(TreeNode node) {
+            this.node = node;
         }
-        //first remove all the tracks not in the current
-        for (Track currentTrack : currentTree.tracks) {
-            if (currentTrack == null) {
-                Timber.e("Null track in currentTree");
-                continue;
-            }
-            boolean found = false;
-            for (Track newTrack : newTree.tracks) {
-                if (newTrack == null) {
-                    Timber.e("Null track in newTree");
-                    continue;
-                }
-                if (currentTrack.getUri().equals(newTrack.getUri())
-                        && currentTrack.getParentUri().equals(newTrack.getParentUri())) {
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                Timber.d("Removing stale track %s", currentTrack.getUri());
-                mIndexDatabase.removeTrack(currentTrack.getUri(), currentTrack.getParentUri());
-            }
+    }
+
+    static class StampNode {
+        final Uri uri;
+        final String changeStamp;
+        final List<StampNode> children = new ArrayList<>();
+        PendingNode pending;
+        boolean skipped;
+
+        StampNode(Uri uri, String changeStamp) {
+            this.uri = uri;
+            this.changeStamp = changeStamp;
         }
-        //now walk down the tree removing any containers not in current
-        for (TreeNode currentNode : currentTree.children) {
-            boolean found = false;
-            for (TreeNode newNode : newTree.children) {
-                if (currentNode.self.equals(newNode.self) &&
-                        currentNode.parent.equals(newNode.parent)) {
-                    found = true;
-                    //walk down this node and remove anything not present
-                    removeDifference(currentNode, newNode);
-                    break;
-                }
-            }
-            if (!found) {
-                Timber.d("Removing stale container %s", currentNode.self);
-                mIndexDatabase.removeContainer(currentNode.self);
-            }
+    }
+
+    void removeDifference(TreeNode currentTree, TreeNode newTree) {
+        final TreeDiff diff = TreeDiff.compute(currentTree, newTree);
+        if (!diff.isEmpty()) {
+            mIndexDatabase.removeStale(diff.staleTracks, diff.staleContainers);
         }
     }
 
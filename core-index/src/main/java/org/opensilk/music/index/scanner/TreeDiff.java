@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.index.scanner;
+
+import android.net.Uri;
+import android.util.Pair;
+
+import org.opensilk.music.index.database.TreeNode;
+import org.opensilk.music.model.Track;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import timber.log.Timber;
+
+/**
+ * Finds everything in the current tree that is missing from the new tree.
+ * Tracks and containers are matched on (uri, parentUri).
+ *
+ * Created by drew on 12/3/15.
+ */
+public class TreeDiff {
+
+    public final List<Uri> staleTracks = new ArrayList<>();
+    public final List<Uri> staleContainers = new ArrayList<>();
+
+    public boolean isEmpty() {
+        return staleTracks.isEmpty() && staleContainers.isEmpty();
+    }
+
+    public static TreeDiff compute(TreeNode currentTree, TreeNode newTree) {
+        TreeDiff diff = new TreeDiff();
+        if (!currentTree.self.equals(newTree.self)) {
+            Timber.e("Mismatched trees not continuing %s != %s", currentTree.self, newTree.self);
+            return diff;
+        }
+        diff.walk(currentTree, newTree);
+        return diff;
+    }
+
+    void walk(TreeNode currentTree, TreeNode newTree) {
+        //first find all the tracks not in the new tree
+        if (!currentTree.tracks.isEmpty()) {
+            Set<Pair<Uri, Uri>> newTracks = new HashSet<>(newTree.tracks.size() * 2);
+            for (Track newTrack : newTree.tracks) {
+                if (newTrack == null) {
+                    Timber.e("Null track in newTree");
+                    continue;
+                }
+                newTracks.add(Pair.create(newTrack.getUri(), newTrack.getParentUri()));
+            }
+            for (Track currentTrack : currentTree.tracks) {
+                if (currentTrack == null) {
+                    Timber.e("Null track in currentTree");
+                    continue;
+                }
+                if (!newTracks.contains(Pair.create(currentTrack.getUri(), currentTrack.getParentUri()))) {
+                    Timber.d("Removing stale track %s", currentTrack.getUri());
+                    staleTracks.add(currentTrack.getUri());
+                }
+            }
+        }
+        //now walk down the tree collecting any containers not in the new tree
+        if (!currentTree.children.isEmpty()) {
+            Map<Pair<Uri, Uri>, TreeNode> newChildren = new HashMap<>(newTree.children.size() * 2);
+            for (TreeNode newNode : newTree.children) {
+                newChildren.put(Pair.create(newNode.self, newNode.parent), newNode);
+            }
+            for (TreeNode currentNode : currentTree.children) {
+                TreeNode newNode = newChildren.get(Pair.create(currentNode.self, currentNode.parent));
+                if (newNode != null) {
+                    //walk down this node and collect anything not present
+                    walk(currentNode, newNode);
+                } else {
+                    Timber.d("Removing stale container %s", currentNode.self);
+                    staleContainers.add(currentNode.self);
+                }
+            }
+        }
+    }
+
+}
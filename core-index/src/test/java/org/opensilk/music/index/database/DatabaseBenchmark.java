@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.index.database;
+
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.common.core.mortar.DaggerService;
+import org.opensilk.music.index.BuildConfig;
+import org.opensilk.music.index.IndexTestApplication;
+import org.opensilk.music.index.IndexTestComponent;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Micro benchmark, time to find the best matches in a 50k track index. Timings are
+ * only printed, remove the @Ignore to run it by hand, correctness is covered by
+ * {@link DatabaseTest}.
+ *
+ * Created by drew on 9/20/15.
+ */
+@Ignore("benchmark, run by hand")
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(
+        constants = BuildConfig.class,
+        sdk = Build.VERSION_CODES.LOLLIPOP,
+        application = IndexTestApplication.class
+)
+public class DatabaseBenchmark {
+
+    IndexDatabaseImpl mDb;
+
+    @Before
+    public void setup() {
+        IndexTestComponent cmpt = DaggerService.getDaggerComponent(RuntimeEnvironment.application);
+        mDb = (IndexDatabaseImpl) cmpt.indexDatabase();
+    }
+
+    @Test
+    public void benchSearch() {
+        DatabaseTest.fillSearchTable(mDb, 50000);
+        String[] queries = {"l", "lo", "lov", "love", "love n", "love ni", "artist12", "album123"};
+        long best = Long.MAX_VALUE;
+        for (int run=0; run<3; run++) {
+            long start = System.nanoTime();
+            for (String q : queries) {
+                mDb.searchIds(IndexSchema.Search.TRACK_TABLE, null, null, IndexDatabaseImpl.toMatchQuery(q),
+                        IndexDatabaseImpl.escapeLike(q) + "%", 50, null);
+            }
+            best = Math.min(best, (System.nanoTime() - start) / queries.length);
+        }
+        System.out.printf("Search 50k tracks: %.2fms per query%n", best / 1e6);
+    }
+
+}
@@ -17,8 +17,12 @@
 
 package org.opensilk.music.index.database;
 
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.os.Build;
+import android.util.Pair;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.assertj.core.api.Assertions;
@@ -29,7 +33,11 @@ import org.opensilk.common.core.mortar.DaggerService;
 import org.opensilk.music.index.BuildConfig;
 import org.opensilk.music.index.IndexTestApplication;
 import org.opensilk.music.index.IndexTestComponent;
+import org.opensilk.music.index.model.QueueOp;
+import org.opensilk.music.model.Album;
+import org.opensilk.music.model.Artist;
 import org.opensilk.music.model.Metadata;
+import org.opensilk.music.model.Model;
 import org.opensilk.music.model.Track;
 import org.opensilk.music.model.sort.TrackSortOrder;
 import org.robolectric.RobolectricGradleTestRunner;
@@ -37,6 +45,7 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -121,6 +130,20 @@ public class DatabaseTest {
         Assertions.assertThat(insId).isEqualTo(insId2);
     }
 
+    @Test
+    public void testContainerChangeStamp() {
+        Assertions.assertThat(mDb.setContainerChangeStamp(URI_SFB, "1:2")).isFalse();
+        mDb.insertContainer(URI_SFB, URI_SFB_PARENT);
+        Assertions.assertThat(mDb.getContainerChangeStamp(URI_SFB)).isNull();
+        Assertions.assertThat(mDb.setContainerChangeStamp(URI_SFB, "1:2")).isTrue();
+        Assertions.assertThat(mDb.getContainerChangeStamp(URI_SFB)).isEqualTo("1:2");
+        //reinserting during a scan shouldnt clobber it
+        mDb.insertContainer(URI_SFB, URI_SFB_PARENT);
+        Assertions.assertThat(mDb.getContainerChangeStamp(URI_SFB)).isEqualTo("1:2");
+        mDb.setContainerChangeStamp(URI_SFB, null);
+        Assertions.assertThat(mDb.getContainerChangeStamp(URI_SFB)).isNull();
+    }
+
     @Test
     public void testRecusiveContainerRemoval() {
         Uri uri = Uri.parse("content://foo/1");
@@ -134,6 +157,27 @@ public class DatabaseTest {
         Assertions.assertThat(cnt).isEqualTo(3);
     }
 
+    @Test
+    public void testRemoveStale() {
+        Uri uri = Uri.parse("content://foo/1");
+        Uri uri2 = Uri.parse("content://foo/2");
+        Uri uri3 = Uri.parse("content://foo/3");
+        mDb.insertContainer(uri2, uri);
+        mDb.insertContainer(uri3, uri2);
+        mDb.insertContainer(URI_SFB, URI_SFB_PARENT);
+        List<Pair<Track, Metadata>> batch = new ArrayList<>(10);
+        for (int ii=0; ii<10; ii++) {
+            batch.add(Pair.create(TRACK_SFB_0_10.get(ii), METADATA_TRACK_SFB_0_10.get(ii)));
+        }
+        mDb.insertTracks(batch);
+        List<Uri> tracks = Arrays.asList(TRACK_SFB_0_10.get(0).getUri(), TRACK_SFB_0_10.get(1).getUri());
+        int cnt = mDb.removeStale(tracks, Collections.singletonList(uri2));
+        Assertions.assertThat(cnt).isEqualTo(4);
+        Assertions.assertThat(mDb.hasContainer(uri3)).isEqualTo(-1);
+        Assertions.assertThat(mDb.hasContainer(URI_SFB)).isGreaterThan(0);
+        Assertions.assertThat(mDb.getTracks(null, null).size()).isEqualTo(8);
+    }
+
     @Test
     public void testCleanupMetaTriggers() {
         long containerId = mDb.insertContainer(URI_SFB, URI_SFB_PARENT);
@@ -158,6 +202,197 @@ public class DatabaseTest {
         Assertions.assertThat(mDb.getTracks(null, null).size()).isEqualTo(0);
     }
 
+    @Test
+    public void testBatchInsertTracks() {
+        mDb.insertContainer(URI_SFB, URI_SFB_PARENT);
+        List<Pair<Track, Metadata>> batch = new ArrayList<>(10);
+        for (int ii=0; ii<10; ii++) {
+            batch.add(Pair.create(TRACK_SFB_0_10.get(ii), METADATA_TRACK_SFB_0_10.get(ii)));
+        }
+        long[] ids = mDb.insertTracks(batch);
+        Assertions.assertThat(ids.length).isEqualTo(10);
+        for (long id : ids) {
+            Assertions.assertThat(id).isGreaterThan(0);
+        }
+        Assertions.assertThat(mDb.getArtists(null, null).size()).isEqualTo(2);
+        Assertions.assertThat(mDb.getAlbums(null, null).size()).isEqualTo(2);
+        Assertions.assertThat(mDb.getTracks(null, null).size()).isEqualTo(10);
+        Assertions.assertThat(mDb.getTrack(TRACK_SFB_0_10.get(3).getUri())).isNotNull();
+    }
+
+    @Test
+    public void testPagedTracks() {
+        mDb.insertContainer(URI_SFB, URI_SFB_PARENT);
+        List<Pair<Track, Metadata>> batch = new ArrayList<>(10);
+        for (int ii=0; ii<10; ii++) {
+            batch.add(Pair.create(TRACK_SFB_0_10.get(ii), METADATA_TRACK_SFB_0_10.get(ii)));
+        }
+        mDb.insertTracks(batch);
+        List<Track> all = mDb.getTracks(TrackSortOrder.A_Z, null);
+        List<Track> paged = new ArrayList<>(10);
+        for (int offset=0; offset<10; offset+=4) {
+            List<Track> page = mDb.getTracks(TrackSortOrder.A_Z, null, offset, 4);
+            Assertions.assertThat(page.size()).isEqualTo(Math.min(4, 10 - offset));
+            paged.addAll(page);
+        }
+        Assertions.assertThat(paged).isEqualTo(all);
+        Assertions.assertThat(mDb.getTracks(TrackSortOrder.A_Z, null, 10, 4)).isEmpty();
+        Assertions.assertThat(mDb.getArtists(null, null, 1, 4).size()).isEqualTo(1);
+        Assertions.assertThat(mDb.getAlbums(null, null, 0, 1).size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testBatchInsertTracksBadTrackOnlyFailsItself() {
+        mDb.insertContainer(URI_SFB, URI_SFB_PARENT);
+        List<Pair<Track, Metadata>> batch = new ArrayList<>(3);
+        batch.add(Pair.create(TRACK_SFB_0_10.get(0), METADATA_TRACK_SFB_0_10.get(0)));
+        //no authority, violates NOT NULL
+        Track bad = TRACK_SFB_0_10.get(1).buildUpon().setUri(Uri.parse("file:///no/authority")).build();
+        batch.add(Pair.create(bad, METADATA_TRACK_SFB_0_10.get(1)));
+        batch.add(Pair.create(TRACK_SFB_0_10.get(2), METADATA_TRACK_SFB_0_10.get(2)));
+        long[] ids = mDb.insertTracks(batch);
+        Assertions.assertThat(ids[0]).isGreaterThan(0);
+        Assertions.assertThat(ids[1]).isEqualTo(-1);
+        Assertions.assertThat(ids[2]).isGreaterThan(0);
+        Assertions.assertThat(mDb.getTracks(null, null).size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testBatchInsertTracksNoContainer() {
+        List<Pair<Track, Metadata>> batch = new ArrayList<>(1);
+        batch.add(Pair.create(TRACK_SFB_0_10.get(0), METADATA_TRACK_SFB_0_10.get(0)));
+        long[] ids = mDb.insertTracks(batch);
+        Assertions.assertThat(ids[0]).isEqualTo(-1);
+        Assertions.assertThat(mDb.getTracks(null, null).size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSearch() {
+        mDb.insertContainer(URI_SFB, URI_SFB_PARENT);
+        List<Pair<Track, Metadata>> batch = new ArrayList<>(10);
+        for (int ii=0; ii<10; ii++) {
+            batch.add(Pair.create(TRACK_SFB_0_10.get(ii), METADATA_TRACK_SFB_0_10.get(ii)));
+        }
+        mDb.insertTracks(batch);
+        //prefix of all the tracks
+        Assertions.assertThat(mDb.search("metatr", 50, null)).hasSize(10);
+        //both words must match
+        List<Model> lst = mDb.search("metatrack3 album1", 50, null);
+        Assertions.assertThat(lst).hasSize(1);
+        Assertions.assertThat(lst.get(0).getName()).isEqualTo("metatrack3");
+        //artists come first, then tracks by that artist
+        lst = mDb.search("artist1", 50, null);
+        Assertions.assertThat(lst).hasSize(1 + 5);
+        Assertions.assertThat(lst.get(0)).isInstanceOf(Artist.class);
+        Assertions.assertThat(lst.get(0).getName()).isEqualTo("artist1");
+        Assertions.assertThat(lst.get(1)).isInstanceOf(Track.class);
+        Assertions.assertThat(mDb.search("album", 50, null).get(0)).isInstanceOf(Album.class);
+        //filtered on authority
+        Assertions.assertThat(mDb.search("metatr", 50, new String[]{"sample"})).hasSize(10);
+        Assertions.assertThat(mDb.search("metatr", 50, new String[]{"other"})).isEmpty();
+        Assertions.assertThat(mDb.search("metatr", 50, new String[0])).isEmpty();
+        //triggers keep the index in sync
+        mDb.removeContainer(URI_SFB);
+        Assertions.assertThat(mDb.search("metatr", 50, null)).isEmpty();
+        Assertions.assertThat(mDb.search("artist", 50, null)).isEmpty();
+    }
+
+    @Test
+    public void testSearchRanksPrefixFirst() {
+        mDb.insertContainer(URI_SFB, URI_SFB_PARENT);
+        Track t1 = TRACK_SFB_0_10.get(0);
+        Track t2 = TRACK_SFB_0_10.get(1);
+        mDb.insertTrack(t1, METADATA_TRACK_SFB_0_10.get(0).buildUpon()
+                .putString(Metadata.KEY_TRACK_NAME, "the long road home").build());
+        mDb.insertTrack(t2, METADATA_TRACK_SFB_0_10.get(1).buildUpon()
+                .putString(Metadata.KEY_TRACK_NAME, "road").build());
+        List<Model> lst = mDb.search("road", 50, null);
+        Assertions.assertThat(lst).hasSize(2);
+        Assertions.assertThat(lst.get(0).getName()).isEqualTo("road");
+    }
+
+    @Test
+    public void testToMatchQuery() {
+        Assertions.assertThat(IndexDatabaseImpl.toMatchQuery("  ")).isNull();
+        Assertions.assertThat(IndexDatabaseImpl.toMatchQuery("\"*-")).isNull();
+        Assertions.assertThat(IndexDatabaseImpl.toMatchQuery("foo")).isEqualTo("foo*");
+        Assertions.assertThat(IndexDatabaseImpl.toMatchQuery("AC/DC \"back OR")).isEqualTo("AC* DC* back* OR*");
+        Assertions.assertThat(IndexDatabaseImpl.toMatchQuery("Björk")).isEqualTo("Björk*");
+    }
+
+    @Test
+    public void testSearchRanksPrefixMatchesFirst() {
+        IndexDatabaseImpl db = (IndexDatabaseImpl) mDb;
+        fillSearchTable(db, 2000);
+        String q = "love";
+        String[] ids = db.searchIds(IndexSchema.Search.TRACK_TABLE, null, null, IndexDatabaseImpl.toMatchQuery(q),
+                IndexDatabaseImpl.escapeLike(q) + "%", 50, null);
+        Assertions.assertThat(ids).hasSize(50);
+        //names starting with love beat the ones that only have it second
+        for (String id : ids) {
+            Assertions.assertThat(Integer.parseInt(id) % 8).isEqualTo(0);
+        }
+    }
+
+    /**
+     * Puts num rows straight into the track search table, every eighth name starts with love
+     */
+    static void fillSearchTable(IndexDatabaseImpl db, int num) {
+        SQLiteDatabase sdb = db.helper.getWritableDatabase();
+        String[] words = {"love", "night", "blue", "dance", "heart", "river", "fire", "dream"};
+        sdb.beginTransaction();
+        try {
+            SQLiteStatement stmt = sdb.compileStatement("INSERT INTO " + IndexSchema.Search.TRACK_TABLE +
+                    " (docid, name, artist, album) VALUES (?,?,?,?)");
+            for (int ii=1; ii<=num; ii++) {
+                stmt.bindLong(1, ii);
+                stmt.bindString(2, words[ii % 8] + " " + words[(ii / 8) % 8] + " " + ii);
+                stmt.bindString(3, "artist" + (ii % 500));
+                stmt.bindString(4, "album" + (ii % 5000));
+                stmt.executeInsert();
+            }
+            sdb.setTransactionSuccessful();
+        } finally {
+            sdb.endTransaction();
+        }
+    }
+
+    @Test
+    public void testEnrichmentQueue() {
+        mDb.insertContainer(URI_SFB, URI_SFB_PARENT);
+        for (int ii=0; ii<10; ii++) {
+            mDb.insertTrack(TRACK_SFB_0_10.get(ii), METADATA_TRACK_SFB_0_10.get(ii));
+        }
+        //2 artists and 2 albums
+        List<PendingEnrichment> pending = mDb.getPendingEnrichments(3, 10);
+        Assertions.assertThat(pending.size()).isEqualTo(4);
+
+        List<Pair<PendingEnrichment, Metadata>> results = new ArrayList<>();
+        for (PendingEnrichment p : pending) {
+            if (p.isArtist()) {
+                results.add(Pair.create(p, Metadata.builder()
+                        .putString(Metadata.KEY_ARTIST_MBID, "mbid-" + p.name)
+                        .build()));
+            } else {
+                Assertions.assertThat(p.artist).isNotNull();
+                //failed lookup
+                results.add(Pair.<PendingEnrichment, Metadata>create(p, null));
+            }
+        }
+        Assertions.assertThat(mDb.applyEnrichments(results)).isEqualTo(2);
+        for (org.opensilk.music.model.Artist a : mDb.getArtists(null, null)) {
+            Assertions.assertThat(mDb.getArtistMbid(a.getUri().getLastPathSegment()))
+                    .isEqualTo("mbid-" + a.getName());
+        }
+        //albums are still pending until they run out of attempts
+        Assertions.assertThat(mDb.getPendingEnrichments(3, 10).size()).isEqualTo(2);
+        Assertions.assertThat(mDb.getPendingEnrichments(1, 10).size()).isEqualTo(0);
+
+        //removing the artists clears the queue
+        mDb.removeContainer(URI_SFB);
+        Assertions.assertThat(mDb.getPendingEnrichments(3, 10).size()).isEqualTo(0);
+    }
+
     @Test
     public void testPlaylistOperations() {
         Uri containerUri = Uri.parse("content://sample2/foo/bar");
@@ -435,6 +670,63 @@ public class DatabaseTest {
         Assertions.assertThat(queue).isEqualTo(URI_SFB_CHILDREN_0_10);
     }
 
+    @Test
+    public void testSaveQueueInPages() {
+        mDb.saveQueue(URI_SFB_CHILDREN_0_10.subList(0, 3));
+        List<Uri> first = URI_SFB_CHILDREN_0_10.subList(0, 6);
+        List<Uri> second = URI_SFB_CHILDREN_0_10.subList(6, 10);
+        Assertions.assertThat(mDb.saveQueue(first, 0, 10)).isTrue();
+        //nothing changes until the last page is in
+        Assertions.assertThat(mDb.getLastQueue()).isEqualTo(URI_SFB_CHILDREN_0_10.subList(0, 3));
+        Assertions.assertThat(mDb.saveQueue(second, 6, 10)).isTrue();
+        Assertions.assertThat(mDb.getLastQueue()).isEqualTo(URI_SFB_CHILDREN_0_10);
+        //a page that doesn't follow on is refused and the saved queue kept
+        Assertions.assertThat(mDb.saveQueue(first, 0, 20)).isTrue();
+        Assertions.assertThat(mDb.saveQueue(second, 12, 20)).isFalse();
+        Assertions.assertThat(mDb.getLastQueue()).isEqualTo(URI_SFB_CHILDREN_0_10);
+    }
+
+    @Test
+    public void testQueueJournal() {
+        mDb.saveQueue(URI_SFB_CHILDREN_0_10);
+        List<Uri> added = Arrays.asList(Uri.parse("content://sample/added/0"),
+                Uri.parse("content://sample/added/1"));
+        List<QueueOp> ops = Arrays.asList(
+                QueueOp.add(2, added),
+                QueueOp.remove(new int[]{0, 5}),
+                QueueOp.move(0, 3));
+        mDb.appendQueueOps(ops);
+        List<Uri> expected = new ArrayList<>(URI_SFB_CHILDREN_0_10);
+        for (QueueOp op : ops) {
+            op.apply(expected);
+        }
+        Assertions.assertThat(expected).hasSize(10).contains(added.get(0), added.get(1));
+        //first page folds in the journal
+        List<Uri> queue = new ArrayList<>(mDb.getLastQueue(0, 4));
+        queue.addAll(mDb.getLastQueue(4, 4));
+        queue.addAll(mDb.getLastQueue(8, 4));
+        Assertions.assertThat(queue).isEqualTo(expected);
+        //saving the whole queue drops the journal
+        mDb.appendQueueOps(Collections.singletonList(QueueOp.remove(new int[]{1})));
+        mDb.saveQueue(URI_SFB_CHILDREN_0_10);
+        Assertions.assertThat(mDb.getLastQueue()).isEqualTo(URI_SFB_CHILDREN_0_10);
+    }
+
+    @Test
+    public void testQueueJournalCompacts() {
+        mDb.saveQueue(URI_SFB_CHILDREN_0_10);
+        List<Uri> expected = new ArrayList<>(URI_SFB_CHILDREN_0_10);
+        for (int ii=0; ii<=IndexDatabaseImpl.QUEUE_JOURNAL_MAX; ii++) {
+            QueueOp op = QueueOp.move(ii % 10, (ii * 7) % 10);
+            op.apply(expected);
+            mDb.appendQueueOps(Collections.singletonList(op));
+        }
+        Cursor c = mDb.query(IndexSchema.PlaybackQueueJournal.TABLE, null, null, null, null, null, null);
+        Assertions.assertThat(c.getCount()).isEqualTo(0);
+        c.close();
+        Assertions.assertThat(mDb.getLastQueue()).isEqualTo(expected);
+    }
+
     @Test
     public void testSaveGetLastQueuePos() {
         mDb.saveQueuePosition(4);
@@ -447,6 +739,14 @@ public class DatabaseTest {
         Assertions.assertThat(mDb.getLastQueueShuffleMode()).isEqualTo(2);
     }
 
+    @Test
+    public void testSaveGetLastQueueShuffleOrder() {
+        mDb.saveQueueShuffleOrder(new int[]{2, 0, 3, 1});
+        Assertions.assertThat(mDb.getLastQueueShuffleOrder()).containsExactly(2, 0, 3, 1);
+        mDb.saveQueueShuffleOrder(null);
+        Assertions.assertThat(mDb.getLastQueueShuffleOrder()).isNull();
+    }
+
     @Test
     public void testSaveGetLastQueueRepeatMode() {
         mDb.saveQueueRepeatMode(1);
@@ -465,6 +765,13 @@ public class DatabaseTest {
         Assertions.assertThat(mDb.getBroadcastMeta()).isTrue();
     }
 
+    @Test
+    public void testSaveGetCrossfadeDuration() {
+        Assertions.assertThat(mDb.getCrossfadeDuration()).isEqualTo(0);
+        mDb.setCrossfadeDuration(5000);
+        Assertions.assertThat(mDb.getCrossfadeDuration()).isEqualTo(5000);
+    }
+
     @Test
     public void testCoalesce() {
         Assertions.assertThat(IndexDatabaseImpl.coalesce("foo", null)).isEqualTo("foo");
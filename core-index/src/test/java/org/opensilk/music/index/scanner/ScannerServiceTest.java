@@ -38,6 +38,7 @@ import org.opensilk.music.index.BuildConfig;
 import org.opensilk.music.index.IndexComponent;
 import org.opensilk.music.index.IndexTestApplication;
 import org.opensilk.music.index.database.IndexDatabase;
+import org.opensilk.music.index.database.TreeNode;
 import org.opensilk.music.library.internal.BundleableSubscriber;
 import org.opensilk.music.library.provider.LibraryExtras;
 import org.opensilk.music.library.provider.LibraryMethods;
@@ -91,7 +92,10 @@ public class ScannerServiceTest {
                 .build();
         Intent i = new Intent().putExtra(ScannerService.EXTRA_LIBRARY_EXTRAS, LibraryExtras.b()
                 .putBundleable(c).get());
+        //what onStartCommand does before handing the intent to the worker
+        ScannerService.scanQueued();
         scannerService.onHandleIntent(i);
+        Assertions.assertThat(ScannerService.isScanPending()).isFalse();
 
         Assertions.assertThat(indexDatabase.findTopLevelContainers(null).size()).isEqualTo(1);
 
@@ -104,4 +108,36 @@ public class ScannerServiceTest {
         Assertions.assertThat(insertedTracks.size()).isEqualTo(5);
     }
 
+    @Test
+    public void testUnchangedSubtreeSkipped() throws Exception {
+        Container c = Folder.builder()
+                .setUri(TestData.URI_FOLDER1)
+                .setParentUri(Uri.parse("content://foo/root"))
+                .setName("folder1")
+                .setChangeStamp("5:1000:abc")
+                .build();
+        Intent i = new Intent().putExtra(ScannerService.EXTRA_LIBRARY_EXTRAS, LibraryExtras.b()
+                .putBundleable(c).get());
+        ScannerService.scanQueued();
+        scannerService.onHandleIntent(i);
+        Assertions.assertThat(scannerService.numListed).isEqualTo(1);
+        Assertions.assertThat(indexDatabase.getContainerChangeStamp(TestData.URI_FOLDER1)).isEqualTo("5:1000:abc");
+
+        //same stamp, nothing is listed and nothing removed
+        ScannerService.scanQueued();
+        scannerService.onHandleIntent(i);
+        Assertions.assertThat(scannerService.numListed).isEqualTo(1);
+        Assertions.assertThat(scannerService.numInserted.get()).isEqualTo(5);
+        Assertions.assertThat(indexDatabase.getTracks(null, null).size()).isEqualTo(5);
+    }
+
+    @Test
+    public void testChildrenByUri() {
+        Assertions.assertThat(ScannerService.childrenByUri(null)).isEmpty();
+        TreeNode parent = new TreeNode(TestData.URI_FOLDER1, Uri.parse("content://foo/root"));
+        TreeNode child = new TreeNode(Uri.parse("content://foo/folder1/sub"), TestData.URI_FOLDER1);
+        parent.children.add(child);
+        Assertions.assertThat(ScannerService.childrenByUri(parent).get(child.self)).isSameAs(child);
+    }
+
 }
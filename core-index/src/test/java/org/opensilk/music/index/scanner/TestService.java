@@ -33,6 +33,8 @@ import mortar.MortarScope;
  * Created by drew on 11/16/15.
  */
 public class TestService extends ScannerService {
+    int numListed;
+
     @Override
     protected void onBuildScope(MortarScope.Builder builder) {
         IndexComponent acc = DaggerService.getDaggerComponent(getApplicationContext());
@@ -45,6 +47,7 @@ public class TestService extends ScannerService {
 
     @Override
     protected List<Bundleable> getChildren(Uri uri) {
+        numListed++;
         if (TestData.URI_FOLDER1.equals(uri)) {
             return TestData.TRACKS_FOLDER1;
         } else {
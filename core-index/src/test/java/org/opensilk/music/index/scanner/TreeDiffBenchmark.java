@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.index.scanner;
+
+import android.os.Build;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.index.BuildConfig;
+import org.opensilk.music.index.IndexTestApplication;
+import org.opensilk.music.index.database.TreeNode;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.opensilk.music.index.scanner.TreeDiffTest.buildTree;
+
+/**
+ * Micro benchmark, the old nested loop diff took ~100x longer for 10x the nodes
+ * in a flat container, we should be roughly linear now. Timings are only printed,
+ * remove the @Ignore to run it by hand, correctness is covered by {@link TreeDiffTest}.
+ *
+ * Created by drew on 12/3/15.
+ */
+@Ignore("benchmark, run by hand")
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(
+        constants = BuildConfig.class,
+        sdk = Build.VERSION_CODES.LOLLIPOP,
+        application = IndexTestApplication.class
+)
+public class TreeDiffBenchmark {
+
+    @Test
+    public void benchFlatContainer() {
+        long t10k = benchFlat(10000);
+        long t100k = benchFlat(100000);
+        System.out.printf("TreeDiff flat: 10k=%.2fms 100k=%.2fms%n", t10k / 1e6, t100k / 1e6);
+    }
+
+    @Test
+    public void benchNestedTree() {
+        long t10k = benchNested(100, 100);
+        long t100k = benchNested(1000, 100);
+        System.out.printf("TreeDiff nested: 10k=%.2fms 100k=%.2fms%n", t10k / 1e6, t100k / 1e6);
+    }
+
+    static long benchFlat(int numTracks) {
+        TreeNode current = buildTree(0, numTracks);
+        TreeNode next = buildTree(0, numTracks);
+        //remove every tenth track
+        for (int ii=next.tracks.size()-1; ii>=0; ii-=10) {
+            next.tracks.remove(ii);
+        }
+        long best = Long.MAX_VALUE;
+        for (int ii=0; ii<3; ii++) {
+            long start = System.nanoTime();
+            TreeDiff.compute(current, next);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    static long benchNested(int numContainers, int tracksPer) {
+        TreeNode current = buildTree(numContainers, tracksPer);
+        TreeNode next = buildTree(numContainers, tracksPer);
+        //remove every tenth container
+        for (int ii=next.children.size()-1; ii>=0; ii-=10) {
+            next.children.remove(ii);
+        }
+        long best = Long.MAX_VALUE;
+        for (int ii=0; ii<3; ii++) {
+            long start = System.nanoTime();
+            TreeDiff.compute(current, next);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.index.scanner;
+
+import android.net.Uri;
+import android.os.Build;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.index.BuildConfig;
+import org.opensilk.music.index.IndexTestApplication;
+import org.opensilk.music.index.database.TreeNode;
+import org.opensilk.music.model.Track;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Created by drew on 12/3/15.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(
+        constants = BuildConfig.class,
+        sdk = Build.VERSION_CODES.LOLLIPOP,
+        application = IndexTestApplication.class
+)
+public class TreeDiffTest {
+
+    static final Uri ROOT = Uri.parse("content://sample/root");
+    static final Uri ROOT_PARENT = Uri.parse("content://sample");
+
+    @Test
+    public void testRemovedTracksAndContainers() {
+        TreeNode current = buildTree(3, 4);
+        TreeNode next = buildTree(3, 4);
+        //drop a track from the root and a whole container
+        next.tracks.remove(0);
+        next.children.remove(1);
+        //same uri under a different parent is not a match
+        TreeNode moved = next.children.get(0);
+        Track track = moved.tracks.remove(0);
+        moved.tracks.add(makeTrack(track.getUri(), ROOT));
+        TreeDiff diff = TreeDiff.compute(current, next);
+        Assertions.assertThat(diff.staleTracks).containsOnly(
+                current.tracks.get(0).getUri(), track.getUri());
+        Assertions.assertThat(diff.staleContainers).containsExactly(current.children.get(1).self);
+    }
+
+    @Test
+    public void testIdenticalTreesAreEmpty() {
+        TreeDiff diff = TreeDiff.compute(buildTree(10, 10), buildTree(10, 10));
+        Assertions.assertThat(diff.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testMismatchedRoots() {
+        TreeNode other = new TreeNode(Uri.parse("content://sample/other"), ROOT_PARENT);
+        TreeDiff diff = TreeDiff.compute(buildTree(1, 1), other);
+        Assertions.assertThat(diff.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testLargeFlatContainer() {
+        TreeNode current = buildTree(0, 10000);
+        TreeNode next = buildTree(0, 10000);
+        //remove every tenth track
+        for (int ii=next.tracks.size()-1; ii>=0; ii-=10) {
+            next.tracks.remove(ii);
+        }
+        TreeDiff diff = TreeDiff.compute(current, next);
+        Assertions.assertThat(diff.staleTracks).hasSize(1000);
+        Assertions.assertThat(diff.staleContainers).isEmpty();
+    }
+
+    @Test
+    public void testLargeNestedTree() {
+        TreeNode current = buildTree(100, 100);
+        TreeNode next = buildTree(100, 100);
+        //remove every tenth container
+        for (int ii=next.children.size()-1; ii>=0; ii-=10) {
+            next.children.remove(ii);
+        }
+        TreeDiff diff = TreeDiff.compute(current, next);
+        Assertions.assertThat(diff.staleContainers).hasSize(10);
+        //tracks in the stale containers go with them
+        Assertions.assertThat(diff.staleTracks).isEmpty();
+    }
+
+    /**
+     * Root with numContainers children each holding tracksPer tracks,
+     * root also gets tracksPer tracks of its own
+     */
+    static TreeNode buildTree(int numContainers, int tracksPer) {
+        TreeNode root = new TreeNode(ROOT, ROOT_PARENT);
+        addTracks(root, tracksPer);
+        for (int ii=0; ii<numContainers; ii++) {
+            TreeNode child = new TreeNode(Uri.withAppendedPath(ROOT, "c" + ii), ROOT);
+            addTracks(child, tracksPer);
+            root.children.add(child);
+        }
+        return root;
+    }
+
+    static void addTracks(TreeNode node, int num) {
+        for (int ii=0; ii<num; ii++) {
+            node.tracks.add(makeTrack(Uri.withAppendedPath(node.self, "t" + ii), node.self));
+        }
+    }
+
+    static Track makeTrack(Uri uri, Uri parentUri) {
+        return Track.builder()
+                .setUri(uri)
+                .setParentUri(parentUri)
+                .setName(uri.getLastPathSegment())
+                .addRes(Track.Res.builder().setUri(uri).build())
+                .build();
+    }
+
+}
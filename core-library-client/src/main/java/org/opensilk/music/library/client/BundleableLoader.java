@@ -59,6 +59,12 @@ public class BundleableLoader extends TypedBundleableLoader<Bundleable> {
         return this;
     }
 
+    @Override
+    public BundleableLoader setChunkSize(int chunkSize) {
+        super.setChunkSize(chunkSize);
+        return this;
+    }
+
     @Override
     public BundleableLoader setObserveOnScheduler(Scheduler scheduler) {
         super.setObserveOnScheduler(scheduler);
@@ -21,6 +21,7 @@ import android.os.RemoteException;
 
 import org.opensilk.bundleable.BundleableListSlice;
 import org.opensilk.music.library.internal.IBundleableObserver;
+import org.opensilk.music.library.internal.IBundleableProducer;
 import org.opensilk.music.library.internal.LibraryException;
 
 import java.util.ArrayList;
@@ -33,6 +34,8 @@ import rx.Subscriber;
  */
 public class BundleableObserver<T> extends IBundleableObserver.Stub {
     final Subscriber<? super List<T>> subscriber;
+    //only set when streaming, we ack each slice once handed off
+    volatile IBundleableProducer producer;
 
     public BundleableObserver(Subscriber<? super List<T>> subscriber) {
         this.subscriber = subscriber;
@@ -42,11 +45,22 @@ public class BundleableObserver<T> extends IBundleableObserver.Stub {
     @SuppressWarnings("unchecked")
     public void onNext(BundleableListSlice slice) throws RemoteException {
         List<T> list = new ArrayList<>(slice.getList());
+        final IBundleableProducer p = producer;
         if (!subscriber.isUnsubscribed()) {
             subscriber.onNext(list);
+            if (p != null) {
+                p.request(1);
+            }
+        } else if (p != null) {
+            p.cancel();
         }
     }
 
+    @Override
+    public void onStart(IBundleableProducer producer) throws RemoteException {
+        this.producer = producer;
+    }
+
     @Override
     public void onError(LibraryException e) throws RemoteException {
         if (!subscriber.isUnsubscribed()) {
@@ -76,6 +76,7 @@ public class TypedBundleableLoader<T extends Bundleable> implements RxLoader<T>
     private Uri uri;
     private String sortOrder;
     private String method = LIST;
+    private int chunkSize;
 
     private Scheduler observeOnScheduler = AndroidSchedulers.mainThread();
 
@@ -118,7 +119,29 @@ public class TypedBundleableLoader<T extends Bundleable> implements RxLoader<T>
         });
     }
 
+    /**
+     * Fetches a single page of the list, not cached. The page is sent in one list
+     * regardless of {@link #setChunkSize(int)}. Providers that can't page will send everything.
+     *
+     * @param limit max items to fetch starting at offset
+     */
+    public Observable<List<T>> getPageObservable(int offset, int limit) {
+        registerContentObserver();
+        return createObservable(offset, limit)
+                .doOnError(new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        dump(throwable);
+                    }
+                })
+                .observeOn(observeOnScheduler);
+    }
+
     public Observable<List<T>> createObservable() {
+        return createObservable(0, 0);
+    }
+
+    protected Observable<List<T>> createObservable(final int offset, final int limit) {
         return Observable.using(
                 new Func0<LibraryClient>() {
                     @Override
@@ -138,7 +161,14 @@ public class TypedBundleableLoader<T extends Bundleable> implements RxLoader<T>
                                 LibraryExtras.Builder extras = LibraryExtras.b()
                                         .putUri(uri)
                                         .putSortOrder(sortOrder)
+                                        //we read both encodings
+                                        .putCompact(true)
                                         .putBundleableObserverCallback(callback);
+                                if (limit > 0) {
+                                    extras.putOffset(offset).putLimit(limit);
+                                } else if (chunkSize > 0) {
+                                    extras.putChunkSize(chunkSize);
+                                }
                                 Bundle ok = libraryClient.makeCall(method, extras.get());
                                 if (!LibraryExtras.getOk(ok)) {
                                     subscriber.onError(LibraryExtras.getCause(ok));
@@ -191,6 +221,20 @@ public class TypedBundleableLoader<T extends Bundleable> implements RxLoader<T>
         return this;
     }
 
+    /**
+     * Ask the provider to stream results in lists of at most chunkSize as they are produced.
+     * Each list is sorted on its own so subscribers must merge them. Providers that don't
+     * support streaming will still send a single list.
+     */
+    public TypedBundleableLoader<T> setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public String getSortOrder() {
+        return sortOrder;
+    }
+
     public TypedBundleableLoader<T> setObserveOnScheduler(Scheduler scheduler) {
         this.observeOnScheduler = Preconditions.checkNotNull(scheduler, "Scheduler must not be null");
         return this;
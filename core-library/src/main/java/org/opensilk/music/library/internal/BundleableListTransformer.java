@@ -19,27 +19,80 @@ package org.opensilk.music.library.internal;
 
 import org.opensilk.bundleable.Bundleable;
 
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func1;
 import rx.functions.Func2;
+import rx.schedulers.Schedulers;
 
 /**
  * Convenience class to reduce amount of typing needed to get model items back into a list
  * to pass across ipc.
  *
+ * When a chunk size is given the items are emitted as they are produced in lists of at most
+ * chunkSize, or whatever has accumulated every {@link #CHUNK_WINDOW_MS}. Each
+ * chunk is sorted on its own, it is up to the client to merge them.
+ *
  * Created by drew on 5/3/15.
  */
 public class BundleableListTransformer<T extends Bundleable> implements Observable.Transformer<T, List<T>> {
 
+    public static final long CHUNK_WINDOW_MS = 100;
+
     final Func2<T, T, Integer> sort;
+    final int chunkSize;
+    final Scheduler scheduler;
 
     public BundleableListTransformer(Func2<T, T, Integer> sort) {
+        this(sort, 0);
+    }
+
+    public BundleableListTransformer(Func2<T, T, Integer> sort, int chunkSize) {
+        this(sort, chunkSize, Schedulers.computation());
+    }
+
+    public BundleableListTransformer(Func2<T, T, Integer> sort, int chunkSize, Scheduler scheduler) {
         this.sort = sort;
+        this.chunkSize = chunkSize;
+        this.scheduler = scheduler;
     }
 
     @Override
     public Observable<List<T>> call(Observable<T> tObservable) {
+        if (chunkSize > 0) {
+            //timer driven so a stalled producer can't hold on to a partial chunk
+            Observable<List<T>> chunks = tObservable
+                    .buffer(CHUNK_WINDOW_MS, TimeUnit.MILLISECONDS, chunkSize, scheduler)
+                    .filter(new Func1<List<T>, Boolean>() {
+                        @Override
+                        public Boolean call(List<T> ts) {
+                            //the timer fires whether anything arrived or not
+                            return !ts.isEmpty();
+                        }
+                    })
+                    //the timed buffer ignores requests, hold chunks here until the client acks
+                    .onBackpressureBuffer();
+            if (sort == null) {
+                return chunks;
+            }
+            return chunks.map(new Func1<List<T>, List<T>>() {
+                @Override
+                public List<T> call(List<T> ts) {
+                    Collections.sort(ts, new Comparator<T>() {
+                        @Override
+                        public int compare(T lhs, T rhs) {
+                            return sort.call(lhs, rhs);
+                        }
+                    });
+                    return ts;
+                }
+            });
+        }
         if (sort == null) {
             return tObservable.toList();
         }
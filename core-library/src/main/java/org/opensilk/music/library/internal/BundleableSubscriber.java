@@ -24,6 +24,7 @@ import android.util.Log;
 import org.opensilk.bundleable.Bundleable;
 import org.opensilk.bundleable.BundleableListSlice;
 
+import java.util.ArrayDeque;
 import java.util.List;
 
 import rx.Subscriber;
@@ -33,15 +34,40 @@ import rx.Subscriber;
  * Users must check isUnsubscribed before calling onNext (like a good observable)
  * This class takes care of unsubsribing itself in the event of binder death
  *
+ * When streaming the client is handed an {@link IBundleableProducer} on the first slice and
+ * must ack each slice. At most {@link #MAX_IN_FLIGHT} slices are unacked, upstream is only
+ * requested as the client acks and anything a source pushes regardless is queued here,
+ * so the emitting thread never waits on the client. Lists larger than the chunk size
+ * are split so providers that emit a single list still stream.
+ *
  * Created by drew on 5/3/15.
  */
 public class BundleableSubscriber<T extends Bundleable> extends Subscriber<List<T>> implements IBinder.DeathRecipient {
     static final String TAG = BundleableSubscriber.class.getSimpleName();
+    static final int MAX_IN_FLIGHT = 2;
 
     private final IBundleableObserver wrapped;
+    private final int chunkSize;
+    private final boolean compact;
+    //all guarded by pending
+    private final ArrayDeque<BundleableListSlice<T>> pending = new ArrayDeque<>();
+    private int credit = MAX_IN_FLIGHT;
+    private boolean started;
+    private boolean completed;
 
     public BundleableSubscriber(IBinder binder) {
+        this(binder, 0, false);
+    }
+
+    /**
+     * @param chunkSize max items per slice, 0 if the client did not ask for chunks
+     *                  (if it did it understands onStart and will ack)
+     * @param compact true if the client can read compact {@link BundleableListSlice}s
+     */
+    public BundleableSubscriber(IBinder binder, int chunkSize, boolean compact) {
         this.wrapped = IBundleableObserver.Stub.asInterface(binder);
+        this.chunkSize = chunkSize;
+        this.compact = compact;
         try {
             binder.linkToDeath(this, 0);
         } catch (RemoteException e) {
@@ -49,19 +75,32 @@ public class BundleableSubscriber<T extends Bundleable> extends Subscriber<List<
         }
     }
 
+    @Override
+    public void onStart() {
+        if (isStreaming()) {
+            request(MAX_IN_FLIGHT);
+        }
+    }
+
     @Override
     public void onCompleted() {
-        try {
-            wrapped.onCompleted();
-        } catch (RemoteException e) {
-            Log.e(TAG, "onCompleted", e);
-        } finally {
-            unlink();
+        if (isStreaming()) {
+            synchronized (pending) {
+                completed = true;
+                drainLocked();
+            }
+        } else {
+            sendCompleted();
         }
     }
 
     @Override
     public void onError(Throwable e) {
+        synchronized (pending) {
+            //errors jump the queue
+            pending.clear();
+            completed = false;
+        }
         try {
             if (e instanceof LibraryException) {
                 wrapped.onError((LibraryException) e);
@@ -78,18 +117,92 @@ public class BundleableSubscriber<T extends Bundleable> extends Subscriber<List<
 
     @Override
     public void onNext(List<T> bundleables) {
-        final BundleableListSlice<T> slice = new BundleableListSlice<T>(bundleables);
+        if (!isStreaming()) {
+            try {
+                wrapped.onNext(new BundleableListSlice<T>(bundleables, compact));
+            } catch (RemoteException e) {
+                unsubscribe();
+                Log.e(TAG, "onNext", e);
+            }
+            return;
+        }
+        synchronized (pending) {
+            if (!started) {
+                started = true;
+                try {
+                    wrapped.onStart(new Producer());
+                } catch (RemoteException e) {
+                    unsubscribe();
+                    Log.e(TAG, "onStart", e);
+                    return;
+                }
+            }
+            final int size = bundleables.size();
+            for (int ii = 0; ii < size || ii == 0; ii += chunkSize) {
+                pending.add(new BundleableListSlice<T>(
+                        bundleables.subList(ii, Math.min(ii + chunkSize, size)), compact));
+            }
+            drainLocked();
+        }
+    }
+
+    @Override
+    public void binderDied() {
+        unsubscribe();
+    }
+
+    private boolean isStreaming() {
+        return chunkSize > 0;
+    }
+
+    /**
+     * Sends what the client has room for, and the completion once everything is out.
+     * The ipc calls are oneway so holding the lock here does not wait on the client
+     */
+    private void drainLocked() {
         try {
-            wrapped.onNext(slice);
+            while (credit > 0 && !pending.isEmpty() && !isUnsubscribed()) {
+                credit--;
+                wrapped.onNext(pending.poll());
+            }
         } catch (RemoteException e) {
+            pending.clear();
+            completed = false;
             unsubscribe();
             Log.e(TAG, "onNext", e);
+            return;
+        }
+        if (completed && pending.isEmpty()) {
+            completed = false;
+            sendCompleted();
         }
     }
 
-    @Override
-    public void binderDied() {
-        unsubscribe();
+    private void sendCompleted() {
+        try {
+            wrapped.onCompleted();
+        } catch (RemoteException e) {
+            Log.e(TAG, "onCompleted", e);
+        } finally {
+            unlink();
+        }
+    }
+
+    class Producer extends IBundleableProducer.Stub {
+        @Override
+        public void request(int n) {
+            synchronized (pending) {
+                credit += n;
+                drainLocked();
+            }
+            //Subscriber.request, shadowed here
+            BundleableSubscriber.this.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            unsubscribe();
+        }
     }
 
     private void unlink() {
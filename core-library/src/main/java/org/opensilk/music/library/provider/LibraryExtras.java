@@ -84,6 +84,23 @@ public class LibraryExtras {
      * A bundleable object
      */
     public static final String BUNDLEABLE = "bundleable";
+    /**
+     * Int: max items per slice, when set results are streamed as they are produced
+     *      instead of sent in one slice after completion. Absent or 0 for one slice.
+     */
+    public static final String CHUNK_SIZE = "chunk_size";
+    /**
+     * Boolean: client can read compact {@link org.opensilk.bundleable.BundleableListSlice}s
+     */
+    public static final String COMPACT = "compact";
+    /**
+     * Int: skip this many items of the sorted list. Only honored by libraries that can page.
+     */
+    public static final String OFFSET = "offset";
+    /**
+     * Int: return at most this many items starting at {@link #OFFSET}. Absent or 0 for everything.
+     */
+    public static final String LIMIT = "limit";
 
     public static Uri getUri(Bundle extras) {
         return extras.getParcelable(URI);
@@ -97,6 +114,22 @@ public class LibraryExtras {
         return extras.getString(SORTORDER, BaseSortOrder.A_Z);
     }
 
+    public static int getChunkSize(Bundle extras) {
+        return extras.getInt(CHUNK_SIZE, 0);
+    }
+
+    public static boolean getCompact(Bundle extras) {
+        return extras.getBoolean(COMPACT, false);
+    }
+
+    public static int getOffset(Bundle extras) {
+        return extras.getInt(OFFSET, 0);
+    }
+
+    public static int getLimit(Bundle extras) {
+        return extras.getInt(LIMIT, 0);
+    }
+
     public static List<Uri> getUriList(Bundle extras) {
         return extras.<Uri>getParcelableArrayList(URI_LIST);
     }
@@ -210,6 +243,26 @@ public class LibraryExtras {
             return this;
         }
 
+        public Builder putChunkSize(int chunkSize) {
+            b.putInt(CHUNK_SIZE, chunkSize);
+            return this;
+        }
+
+        public Builder putCompact(boolean compact) {
+            b.putBoolean(COMPACT, compact);
+            return this;
+        }
+
+        public Builder putOffset(int offset) {
+            b.putInt(OFFSET, offset);
+            return this;
+        }
+
+        public Builder putLimit(int limit) {
+            b.putInt(LIMIT, limit);
+            return this;
+        }
+
         public Builder putUriList(List<Uri> uris) {
             b.putParcelableArrayList(URI_LIST, uris != null ? new ArrayList<Parcelable>(uris) : null);
             return this;
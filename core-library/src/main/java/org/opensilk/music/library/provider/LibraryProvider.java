@@ -26,6 +26,7 @@ import android.os.IBinder;
 import android.os.ResultReceiver;
 import android.util.Log;
 
+import org.opensilk.bundleable.Bundleable;
 import org.opensilk.music.library.LibraryConfig;
 import org.opensilk.music.model.Model;
 import org.opensilk.music.model.compare.FolderTrackCompare;
@@ -119,12 +120,25 @@ public abstract class LibraryProvider extends ContentProvider {
                 final Uri uri = LibraryExtras.getUri(extras);
                 final String sortOrder = LibraryExtras.getSortOrder(extras);
                 final List<Uri> uriList = LibraryExtras.getUriList(extras);
+                final int chunkSize = LibraryExtras.getChunkSize(extras);
+                final boolean compact = LibraryExtras.getCompact(extras);
+                final int offset = LibraryExtras.getOffset(extras);
+                final int limit = LibraryExtras.getLimit(extras);
                 LibraryExtras.Builder eb = LibraryExtras.b();
                 eb.putUri(uri)
                         .putSortOrder(sortOrder != null ? sortOrder : BaseSortOrder.A_Z);
                 if (uriList != null) {
                     eb.putUriList(uriList);
                 }
+                if (chunkSize > 0) {
+                    eb.putChunkSize(chunkSize);
+                }
+                if (compact) {
+                    eb.putCompact(true);
+                }
+                if (limit > 0) {
+                    eb.putOffset(Math.max(offset, 0)).putLimit(limit);
+                }
                 final Bundle args = eb.get();
 
                 switch (method) {
@@ -202,25 +216,26 @@ public abstract class LibraryProvider extends ContentProvider {
      */
 
     protected void listObjsInternal(final Uri uri, final IBinder binder, final Bundle args){
-        final BundleableSubscriber<Model> subscriber = new BundleableSubscriber<>(binder);
+        final BundleableSubscriber<Model> subscriber = newSubscriber(binder, args);
         Observable<Model> o = getListObjsObservable(uri, args)
                 .subscribeOn(scheduler);
         o.compose(
-                new BundleableListTransformer<Model>(FolderTrackCompare.func(LibraryExtras.getSortOrder(args)))
+                new BundleableListTransformer<Model>(FolderTrackCompare.func(LibraryExtras.getSortOrder(args)),
+                        LibraryExtras.getChunkSize(args))
         ).subscribe(subscriber);
     }
 
     protected void getObjInternal(final Uri uri, final IBinder binder, final Bundle args){
-        final BundleableSubscriber<Model> subscriber = new BundleableSubscriber<>(binder);
+        final BundleableSubscriber<Model> subscriber = newSubscriber(binder, args);
         Observable<Model> o = getGetObjObservable(uri, args)
                 .subscribeOn(scheduler);
         o.compose(
-                new BundleableListTransformer<Model>(null)
+                new BundleableListTransformer<Model>(null, LibraryExtras.getChunkSize(args))
         ).subscribe(subscriber);
     }
 
     protected void multiGetObjsInternal(final List<Uri> uriList, final IBinder binder,final Bundle args) {
-        final BundleableSubscriber<Model> subscriber = new BundleableSubscriber<>(binder);
+        final BundleableSubscriber<Model> subscriber = newSubscriber(binder, args);
         Observable<Model> o = getMultiGetObjsObservale(uriList, args)
                 .subscribeOn(scheduler);
         o.compose(
@@ -231,28 +246,37 @@ public abstract class LibraryProvider extends ContentProvider {
                         int idx2 = uriList.indexOf(bundleable2.getUri());
                         return idx1 - idx2;
                     }
-                })
+                }, LibraryExtras.getChunkSize(args))
         ).subscribe(subscriber);
     }
 
     protected void scanObjsInternal(final Uri uri, final IBinder binder, final Bundle args){
-        final BundleableSubscriber<Model> subscriber = new BundleableSubscriber<>(binder);
+        final BundleableSubscriber<Model> subscriber = newSubscriber(binder, args);
         Observable<Model> o = getScanObjsObservable(uri, args)
                 .subscribeOn(scheduler);
         o.compose(
-                new BundleableListTransformer<Model>(null)
+                new BundleableListTransformer<Model>(null, LibraryExtras.getChunkSize(args))
         ).subscribe(subscriber);
     }
 
     protected void listRootsInternal(final Uri uri, final IBinder binder, final Bundle args){
-        final BundleableSubscriber<Container> subscriber = new BundleableSubscriber<>(binder);
+        final BundleableSubscriber<Container> subscriber = newSubscriber(binder, args);
         Observable<Container> o= getListRootsObservable(uri, args)
                 .subscribeOn(scheduler);
         o.compose(
-                new BundleableListTransformer<Container>(null)
+                new BundleableListTransformer<Container>(null, LibraryExtras.getChunkSize(args))
         ).subscribe(subscriber);
     }
 
+    /**
+     * @return subscriber that streams (with backpressure) in chunks if the client asked for them
+     *         and sends compact slices if the client can read them
+     */
+    protected <T extends Bundleable> BundleableSubscriber<T> newSubscriber(IBinder binder, Bundle args) {
+        return new BundleableSubscriber<>(binder,
+                LibraryExtras.getChunkSize(args), LibraryExtras.getCompact(args));
+    }
+
     /*
      * Start query stubs
      *
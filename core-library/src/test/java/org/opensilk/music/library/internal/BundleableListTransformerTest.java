@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.library.internal;
+
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.model.Folder;
+import org.opensilk.music.model.Model;
+import org.opensilk.music.model.Track;
+import org.opensilk.music.model.compare.FolderTrackCompare;
+import org.opensilk.music.model.sort.BaseSortOrder;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 12/8/15.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config( manifest = Config.NONE)
+public class BundleableListTransformerTest {
+
+    TestScheduler scheduler;
+    PublishSubject<Model> source;
+    TestSubscriber<List<Model>> subscriber;
+
+    @Before
+    public void setUp() {
+        scheduler = new TestScheduler();
+        source = PublishSubject.create();
+        subscriber = new TestSubscriber<>();
+        source.compose(new BundleableListTransformer<Model>(
+                FolderTrackCompare.func(BaseSortOrder.A_Z), 3, scheduler))
+                .subscribe(subscriber);
+    }
+
+    @Test
+    public void testStalledProducerIsFlushedByTimer() {
+        source.onNext(track("b"));
+        source.onNext(folder("z"));
+        assertThat(subscriber.getOnNextEvents()).isEmpty();
+        //nothing else arrives, the window still closes
+        scheduler.advanceTimeBy(BundleableListTransformer.CHUNK_WINDOW_MS, TimeUnit.MILLISECONDS);
+        assertThat(subscriber.getOnNextEvents()).hasSize(1);
+        List<Model> chunk = subscriber.getOnNextEvents().get(0);
+        assertThat(chunk).hasSize(2);
+        assertThat(chunk.get(0).getName()).isEqualTo("z");
+        assertThat(chunk.get(1).getName()).isEqualTo("b");
+    }
+
+    @Test
+    public void testEmptyWindowsAreNotSent() {
+        scheduler.advanceTimeBy(BundleableListTransformer.CHUNK_WINDOW_MS * 5, TimeUnit.MILLISECONDS);
+        assertThat(subscriber.getOnNextEvents()).isEmpty();
+    }
+
+    @Test
+    public void testFullChunkIsSentRightAway() {
+        source.onNext(track("c"));
+        source.onNext(track("a"));
+        source.onNext(track("b"));
+        assertThat(subscriber.getOnNextEvents()).hasSize(1);
+        assertThat(subscriber.getOnNextEvents().get(0).get(0).getName()).isEqualTo("a");
+        source.onNext(track("d"));
+        source.onCompleted();
+        assertThat(subscriber.getOnNextEvents()).hasSize(2);
+        subscriber.assertTerminalEvent();
+    }
+
+    @Test
+    public void testFolderTrackCompareIsSymmetric() {
+        Comparator<Model> c = FolderTrackCompare.comparator(BaseSortOrder.A_Z);
+        Model f = folder("a");
+        Model t = track("a");
+        assertThat(c.compare(f, t)).isLessThan(0);
+        assertThat(c.compare(t, f)).isGreaterThan(0);
+    }
+
+    static Folder folder(String name) {
+        return Folder.builder().setUri(Uri.parse("content://test/f/" + name))
+                .setParentUri(Uri.parse("content://test/f")).setName(name).build();
+    }
+
+    static Track track(String name) {
+        return Track.builder().setUri(Uri.parse("content://test/t/" + name))
+                .setParentUri(Uri.parse("content://test/t")).setName(name)
+                .addRes(Track.Res.builder().setUri(Uri.parse("http://example.com/" + name)).build()).build();
+    }
+}
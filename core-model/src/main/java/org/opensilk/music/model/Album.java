@@ -19,8 +19,11 @@ package org.opensilk.music.model;
 
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import org.opensilk.bundleable.BundleableCodec;
+
 /**
  * Created by drew on 6/10/14.
  */
@@ -93,6 +96,19 @@ public class Album extends Container {
         }
     };
 
+    public static final BundleableCodec<Album> BUNDLE_CODEC = new ModelCodec<Album>() {
+        @Override
+        Metadata getMetadata(Album item) {
+            return item.metadata;
+        }
+
+        @Override
+        Album create(Uri uri, Uri parentUri, String name, Metadata metadata,
+                   Parcel source, int version) {
+            return new Album(uri, parentUri, name, metadata);
+        }
+    };
+
     public static final class Builder {
         private Uri uri;
         private Uri parentUri;
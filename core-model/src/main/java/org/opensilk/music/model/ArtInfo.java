@@ -35,11 +35,20 @@ import java.nio.charset.Charset;
 public class ArtInfo implements Parcelable, Comparable<ArtInfo> {
     public static final ArtInfo NULLINSTANCE = new ArtInfo(null, null, null);
 
+    //size classes, longest edge in pixels
+    public static final int SIZE_ORIGINAL = 0;
+    public static final int SIZE_THUMB = 96;
+    public static final int SIZE_GRID = 256;
+    public static final int SIZE_FULL = 512;
+    public static final int[] SIZE_CLASSES = {SIZE_THUMB, SIZE_GRID, SIZE_FULL};
+
     public final String artistName;
     public final String albumName;
     public final Uri artworkUri;
     //This is only used for sanity so the fetcher can be sure we really want an artist
     public final boolean forArtist;
+    //variant wanted, the source is the same for all of them
+    public final int sizeClass;
 
     /**
      * Creates a new album request
@@ -78,10 +87,40 @@ public class ArtInfo implements Parcelable, Comparable<ArtInfo> {
     }
 
     private ArtInfo(String artistName, String albumName, Uri artworkUri, boolean forArtist) {
+        this(artistName, albumName, artworkUri, forArtist, SIZE_ORIGINAL);
+    }
+
+    private ArtInfo(String artistName, String albumName, Uri artworkUri, boolean forArtist, int sizeClass) {
         this.artistName = artistName;
         this.albumName = albumName;
         this.artworkUri = artworkUri != null ? artworkUri : Uri.EMPTY;
         this.forArtist = forArtist;
+        this.sizeClass = sizeClass;
+    }
+
+    /**
+     * @return copy asking for the size class
+     */
+    public ArtInfo withSize(int sizeClass) {
+        if (this == NULLINSTANCE || this.sizeClass == sizeClass) {
+            return this;
+        }
+        return new ArtInfo(artistName, albumName, artworkUri, forArtist, sizeClass);
+    }
+
+    /**
+     * @return smallest size class at least px big, or original if none are
+     */
+    public static int sizeClassFor(int px) {
+        if (px <= 0) {
+            return SIZE_ORIGINAL;
+        }
+        for (int size : SIZE_CLASSES) {
+            if (size >= px) {
+                return size;
+            }
+        }
+        return SIZE_ORIGINAL;
     }
 
     @Override
@@ -90,6 +129,7 @@ public class ArtInfo implements Parcelable, Comparable<ArtInfo> {
         if (o == null || getClass() != o.getClass()) return false;
         ArtInfo artInfo = (ArtInfo) o;
         if (forArtist != artInfo.forArtist) return false;
+        if (sizeClass != artInfo.sizeClass) return false;
         if (artistName != null ? !artistName.equals(artInfo.artistName) : artInfo.artistName != null)
             return false;
         if (albumName != null ? !albumName.equals(artInfo.albumName) : artInfo.albumName != null)
@@ -103,12 +143,13 @@ public class ArtInfo implements Parcelable, Comparable<ArtInfo> {
         result = 31 * result + (albumName != null ? albumName.hashCode() : 0);
         result = 31 * result + (artworkUri != null ? artworkUri.hashCode() : 0);
         result = 31 * result + (forArtist ? 1 : 0);
+        result = 31 * result + sizeClass;
         return result;
     }
 
     @Override
     public String toString() {
-        return "ArtInfo{ artist="+artistName+" album="+albumName+" uri="+artworkUri+" }";
+        return "ArtInfo{ artist="+artistName+" album="+albumName+" uri="+artworkUri+" size="+sizeClass+" }";
     }
 
     public String cacheKey() {
@@ -134,6 +175,17 @@ public class ArtInfo implements Parcelable, Comparable<ArtInfo> {
         return sb.toString();
     }
 
+    /**
+     * @return key of the variant for our size class
+     */
+    public String variantKey() {
+        return variantKey(cacheKey(), sizeClass);
+    }
+
+    public static String variantKey(String cacheKey, int sizeClass) {
+        return sizeClass == SIZE_ORIGINAL ? cacheKey : cacheKey + "+size=" + sizeClass;
+    }
+
     public Uri asContentUri(String authority) {
         Uri.Builder ub = new Uri.Builder()
                 .scheme("content")
@@ -155,10 +207,25 @@ public class ArtInfo implements Parcelable, Comparable<ArtInfo> {
         if (!Uri.EMPTY.equals(artworkUri)) {
             builder.append("&artworkUri=").append(encodeString(artworkUri.toString()));
         }
+        if (sizeClass != SIZE_ORIGINAL) {
+            builder.append("&size=").append(sizeClass);
+        }
         return ub.encodedQuery(builder.toString()).build();
     }
 
     public static ArtInfo fromUri(Uri uri) {
+        int sizeClass = SIZE_ORIGINAL;
+        try {
+            String size = uri.getQueryParameter("size");
+            if (!StringUtils.isEmpty(size)) {
+                sizeClass = sizeClassFor(Integer.parseInt(size));
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        return fromUriOriginal(uri).withSize(sizeClass);
+    }
+
+    private static ArtInfo fromUriOriginal(Uri uri) {
         String encUri = uri.getQueryParameter("artworkUri");
         Uri artworkUri = null;
         if (!StringUtils.isEmpty(encUri)) {
@@ -214,6 +281,7 @@ public class ArtInfo implements Parcelable, Comparable<ArtInfo> {
         dest.writeString(albumName);
         artworkUri.writeToParcel(dest, flags);
         dest.writeInt(forArtist ? 1 : 0);
+        dest.writeInt(sizeClass);
     }
 
     public static final Creator<ArtInfo> CREATOR = new Creator<ArtInfo>() {
@@ -223,7 +291,8 @@ public class ArtInfo implements Parcelable, Comparable<ArtInfo> {
                     in.readString(),
                     in.readString(),
                     Uri.CREATOR.createFromParcel(in),
-                    in.readInt() == 1
+                    in.readInt() == 1,
+                    in.readInt()
             );
         }
 
@@ -19,8 +19,11 @@ package org.opensilk.music.model;
 
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import org.opensilk.bundleable.BundleableCodec;
+
 /**
  * Created by drew on 6/10/14.
  */
@@ -82,6 +85,19 @@ public class Artist extends Container {
         }
     };
 
+    public static final BundleableCodec<Artist> BUNDLE_CODEC = new ModelCodec<Artist>() {
+        @Override
+        Metadata getMetadata(Artist item) {
+            return item.metadata;
+        }
+
+        @Override
+        Artist create(Uri uri, Uri parentUri, String name, Metadata metadata,
+                   Parcel source, int version) {
+            return new Artist(uri, parentUri, name, metadata);
+        }
+    };
+
     public static final class Builder {
         private Uri uri;
         private Uri parentUri;
@@ -19,6 +19,7 @@ package org.opensilk.music.model;
 
 import android.net.Uri;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 /**
  * A Container has one or more children descending from Item or Container
@@ -64,6 +65,10 @@ public abstract class Container implements Model {
         return metadata.getLong(Metadata.KEY_FLAGS, 0);
     }
 
+    public @Nullable String getChangeStamp() {
+        return metadata.getString(Metadata.KEY_CHANGE_STAMP);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -19,8 +19,11 @@ package org.opensilk.music.model;
 
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import org.opensilk.bundleable.BundleableCodec;
+
 /**
  * Created by drew on 6/10/14.
  */
@@ -74,6 +77,19 @@ public class Folder extends Container {
         }
     };
 
+    public static final BundleableCodec<Folder> BUNDLE_CODEC = new ModelCodec<Folder>() {
+        @Override
+        Metadata getMetadata(Folder item) {
+            return item.metadata;
+        }
+
+        @Override
+        Folder create(Uri uri, Uri parentUri, String name, Metadata metadata,
+                   Parcel source, int version) {
+            return new Folder(uri, parentUri, name, metadata);
+        }
+    };
+
     public static final class Builder {
         private Uri uri;
         private Uri parentUri;
@@ -118,6 +134,11 @@ public class Folder extends Container {
             return this;
         }
 
+        public Builder setChangeStamp(String stamp) {
+            bob.putString(Metadata.KEY_CHANGE_STAMP, stamp);
+            return this;
+        }
+
         public Folder build() {
             if (uri == null || parentUri == null || name == null) {
                 throw new NullPointerException("uri and name are required");
@@ -19,8 +19,11 @@ package org.opensilk.music.model;
 
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import org.opensilk.bundleable.BundleableCodec;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -100,6 +103,19 @@ public class Genre extends Container {
         }
     };
 
+    public static final BundleableCodec<Genre> BUNDLE_CODEC = new ModelCodec<Genre>() {
+        @Override
+        Metadata getMetadata(Genre item) {
+            return item.metadata;
+        }
+
+        @Override
+        Genre create(Uri uri, Uri parentUri, String name, Metadata metadata,
+                   Parcel source, int version) {
+            return new Genre(uri, parentUri, name, metadata);
+        }
+    };
+
     public static final class Builder  {
         private Uri uri;
         private Uri parentUri;
@@ -25,7 +25,10 @@ import android.os.Parcelable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Common class for metadata to make parsing and future additions easier
@@ -156,6 +159,11 @@ public class Metadata implements Parcelable {
      * Long: Opaque value provided by library provider, could be date, version, etc
      */
     public static final String KEY_LAST_MODIFIED = "orpheus.last.modified";
+    /**
+     * String: Opaque value provided by library provider, must change whenever anything
+     *         under the {@link Container} (at any depth) is added, removed or modified
+     */
+    public static final String KEY_CHANGE_STAMP = "orpheus.change.stamp";
     /**
      * String: TODO still unsure if this should be used
      */
@@ -205,6 +213,44 @@ public class Metadata implements Parcelable {
      */
     public static final String KEY_DETAILS_URI = "orpheus.details.uri";
 
+    /*
+     * Compact encoding, see {@link #writeCompact(Parcel)}. Known keys are written
+     * as their index in this table so it must only ever be appended to.
+     */
+    private static final String[] COMPACT_KEYS = new String[] {
+            KEY_ARTIST_NAME, KEY_ALBUM_NAME, KEY_ALBUM_ARTIST_NAME,
+            KEY_RELEASE_YEAR, KEY_DATE_ADDED, KEY_DATE_MODIFIED,
+            KEY_BITRATE, KEY_MIME_TYPE, KEY_SIZE,
+            KEY_DURATION, KEY_ALBUM_ART_URI, KEY_ARTIST_IMAGE_URI,
+            KEY_ALBUM_URI, KEY_ARTIST_URI, KEY_RESOURCE_URI,
+            KEY_RESOURCE_HEADERS, KEY_PARENT_URI, KEY_CHILD_TRACKS_COUNT,
+            KEY_CHILD_ALBUMS_COUNT, KEY_CHILD_COUNT, KEY_CHILD_ALBUMS_URI,
+            KEY_CHILD_TRACKS_URI, KEY_ARTINFOS, KEY_NUM_ARTINFO,
+            KEY_IS_COMPILATION, KEY_GENRE_NAME, KEY_TRACK_NAME,
+            KEY_TRACK_NUMBER, KEY_DISC_NUMBER, KEY_LAST_MODIFIED,
+            KEY_CHANGE_STAMP, KEY_SORT_NAME, KEY_FLAGS,
+            KEY_TRACK_URI, KEY_ARTIST_MBID, KEY_ARTIST_BIO,
+            KEY_ARTIST_SUMMARY, KEY_ARTIST_URL_URI, KEY_ALBUM_MBID,
+            KEY_ALBUM_BIO, KEY_ALBUM_SUMMARY, KEY_ALBUM_URL_URI,
+            KEY_DETAILS_URI
+    };
+    private static final Map<String, Integer> COMPACT_TAGS;
+    static {
+        COMPACT_TAGS = new HashMap<>(COMPACT_KEYS.length * 2);
+        for (int ii=0; ii<COMPACT_KEYS.length; ii++) {
+            COMPACT_TAGS.put(COMPACT_KEYS[ii], ii);
+        }
+    }
+    private static final int TAG_KEY_STRING = -1;
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_STRING = 1;
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_URI = 4;
+    private static final int TYPE_ARTINFOS = 5;
+    private static final int TYPE_BUNDLE = 6;
+
     private final Bundle meta;
 
     private Metadata(Bundle b) {
@@ -259,6 +305,110 @@ public class Metadata implements Parcelable {
         dest.writeBundle(meta);
     }
 
+    /**
+     * Writes the metadata without the Bundle overhead, used by the model codecs.
+     * Each entry is the key tag (or -1 and the key) followed by the value type and value.
+     */
+    @SuppressWarnings("unchecked")
+    void writeCompact(Parcel dest) {
+        meta.setClassLoader(Metadata.class.getClassLoader());
+        final Set<String> keys = meta.keySet();
+        dest.writeInt(keys.size());
+        for (String key : keys) {
+            final Integer tag = COMPACT_TAGS.get(key);
+            if (tag != null) {
+                dest.writeInt(tag);
+            } else {
+                dest.writeInt(TAG_KEY_STRING);
+                dest.writeString(key);
+            }
+            final Object value = meta.get(key);
+            if (value == null) {
+                dest.writeInt(TYPE_NULL);
+            } else if (value instanceof String) {
+                dest.writeInt(TYPE_STRING);
+                dest.writeString((String) value);
+            } else if (value instanceof Integer) {
+                dest.writeInt(TYPE_INT);
+                dest.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                dest.writeInt(TYPE_LONG);
+                dest.writeLong((Long) value);
+            } else if (value instanceof Uri) {
+                dest.writeInt(TYPE_URI);
+                Uri.writeToParcel(dest, (Uri) value);
+            } else if (KEY_ARTINFOS.equals(key) && value instanceof List) {
+                dest.writeInt(TYPE_ARTINFOS);
+                dest.writeTypedList((List<ArtInfo>) value);
+            } else {
+                //not something the builder puts, rare enough to pay for a bundle
+                final Bundle single = new Bundle(meta);
+                single.keySet().retainAll(Collections.singleton(key));
+                dest.writeInt(TYPE_BUNDLE);
+                dest.writeBundle(single);
+            }
+        }
+    }
+
+    /**
+     * Reads metadata written by {@link #writeCompact(Parcel)}, entries with tags newer
+     * than this table are dropped.
+     */
+    static Metadata readCompact(Parcel source) {
+        final int N = source.readInt();
+        final Bundle b = new Bundle(Math.max(N, 0));
+        for (int ii=0; ii<N; ii++) {
+            final int tag = source.readInt();
+            final String key;
+            if (tag == TAG_KEY_STRING) {
+                key = source.readString();
+            } else if (tag >= 0 && tag < COMPACT_KEYS.length) {
+                key = COMPACT_KEYS[tag];
+            } else {
+                key = null;
+            }
+            final int type = source.readInt();
+            switch (type) {
+                case TYPE_NULL:
+                    if (key != null) b.putString(key, null);
+                    break;
+                case TYPE_STRING: {
+                    String value = source.readString();
+                    if (key != null) b.putString(key, value);
+                    break;
+                }
+                case TYPE_INT: {
+                    int value = source.readInt();
+                    if (key != null) b.putInt(key, value);
+                    break;
+                }
+                case TYPE_LONG: {
+                    long value = source.readLong();
+                    if (key != null) b.putLong(key, value);
+                    break;
+                }
+                case TYPE_URI: {
+                    Uri value = Uri.CREATOR.createFromParcel(source);
+                    if (key != null) b.putParcelable(key, value);
+                    break;
+                }
+                case TYPE_ARTINFOS: {
+                    ArrayList<ArtInfo> value = source.createTypedArrayList(ArtInfo.CREATOR);
+                    if (key != null) b.putParcelableArrayList(key, value);
+                    break;
+                }
+                case TYPE_BUNDLE: {
+                    Bundle value = source.readBundle(Metadata.class.getClassLoader());
+                    if (key != null) b.putAll(value);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown metadata type " + type);
+            }
+        }
+        return new Metadata(b);
+    }
+
     public static final Creator<Metadata> CREATOR = new Creator<Metadata>() {
         @Override
         public Metadata createFromParcel(Parcel source) {
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.model;
+
+import android.net.Uri;
+import android.os.Parcel;
+
+import org.opensilk.bundleable.BundleableCodec;
+
+/**
+ * Shared {@link BundleableCodec} for the models, they are all uri, parentUri, name
+ * and {@link Metadata}. Subclasses may append their own fields in {@link #writeExtra}.
+ *
+ * Created by drew on 12/4/15.
+ */
+abstract class ModelCodec<T extends Model> implements BundleableCodec<T> {
+
+    static final int VERSION_1 = 1;
+
+    @Override
+    public int getVersion() {
+        return VERSION_1;
+    }
+
+    @Override
+    public void write(T item, Parcel dest) {
+        Uri.writeToParcel(dest, item.getUri());
+        Uri.writeToParcel(dest, item.getParentUri());
+        dest.writeString(item.getName());
+        getMetadata(item).writeCompact(dest);
+        writeExtra(item, dest);
+    }
+
+    @Override
+    public T read(Parcel source, int version) throws IllegalArgumentException {
+        final Uri uri = Uri.CREATOR.createFromParcel(source);
+        final Uri parentUri = Uri.CREATOR.createFromParcel(source);
+        final String name = source.readString();
+        final Metadata metadata = Metadata.readCompact(source);
+        if (uri == null || parentUri == null || name == null) {
+            throw new IllegalArgumentException("uri, parentUri, and name are required");
+        }
+        return create(uri, parentUri, name, metadata, source, version);
+    }
+
+    abstract Metadata getMetadata(T item);
+
+    void writeExtra(T item, Parcel dest) {
+    }
+
+    abstract T create(Uri uri, Uri parentUri, String name, Metadata metadata,
+                      Parcel source, int version);
+
+}
@@ -19,8 +19,11 @@ package org.opensilk.music.model;
 
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import org.opensilk.bundleable.BundleableCodec;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -88,6 +91,19 @@ public class Playlist extends Container {
         }
     };
 
+    public static final BundleableCodec<Playlist> BUNDLE_CODEC = new ModelCodec<Playlist>() {
+        @Override
+        Metadata getMetadata(Playlist item) {
+            return item.metadata;
+        }
+
+        @Override
+        Playlist create(Uri uri, Uri parentUri, String name, Metadata metadata,
+                   Parcel source, int version) {
+            return new Playlist(uri, parentUri, name, metadata);
+        }
+    };
+
     public static final class Builder {
         private Uri uri;
         private Uri parentUri;
@@ -25,6 +25,8 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
+import org.opensilk.bundleable.BundleableCodec;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -324,6 +326,33 @@ public class Track extends Item {
         }
     };
 
+    public static final BundleableCodec<Track> BUNDLE_CODEC = new ModelCodec<Track>() {
+        @Override
+        Metadata getMetadata(Track item) {
+            return item.metadata;
+        }
+
+        @Override
+        void writeExtra(Track item, Parcel dest) {
+            dest.writeInt(item.resList.size());
+            for (Res res : item.resList) {
+                Uri.writeToParcel(dest, res.dataUri);
+                res.metadata.writeCompact(dest);
+            }
+        }
+
+        @Override
+        Track create(Uri uri, Uri parentUri, String name, Metadata metadata,
+                   Parcel source, int version) {
+            final int N = source.readInt();
+            final ArrayList<Res> resList = new ArrayList<>(N);
+            for (int ii=0; ii<N; ii++) {
+                resList.add(new Res(Uri.CREATOR.createFromParcel(source), Metadata.readCompact(source)));
+            }
+            return new Track(uri, parentUri, name, metadata, resList);
+        }
+    };
+
     public static final class Builder {
         private Uri uri;
         private Uri parentUri;
@@ -19,9 +19,11 @@ package org.opensilk.music.model;
 
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Parcel;
 import android.support.annotation.NonNull;
 
 import org.opensilk.bundleable.Bundleable;
+import org.opensilk.bundleable.BundleableCodec;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -98,6 +100,19 @@ public class TrackList extends Container {
         }
     };
 
+    public static final BundleableCodec<TrackList> BUNDLE_CODEC = new ModelCodec<TrackList>() {
+        @Override
+        Metadata getMetadata(TrackList item) {
+            return item.metadata;
+        }
+
+        @Override
+        TrackList create(Uri uri, Uri parentUri, String name, Metadata metadata,
+                   Parcel source, int version) {
+            return new TrackList(uri, parentUri, name, metadata);
+        }
+    };
+
     public static final class Builder  {
         private Uri uri;
         private Uri parentUri;
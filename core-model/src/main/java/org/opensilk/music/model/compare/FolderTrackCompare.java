@@ -49,14 +49,21 @@ public class FolderTrackCompare {
                 } else if (lhs instanceof Track && rhs instanceof Track) {
                     Comparator<Track> ct = TrackCompare.comparator(sort);
                     return ct.compare((Track) lhs, (Track) rhs);
-                } else if (lhs instanceof Folder) {
-                    return -1; //Folders higher
-                } else if (rhs instanceof Track) {
-                    return 1;
                 } else {
-                    return 0;
+                    //Folders higher, then tracks, then everything else
+                    return rank(lhs) - rank(rhs);
                 }
             }
         };
     }
+
+    static int rank(Model m) {
+        if (m instanceof Folder) {
+            return 0;
+        } else if (m instanceof Track) {
+            return 1;
+        } else {
+            return 2;
+        }
+    }
 }
@@ -66,4 +66,26 @@ public class ArtInfoTest {
         assertThat(artInfo1).isEqualTo(fromP);
     }
 
+    @Test
+    public void ensureSizeClassSurvivesUriAndParcel() {
+        ArtInfo thumb = ArtInfo.forAlbum("Artist1", "Album1", null).withSize(ArtInfo.SIZE_THUMB);
+        assertThat(thumb).isNotEqualTo(ArtInfo.forAlbum("Artist1", "Album1", null));
+        assertThat(thumb.cacheKey()).isEqualTo(ArtInfo.forAlbum("Artist1", "Album1", null).cacheKey());
+        assertThat(thumb.variantKey()).isNotEqualTo(thumb.cacheKey());
+        assertThat(ArtInfo.fromUri(thumb.asContentUri("test"))).isEqualTo(thumb);
+        Parcel p = Parcel.obtain();
+        thumb.writeToParcel(p, 0);
+        p.setDataPosition(0);
+        assertThat(ArtInfo.CREATOR.createFromParcel(p)).isEqualTo(thumb);
+    }
+
+    @Test
+    public void ensureSizeClassForPicksNextBiggest() {
+        assertThat(ArtInfo.sizeClassFor(48)).isEqualTo(ArtInfo.SIZE_THUMB);
+        assertThat(ArtInfo.sizeClassFor(200)).isEqualTo(ArtInfo.SIZE_GRID);
+        assertThat(ArtInfo.sizeClassFor(512)).isEqualTo(ArtInfo.SIZE_FULL);
+        assertThat(ArtInfo.sizeClassFor(1080)).isEqualTo(ArtInfo.SIZE_ORIGINAL);
+        assertThat(ArtInfo.sizeClassFor(0)).isEqualTo(ArtInfo.SIZE_ORIGINAL);
+    }
+
 }
@@ -24,6 +24,7 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -50,4 +51,16 @@ public class MetadataTest {
         assertThat(keySet.size()).isEqualTo(ii);
     }
 
+    @Test
+    public void testAllKeysHaveCompactTags() throws Exception {
+        Field compact = Metadata.class.getDeclaredField("COMPACT_KEYS");
+        compact.setAccessible(true);
+        Set<String> tagged = new HashSet<>(Arrays.asList((String[]) compact.get(null)));
+        for (Field f : Metadata.class.getDeclaredFields()) {
+            if (StringUtils.startsWith(f.getName(), "KEY_")) {
+                assertThat(tagged).contains((String) f.get(null));
+            }
+        }
+    }
+
 }
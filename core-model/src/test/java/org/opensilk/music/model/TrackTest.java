@@ -19,6 +19,7 @@ package org.opensilk.music.model;
 
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Parcel;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -73,6 +74,22 @@ public class TrackTest {
         assertThat(song1).isEqualTo(fromB);
     }
 
+    @Test
+    public void ensureSongCodecWorks() {
+        Track t = song2.buildUpon().setArtistName("Artist1").setTrackNumber(3)
+                .setAlbumUri(Uri.parse("content://test/a/1")).build();
+        Parcel p = Parcel.obtain();
+        Track.BUNDLE_CODEC.write(t, p);
+        p.setDataPosition(0);
+        Track fromP = Track.BUNDLE_CODEC.read(p, Track.BUNDLE_CODEC.getVersion());
+        p.recycle();
+        assertThat(fromP).isEqualTo(t);
+        assertThat(fromP.getArtistName()).isEqualTo("Artist1");
+        assertThat(fromP.getTrackNumber()).isEqualTo(3);
+        assertThat(fromP.getAlbumUri()).isEqualTo(t.getAlbumUri());
+        assertThat(fromP.getResources().get(0).getMimeType()).isEqualTo("audio/mp3");
+    }
+
     @Test(expected = NullPointerException.class)
     public void ensureSongNullIdentityThrows() {
         Track.builder().setName("Song1").addRes(Track.Res.builder()
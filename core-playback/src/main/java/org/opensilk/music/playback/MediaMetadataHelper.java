@@ -39,8 +39,21 @@ import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_TITLE;
  */
 public class MediaMetadataHelper {
 
+    //generation id of the art bitmap, the bitmap is a new object every time the metadata
+    //comes through the session but this survives the trip
+    public static final String KEY_ART_GENERATION = "org.opensilk.music.playback.ART_GENERATION";
+
     private MediaMetadataHelper(){}
 
+    public static MediaMetadataCompat.Builder putArt(MediaMetadataCompat.Builder bob, Bitmap art) {
+        return bob.putBitmap(METADATA_KEY_ART, art)
+                .putLong(KEY_ART_GENERATION, art != null ? art.getGenerationId() : 0);
+    }
+
+    public static long getArtGeneration(MediaMetadataCompat meta) {
+        return meta.getLong(KEY_ART_GENERATION);
+    }
+
     public static long getDuration(MediaMetadataCompat meta) {
         return meta.getLong(METADATA_KEY_DURATION);
     }
@@ -34,6 +34,8 @@ import android.support.v4.media.session.PlaybackStateCompat;
 import android.support.v7.app.NotificationCompat;
 import android.widget.RemoteViews;
 
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.opensilk.common.core.dagger2.ForApplication;
 import org.opensilk.common.core.util.VersionUtils;
 import org.opensilk.music.index.client.IndexClient;
@@ -234,10 +236,15 @@ public class NotificationHelper2 extends BroadcastReceiver {
 
         @Override
         public void onMetadataChanged(MediaMetadataCompat metadata) {
+            MediaMetadataCompat oldmeta = mMetadata;
             mMetadata = metadata;
-            Timber.d("Received new metadata %s", metadata);
-            buildNotification();
-            notifyAppWidgets();
+            if (sameVisibleMetadata(oldmeta, metadata)) {
+                Timber.d("Ignoring metadata update: nothing shown changed");
+            } else {
+                Timber.d("Received new metadata %s", metadata);
+                buildNotification();
+                notifyAppWidgets();
+            }
         }
 
         @Override
@@ -272,6 +279,22 @@ public class NotificationHelper2 extends BroadcastReceiver {
         }
     };
 
+    /*
+     * Duration fixes and the like don't change anything in the notification or widgets
+     */
+    static boolean sameVisibleMetadata(MediaMetadataCompat a, MediaMetadataCompat b) {
+        if (a == b) {
+            return true;
+        } else if (a == null || b == null) {
+            return false;
+        }
+        return StringUtils.equals(MediaMetadataHelper.getDisplayName(a), MediaMetadataHelper.getDisplayName(b))
+                && StringUtils.equals(MediaMetadataHelper.getArtistName(a), MediaMetadataHelper.getArtistName(b))
+                && StringUtils.equals(MediaMetadataHelper.getAlbumName(a), MediaMetadataHelper.getAlbumName(b))
+                && ObjectUtils.equals(MediaMetadataHelper.getIconUri(a), MediaMetadataHelper.getIconUri(b))
+                && MediaMetadataHelper.getArtGeneration(a) == MediaMetadataHelper.getArtGeneration(b);
+    }
+
     private void notifyNotification(Notification notification) {
             boolean isPlaying = PlaybackStateHelper.isPlaying(mPlaybackState);
             if (isPlaying) {
@@ -183,6 +183,7 @@ public interface PlaybackConstants {
         String PLAY_ALL = "cmd.playall";
         String TOGGLE_PLAYBACK = "cmd.toggleplayback";
         String SHUFFLE_QUEUE = "cmd.shufflequeue";
+        String SHOW_QUEUE_WINDOW = "cmd.showqueuewindow";
     }
 
     interface CMD {
@@ -196,6 +197,10 @@ public interface PlaybackConstants {
         String SWITCH_TO_NEW_RENDERER = "cmd.switch.to.remote.renderer";
         //reply has componentname parcelable extra
         String GET_CURRENT_RENDERER = "cmd.get.current.renderer";
+        //reply has string extra
+        String DUMP_LATENCY = "cmd.dump.latency";
+        //no reply, has int extra
+        String SET_CROSSFADE_DURATION = "cmd.set.crossfade.duration";
     }
 
     interface EVENT {
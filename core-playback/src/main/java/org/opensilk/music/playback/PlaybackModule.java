@@ -20,6 +20,7 @@ package org.opensilk.music.playback;
 import org.opensilk.common.core.dagger2.SystemServicesModule;
 import org.opensilk.music.artwork.service.ArtworkProviderHelperModule;
 import org.opensilk.music.index.client.IndexClientModule;
+import org.opensilk.music.okhttp.OkHttpModule;
 
 import dagger.Module;
 
@@ -30,7 +31,8 @@ import dagger.Module;
         includes = {
                 ArtworkProviderHelperModule.class,
                 SystemServicesModule.class,
-                IndexClientModule.class
+                IndexClientModule.class,
+                OkHttpModule.class
         }
 )
 public class PlaybackModule {
@@ -24,14 +24,19 @@ import android.support.v4.media.session.MediaSessionCompat.QueueItem;
 
 import org.apache.commons.lang3.StringUtils;
 import org.opensilk.music.index.client.IndexClient;
+import org.opensilk.music.index.model.QueueOp;
 import org.opensilk.music.playback.service.PlaybackServiceProxy;
+import org.opensilk.music.playback.shuffle.RandomShuffleStrategy;
+import org.opensilk.music.playback.shuffle.ShuffleStrategy;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Random;
-import java.util.TreeSet;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
@@ -40,6 +45,7 @@ import hugo.weaving.DebugLog;
 import rx.Subscriber;
 import rx.Subscription;
 import rx.functions.Action0;
+import rx.functions.Func1;
 import timber.log.Timber;
 
 /**
@@ -47,12 +53,27 @@ import timber.log.Timber;
  */
 public class PlaybackQueue {
 
+    //past this many unsaved edits it is cheaper to save the whole queue
+    static final int MAX_PENDING_OPS = 256;
+    //queues up to this size are described in one go before they are ready
+    static final int MAX_EAGER_LOOKUP = 100;
+    //bigger queues are filled in lazily this far around the playhead
+    static final int WINDOW_BEHIND = 20;
+    static final int WINDOW_AHEAD = 50;
+
     private final IndexClient mIndexClient;
     private final PlaybackServiceProxy mService;
     private final ArrayList<Uri> mQueue = new ArrayList<>();
     private final ArrayList<QueueItem> mQueueMeta = new ArrayList<>();
-    private final TreeSet<Uri> mHistory = new TreeSet<>();
     private final Random mRandom = new Random();
+    private ShuffleStrategy mShuffleStrategy = new RandomShuffleStrategy();
+    //play order when shuffle is on, built lazily
+    private ShuffleOrder mShuffleOrder;
+    //order repeat all goes around with once mShuffleOrder runs out
+    private ShuffleOrder mNextLapOrder;
+    //order and version last handed out in a snapshot, so unchanged orders aren't saved again
+    private ShuffleOrder mSavedShuffleOrder;
+    private int mSavedShuffleVersion;
 
     private int mCurrentPos = -1;
     private int mNextPos = -1;
@@ -62,7 +83,18 @@ public class PlaybackQueue {
     private QueueChangeListener mListener;
     protected final AtomicLong mIdGenerator = new AtomicLong(1);
     private Subscription mLookupSub;
+    private Subscription mFillSub;
+    //media ids whose items are placeholders waiting on a description, kept across
+    //resets since the new queue can claim the old placeholders
+    private final HashSet<String> mUnresolved = new HashSet<>();
+    //positions the queue ui is showing
+    private int mVisibleFirst = -1;
+    private int mVisibleLast = -1;
+    //lazily built from mQueueMeta, nulled when it changes
+    private HashMap<Long, Integer> mPosOfId;
     private boolean mReady;
+    //edits since the last snapshot, null when the whole queue needs saving
+    private ArrayList<QueueOp> mPendingOps = new ArrayList<>();
 
     @Inject
     public PlaybackQueue(
@@ -79,46 +111,74 @@ public class PlaybackQueue {
 
     @DebugLog
     public void load() {
-        mReady = false;
-        resetState();
+        restore(readSaved());
+    }
 
+    /**
+     * Reads the saved queue out of the index, touches none of our state so it
+     * can be called from any thread and handed to {@link #restore(Snapshot)}
+     */
+    @DebugLog
+    public Snapshot readSaved() {
         mIndexClient.startBatch();
-
-        List<Uri> lastQueue = mIndexClient.getLastQueue();
-        if (lastQueue != null && !lastQueue.isEmpty()) {
-            mQueue.addAll(lastQueue);
+        try {
+            List<Uri> lastQueue = mIndexClient.getLastQueue();
+            int pos = mIndexClient.getLastQueuePosition();
+            int rep = mIndexClient.getLastQueueRepeatMode();
+            int shuf = mIndexClient.getLastQueueShuffleMode();
+            int[] shuffleOrder = null;
+            if (shuf == PlaybackConstants.SHUFFLE_NORMAL) {
+                shuffleOrder = mIndexClient.getLastQueueShuffleOrder();
+            }
+            return new Snapshot(lastQueue != null ? lastQueue : Collections.<Uri>emptyList(),
+                    null, pos, rep, shuf, shuffleOrder, false);
+        } finally {
+            mIndexClient.endBatch();
         }
-        int pos = mIndexClient.getLastQueuePosition();
-        if (isInQueueBounds(pos)) {
-            updateCurrentPos(pos);
+    }
+
+    @DebugLog
+    public void restore(Snapshot saved) {
+        mReady = false;
+        resetState();
+
+        mQueue.addAll(saved.q);
+        if (isInQueueBounds(saved.pos)) {
+            updateCurrentPos(saved.pos);
         } else if (!mQueue.isEmpty()) {
             updateCurrentPos(0);
         }
 
-        int rep = mIndexClient.getLastQueueRepeatMode();
-        switch (rep) {
+        switch (saved.repeat) {
             case PlaybackConstants.REPEAT_NONE:
             case PlaybackConstants.REPEAT_ALL:
             case PlaybackConstants.REPEAT_CURRENT:
-                mRepeatMode = rep;
+                mRepeatMode = saved.repeat;
                 break;
             default:
                 mRepeatMode = PlaybackConstants.REPEAT_ALL;
                 break;
         }
 
-        int shuf = mIndexClient.getLastQueueShuffleMode();
-        switch (shuf) {
+        switch (saved.shuffle) {
             case PlaybackConstants.SHUFFLE_NONE:
             case PlaybackConstants.SHUFFLE_NORMAL:
-                mShuffleMode = shuf;
+                mShuffleMode = saved.shuffle;
                 break;
             default:
                 mShuffleMode = PlaybackConstants.SHUFFLE_NONE;
                 break;
         }
 
-        mIndexClient.endBatch();
+        if (isShuffleOn()) {
+            mShuffleOrder = ShuffleOrder.restore(saved.shuffleOrder,
+                    mQueue.size(), mShuffleStrategy, mRandom);
+        }
+        mSavedShuffleOrder = mShuffleOrder;
+        mSavedShuffleVersion = mShuffleOrder != null ? mShuffleOrder.version() : 0;
+
+        //what we just read is what is saved
+        mPendingOps = new ArrayList<>();
 
         if (isInQueueBounds(mCurrentPos)) {
             updateNextPos(mCurrentPos);
@@ -136,7 +196,12 @@ public class PlaybackQueue {
             goToItem(0);
         } else {
             mQueue.addAll(mCurrentPos + 1, list);
+            recordOp(QueueOp.add(mCurrentPos + 1, list));
+            if (mShuffleOrder != null) {
+                mShuffleOrder.insert(mCurrentPos + 1, list.size(), mCurrentPos);
+            }
             updateNextPos(mCurrentPos);
+            updatePreviousPos(mCurrentPos, mPreviousPos);
             notifyQueueChanged();
         }
     }
@@ -147,7 +212,12 @@ public class PlaybackQueue {
             mQueue.addAll(list);
             goToItem(0);
         } else {
+            final int at = mQueue.size();
             mQueue.addAll(list);
+            recordOp(QueueOp.add(at, list));
+            if (mShuffleOrder != null) {
+                mShuffleOrder.insert(at, list.size(), mCurrentPos);
+            }
             updateNextPos(mCurrentPos);
             notifyQueueChanged();
         }
@@ -184,8 +254,27 @@ public class PlaybackQueue {
         if (isInQueueBounds(mPreviousPos)) {
             prev = mQueue.get(mPreviousPos);
         }
-        mQueue.removeAll(list);
-        mHistory.removeAll(list);
+        //removeAll calls contains() on its argument for every item in the queue
+        final Set<Uri> toRemove = new HashSet<>(list);
+        final int[] newPosOf = new int[mQueue.size()];
+        int newPos = 0;
+        for (int ii=0; ii<newPosOf.length; ii++) {
+            newPosOf[ii] = toRemove.contains(mQueue.get(ii)) ? -1 : newPos++;
+        }
+        if (newPos < newPosOf.length) {
+            final int[] removed = new int[newPosOf.length - newPos];
+            int ri = 0;
+            for (int ii=0; ii<newPosOf.length; ii++) {
+                if (newPosOf[ii] < 0) {
+                    removed[ri++] = ii;
+                }
+            }
+            recordOp(QueueOp.remove(removed));
+        }
+        if (mShuffleOrder != null) {
+            mShuffleOrder.remap(newPosOf, newPos, -1);
+        }
+        mQueue.removeAll(toRemove);
         if (mQueue.isEmpty()) {
             resetState();
             notifyCurrentPosChanged();
@@ -254,8 +343,14 @@ public class PlaybackQueue {
         if (isInQueueBounds(mPreviousPos)) {
             prev = mQueue.get(mPreviousPos);
         }
-        mQueue.remove(uri);
-        mQueue.add(clamp(to), uri);
+        final int from = mQueue.indexOf(uri);
+        mQueue.remove(from);
+        final int dest = clamp(to);
+        mQueue.add(dest, uri);
+        recordOp(QueueOp.move(from, dest));
+        if (mShuffleOrder != null) {
+            mShuffleOrder.remap(ShuffleOrder.moveMap(mQueue.size(), from, dest), mQueue.size(), -1);
+        }
         int curIdx = -1;
         if (current != null) {
             curIdx = mQueue.indexOf(current);
@@ -297,14 +392,14 @@ public class PlaybackQueue {
     }
 
     public int getPosOfId(long id) {
-        int pos = -1;
-        for (int ii=0; ii<mQueueMeta.size(); ii++) {
-            if (mQueueMeta.get(ii).getQueueId() == id) {
-                pos = ii;
-                break;
+        if (mPosOfId == null) {
+            mPosOfId = new HashMap<>(mQueueMeta.size() * 2);
+            for (int ii=0; ii<mQueueMeta.size(); ii++) {
+                mPosOfId.put(mQueueMeta.get(ii).getQueueId(), ii);
             }
         }
-        return pos;
+        Integer pos = mPosOfId.get(id);
+        return pos != null ? pos : -1;
     }
 
     public void goToItem(int pos) {
@@ -313,6 +408,10 @@ public class PlaybackQueue {
         }
         int oldCurrent = mCurrentPos;
         updateCurrentPos(pos);
+        if (mShuffleOrder != null && isInQueueBounds(oldCurrent)) {
+            //picking a track plays it out of turn, the rest of the order stays
+            mShuffleOrder.moveAfter(mCurrentPos, oldCurrent);
+        }
         updateNextPos(mCurrentPos);
         updatePreviousPos(mCurrentPos, oldCurrent);
         notifyCurrentPosChanged();
@@ -321,11 +420,33 @@ public class PlaybackQueue {
     public void moveToNext() {
         if (isInQueueBounds(mNextPos)) {
             int oldCurrent = mCurrentPos;
+            //wrapping around with shuffle on starts a new order
+            boolean newOrder = isShuffleOn() && !isRepeatCurrent()
+                    && getShuffleOrder().next(oldCurrent) < 0;
             updateCurrentPos(mNextPos);
+            if (newOrder) {
+                if (mNextLapOrder != null && mNextLapOrder.size() == mQueue.size()
+                        && mNextLapOrder.first() == mCurrentPos) {
+                    mShuffleOrder = mNextLapOrder;
+                } else {
+                    mShuffleOrder = new ShuffleOrder(mQueue.size(), mCurrentPos, mShuffleStrategy, mRandom);
+                }
+                mNextLapOrder = null;
+            }
             updateNextPos(mCurrentPos);
             updatePreviousPos(mCurrentPos, oldCurrent);
         }
         notifyWentToNext();
+        fillWindows();
+    }
+
+    /**
+     * Descriptions for the given positions will be looked up if we don't have them yet
+     */
+    public void setVisibleWindow(int first, int last) {
+        mVisibleFirst = first;
+        mVisibleLast = last;
+        fillWindows();
     }
 
     public int getNextPos() {
@@ -336,6 +457,29 @@ public class PlaybackQueue {
         return isInQueueBounds(mNextPos);
     }
 
+    /**
+     * @return uris of the next count items in play order, nearest first. stops short
+     *         when the order wraps around with shuffle on since we don't know it yet.
+     */
+    public List<Uri> getUpcoming(int count) {
+        ArrayList<Uri> upcoming = new ArrayList<>(count);
+        if (!hasNext() || isRepeatCurrent()) {
+            return upcoming;
+        }
+        int pos = mNextPos;
+        while (upcoming.size() < count && isInQueueBounds(pos) && pos != mCurrentPos) {
+            upcoming.add(mQueue.get(pos));
+            if (isShuffleOn()) {
+                pos = getShuffleOrder().next(pos);
+            } else if (isInQueueBounds(pos + 1)) {
+                pos = pos + 1;
+            } else {
+                pos = isRepeatAll() ? 0 : -1;
+            }
+        }
+        return upcoming;
+    }
+
     public int getPreviousPos() {
         return mPreviousPos;
     }
@@ -360,31 +504,11 @@ public class PlaybackQueue {
         if (mQueue.isEmpty()) {
             return;
         }
-        Uri current = null;
-        if (isInQueueBounds(mCurrentPos)) {
-            current = mQueue.get(mCurrentPos);
-        }
-        Uri next = null;
-        if (isInQueueBounds(mNextPos)) {
-            next = mQueue.get(mNextPos);
-        }
-        Uri prev = null;
-        if (isInQueueBounds(mPreviousPos)) {
-            prev = mQueue.get(mPreviousPos);
-        }
-        randomizeQueue();
-        int curIdx = -1;
-        if (current != null) {
-            curIdx = mQueue.indexOf(current);
-        }
-        int nextIdx = -1;
-        if (next != null) {
-            nextIdx = mQueue.indexOf(next);
-        }
-        int prevIdx = -1;
-        if (prev != null) {
-            prevIdx = mQueue.indexOf(prev);
-        }
+        final boolean hadCurrent = isInQueueBounds(mCurrentPos);
+        final int[] newPosOf = randomizeQueue();
+        int curIdx = hadCurrent ? newPosOf[mCurrentPos] : -1;
+        int nextIdx = isInQueueBounds(mNextPos) ? newPosOf[mNextPos] : -1;
+        int prevIdx = isInQueueBounds(mPreviousPos) ? newPosOf[mPreviousPos] : -1;
         if (isInQueueBounds(curIdx)) {
             updateCurrentPos(curIdx);
         } else {
@@ -396,15 +520,40 @@ public class PlaybackQueue {
             updateNextPos(mCurrentPos);
         }
         updatePreviousPos(mCurrentPos, prevIdx);
-        if (current == null) {
+        if (!hadCurrent) {
             notifyCurrentPosChanged();
         } else {
             notifyQueueChanged();
         }
     }
 
-    private void randomizeQueue() {
-        Collections.shuffle(mQueue);
+    /*
+     * @return new position of every old position
+     */
+    private int[] randomizeQueue() {
+        final int size = mQueue.size();
+        final int[] order = new int[size];
+        for (int ii=0; ii<size; ii++) {
+            order[ii] = ii;
+        }
+        //the strategy gives play order, old position order[ii] becomes ii
+        mShuffleStrategy.arrange(order, 0, size, mRandom);
+        final int[] newPosOf = new int[size];
+        for (int ii=0; ii<size; ii++) {
+            newPosOf[order[ii]] = ii;
+        }
+        final Uri[] shuffled = new Uri[size];
+        for (int ii=0; ii<size; ii++) {
+            shuffled[newPosOf[ii]] = mQueue.get(ii);
+        }
+        mQueue.clear();
+        Collections.addAll(mQueue, shuffled);
+        //every position moved, not worth journaling
+        mPendingOps = null;
+        if (mShuffleOrder != null) {
+            mShuffleOrder.remap(newPosOf, size, -1);
+        }
+        return newPosOf;
     }
 
     public boolean notEmpty() {
@@ -492,6 +641,59 @@ public class PlaybackQueue {
             return;
         }
         mShuffleMode = newMode;
+        mShuffleOrder = null;
+        mNextLapOrder = null;
+    }
+
+    /**
+     * Changes how the shuffle order is picked, takes effect the next time a new order is made
+     */
+    public void setShuffleStrategy(ShuffleStrategy strategy) {
+        mShuffleStrategy = strategy;
+        //next lap hasn't started yet, let it use the new one
+        mNextLapOrder = null;
+    }
+
+    /**
+     * @return artist of the track at pos if we have its description yet, for use
+     *         with {@link org.opensilk.music.playback.shuffle.NoRepeatShuffleStrategy}
+     */
+    public Func1<Integer, String> artistLookup() {
+        return new Func1<Integer, String>() {
+            @Override
+            public String call(Integer pos) {
+                if (pos < 0 || pos >= mQueue.size() || pos >= mQueueMeta.size()) {
+                    return null;
+                }
+                MediaDescriptionCompat desc = mQueueMeta.get(pos).getDescription();
+                if (!StringUtils.equals(mQueue.get(pos).toString(), desc.getMediaId())
+                        || desc.getSubtitle() == null) {
+                    return null;
+                }
+                return desc.getSubtitle().toString();
+            }
+        };
+    }
+
+    private ShuffleOrder getShuffleOrder() {
+        if (mShuffleOrder == null || mShuffleOrder.size() != mQueue.size()) {
+            mShuffleOrder = new ShuffleOrder(mQueue.size(), mCurrentPos, mShuffleStrategy, mRandom);
+        }
+        return mShuffleOrder;
+    }
+
+    /**
+     * @return order of the next lap around with repeat all, it starts anywhere but current
+     *         so laps don't all open with the same track
+     */
+    private ShuffleOrder getNextLapOrder(int current) {
+        final int size = mQueue.size();
+        if (mNextLapOrder == null || mNextLapOrder.size() != size
+                || (size > 1 && mNextLapOrder.first() == current)) {
+            final int first = size > 1 ? (current + 1 + mRandom.nextInt(size - 1)) % size : 0;
+            mNextLapOrder = new ShuffleOrder(size, first, mShuffleStrategy, mRandom);
+        }
+        return mNextLapOrder;
     }
 
     private int clamp(int pos) {
@@ -504,36 +706,19 @@ public class PlaybackQueue {
 
     private void updateCurrentPos(int pos) {
         mCurrentPos = clamp(pos);
-        if (isInQueueBounds(mCurrentPos)) {
-            mHistory.add(mQueue.get(mCurrentPos));
-        }
     }
 
     private void updateNextPos(int current) {
         if (isRepeatCurrent()) {
             mNextPos = current;
         } else if (isShuffleOn()) {
-            int next = mRandom.nextInt(mQueue.size());
-            //TODO handle same uri in multiple positions
-            while (mHistory.contains(mQueue.get(next)) && next > 0) {
-                next--;
-            }
-            if (next == 0) {
-                //find something that hasn't been played
-                for (int ii = mQueue.size() - 1; ii >= 0; ii--) {
-                    if (!mHistory.contains(mQueue.get(ii))) {
-                        next = ii;
-                        break;
-                    }
-                }
-            }
-            if (next == 0) {
-                //Queue has been exhausted
-                mHistory.clear();
-                mNextPos = isRepeatAll() ? 0 : -1;
-            } else {
-                mNextPos = next;
+            final ShuffleOrder order = getShuffleOrder();
+            int next = order.next(current);
+            if (next < 0) {
+                //order has been exhausted, go around again with a new one
+                next = isRepeatAll() ? getNextLapOrder(current).first() : -1;
             }
+            mNextPos = next;
         } else if (isInQueueBounds(current + 1)) {
             mNextPos = current + 1;
         } else {
@@ -543,11 +728,7 @@ public class PlaybackQueue {
 
     private void updatePreviousPos(int current, int oldCurrent) {
         if (isShuffleOn() && !isRepeatCurrent()) {
-            if (isInQueueBounds(oldCurrent)) {
-                mPreviousPos = oldCurrent;
-            } else {
-                mPreviousPos = -1;
-            }
+            mPreviousPos = getShuffleOrder().previous(current);
         } else {
             if (isRepeatCurrent()) {
                 mPreviousPos = -1;
@@ -560,7 +741,10 @@ public class PlaybackQueue {
 
     private void resetState() {
         mQueue.clear();
-        mHistory.clear();
+        mShuffleOrder = null;
+        mNextLapOrder = null;
+        mPendingOps = null;
+        mVisibleFirst = mVisibleLast = -1;
         resetPositions();
     }
 
@@ -584,9 +768,12 @@ public class PlaybackQueue {
         }
     }
 
+    /*
+     * Brings the items in step with the queue, uris we can't find an item for get
+     * a placeholder until their description is looked up
+     */
     @DebugLog
-    private void updateQueueMeta(List<MediaDescriptionCompat> descriptions) {
-        final int oldQueueSize = mQueue.size();
+    private void updateQueueMeta() {
         final int oldMeteSize = mQueueMeta.size();
         ArrayList<QueueItem> newMeta = new ArrayList<>(mQueue.size());
         ListIterator<Uri> qi = mQueue.listIterator();
@@ -604,47 +791,143 @@ public class PlaybackQueue {
                 break;
             }
         }
-        while (qi.hasNext()) {
-            final Uri uri = qi.next();
-            QueueItem queueItem = null;
-            //check if item exits in another position.
-            for (QueueItem item2 : mQueueMeta) {
-                if (uri.toString().equals(item2.getDescription().getMediaId())) {
-                    queueItem = item2;
-                    break;
+        if (qi.hasNext()) {
+            //everything past the common prefix can be claimed by the rest of the queue
+            QueueItemIndex index = new QueueItemIndex(mQueueMeta.size(), mIdGenerator);
+            for (int ii=0; ii<mQueueMeta.size(); ii++) {
+                if (ii < qmi.nextIndex()) {
+                    index.addDescription(mQueueMeta.get(ii).getDescription());
+                } else {
+                    index.addItem(mQueueMeta.get(ii));
                 }
             }
-            if (queueItem == null) {
-                //new item
-                queueItem = makeNewQueueItem(uri, descriptions);
-            }
-            if (queueItem == null) {
-                final int idx = qi.previousIndex();
-                //item was removed externally
-                qi.remove();
-                if (idx == mCurrentPos) {
-                    //TODO i dont know if this is right
-                    mCurrentPos = clamp(mCurrentPos - 1);
+            while (qi.hasNext()) {
+                final String id = qi.next().toString();
+                QueueItem queueItem = index.claim(id);
+                if (queueItem == null) {
+                    queueItem = new QueueItem(new MediaDescriptionCompat.Builder()
+                            .setMediaId(id).build(), mIdGenerator.incrementAndGet());
+                    mUnresolved.add(id);
                 }
-            } else {
                 newMeta.add(queueItem);
             }
         }
+        if (!mUnresolved.isEmpty()) {
+            //forget placeholders the new queue didn't claim, or fillWindows never settles
+            final HashSet<String> live = new HashSet<>(mQueue.size() * 2);
+            for (Uri uri : mQueue) {
+                live.add(uri.toString());
+            }
+            mUnresolved.retainAll(live);
+        }
         mQueueMeta.clear();
         mQueueMeta.addAll(newMeta);
+        mPosOfId = null;
         if (mQueueMeta.size() * 2 < oldMeteSize) {
             mQueueMeta.trimToSize();//trim if much smaller than before
         }
     }
 
+    //Exposed for testing
+    /*package*/ int getUnresolvedCount() {
+        return mUnresolved.size();
+    }
+
     //Exposed for testing
     /*package*/ QueueItem makeNewQueueItem(Uri uri, List<MediaDescriptionCompat> descriptions) {
+        QueueItemIndex index = new QueueItemIndex(descriptions.size(), mIdGenerator);
+        index.addDescriptions(descriptions);
+        return index.claim(uri.toString());
+    }
+
+    /*
+     * Swaps the placeholders we asked about for their descriptions, anything we asked
+     * about that didn't come back is no longer available and is dropped from the queue.
+     * @return true if the current item was dropped
+     */
+    @DebugLog
+    private boolean applyDescriptions(List<Uri> requested, List<MediaDescriptionCompat> descriptions) {
+        final HashMap<String, MediaDescriptionCompat> found = new HashMap<>(descriptions.size() * 2);
         for (MediaDescriptionCompat desc : descriptions) {
-            if (uri.toString().equals(desc.getMediaId())) {
-                return new QueueItem(desc, mIdGenerator.incrementAndGet());
+            found.put(desc.getMediaId(), desc);
+        }
+        final HashMap<String, MediaDescriptionCompat> resolved = new HashMap<>(requested.size() * 2);
+        final HashSet<String> missing = new HashSet<>();
+        for (Uri uri : requested) {
+            final String id = uri.toString();
+            if (!mUnresolved.remove(id)) {
+                continue;
+            }
+            final MediaDescriptionCompat desc = found.get(id);
+            if (desc != null) {
+                resolved.put(id, desc);
+            } else {
+                missing.add(id);
+            }
+        }
+        final int[] newPosOf = new int[mQueue.size()];
+        int newPos = 0;
+        for (int ii=0; ii<newPosOf.length; ii++) {
+            final String id = mQueue.get(ii).toString();
+            final MediaDescriptionCompat desc = resolved.get(id);
+            if (desc != null) {
+                mQueueMeta.set(ii, new QueueItem(desc, mQueueMeta.get(ii).getQueueId()));
+            }
+            newPosOf[ii] = missing.contains(id) ? -1 : newPos++;
+        }
+        if (newPos == newPosOf.length) {
+            return false;
+        }
+        //items were removed externally
+        final boolean hadCurrent = mCurrentPos >= 0 && mCurrentPos < newPosOf.length;
+        final boolean lostCurrent = hadCurrent && newPosOf[mCurrentPos] < 0;
+        final int prevIdx = mPreviousPos >= 0 && mPreviousPos < newPosOf.length
+                ? newPosOf[mPreviousPos] : -1;
+        final int[] removed = new int[newPosOf.length - newPos];
+        int ri = 0;
+        for (int ii=0; ii<newPosOf.length; ii++) {
+            if (newPosOf[ii] < 0) {
+                removed[ri++] = ii;
+            } else {
+                mQueue.set(newPosOf[ii], mQueue.get(ii));
+                mQueueMeta.set(newPosOf[ii], mQueueMeta.get(ii));
+            }
+        }
+        recordOp(QueueOp.remove(removed));
+        if (mShuffleOrder != null) {
+            mShuffleOrder.remap(newPosOf, newPos, -1);
+        }
+        mQueue.subList(newPos, mQueue.size()).clear();
+        mQueueMeta.subList(newPos, mQueueMeta.size()).clear();
+        mPosOfId = null;
+        if (mQueue.isEmpty()) {
+            resetState();
+            mUnresolved.clear();
+            return true;
+        }
+        if (hadCurrent) {
+            //whatever followed the current slides into its place
+            int pos = mCurrentPos;
+            while (pos < newPosOf.length && newPosOf[pos] < 0) {
+                pos++;
+            }
+            updateCurrentPos(pos < newPosOf.length ? newPosOf[pos] : newPos - 1);
+            updateNextPos(mCurrentPos);
+            updatePreviousPos(mCurrentPos, prevIdx);
+        }
+        return lostCurrent;
+    }
+
+    /*
+     * Adds the uri at pos if it is waiting on a description and we don't have it already
+     */
+    private void addUnresolved(int pos, List<Uri> uris, Set<String> seen) {
+        if (isInQueueBounds(pos)) {
+            final Uri uri = mQueue.get(pos);
+            if (mUnresolved.contains(uri.toString()) && seen.add(uri.toString())) {
+                uris.add(uri);
             }
         }
-        return null;
     }
 
     private void updateDescriptions(final Action0 callbackaction) {
@@ -652,31 +935,34 @@ public class PlaybackQueue {
         if (mLookupSub != null) {
             mLookupSub.unsubscribe();
         }
+        if (mFillSub != null) {
+            mFillSub.unsubscribe();
+            mFillSub = null;
+        }
         if (mQueue.isEmpty()) {
             mQueueMeta.clear();
+            mUnresolved.clear();
+            mPosOfId = null;
             callbackaction.call();
             return;
         }
-        List<Uri> urisToFetch = new ArrayList<>();
-        if (!mQueueMeta.isEmpty()) {
+        updateQueueMeta();
+        final List<Uri> urisToFetch = new ArrayList<>();
+        if (mQueue.size() <= MAX_EAGER_LOOKUP) {
             for (Uri uri : mQueue) {
-                boolean found = false;
-                for (QueueItem item : mQueueMeta) {
-                    if (uri.toString().equals(item.getDescription().getMediaId())) {
-                        found = true;
-                        break;
-                    }
-                }
-                if (!found) {
+                if (mUnresolved.contains(uri.toString())) {
                     urisToFetch.add(uri);
                 }
             }
         } else {
-            urisToFetch.addAll(mQueue);
+            //big queues only wait on what we are about to play, the rest is filled in lazily
+            final HashSet<String> seen = new HashSet<>();
+            addUnresolved(mCurrentPos, urisToFetch, seen);
+            addUnresolved(mNextPos, urisToFetch, seen);
         }
         if (urisToFetch.isEmpty()) {
-            updateQueueMeta(Collections.<MediaDescriptionCompat>emptyList());
             callbackaction.call();
+            fillWindows();
         } else {
             mReady = false;
             mLookupSub = mIndexClient.getDescriptions(urisToFetch)
@@ -691,15 +977,71 @@ public class PlaybackQueue {
                             mLookupSub = null;
                         }
                         @Override public void onNext(List<MediaDescriptionCompat> mediaDescriptions) {
-                            updateQueueMeta(mediaDescriptions);
+                            applyDescriptions(urisToFetch, mediaDescriptions);
                             mReady = true;
                             callbackaction.call();
                             mLookupSub = null;
+                            fillWindows();
                         }
                     });
         }
     }
 
+    /*
+     * Looks up the placeholders around the playhead and what the queue ui is showing,
+     * runs again when done in case either moved while we were looking
+     */
+    private void fillWindows() {
+        if (mUnresolved.isEmpty() || !mReady || (mFillSub != null && !mFillSub.isUnsubscribed())) {
+            return;
+        }
+        final List<Uri> urisToFetch = new ArrayList<>();
+        final HashSet<String> seen = new HashSet<>();
+        if (isInQueueBounds(mCurrentPos)) {
+            for (int ii=mCurrentPos-WINDOW_BEHIND; ii<=mCurrentPos+WINDOW_AHEAD; ii++) {
+                addUnresolved(ii, urisToFetch, seen);
+            }
+            //play order differs from queue order when shuffled or wrapping around
+            for (Uri uri : getUpcoming(WINDOW_AHEAD)) {
+                if (mUnresolved.contains(uri.toString()) && seen.add(uri.toString())) {
+                    urisToFetch.add(uri);
+                }
+            }
+        }
+        if (mVisibleFirst >= 0) {
+            final int last = Math.min(mVisibleLast, mVisibleFirst + WINDOW_BEHIND + WINDOW_AHEAD);
+            for (int ii=mVisibleFirst; ii<=last; ii++) {
+                addUnresolved(ii, urisToFetch, seen);
+            }
+        }
+        if (urisToFetch.isEmpty()) {
+            return;
+        }
+        Timber.d("Filling in %d of %d unresolved items", urisToFetch.size(), mUnresolved.size());
+        mFillSub = mIndexClient.getDescriptions(urisToFetch)
+                .first()
+                .observeOn(mService.getScheduler())
+                .subscribe(new Subscriber<List<MediaDescriptionCompat>>() {
+                    @Override public void onCompleted() {
+                    }
+                    @Override public void onError(Throwable e) {
+                        Timber.w(e, "Filling in queue items");
+                    }
+                    @Override public void onNext(List<MediaDescriptionCompat> mediaDescriptions) {
+                        final boolean lostCurrent = applyDescriptions(urisToFetch, mediaDescriptions);
+                        unsubscribe();
+                        if (mListener != null) {
+                            if (lostCurrent) {
+                                mListener.onCurrentPosChanged();
+                            } else {
+                                mListener.onQueueChanged();
+                            }
+                        }
+                        fillWindows();
+                    }
+                });
+    }
+
     void dumpLists() {
         if (mQueue.size() != mQueueMeta.size()) {
             Timber.e("Queues don't match");
@@ -753,20 +1095,74 @@ public class PlaybackQueue {
         void onMovedToNext();
     }
 
-    public Snapshot snapshot() {
-        return new Snapshot(mQueue, mCurrentPos, mRepeatMode, mShuffleMode);
+    private void recordOp(QueueOp op) {
+        if (mPendingOps != null) {
+            mPendingOps.add(op);
+            if (mPendingOps.size() > MAX_PENDING_OPS) {
+                mPendingOps = null;
+            }
+        }
+    }
+
+    /**
+     * Writing a snapshot's queue or edits failed, the saved queue no longer matches
+     * so the next snapshot carries the whole queue.
+     */
+    public void queueSaveFailed() {
+        mPendingOps = null;
+    }
+
+    /**
+     * @param withQueue include the queue edits made since the last snapshot that did
+     */
+    public Snapshot snapshot(boolean withQueue) {
+        List<Uri> q = null;
+        List<QueueOp> ops = null;
+        if (withQueue) {
+            if (mPendingOps == null) {
+                q = mQueue;
+            } else {
+                ops = mPendingOps;
+            }
+            mPendingOps = new ArrayList<>();
+        }
+        final ShuffleOrder order = isShuffleOn() ? mShuffleOrder : null;
+        final boolean orderChanged = order != mSavedShuffleOrder
+                || (order != null && order.version() != mSavedShuffleVersion);
+        if (orderChanged) {
+            mSavedShuffleOrder = order;
+            mSavedShuffleVersion = order != null ? order.version() : 0;
+        }
+        return new Snapshot(q, ops, mCurrentPos, mRepeatMode, mShuffleMode,
+                orderChanged && order != null ? order.toArray() : null, orderChanged);
     }
 
     public static class Snapshot {
+        /**
+         * Whole queue if it needs to be rewritten, else null
+         */
         public final List<Uri> q;
+        /**
+         * Edits to journal if the queue doesn't need to be rewritten, else null
+         */
+        public final List<QueueOp> ops;
         public final int pos;
         public final int repeat;
         public final int shuffle;
-        public Snapshot(List<Uri> q, int pos, int repeat, int shuffle) {
-            this.q = new ArrayList<>(q);
+        /**
+         * Shuffle order to save if shuffleOrderChanged, null clears it
+         */
+        public final int[] shuffleOrder;
+        public final boolean shuffleOrderChanged;
+        public Snapshot(List<Uri> q, List<QueueOp> ops, int pos, int repeat, int shuffle,
+                        int[] shuffleOrder, boolean shuffleOrderChanged) {
+            this.q = q != null ? new ArrayList<>(q) : null;
+            this.ops = ops;
             this.pos = pos;
             this.repeat = repeat;
             this.shuffle = shuffle;
+            this.shuffleOrder = shuffleOrder;
+            this.shuffleOrderChanged = shuffleOrderChanged;
         }
     }
 
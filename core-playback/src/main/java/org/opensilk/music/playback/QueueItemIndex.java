@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.playback;
+
+import android.support.annotation.Nullable;
+import android.support.v4.media.MediaDescriptionCompat;
+import android.support.v4.media.session.MediaSessionCompat.QueueItem;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multiset of queue items keyed on media id. Each occurrence of a uri in the queue
+ * claims its own item, so duplicates keep distinct queue ids, and new occurrences
+ * of a uri we already have a description for don't need a lookup.
+ *
+ * Created by drew on 12/7/15.
+ */
+class QueueItemIndex {
+
+    private final HashMap<String, ArrayDeque<QueueItem>> mItems;
+    private final HashMap<String, MediaDescriptionCompat> mDescriptions;
+    private final AtomicLong mIdGenerator;
+
+    QueueItemIndex(int capacity, AtomicLong idGenerator) {
+        mItems = new HashMap<>(capacity * 2);
+        mDescriptions = new HashMap<>(capacity * 2);
+        mIdGenerator = idGenerator;
+    }
+
+    /**
+     * Make item available to be claimed
+     */
+    void addItem(QueueItem item) {
+        final String id = item.getDescription().getMediaId();
+        ArrayDeque<QueueItem> items = mItems.get(id);
+        if (items == null) {
+            items = new ArrayDeque<>(1);
+            mItems.put(id, items);
+        }
+        items.add(item);
+        addDescription(item.getDescription());
+    }
+
+    void addDescription(MediaDescriptionCompat desc) {
+        mDescriptions.put(desc.getMediaId(), desc);
+    }
+
+    void addDescriptions(List<MediaDescriptionCompat> descriptions) {
+        for (MediaDescriptionCompat desc : descriptions) {
+            addDescription(desc);
+        }
+    }
+
+    /**
+     * @return an unclaimed existing item for the media id, else a new item if we know
+     *         its description, else null
+     */
+    @Nullable QueueItem claim(String mediaId) {
+        ArrayDeque<QueueItem> items = mItems.get(mediaId);
+        if (items != null && !items.isEmpty()) {
+            return items.poll();
+        }
+        MediaDescriptionCompat desc = mDescriptions.get(mediaId);
+        if (desc != null) {
+            return new QueueItem(desc, mIdGenerator.incrementAndGet());
+        }
+        return null;
+    }
+
+}
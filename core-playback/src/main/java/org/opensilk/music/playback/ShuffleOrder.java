@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.playback;
+
+import android.support.annotation.Nullable;
+
+import org.opensilk.music.playback.shuffle.ShuffleStrategy;
+
+import java.util.Random;
+
+/**
+ * Play order of the queue positions when shuffle is on, kept as a permutation
+ * and its inverse so next and previous are a couple array reads. Queue edits remap
+ * the positions instead of starting over so what is left to play stays put,
+ * new positions are scattered through the part that hasn't been played yet.
+ *
+ * Created by drew on 12/8/15.
+ */
+class ShuffleOrder {
+
+    private final ShuffleStrategy mStrategy;
+    private final Random mRandom;
+    //queue positions in play order
+    private int[] mOrder;
+    //index into mOrder for each queue position
+    private int[] mRank;
+    //bumped on every change to the order
+    private int mVersion;
+
+    /**
+     * New order over size positions beginning with first, if it is in bounds
+     */
+    ShuffleOrder(int size, int first, ShuffleStrategy strategy, Random random) {
+        mStrategy = strategy;
+        mRandom = random;
+        mOrder = new int[size];
+        for (int ii=0; ii<size; ii++) {
+            mOrder[ii] = ii;
+        }
+        int from = 0;
+        if (first >= 0 && first < size) {
+            mOrder[first] = 0;
+            mOrder[0] = first;
+            from = 1;
+        }
+        mStrategy.arrange(mOrder, from, size, mRandom);
+        updateRanks();
+    }
+
+    private ShuffleOrder(int[] order, ShuffleStrategy strategy, Random random) {
+        mStrategy = strategy;
+        mRandom = random;
+        mOrder = order;
+        updateRanks();
+    }
+
+    /**
+     * @return the saved order or null if it isn't a permutation of size positions
+     */
+    static @Nullable ShuffleOrder restore(@Nullable int[] order, int size,
+                                          ShuffleStrategy strategy, Random random) {
+        if (order == null || order.length != size) {
+            return null;
+        }
+        boolean[] seen = new boolean[size];
+        for (int pos : order) {
+            if (pos < 0 || pos >= size || seen[pos]) {
+                return null;
+            }
+            seen[pos] = true;
+        }
+        return new ShuffleOrder(order.clone(), strategy, random);
+    }
+
+    int size() {
+        return mOrder.length;
+    }
+
+    int first() {
+        return mOrder.length > 0 ? mOrder[0] : -1;
+    }
+
+    /**
+     * @return position played after pos or -1 if pos is the last one
+     */
+    int next(int pos) {
+        if (pos < 0 || pos >= mRank.length) {
+            return -1;
+        }
+        final int rank = mRank[pos] + 1;
+        return rank < mOrder.length ? mOrder[rank] : -1;
+    }
+
+    /**
+     * @return position played before pos or -1 if pos is the first one
+     */
+    int previous(int pos) {
+        if (pos < 0 || pos >= mRank.length) {
+            return -1;
+        }
+        final int rank = mRank[pos] - 1;
+        return rank >= 0 ? mOrder[rank] : -1;
+    }
+
+    /**
+     * Moves pos so it plays directly after after
+     */
+    void moveAfter(int pos, int after) {
+        if (pos == after || pos < 0 || pos >= mRank.length
+                || after < 0 || after >= mRank.length) {
+            return;
+        }
+        final int from = mRank[pos];
+        int to = mRank[after];
+        if (from > to) {
+            to++;
+            System.arraycopy(mOrder, to, mOrder, to + 1, from - to);
+        } else {
+            System.arraycopy(mOrder, from + 1, mOrder, from, to - from);
+        }
+        mOrder[to] = pos;
+        updateRanks(Math.min(from, to), Math.max(from, to) + 1);
+        mVersion++;
+    }
+
+    /**
+     * Count positions were inserted into the queue at at, they are shuffled
+     * in somewhere after anchor
+     */
+    void insert(int at, int count, int anchor) {
+        final int oldSize = mOrder.length;
+        final int[] newPosOf = new int[oldSize];
+        for (int ii=0; ii<oldSize; ii++) {
+            newPosOf[ii] = ii < at ? ii : ii + count;
+        }
+        remap(newPosOf, oldSize + count, anchor < at ? anchor : anchor + count);
+    }
+
+    /**
+     * Applies a queue edit.
+     *
+     * @param newPosOf new position of every old position, -1 if removed
+     * @param newSize size of the queue after the edit, positions nothing maps to are new
+     * @param anchor new position new positions must play after, -1 for anywhere
+     */
+    void remap(int[] newPosOf, int newSize, int anchor) {
+        final boolean[] mapped = new boolean[newSize];
+        final int[] survivors = new int[newSize];
+        int numSurvivors = 0;
+        int anchorRank = -1;
+        for (int pos : mOrder) {
+            final int newPos = newPosOf[pos];
+            if (newPos >= 0) {
+                if (newPos == anchor) {
+                    anchorRank = numSurvivors;
+                }
+                mapped[newPos] = true;
+                survivors[numSurvivors++] = newPos;
+            }
+        }
+        final int numFresh = newSize - numSurvivors;
+        mVersion++;
+        if (numFresh == 0) {
+            mOrder = survivors;
+            updateRanks();
+            return;
+        }
+        final int[] fresh = new int[numFresh];
+        int nf = 0;
+        for (int ii=0; ii<newSize; ii++) {
+            if (!mapped[ii]) {
+                fresh[nf++] = ii;
+            }
+        }
+        mStrategy.arrange(fresh, 0, numFresh, mRandom);
+        //keep everything up to the anchor, then interleave the fresh positions into
+        //the rest, each merge is uniformly random among all interleavings
+        final int[] order = new int[newSize];
+        final int keep = anchorRank + 1;
+        System.arraycopy(survivors, 0, order, 0, keep);
+        int si = keep, fi = 0, oi = keep;
+        while (si < numSurvivors || fi < numFresh) {
+            final int survivorsLeft = numSurvivors - si;
+            final int freshLeft = numFresh - fi;
+            if (freshLeft > 0 && mRandom.nextInt(survivorsLeft + freshLeft) < freshLeft) {
+                order[oi++] = fresh[fi++];
+            } else {
+                order[oi++] = survivors[si++];
+            }
+        }
+        mOrder = order;
+        updateRanks();
+    }
+
+    /**
+     * @return map of old position to new position for moving from to to
+     */
+    static int[] moveMap(int size, int from, int to) {
+        final int[] newPosOf = new int[size];
+        for (int ii=0; ii<size; ii++) {
+            if (ii == from) {
+                newPosOf[ii] = to;
+            } else if (from < to && ii > from && ii <= to) {
+                newPosOf[ii] = ii - 1;
+            } else if (to < from && ii >= to && ii < from) {
+                newPosOf[ii] = ii + 1;
+            } else {
+                newPosOf[ii] = ii;
+            }
+        }
+        return newPosOf;
+    }
+
+    int version() {
+        return mVersion;
+    }
+
+    int[] toArray() {
+        return mOrder.clone();
+    }
+
+    private void updateRanks() {
+        mRank = new int[mOrder.length];
+        updateRanks(0, mOrder.length);
+    }
+
+    private void updateRanks(int from, int to) {
+        for (int ii=from; ii<to; ii++) {
+            mRank[mOrder[ii]] = ii;
+        }
+    }
+
+}
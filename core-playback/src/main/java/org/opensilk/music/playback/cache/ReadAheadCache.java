@@ -0,0 +1,470 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.playback.cache;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.opensilk.common.core.dagger2.ForApplication;
+import org.opensilk.music.artwork.cache.CacheUtil;
+import org.opensilk.music.model.Track;
+import org.opensilk.music.playback.service.PlaybackServiceScope;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.inject.Inject;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import timber.log.Timber;
+
+/**
+ * Downloads the upcoming remote tracks so they play from disk instead of the network.
+ *
+ * Upcoming tracks are fetched nearest first until the byte budget runs out, an interrupted
+ * download is resumed with a range request guarded by If-Range, so a file that changed on
+ * the server starts over instead of being spliced onto the old bytes. Tracks that fall out of the upcoming window are
+ * kept in lru order, they go before any upcoming track, which go farthest first.
+ *
+ * Created by drew on 12/8/15.
+ */
+@PlaybackServiceScope
+public class ReadAheadCache {
+
+    //number of upcoming tracks we keep
+    public static final int LOOKAHEAD = 3;
+    public static final long MAX_BYTES = 150L * 1024 * 1024;
+
+    static final String PART = ".part";
+    //etag or last modified of the part, sent back as If-Range
+    static final String VALIDATOR = ".validator";
+    static final long CHUNK = 64 * 1024;
+    //current and next, with some slack for skips
+    static final int MAX_RESOLVED = 8;
+
+    final File mDir;
+    final OkHttpClient mOkClient;
+    final long mMaxBytes;
+    final ExecutorService mExecutor;
+
+    //upcoming resources keyed on file name, nearest first
+    final LinkedHashMap<String, Track.Res> mUpcoming = new LinkedHashMap<>();
+
+    //how recent lookups were answered, length of our copy or -1, until they play
+    final LinkedHashMap<String, Long> mResolved = new LinkedHashMap<String, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_RESOLVED;
+        }
+    };
+
+    long mHits;
+    long mMisses;
+    long mBytesSaved;
+    long mBytesFetched;
+
+    @Inject
+    public ReadAheadCache(@ForApplication Context context, OkHttpClient okClient) {
+        this(new File(context.getCacheDir(), "readahead"), okClient, MAX_BYTES,
+                Executors.newSingleThreadExecutor());
+    }
+
+    ReadAheadCache(File dir, OkHttpClient okClient, long maxBytes, ExecutorService executor) {
+        mDir = dir;
+        mOkClient = okClient;
+        mMaxBytes = maxBytes;
+        mExecutor = executor;
+    }
+
+    public static boolean isCacheable(Track.Res res) {
+        final String scheme = res.getUri().getScheme();
+        return StringUtils.equals(scheme, "http") || StringUtils.equals(scheme, "https");
+    }
+
+    static String keyFor(Track.Res res) {
+        return CacheUtil.md5(res.getUri().toString());
+    }
+
+    /**
+     * Replaces the upcoming tracks, nearest first, and starts fetching any we don't have.
+     */
+    public void prefetch(List<Track.Res> upcoming) {
+        synchronized (this) {
+            mUpcoming.clear();
+            for (Track.Res res : upcoming) {
+                if (isCacheable(res)) {
+                    mUpcoming.put(keyFor(res), res);
+                }
+            }
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                fetchUpcoming();
+            }
+        });
+    }
+
+    /**
+     * @return the resource pointing at our copy if we have all of it, else the resource
+     */
+    public Track.Res resolve(Track.Res res) {
+        if (!isCacheable(res)) {
+            return res;
+        }
+        final String key = keyFor(res);
+        final File file = new File(mDir, key);
+        synchronized (this) {
+            if (file.exists()) {
+                mResolved.put(key, file.length());
+                //lru
+                file.setLastModified(System.currentTimeMillis());
+                return res.buildUpon().setUri(Uri.fromFile(file)).build();
+            }
+            mResolved.put(key, -1L);
+        }
+        return res;
+    }
+
+    /**
+     * Counts the hit or miss for the resource, once, when it starts playing. Lookups
+     * themselves aren't counted since the same track is resolved when staged as next
+     * and again when it becomes current.
+     *
+     * @param res the resource as given to {@link #resolve(Track.Res)}
+     */
+    public synchronized void notePlayed(Track.Res res) {
+        if (!isCacheable(res)) {
+            return;
+        }
+        final Long length = mResolved.remove(keyFor(res));
+        if (length == null) {
+            return;
+        }
+        if (length >= 0) {
+            mHits++;
+            mBytesSaved += length;
+        } else {
+            mMisses++;
+        }
+    }
+
+    /**
+     * @return the track with its resource resolved by {@link #resolve(Track.Res)}
+     */
+    public Track resolve(Track track) {
+        final Track.Res res = track.getResources().get(0);
+        final Track.Res local = resolve(res);
+        if (local == res) {
+            return track;
+        }
+        Track.Builder bob = track.buildUpon();
+        bob.resList().set(0, local);
+        return bob.build();
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * @return bytes we played from disk instead of the network
+     */
+    public synchronized long getBytesSaved() {
+        return mBytesSaved;
+    }
+
+    public synchronized long getBytesFetched() {
+        return mBytesFetched;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ReadAheadCache[hits=%d, misses=%d, saved=%d, fetched=%d]",
+                mHits, mMisses, mBytesSaved, mBytesFetched);
+    }
+
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    //executor
+    void fetchUpcoming() {
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            Timber.e("Unable to create %s", mDir);
+            return;
+        }
+        trim();
+        Track.Res res;
+        while ((res = nextToFetch()) != null) {
+            boolean more = fetch(res);
+            //make room for what we just fetched
+            trim();
+            if (!more) {
+                break;
+            }
+        }
+    }
+
+    /*
+     * Nearest upcoming track we don't have all of, or null if there are none
+     * or we've used up the budget
+     */
+    synchronized Track.Res nextToFetch() {
+        long total = 0;
+        for (Map.Entry<String, Track.Res> e : mUpcoming.entrySet()) {
+            final File file = new File(mDir, e.getKey());
+            if (file.exists()) {
+                total += file.length();
+                continue;
+            }
+            total += Math.max(e.getValue().getSize(), new File(mDir, e.getKey() + PART).length());
+            if (total > mMaxBytes) {
+                return null;
+            }
+            return e.getValue();
+        }
+        return null;
+    }
+
+    /*
+     * Bytes the upcoming track may use after the ones before it
+     */
+    synchronized long budgetFor(String key) {
+        long total = 0;
+        for (String k : mUpcoming.keySet()) {
+            if (k.equals(key)) {
+                break;
+            }
+            total += sizeOnDisk(k);
+        }
+        return mMaxBytes - total;
+    }
+
+    synchronized boolean isUpcoming(String key) {
+        return mUpcoming.containsKey(key);
+    }
+
+    /*
+     * @return true if we should move on to the next track
+     */
+    boolean fetch(Track.Res res) {
+        final String key = keyFor(res);
+        final File part = new File(mDir, key + PART);
+        final File validatorFile = new File(mDir, key + VALIDATOR);
+        long have = part.length();
+        final String validator = have > 0 ? readValidator(validatorFile) : null;
+        if (have > 0 && validator == null) {
+            //nothing to check the part against, it could be from an older file
+            deleteFile(part);
+            have = 0;
+        }
+        Request.Builder rb = new Request.Builder()
+                .url(res.getUri().toString())
+                //dont let these push everything else out of the http cache
+                .cacheControl(new CacheControl.Builder().noStore().build());
+        for (Map.Entry<String, String> e : res.getHeaders().entrySet()) {
+            rb.header(e.getKey(), e.getValue());
+        }
+        if (have > 0) {
+            rb.header("Range", "bytes=" + have + "-");
+            rb.header("If-Range", validator);
+        }
+        Response response = null;
+        try {
+            response = mOkClient.newCall(rb.build()).execute();
+            if (response.code() == 416) {
+                //range not satisfiable, we already have all of it
+                return complete(key);
+            } else if (!response.isSuccessful()) {
+                Timber.w("Unable to fetch %s: %d", res.getUri(), response.code());
+                return false;
+            }
+            //server may ignore the range, or the file changed and If-Range failed, either way
+            //we get all of it and start over
+            final boolean resume = response.code() == 206;
+            if (!resume) {
+                have = 0;
+                writeValidator(validatorFile, validatorOf(response));
+            }
+            final long budget = budgetFor(key);
+            final BufferedSource source = response.body().source();
+            final BufferedSink sink = Okio.buffer(Okio.sink(new FileOutputStream(part, resume)));
+            try {
+                long read;
+                while ((read = source.read(sink.buffer(), CHUNK)) != -1) {
+                    sink.emitCompleteSegments();
+                    have += read;
+                    synchronized (this) {
+                        mBytesFetched += read;
+                    }
+                    if (!isUpcoming(key)) {
+                        //queue changed under us, trim will take care of it
+                        return true;
+                    } else if (have > budget) {
+                        Timber.d("Out of budget fetching %s", res.getUri());
+                        return false;
+                    }
+                }
+            } finally {
+                sink.close();
+            }
+            return complete(key);
+        } catch (IOException e) {
+            Timber.w(e, "fetch %s", res.getUri());
+            return false;
+        } finally {
+            if (response != null) {
+                try {
+                    response.body().close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    boolean complete(String key) {
+        deleteFile(new File(mDir, key + VALIDATOR));
+        return new File(mDir, key + PART).renameTo(new File(mDir, key));
+    }
+
+    /*
+     * @return strong etag if there is one, else last modified, else null.
+     * Weak etags aren't allowed in If-Range
+     */
+    static String validatorOf(Response response) {
+        final String etag = response.header("ETag");
+        if (!StringUtils.isEmpty(etag) && !etag.startsWith("W/")) {
+            return etag;
+        }
+        final String lastModified = response.header("Last-Modified");
+        return StringUtils.isEmpty(lastModified) ? null : lastModified;
+    }
+
+    static String readValidator(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final String validator = FileUtils.readFileToString(file, "UTF-8");
+            return StringUtils.isEmpty(validator) ? null : validator;
+        } catch (IOException e) {
+            Timber.w(e, "readValidator %s", file);
+            return null;
+        }
+    }
+
+    static void writeValidator(File file, String validator) {
+        if (validator == null) {
+            //can't resume this one safely, a part without a validator starts over
+            if (file.exists()) {
+                deleteFile(file);
+            }
+            return;
+        }
+        try {
+            FileUtils.writeStringToFile(file, validator, "UTF-8");
+        } catch (IOException e) {
+            Timber.w(e, "writeValidator %s", file);
+        }
+    }
+
+    /*
+     * Evicts until we are under budget, tracks no longer upcoming go first
+     * oldest first, then the upcoming ones farthest first.
+     */
+    synchronized void trim() {
+        File[] files = mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        List<File> keep = new ArrayList<>(mUpcoming.size() * 2);
+        for (String key : mUpcoming.keySet()) {
+            for (File f : new File[]{new File(mDir, key), new File(mDir, key + PART),
+                    new File(mDir, key + VALIDATOR)}) {
+                if (f.exists()) {
+                    total += f.length();
+                    if (total > mMaxBytes) {
+                        deleteFile(f);
+                    } else {
+                        keep.add(f);
+                    }
+                }
+            }
+        }
+        List<File> others = new ArrayList<>(Arrays.asList(files));
+        others.removeAll(keep);
+        //newest first
+        Collections.sort(others, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l > r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (File f : others) {
+            //nobody is going to finish these
+            if (f.getName().endsWith(PART) || f.getName().endsWith(VALIDATOR)) {
+                deleteFile(f);
+                continue;
+            }
+            total += f.length();
+            if (total > mMaxBytes) {
+                deleteFile(f);
+            }
+        }
+    }
+
+    synchronized long sizeOnDisk(String key) {
+        File file = new File(mDir, key);
+        return file.exists() ? file.length() : new File(mDir, key + PART).length();
+    }
+
+    static void deleteFile(File f) {
+        if (!f.delete()) {
+            Timber.w("Unable to delete %s", f);
+        }
+    }
+
+}
@@ -104,10 +104,25 @@ public interface PlaybackController {
 
     public void moveQueueItemToNext(int pos);
 
+    /**
+     * Tells the service which queue positions are on screen so their descriptions get looked up
+     */
+    public void showQueueWindow(int first, int last);
+
     public void switchToNewRenderer(@Nullable ComponentName componentName);
 
     public void getCurrentRenderer(final Action1<ComponentName> onNext);
 
+    /**
+     * Skip/play latency percentiles per renderer and library, for debugging
+     */
+    public void dumpLatency(final Action1<String> onNext);
+
+    /**
+     * Tells the service the crossfade setting changed, it is saved separately
+     */
+    public void setCrossfadeDuration(int millis);
+
     public PlaybackInfoCompat getPlaybackInfo();
 
     public void setVolume(int volume);
@@ -251,6 +251,10 @@ public class PlaybackControllerImpl implements PlaybackController {
         sendCustomAction(PlaybackConstants.ACTION.MOVE_QUEUE_ITEM_TO_NEXT, BundleHelper.b().putInt(pos).get());
     }
 
+    public void showQueueWindow(int first, int last) {
+        sendCustomAction(PlaybackConstants.ACTION.SHOW_QUEUE_WINDOW, BundleHelper.b().putInt(first).putInt2(last).get());
+    }
+
     @DebugLog
     public void switchToNewRenderer(@Nullable ComponentName componentName) {
         if (hasController()) {
@@ -271,6 +275,25 @@ public class PlaybackControllerImpl implements PlaybackController {
         }
     }
 
+    public void dumpLatency(final Action1<String> onNext) {
+        if (hasController()) {
+            mImpl.getMediaController().sendCommand(PlaybackConstants.CMD.DUMP_LATENCY, null,
+                    new ResultReceiver(mCallbackHandler) {
+                        @Override
+                        protected void onReceiveResult(int resultCode, Bundle resultData) {
+                            onNext.call(BundleHelper.getString(resultData));
+                        }
+                    });
+        }
+    }
+
+    public void setCrossfadeDuration(int millis) {
+        if (hasController()) {
+            mImpl.getMediaController().sendCommand(PlaybackConstants.CMD.SET_CROSSFADE_DURATION,
+                    BundleHelper.b().putInt(millis).get(), null);
+        }
+    }
+
     public PlaybackInfoCompat getPlaybackInfo() {
         if (hasController()) {
             return mImpl.getPlaybackInfo(mImpl.getMediaController().getPlaybackInfo());
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.playback.renderer;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Overlaps the end of one player with the start of the next. Runs on its own
+ * thread so the ramp isn't held up by whatever the service is doing, it only ever
+ * calls start and setVolume on the players, everything else is left to the renderer.
+ *
+ * Created by drew on 12/8/15.
+ */
+class Crossfader implements Runnable {
+
+    static final long TICK_MS = 50;
+    //how often we check the position while waiting for the fade point
+    static final long WATCH_MS = 1000;
+
+    private Handler mHandler;
+    private HandlerThread mThread;
+    private long mDuration;
+    private float mVolume = LocalRenderer.VOLUME_NORMAL;
+    private IMediaPlayer mOut;
+    private IMediaPlayer mIn;
+    private long mStartedAt = -1;
+    private long mLength;
+
+    Crossfader() {
+    }
+
+    Crossfader(Handler handler) {
+        mHandler = handler;
+    }
+
+    synchronized void setDuration(long millis) {
+        mDuration = Math.max(millis, 0);
+    }
+
+    synchronized long getDuration() {
+        return mDuration;
+    }
+
+    synchronized boolean isEnabled() {
+        return mDuration > 0;
+    }
+
+    /**
+     * Volume the ramp tops out at, so ducking still applies mid fade
+     */
+    synchronized void setVolume(float volume) {
+        mVolume = volume;
+    }
+
+    /**
+     * @return true if both players are currently audible
+     */
+    synchronized boolean isFading() {
+        return mStartedAt >= 0;
+    }
+
+    /**
+     * Watch out until it is within the fade duration of its end then start in and ramp
+     * between them. out must be playing, in must be prepared.
+     */
+    synchronized void watch(IMediaPlayer out, IMediaPlayer in) {
+        if (mDuration <= 0 || (mOut == out && mIn == in)) {
+            return;
+        }
+        stopLocked();
+        mOut = out;
+        mIn = in;
+        getHandler().post(this);
+    }
+
+    /**
+     * Stops watching, leaving the players as they are.
+     *
+     * @return uptime in started, or -1 if the fade hadn't started
+     */
+    synchronized long stop() {
+        long startedAt = mStartedAt;
+        stopLocked();
+        return startedAt;
+    }
+
+    private void stopLocked() {
+        if (mHandler != null) {
+            mHandler.removeCallbacks(this);
+        }
+        mOut = mIn = null;
+        mStartedAt = -1;
+    }
+
+    synchronized void quit() {
+        stopLocked();
+        if (mThread != null) {
+            mThread.quit();
+            mThread = null;
+            mHandler = null;
+        }
+    }
+
+    private Handler getHandler() {
+        if (mHandler == null) {
+            mThread = new HandlerThread("Crossfader", Process.THREAD_PRIORITY_AUDIO);
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper());
+        }
+        return mHandler;
+    }
+
+    @Override
+    public synchronized void run() {
+        if (mOut == null) {
+            return;
+        }
+        final long now = SystemClock.uptimeMillis();
+        if (mStartedAt < 0) {
+            if (!mOut.isPlaying()) {
+                //paused, the renderer will watch again when it resumes
+                stopLocked();
+                return;
+            }
+            long remaining = mOut.getDuration() - mOut.getCurrentPosition();
+            if (remaining > mDuration) {
+                mHandler.postDelayed(this, Math.min(remaining - mDuration, WATCH_MS));
+                return;
+            }
+            mStartedAt = now;
+            mLength = Math.max(remaining, TICK_MS);
+            mIn.setVolume(0, 0);
+            mIn.start();
+        }
+        float frac = Math.min(1f, (now - mStartedAt) / (float) mLength);
+        float outVol = (1f - frac) * mVolume;
+        float inVol = frac * mVolume;
+        mOut.setVolume(outVol, outVol);
+        mIn.setVolume(inVol, inVol);
+        if (frac < 1f) {
+            mHandler.postDelayed(this, TICK_MS);
+        }
+    }
+
+}
@@ -22,6 +22,7 @@ import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.net.Uri;
 import android.os.PowerManager;
+import android.support.annotation.Nullable;
 
 import org.opensilk.common.core.util.VersionUtils;
 import org.opensilk.music.playback.service.PlaybackServiceScope;
@@ -31,11 +32,14 @@ import java.util.Map;
 
 import javax.inject.Inject;
 
+import timber.log.Timber;
+
 /**
  * Created by drew on 9/27/15.
  */
 public class DefaultMediaPlayer implements IMediaPlayer, MediaPlayer.OnCompletionListener,
-        MediaPlayer.OnErrorListener, MediaPlayer.OnPreparedListener, MediaPlayer.OnSeekCompleteListener {
+        MediaPlayer.OnErrorListener, MediaPlayer.OnPreparedListener, MediaPlayer.OnSeekCompleteListener,
+        MediaPlayer.OnInfoListener {
 
     private final MediaPlayer mMediaPlayer;
     private Callback mCallback;
@@ -77,6 +81,7 @@ public class DefaultMediaPlayer implements IMediaPlayer, MediaPlayer.OnCompletio
         mMediaPlayer.setOnCompletionListener(this);
         mMediaPlayer.setOnErrorListener(this);
         mMediaPlayer.setOnSeekCompleteListener(this);
+        mMediaPlayer.setOnInfoListener(this);
         mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
         mMediaPlayer.setWakeMode(context, PowerManager.PARTIAL_WAKE_LOCK);
         mMediaPlayer.setAudioSessionId(audioSessionId);
@@ -146,6 +151,23 @@ public class DefaultMediaPlayer implements IMediaPlayer, MediaPlayer.OnCompletio
         return mMediaPlayer.getDuration();
     }
 
+    @Override
+    public boolean setNextMediaPlayer(@Nullable IMediaPlayer next) {
+        if (!VersionUtils.hasJellyBean()) {
+            return false;
+        }
+        if (next != null && !(next instanceof DefaultMediaPlayer)) {
+            return false;
+        }
+        try {
+            mMediaPlayer.setNextMediaPlayer(next != null ? ((DefaultMediaPlayer) next).mMediaPlayer : null);
+            return true;
+        } catch (IllegalArgumentException|IllegalStateException e) {
+            Timber.w(e, "setNextMediaPlayer");
+            return false;
+        }
+    }
+
     boolean hasCallback() {
         return mCallback != null;
     }
@@ -175,4 +197,13 @@ public class DefaultMediaPlayer implements IMediaPlayer, MediaPlayer.OnCompletio
             mCallback.onSeekComplete(this);
         }
     }
+
+    @Override
+    public boolean onInfo(MediaPlayer mp, int what, int extra) {
+        if (what == MediaPlayer.MEDIA_INFO_STARTED_AS_NEXT && hasCallback()) {
+            mCallback.onStartedAsNext(this);
+            return true;
+        }
+        return false;
+    }
 }
@@ -19,6 +19,7 @@ package org.opensilk.music.playback.renderer;
 
 import android.content.Context;
 import android.net.Uri;
+import android.support.annotation.Nullable;
 
 import java.io.IOException;
 import java.util.Map;
@@ -39,6 +40,13 @@ public interface IMediaPlayer {
     void reset();
     void release();
     long getDuration();
+    /**
+     * Chain next to start the moment we complete, without a gap.
+     * Next must be prepared, pass null to break the chain.
+     *
+     * @return false if chaining isn't supported, caller must start next itself
+     */
+    boolean setNextMediaPlayer(@Nullable IMediaPlayer next);
     interface Callback {
         /**
          * Called when MediaPlayer has completed a seek
@@ -74,6 +82,13 @@ public interface IMediaPlayer {
          * Invoked when the audio session id becomes known
          */
         void onAudioSessionId(IMediaPlayer mp, int audioSessionId);
+
+        /**
+         * Invoked when the player was started by the one chained to it
+         *
+         * @see android.media.MediaPlayer#MEDIA_INFO_STARTED_AS_NEXT
+         */
+        void onStartedAsNext(IMediaPlayer mp);
     }
     interface Factory {
         IMediaPlayer create(Context context);
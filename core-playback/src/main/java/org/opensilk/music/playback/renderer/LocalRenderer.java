@@ -21,6 +21,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.media.AudioManager;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.media.VolumeProviderCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 
@@ -39,6 +40,10 @@ import timber.log.Timber;
 
 /**
  * A class that implements local media playback using {@link android.media.MediaPlayer}
+ *
+ * The next track is handed off to the platform with {@link IMediaPlayer#setNextMediaPlayer}
+ * so it starts without a gap, or, when a crossfade duration is set, the {@link Crossfader}
+ * starts it early and ramps the volumes between the two.
  */
 @PlaybackServiceScope
 public class LocalRenderer implements IMusicRenderer,
@@ -67,6 +72,15 @@ public class LocalRenderer implements IMusicRenderer,
     // Type of audio focus we have:
     private int mAudioFocus = AUDIO_NO_FOCUS_NO_DUCK;
     private IMediaPlayer.Factory mDefaultMediaPlayerFactory;
+    private final Crossfader mCrossfader;
+    // current player will start next on completion
+    private boolean mNextChained;
+    // uptime the last track completed, -1 when not transitioning
+    private long mCompletedAt = -1;
+    // uptime the chained next player said it started, -1 if it hasn't
+    private long mNextStartedAt = -1;
+    private long mLastTransitionGap;
+    private int mTransitionCount;
 
     private static class Player {
         IMediaPlayer player;
@@ -114,10 +128,20 @@ public class LocalRenderer implements IMusicRenderer,
             @ForApplication Context context,
             AudioManager audioManager,
             DefaultMediaPlayer.Factory defaultMediaPlayerFactory
+    ) {
+        this(context, audioManager, defaultMediaPlayerFactory, new Crossfader());
+    }
+
+    LocalRenderer(
+            Context context,
+            AudioManager audioManager,
+            IMediaPlayer.Factory mediaPlayerFactory,
+            Crossfader crossfader
     ) {
         this.mContext = context;
         this.mAudioManager = audioManager;
-        this.mDefaultMediaPlayerFactory = defaultMediaPlayerFactory;
+        this.mDefaultMediaPlayerFactory = mediaPlayerFactory;
+        this.mCrossfader = crossfader;
     }
 
     public void start() {
@@ -125,6 +149,7 @@ public class LocalRenderer implements IMusicRenderer,
 
     public void stop(boolean notifyListeners) {
         resetHard();
+        mCrossfader.quit();
         mState = PlaybackStateCompat.STATE_STOPPED;
         if (notifyListeners) {
             notifyOnPlaybackStatusChanged(mState);
@@ -155,8 +180,42 @@ public class LocalRenderer implements IMusicRenderer,
                 mCurrentPlayer.player.getDuration() : PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN;
     }
 
+    /**
+     * Sets how long tracks overlap, 0 for gapless
+     */
+    public void setCrossfadeDuration(long millis) {
+        if (millis == mCrossfader.getDuration()) {
+            return;
+        }
+        cancelCrossfade();
+        unchainNext();
+        mCrossfader.setDuration(millis);
+        prepareTransition();
+    }
+
+    public long getCrossfadeDuration() {
+        return mCrossfader.getDuration();
+    }
+
+    /**
+     * @return millis between the end of the last track and the start of the next,
+     *         negative when they overlapped
+     */
+    public long getLastTransitionGap() {
+        return mLastTransitionGap;
+    }
+
+    /**
+     * @return number of transitions measured
+     */
+    public int getTransitionCount() {
+        return mTransitionCount;
+    }
+
     public void prepareForTrack() {
         resetSoft();
+        unchainNext();
+        mCompletedAt = -1;
         mCurrentPlayer.reset(false);
         mCurrentPosition = 0;
         // Although this is technically the correct state the conversion to RCC internally
@@ -205,6 +264,9 @@ public class LocalRenderer implements IMusicRenderer,
     }
 
     public void prepareForNextTrack() {
+        cancelCrossfade();
+        unchainNext();
+        mNextStartedAt = -1;
         mNextPlayer.reset(false);
     }
 
@@ -227,6 +289,8 @@ public class LocalRenderer implements IMusicRenderer,
             }
 
             mNextPlayer.player.reset();
+            //may be the player we last faded out
+            mNextPlayer.player.setVolume(focusVolume(), focusVolume());
             mNextPlayer.player.setDataSource(mContext, item.getUri(), item.getHeaders());
             mNextPlayer.hasTrack = true;
 
@@ -268,15 +332,34 @@ public class LocalRenderer implements IMusicRenderer,
         if (!hasNext()) {
             notifyOnError("No next player");
         }
+        final long fadeStartedAt = mCrossfader.stop();
+        final long nextStartedAt = mNextStartedAt;
+        mNextStartedAt = -1;
         Player oldCurrent = mCurrentPlayer;
         oldCurrent.reset(false);
         if (oldCurrent.hasPlayer()) {
             oldCurrent.player.reset();
+            //a crossfade left it silent, don't hand it out that way as the next player
+            oldCurrent.player.setVolume(VOLUME_NORMAL, VOLUME_NORMAL);
         }
+        mNextChained = false;
         mCurrentPlayer = mNextPlayer;
         mNextPlayer = oldCurrent;
         mCurrentPosition = 0;
-        mState = PlaybackStateCompat.STATE_SKIPPING_TO_NEXT;
+        if (hasCurrent() && mCurrentPlayer.player.isPlaying()) {
+            // chained or crossfading, its already going
+            if (mCompletedAt >= 0) {
+                if (fadeStartedAt >= 0) {
+                    onTransition(fadeStartedAt);
+                } else if (nextStartedAt >= 0) {
+                    onTransition(nextStartedAt);
+                } //else the chained player will tell us when it started
+            }
+            mState = PlaybackStateCompat.STATE_PLAYING;
+            notifyOnAudioSessionId(mCurrentPlayer.sessionId);
+        } else {
+            mState = PlaybackStateCompat.STATE_SKIPPING_TO_NEXT;
+        }
         play();
         notifyOnWentToNext();
         return true;
@@ -284,6 +367,8 @@ public class LocalRenderer implements IMusicRenderer,
 
     public void pause() {
         resetSoft();
+        //a transition we were still timing wont be measured
+        mCompletedAt = -1;
         mState = PlaybackStateCompat.STATE_PAUSED;
         notifyOnPlaybackStatusChanged(mState);
     }
@@ -294,6 +379,7 @@ public class LocalRenderer implements IMusicRenderer,
             // If we do not have a current media player, simply update the current position
             mCurrentPosition = position;
         } else if (hasCurrent()) {
+            cancelCrossfade();
             mCurrentPlayer.player.seekTo(position);
             mState = PlaybackStateCompat.STATE_BUFFERING;
             notifyOnPlaybackStatusChanged(mState);
@@ -321,6 +407,7 @@ public class LocalRenderer implements IMusicRenderer,
 
     //resets our state but does not release mediaplayers
     private void resetSoft() {
+        cancelCrossfade();
         if (hasCurrent()) {
             if (mCurrentPlayer.player.isPlaying()) {
                 mCurrentPlayer.player.pause();
@@ -337,6 +424,9 @@ public class LocalRenderer implements IMusicRenderer,
 
     private void resetHard() {
         resetSoft();
+        unchainNext();
+        mCompletedAt = -1;
+        mNextStartedAt = -1;
         mCurrentPlayer.reset(true);
         mNextPlayer.reset(true);
     }
@@ -391,14 +481,12 @@ public class LocalRenderer implements IMusicRenderer,
             // If we don't have audio focus and can't duck, we have to pause,
             pause();
         } else {  // we have audio focus:
-            if (mAudioFocus == AUDIO_NO_FOCUS_CAN_DUCK) {
-                if (hasCurrent()) {
-                    mCurrentPlayer.player.setVolume(VOLUME_DUCK, VOLUME_DUCK); // we'll be relatively quiet
-                }
-            } else {
-                if (hasCurrent()) {
-                    mCurrentPlayer.player.setVolume(VOLUME_NORMAL, VOLUME_NORMAL); // we can be loud again
-                }
+            // we'll be relatively quiet or we can be loud again
+            final float volume = focusVolume();
+            mCrossfader.setVolume(volume);
+            if (hasCurrent() && !mCrossfader.isFading()) {
+                // the crossfader owns the volume while fading
+                mCurrentPlayer.player.setVolume(volume, volume);
             }
             // If we were playing when we lost focus, we need to resume playing.
             if (mPlayOnFocusGain) {
@@ -407,6 +495,7 @@ public class LocalRenderer implements IMusicRenderer,
                         //todo is there a better place for this?
                         notifyOnAudioSessionId(mCurrentPlayer.sessionId);
                         mCurrentPlayer.player.start();
+                        onStarted();
                         mState = PlaybackStateCompat.STATE_PLAYING;
                     } else {
                         Timber.d("configMediaPlayerState startMediaPlayer. " +
@@ -419,10 +508,76 @@ public class LocalRenderer implements IMusicRenderer,
                 }
                 mPlayOnFocusGain = false;
             }
+            prepareTransition();
         }
         notifyOnPlaybackStatusChanged(mState);
     }
 
+    /**
+     * Sets up the hand off to the next player, once both are ready.
+     */
+    private void prepareTransition() {
+        if (!hasCurrent() || !mCurrentPlayer.prepared || !hasNext() || !mNextPlayer.prepared) {
+            return;
+        }
+        if (mCrossfader.isEnabled()) {
+            if (mCurrentPlayer.player.isPlaying()) {
+                mCrossfader.watch(mCurrentPlayer.player, mNextPlayer.player);
+            }
+        } else if (!mNextChained) {
+            mNextChained = mCurrentPlayer.player.setNextMediaPlayer(mNextPlayer.player);
+            Timber.d("Gapless %s", mNextChained ? "chained next player" : "not supported");
+        }
+    }
+
+    private void unchainNext() {
+        mNextStartedAt = -1;
+        if (mNextChained) {
+            if (hasCurrent()) {
+                mCurrentPlayer.player.setNextMediaPlayer(null);
+            }
+            mNextChained = false;
+        }
+    }
+
+    /**
+     * Stops the crossfader, rewinding the next player if it had already started
+     */
+    private void cancelCrossfade() {
+        if (mCrossfader.stop() >= 0) {
+            if (hasNext()) {
+                mNextPlayer.player.pause();
+                mNextPlayer.player.seekTo(0);
+                mNextPlayer.player.setVolume(focusVolume(), focusVolume());
+            }
+            if (hasCurrent()) {
+                //it was part way faded out
+                mCurrentPlayer.player.setVolume(focusVolume(), focusVolume());
+            }
+        }
+    }
+
+    private float focusVolume() {
+        return (mAudioFocus == AUDIO_NO_FOCUS_CAN_DUCK) ? VOLUME_DUCK : VOLUME_NORMAL;
+    }
+
+    /*
+     * Current player was started, if we were waiting on it after a completion
+     * thats the end of the transition
+     */
+    private void onStarted() {
+        if (mCompletedAt >= 0) {
+            onTransition(SystemClock.uptimeMillis());
+        }
+    }
+
+    private void onTransition(long startedAt) {
+        mLastTransitionGap = startedAt - mCompletedAt;
+        mTransitionCount++;
+        mCompletedAt = -1;
+        Timber.d("Transition gap %dms", mLastTransitionGap);
+    }
+
     /**
      * Called by AudioManager on audio focus changes.
      * Implementation of {@link android.media.AudioManager.OnAudioFocusChangeListener}
@@ -471,10 +626,12 @@ public class LocalRenderer implements IMusicRenderer,
             } else if (mState == PlaybackStateCompat.STATE_BUFFERING
                     || mState == PlaybackStateCompat.STATE_SKIPPING_TO_NEXT) {
                 player.start();
+                onStarted();
                 mState = PlaybackStateCompat.STATE_PLAYING;
             } else {
                 mState = PlaybackStateCompat.STATE_PAUSED;
             }
+            prepareTransition();
             notifyOnPlaybackStatusChanged(mState);
         }
     }
@@ -488,6 +645,7 @@ public class LocalRenderer implements IMusicRenderer,
     @DebugLog
     public void onCompletion(IMediaPlayer player) {
         if (player == mCurrentPlayer.player) {
+            mCompletedAt = SystemClock.uptimeMillis();
             if (hasNext()) {
                 goToNext();
             } else {
@@ -520,9 +678,11 @@ public class LocalRenderer implements IMusicRenderer,
             } else {
                 mState = PlaybackStateCompat.STATE_PAUSED;
                 notifyOnPlaybackStatusChanged(mState);
+                prepareTransition();
             }
         } else if (player == mNextPlayer.player) {
             mNextPlayer.prepared = true;
+            prepareTransition();
         }
     }
 
@@ -553,6 +713,21 @@ public class LocalRenderer implements IMusicRenderer,
         }
     }
 
+    /**
+     * Called when the platform started a chained player, this is the real start of the next
+     * track, it can arrive before or after the completion of the one before it.
+     */
+    @Override
+    @DebugLog
+    public void onStartedAsNext(IMediaPlayer mp) {
+        final long now = SystemClock.uptimeMillis();
+        if (mp == mNextPlayer.player) {
+            mNextStartedAt = now;
+        } else if (mp == mCurrentPlayer.player && mCompletedAt >= 0) {
+            onTransition(now);
+        }
+    }
+
     private void registerAudioNoisyReceiver() {
         if (!mAudioNoisyReceiverRegistered) {
             mContext.registerReceiver(mAudioNoisyReceiver, mAudioNoisyIntentFilter);
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.playback.service;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.Nullable;
+
+import org.apache.commons.io.IOUtils;
+import org.opensilk.common.core.dagger2.ForApplication;
+import org.opensilk.music.model.Track;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import timber.log.Timber;
+
+/**
+ * The current track and where we were in it, saved to a small file alongside the
+ * index so a cold start can have it loaded in the renderer before the queue is
+ * read back out of the index provider.
+ *
+ * Created by drew on 12/8/15.
+ */
+@PlaybackServiceScope
+public class ColdStartSnapshot {
+
+    static final String FILE_NAME = "playback_snapshot";
+    static final int VERSION = 2;
+
+    public static class Entry {
+        public final Track track;
+        public final int queuePos;
+        public final long seekPos;
+
+        public Entry(Track track, int queuePos, long seekPos) {
+            this.track = track;
+            this.queuePos = queuePos;
+            this.seekPos = seekPos;
+        }
+    }
+
+    final File mFile;
+
+    @Inject
+    public ColdStartSnapshot(@ForApplication Context context) {
+        this(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    ColdStartSnapshot(File file) {
+        mFile = file;
+    }
+
+    /**
+     * @return the saved snapshot or null if there isn't a usable one
+     */
+    public @Nullable Entry read() {
+        if (!mFile.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            final Track track = readTrack(in);
+            final int queuePos = in.readInt();
+            final long seekPos = in.readLong();
+            if (track.getResources().isEmpty()) {
+                return null;
+            }
+            return new Entry(track, queuePos, seekPos);
+        } catch (IOException|RuntimeException e) {
+            Timber.w(e, "Unable to read snapshot");
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Replaces the snapshot, clearing it if there is no track
+     */
+    public void save(@Nullable Track track, int queuePos, long seekPos) {
+        if (track == null) {
+            clear();
+            return;
+        }
+        //write then rename so a crash never leaves half a snapshot
+        final File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(VERSION);
+            writeTrack(out, track);
+            out.writeInt(queuePos);
+            out.writeLong(seekPos);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(mFile)) {
+                throw new IOException("Unable to rename " + tmp);
+            }
+        } catch (IOException e) {
+            Timber.w(e, "Unable to save snapshot");
+            IOUtils.closeQuietly(out);
+            clear();
+        }
+    }
+
+    /*
+     * Only what it takes to play the track and show it, field by field so the file
+     * doesn't depend on the parcel format of the platform or the model codecs
+     */
+    static void writeTrack(DataOutputStream out, Track track) throws IOException {
+        writeUri(out, track.getUri());
+        writeUri(out, track.getParentUri());
+        writeString(out, track.getName());
+        writeString(out, track.getArtistName());
+        writeString(out, track.getAlbumName());
+        writeString(out, track.getAlbumArtistName());
+        writeUri(out, track.getAlbumUri());
+        writeUri(out, track.getArtworkUri());
+        out.writeInt(track.getTrackNumber());
+        final List<Track.Res> resList = track.getResources();
+        out.writeInt(resList.size());
+        for (Track.Res res : resList) {
+            writeUri(out, res.getUri());
+            writeString(out, res.getMimeType());
+            out.writeLong(res.getBitrate());
+            out.writeLong(res.getSize());
+            out.writeLong(res.getDuration());
+            out.writeLong(res.getLastMod());
+            final Map<String, String> headers = res.getHeaders();
+            out.writeInt(headers.size());
+            for (Map.Entry<String, String> e : headers.entrySet()) {
+                writeString(out, e.getKey());
+                writeString(out, e.getValue());
+            }
+        }
+    }
+
+    static Track readTrack(DataInputStream in) throws IOException {
+        final Track.Builder bob = Track.builder()
+                .setUri(readUri(in))
+                .setParentUri(readUri(in))
+                .setName(readString(in))
+                .setArtistName(readString(in))
+                .setAlbumName(readString(in))
+                .setAlbumArtistName(readString(in))
+                .setAlbumUri(readUri(in))
+                .setArtworkUri(readUri(in));
+        final int trackNum = in.readInt();
+        if (trackNum > 0) {
+            bob.setTrackNumber(trackNum);
+        }
+        final int numRes = in.readInt();
+        for (int ii=0; ii<numRes; ii++) {
+            final Track.Res.Builder rob = Track.Res.builder()
+                    .setUri(readUri(in))
+                    .setMimeType(readString(in))
+                    .setBitrate(in.readLong())
+                    .setSize(in.readLong())
+                    .setDuration(in.readLong())
+                    .setLastMod(in.readLong());
+            final int numHeaders = in.readInt();
+            for (int jj=0; jj<numHeaders; jj++) {
+                rob.addHeader(readString(in), readString(in));
+            }
+            bob.addRes(rob.build());
+        }
+        return bob.build();
+    }
+
+    static void writeString(DataOutputStream out, @Nullable String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    static @Nullable String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void writeUri(DataOutputStream out, @Nullable Uri uri) throws IOException {
+        writeString(out, uri != null ? uri.toString() : null);
+    }
+
+    static @Nullable Uri readUri(DataInputStream in) throws IOException {
+        final String s = readString(in);
+        return s != null ? Uri.parse(s) : null;
+    }
+
+    /**
+     * Only updates the position of the saved track
+     */
+    public void saveSeekPosition(long seekPos) {
+        Entry entry = read();
+        if (entry != null) {
+            save(entry.track, entry.queuePos, seekPos);
+        }
+    }
+
+    public void clear() {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+}
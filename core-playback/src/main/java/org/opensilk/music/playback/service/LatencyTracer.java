@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.playback.service;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Times each stage between a transport command and audio playing, keeping the last
+ * {@link #WINDOW} samples of every stage per renderer and per library authority.
+ * Only one transition is traced at a time, a new command abandons the old one.
+ *
+ * All calls must be made on the handler thread.
+ *
+ * Created by drew on 12/8/15.
+ */
+class LatencyTracer {
+
+    static final int STAGE_COMMAND = 0;
+    //queue has moved and we are looking up the track
+    static final int STAGE_SET_TRACK = 1;
+    static final int STAGE_TRACK_RESOLVED = 2;
+    //renderer accepted the track and is preparing it
+    static final int STAGE_RENDERER_LOADED = 3;
+    static final int STAGE_PREPARED = 4;
+    static final int STAGE_PLAYING = 5;
+    static final String[] STAGE_NAMES = {
+            "command", "setTrack", "getTrack", "loadTrack", "prepared", "playing",
+    };
+    static final int WINDOW = 200;
+
+    private final long[] mStamps = new long[STAGE_NAMES.length];
+    private boolean mActive;
+    private String mCommand;
+    private String mAuthority;
+    //sorted so dumps are stable
+    private final TreeMap<String, Histogram[]> mHistograms = new TreeMap<>();
+    private int mCompleted;
+    private int mAbandoned;
+
+    /**
+     * Starts a new transition, abandoning any in progress
+     */
+    void begin(String command) {
+        if (mActive) {
+            mAbandoned++;
+        }
+        Arrays.fill(mStamps, -1);
+        mStamps[STAGE_COMMAND] = now();
+        mCommand = command;
+        mAuthority = null;
+        mActive = true;
+    }
+
+    /**
+     * Stamps the stage if we are tracing and haven't reached it yet
+     */
+    void mark(int stage) {
+        if (mActive && mStamps[stage] < 0) {
+            mStamps[stage] = now();
+        }
+    }
+
+    void setAuthority(@Nullable String authority) {
+        if (mActive) {
+            mAuthority = authority;
+        }
+    }
+
+    /**
+     * Feeds renderer state changes in, finishes the transition once playing
+     */
+    void onState(boolean playing, boolean loading, String renderer) {
+        if (!mActive || mStamps[STAGE_RENDERER_LOADED] < 0) {
+            //still reporting on the old track
+            return;
+        }
+        if (!loading) {
+            mark(STAGE_PREPARED);
+        }
+        if (playing) {
+            mark(STAGE_PLAYING);
+            finish(renderer);
+        }
+    }
+
+    void abandon() {
+        if (mActive) {
+            mActive = false;
+            mAbandoned++;
+        }
+    }
+
+    boolean isActive() {
+        return mActive;
+    }
+
+    @Nullable String getCommand() {
+        return mActive ? mCommand : null;
+    }
+
+    private void finish(String renderer) {
+        mActive = false;
+        mCompleted++;
+        record("renderer/" + renderer);
+        if (mAuthority != null) {
+            record("authority/" + mAuthority);
+        }
+    }
+
+    /*
+     * Each stage is timed from the last stage we saw before it, skipped stages
+     * (like with a gapless hand off) just don't get a sample
+     */
+    private void record(String key) {
+        Histogram[] histograms = mHistograms.get(key);
+        if (histograms == null) {
+            //last one is the total
+            histograms = new Histogram[STAGE_NAMES.length + 1];
+            for (int ii=0; ii<histograms.length; ii++) {
+                histograms[ii] = new Histogram(WINDOW);
+            }
+            mHistograms.put(key, histograms);
+        }
+        long last = mStamps[STAGE_COMMAND];
+        for (int ii=STAGE_COMMAND+1; ii<mStamps.length; ii++) {
+            if (mStamps[ii] >= 0) {
+                histograms[ii].add(mStamps[ii] - last);
+                last = mStamps[ii];
+            }
+        }
+        histograms[STAGE_NAMES.length].add(mStamps[STAGE_PLAYING] - mStamps[STAGE_COMMAND]);
+    }
+
+    /**
+     * @return percentile of the stage for the key or -1 if we have no samples
+     */
+    long getPercentile(String key, int stage, int percentile) {
+        Histogram[] histograms = mHistograms.get(key);
+        return histograms != null ? histograms[stage].percentile(percentile) : -1;
+    }
+
+    long getTotalPercentile(String key, int percentile) {
+        return getPercentile(key, STAGE_NAMES.length, percentile);
+    }
+
+    String dump() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("Transitions completed=").append(mCompleted)
+                .append(" abandoned=").append(mAbandoned).append('\n');
+        for (Map.Entry<String, Histogram[]> e : mHistograms.entrySet()) {
+            Histogram[] histograms = e.getValue();
+            sb.append(e.getKey()).append(" n=")
+                    .append(histograms[STAGE_NAMES.length].size()).append('\n');
+            for (int ii=STAGE_COMMAND+1; ii<histograms.length; ii++) {
+                Histogram h = histograms[ii];
+                if (h.size() == 0) {
+                    continue;
+                }
+                sb.append(String.format("  %-9s n=%-4d p50=%-6d p95=%-6d p99=%d\n",
+                        ii < STAGE_NAMES.length ? STAGE_NAMES[ii] : "total", h.size(),
+                        h.percentile(50), h.percentile(95), h.percentile(99)));
+            }
+        }
+        return sb.toString();
+    }
+
+    long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Ring of the most recent samples
+     */
+    static final class Histogram {
+        private final long[] samples;
+        private int count;
+
+        Histogram(int window) {
+            samples = new long[window];
+        }
+
+        void add(long sample) {
+            samples[count++ % samples.length] = sample;
+        }
+
+        int size() {
+            return Math.min(count, samples.length);
+        }
+
+        /**
+         * Nearest rank percentile, -1 if empty
+         */
+        long percentile(int p) {
+            final int size = size();
+            if (size == 0) {
+                return -1;
+            }
+            final long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            final int rank = (int) Math.ceil(p / 100.0 * size);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+
+}
@@ -39,6 +39,7 @@ import android.os.Process;
 import android.os.ResultReceiver;
 import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.RatingCompat;
 import android.support.v4.media.session.MediaSessionCompat;
@@ -53,6 +54,7 @@ import org.opensilk.common.core.util.VersionUtils;
 import org.opensilk.music.artwork.service.ArtworkProviderHelper;
 import org.opensilk.music.index.client.IndexClient;
 import org.opensilk.music.library.client.TypedBundleableLoader;
+import org.opensilk.music.model.ArtInfo;
 import org.opensilk.music.model.Track;
 import org.opensilk.music.playback.MediaMetadataHelper;
 import org.opensilk.music.playback.NotificationHelper2;
@@ -63,6 +65,7 @@ import org.opensilk.music.playback.PlaybackConstants.EVENT;
 import org.opensilk.music.playback.PlaybackQueue;
 import org.opensilk.music.playback.PlaybackStateHelper;
 import org.opensilk.music.playback.R;
+import org.opensilk.music.playback.cache.ReadAheadCache;
 import org.opensilk.music.playback.renderer.IMusicRenderer;
 import org.opensilk.music.playback.renderer.LocalRenderer;
 import org.opensilk.music.playback.renderer.PlaybackServiceAccessor;
@@ -72,13 +75,17 @@ import org.opensilk.music.playback.session.IMediaSessionProxy;
 import java.io.Closeable;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.inject.Inject;
 
 import hugo.weaving.DebugLog;
+import rx.Observable;
 import rx.Scheduler;
 import rx.Subscriber;
 import rx.Subscription;
@@ -113,6 +120,8 @@ import static org.opensilk.music.playback.PlaybackConstants.TOGGLEPAUSE_ACTION;
 @PlaybackServiceScope
 public class PlaybackService {
     public static final String NAME = PlaybackService.class.getName();
+    //what MediaSession scales metadata art down to
+    static final int SESSION_ART_MAX_DP = 320;
 
     private final Context mContext;
     private final NotificationHelper2 mNotificationHelper;
@@ -123,6 +132,8 @@ public class PlaybackService {
     private final IndexClient mIndexClient;
     private final LocalRenderer mLocalRenderer;
     private final ArtworkProviderHelper mArtworkHelper;
+    private final ReadAheadCache mReadAheadCache;
+    private final ColdStartSnapshot mColdStart;
 
     private HandlerThread mHandlerThread;
     private PlaybackServiceProxy mProxy;
@@ -133,6 +144,8 @@ public class PlaybackService {
 
     private int mAudioSessionId;
     private Handler mHandler;
+    private SessionUpdater mSessionUpdater;
+    private final LatencyTracer mLatencyTracer = new LatencyTracer();
     private Scheduler mHandlerScheduler;
 
     //currently playing track
@@ -143,17 +156,30 @@ public class PlaybackService {
     private boolean mPlayWhenReady;
     //
     private boolean mQueueReloaded;
+    //true while the saved queue is being read back
+    private volatile boolean mQueueLoading;
+    //true if the snapshot track was loaded ahead of the queue
+    private boolean mFastStarted;
+    //queue edits that came in while the saved queue was being read, run once it is back
+    private final List<Runnable> mDeferredQueueCmds = new ArrayList<>();
     //
     private boolean mServiceStarted = false;
     private volatile int mConnectedClients = 0;
     private boolean mRendererChanged;
     private long mSeekForNewRenderer;
     private boolean mHasPreviouslyBeenPlaying;
+    //crossfade setting, read once then kept current by the settings screen, -1 until read
+    private int mCrossfadeDuration = -1;
 
     Subscription mCurrentTrackSub;
     Subscription mNextTrackSub;
     Subscription mArtworkSubscription;
     Subscription mPlayFromMediaIdSubscription;
+    Subscription mReadAheadSub;
+    Subscription mStageNextSub;
+    Subscription mQueueLoadSub;
+    //next track with its metadata and art, resolved while the current one plays
+    private StagedTrack mStagedNext;
 
     @Inject
     public PlaybackService(
@@ -165,7 +191,9 @@ public class PlaybackService {
             MediaSessionHolder mSessionHolder,
             IndexClient mIndexClient,
             LocalRenderer mLocalRenderer,
-            ArtworkProviderHelper mArtworkHelper
+            ArtworkProviderHelper mArtworkHelper,
+            ReadAheadCache mReadAheadCache,
+            ColdStartSnapshot mColdStart
     ) {
         this.mContext = mContext;
         this.mNotificationHelper = mNotificationHelper;
@@ -176,6 +204,8 @@ public class PlaybackService {
         this.mIndexClient = mIndexClient;
         this.mLocalRenderer = mLocalRenderer;
         this.mArtworkHelper = mArtworkHelper;
+        this.mReadAheadCache = mReadAheadCache;
+        this.mColdStart = mColdStart;
     }
 
     //main thread
@@ -187,6 +217,12 @@ public class PlaybackService {
         mHandlerThread.start();
         mHandler = new Handler(mHandlerThread.getLooper());
         mHandlerScheduler = HandlerScheduler.from(mHandler);
+        mSessionUpdater = new SessionUpdater(mSessionHolder, mHandler, new SessionUpdater.Listener() {
+            @Override
+            public void onPublished(boolean metadataChanged, boolean stateChanged) {
+                onSessionUpdated();
+            }
+        });
 
         mQueueChangeListener = new PlaybackQueueQueueChangeListener();
         mSessionCallback = new MediaSessionCallback();
@@ -209,9 +245,14 @@ public class PlaybackService {
         RxUtils.unsubscribe(mNextTrackSub);
         RxUtils.unsubscribe(mArtworkSubscription);
         RxUtils.unsubscribe(mPlayFromMediaIdSubscription);
+        RxUtils.unsubscribe(mReadAheadSub);
+        RxUtils.unsubscribe(mStageNextSub);
+        RxUtils.unsubscribe(mQueueLoadSub);
 
         mNotificationHelper.killNotification();
         mDelayedShutdownHandler.cancelDelayedShutdown();
+        Timber.d("Session updates %s", mSessionUpdater);
+        Timber.d("Latency %s", mLatencyTracer.dump());
 
         mPlayback.stop(false);
 
@@ -220,10 +261,20 @@ public class PlaybackService {
         mSessionHolder.release();
 
         mHandler.removeCallbacksAndMessages(null);
-        mHandlerThread.getLooper().quit();
+        //the updater belongs to the handler thread, drop anything it has pending there then quit
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mSessionUpdater.cancel();
+                Looper.myLooper().quit();
+            }
+        });
 
         removeAudioEffects();
         releaseWakeLock();
+
+        Timber.d("%s", mReadAheadCache);
+        mReadAheadCache.shutdown();
     }
 
     //binder thread?
@@ -327,18 +378,7 @@ public class PlaybackService {
 
         if (duration > 0) {
             //make sure meta has the right duration
-            MediaMetadataCompat current = mSessionHolder.getMetadata();
-            if (current != null) {
-                long metaDuration = MediaMetadataHelper.getDuration(current);
-                if (metaDuration != duration) {
-                    Timber.d("Updating meta with proper duration old=%d, new=%d",
-                            metaDuration, duration);
-                    current = new MediaMetadataCompat.Builder(current)
-                            .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, duration)
-                            .build();
-                    mSessionHolder.setMetadata(current);
-                }
-            }
+            mSessionUpdater.setDuration(duration);
         }
 
         stateBuilder.setState(state, position,
@@ -358,15 +398,8 @@ public class PlaybackService {
             stateBuilder.setActiveQueueItemId(item.getQueueId());
         }
 
-        mSessionHolder.setPlaybackState(stateBuilder.build());
-
-        if (PlaybackStateHelper.isPlayingOrPaused(state)) {
-            if (mHasPreviouslyBeenPlaying) {
-                mNotificationHelper.startNotification();
-            }
-            //we only notify of changing
-            sendMetaBroadcast();
-        }
+        //goes out with anything else changed this frame
+        mSessionUpdater.setPlaybackState(stateBuilder.build());
 
         if (PlaybackStateHelper.isLoading(state) || PlaybackStateHelper.isPlaying(state)) {
             acquireWakeLock();
@@ -381,6 +414,18 @@ public class PlaybackService {
         }
     }
 
+    //handler thread
+    void onSessionUpdated() {
+        PlaybackStateCompat state = mSessionUpdater.getPlaybackState();
+        if (state != null && PlaybackStateHelper.isPlayingOrPaused(state.getState())) {
+            if (mHasPreviouslyBeenPlaying) {
+                mNotificationHelper.startNotification();
+            }
+            //we only notify of changing
+            sendMetaBroadcast();
+        }
+    }
+
     //handler thread
     private void setAvailableActions(PlaybackStateCompat.Builder builder) {
         long actions = PlaybackStateCompat.ACTION_PLAY
@@ -406,7 +451,7 @@ public class PlaybackService {
     }
 
     long getCurrentSeekPosition() {
-        PlaybackStateCompat state = mSessionHolder.getPlaybackState();
+        PlaybackStateCompat state = mSessionUpdater.getPlaybackState();
         if (state != null) {
             return PlaybackStateHelper.getAdjustedSeekPos(state);
         } else {
@@ -418,12 +463,21 @@ public class PlaybackService {
     void updateMeta() {
         if (mCurrentTrack == null) return;
         RxUtils.unsubscribe(mArtworkSubscription);
+        final StagedTrack staged = mStagedNext;
+        mStagedNext = null;
+        if (staged != null && staged.track.getUri().equals(mCurrentTrack.getUri())) {
+            //already have everything, one push and nothing to wait on
+            mSessionUpdater.setMetadata(staged.meta);
+            return;
+        }
         final MediaMetadataCompat meta = mIndexClient.convertToMediaMetadata(mCurrentTrack);
-        final Uri artUri = MediaMetadataHelper.getIconUri(meta);
+        //session art is never shown bigger than this
+        final Uri artUri = ArtworkProviderHelper.withSize(MediaMetadataHelper.getIconUri(meta),
+                ArtInfo.sizeClassFor(getSessionArtMaxPx()));
         ArtworkProviderHelper.CacheBitmap bitmap = mArtworkHelper.getCachedOrDefault(artUri);
         //Always build with default first to ensure it shows promptly
-        mSessionHolder.setMetadata(new MediaMetadataCompat.Builder(meta).putBitmap(
-                MediaMetadataCompat.METADATA_KEY_ART, bitmap.getBitmap()).build());
+        mSessionUpdater.setMetadata(MediaMetadataHelper.putArt(
+                new MediaMetadataCompat.Builder(meta), bitmap.getBitmap()).build());
         if (!bitmap.fromCache() && artUri != null) {
             //Then go for artwork, since it could take a while
             mArtworkSubscription = mArtworkHelper.getArtwork(artUri)
@@ -436,18 +490,75 @@ public class PlaybackService {
                             Timber.w(e, "getArtwork");
                         }
                         @Override public void onNext(Bitmap bitmap) {
-                            mSessionHolder.setMetadata(new MediaMetadataCompat.Builder(meta)
-                                    .putBitmap(MediaMetadataCompat.METADATA_KEY_ART, bitmap).build());
+                            mSessionUpdater.setMetadata(MediaMetadataHelper.putArt(
+                                    new MediaMetadataCompat.Builder(meta), bitmap).build());
                         }
                     });
         }
     }
 
+    /*
+     * Resolves the metadata and art for the next track so the transition to it
+     * is a single metadata push
+     */
+    //handler thread
+    void stageNext(final Track track) {
+        if (mStagedNext != null && mStagedNext.track.getUri().equals(track.getUri())) {
+            return;
+        }
+        RxUtils.unsubscribe(mStageNextSub);
+        mStagedNext = null;
+        final MediaMetadataCompat meta = mIndexClient.convertToMediaMetadata(track);
+        //session art is never shown bigger than this
+        final Uri artUri = ArtworkProviderHelper.withSize(MediaMetadataHelper.getIconUri(meta),
+                ArtInfo.sizeClassFor(getSessionArtMaxPx()));
+        final Observable<Bitmap> art = artUri != null ? mArtworkHelper.getArtwork(artUri)
+                : Observable.just(mArtworkHelper.getCachedOrDefault(null).getBitmap());
+        mStageNextSub = art
+                .map(new Func1<Bitmap, StagedTrack>() {
+                    @Override
+                    public StagedTrack call(Bitmap bitmap) {
+                        return new StagedTrack(track, MediaMetadataHelper.putArt(
+                                new MediaMetadataCompat.Builder(meta), scaleForSession(bitmap)).build());
+                    }
+                })
+                .subscribeOn(Schedulers.io())
+                .observeOn(getScheduler())
+                .subscribe(new Subscriber<StagedTrack>() {
+                    @Override public void onCompleted() {
+                    }
+                    @Override public void onError(Throwable e) {
+                        Timber.w(e, "stageNext");
+                    }
+                    @Override public void onNext(StagedTrack staged) {
+                        Timber.d("Staged next track %s", staged.track.getUri());
+                        mStagedNext = staged;
+                    }
+                });
+    }
+
+    int getSessionArtMaxPx() {
+        return (int) (SESSION_ART_MAX_DP * mContext.getResources().getDisplayMetrics().density);
+    }
+
+    /*
+     * The session scales anything bigger itself, do it here off the critical path
+     */
+    Bitmap scaleForSession(Bitmap bitmap) {
+        final int max = getSessionArtMaxPx();
+        if (bitmap.getWidth() <= max && bitmap.getHeight() <= max) {
+            return bitmap;
+        }
+        final float scale = Math.min((float) max / bitmap.getWidth(), (float) max / bitmap.getHeight());
+        return Bitmap.createScaledBitmap(bitmap, Math.round(bitmap.getWidth() * scale),
+                Math.round(bitmap.getHeight() * scale), true);
+    }
+
     void sendMetaBroadcast() {
         if (mIndexClient.broadcastMeta()) {
-            final MediaMetadataCompat meta = mSessionHolder.getMetadata();
+            final MediaMetadataCompat meta = mSessionUpdater.getMetadata();
             if (meta == null) return;
-            final PlaybackStateCompat state = mSessionHolder.getPlaybackState();
+            final PlaybackStateCompat state = mSessionUpdater.getPlaybackState();
             Timber.d("Broadcasting meta %s", MediaMetadataHelper.getDisplayName(meta));
             final Intent musicIntent = new Intent(PlaybackConstants.MUSIC_META_CHANGED);
             musicIntent.putExtra("artist", MediaMetadataHelper.getArtistName(meta));
@@ -469,22 +580,51 @@ public class PlaybackService {
 
     //handler thread / main thread
     void saveState(final boolean full) {
-        final PlaybackQueue.Snapshot qSnapshot = mQueue.snapshot();
         final long seekPos = getCurrentSeekPosition();
+        if (mQueueLoading) {
+            //queue isn't back yet, dont clobber the saved one
+            new AsyncTask<Object, Void, Void>() {
+                @Override
+                protected Void doInBackground(Object... params) {
+                    mIndexClient.saveLastSeekPosition(seekPos);
+                    mColdStart.saveSeekPosition(seekPos);
+                    return null;
+                }
+            }.execute();
+            return;
+        }
+        final PlaybackQueue.Snapshot qSnapshot = mQueue.snapshot(full);
+        final Track current = mCurrentTrack;
         //Use async to avoid making new thread
         new AsyncTask<Object, Void, Void>() {
             @Override
             @DebugLog
             protected Void doInBackground(Object... params) {
                 mIndexClient.startBatch();
-                if (full) {
-                    mIndexClient.saveQueue(qSnapshot.q);
+                boolean queueSaved = true;
+                if (qSnapshot.q != null) {
+                    queueSaved = mIndexClient.saveQueue(qSnapshot.q);
+                } else if (qSnapshot.ops != null && !qSnapshot.ops.isEmpty()) {
+                    queueSaved = mIndexClient.appendQueueOps(qSnapshot.ops);
+                }
+                if (!queueSaved) {
+                    //the edits in the snapshot are gone, the saved queue can only be fixed by rewriting it
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mQueue.queueSaveFailed();
+                        }
+                    });
                 }
                 mIndexClient.saveQueuePosition(qSnapshot.pos);
                 mIndexClient.saveQueueRepeatMode(qSnapshot.repeat);
                 mIndexClient.saveQueueShuffleMode(qSnapshot.shuffle);
+                if (qSnapshot.shuffleOrderChanged) {
+                    mIndexClient.saveQueueShuffleOrder(qSnapshot.shuffleOrder);
+                }
                 mIndexClient.saveLastSeekPosition(seekPos);
                 mIndexClient.endBatch();
+                mColdStart.save(current, qSnapshot.pos, seekPos);
                 return null;
             }
         }.execute();
@@ -611,6 +751,14 @@ public class PlaybackService {
         }
     }
 
+    //handler thread
+    String getRendererName() {
+        if (mPlayback == mLocalRenderer || mRendererConnection == null) {
+            return "local";
+        }
+        return mRendererConnection.getComponent().flattenToShortString();
+    }
+
     @DebugLog
     void initPlayback() {
         mPlayback.setState(PlaybackStateCompat.STATE_NONE);
@@ -636,9 +784,14 @@ public class PlaybackService {
             throw new IllegalStateException("Current uri is null for pos " + mQueue.getCurrentPos());
         }
         mHandler.removeCallbacks(mProgressCheckRunnable);
+        mLatencyTracer.mark(LatencyTracer.STAGE_SET_TRACK);
         mPlayback.prepareForTrack();
         RxUtils.unsubscribe(mCurrentTrackSub);
-        mCurrentTrackSub = mIndexClient.getTrack(uri)
+        //skipping to the staged next track needs no lookup
+        final Observable<Track> trackObservable = mStagedNext != null
+                && mStagedNext.track.getUri().equals(uri)
+                ? Observable.just(mStagedNext.track) : mIndexClient.getTrack(uri);
+        mCurrentTrackSub = trackObservable
                 .first()
                 .observeOn(getScheduler())
                 .subscribe(new Subscriber<Track>() {
@@ -650,7 +803,11 @@ public class PlaybackService {
                     }
                     @Override public void onNext(Track track) {
                         mCurrentTrack = track;
-                        if (mPlayback.loadTrack(track.toBundle())) {
+                        mLatencyTracer.setAuthority(track.getUri().getAuthority());
+                        mLatencyTracer.mark(LatencyTracer.STAGE_TRACK_RESOLVED);
+                        if (mPlayback.loadTrack(readAhead(track).toBundle())) {
+                            mLatencyTracer.mark(LatencyTracer.STAGE_RENDERER_LOADED);
+                            notePlayed(track);
                             long seek = 0;
                             if (mQueueReloaded) {
                                 mQueueReloaded = false;
@@ -681,8 +838,17 @@ public class PlaybackService {
 
     @DebugLog
     private void setNextTrack() {
+        if (mPlayback == mLocalRenderer) {
+            if (mCrossfadeDuration < 0) {
+                mCrossfadeDuration = mIndexClient.crossfadeDuration();
+            }
+            mLocalRenderer.setCrossfadeDuration(mCrossfadeDuration);
+        }
+        prefetchUpcoming();
         if (!mQueue.hasNext()) {
             Timber.i("No next track in queue");
+            RxUtils.unsubscribe(mStageNextSub);
+            mStagedNext = null;
             if (mPlayback.hasNext()) {
                 //removes the next player
                 mPlayback.prepareForNextTrack();
@@ -708,15 +874,69 @@ public class PlaybackService {
                     }
                     @Override public void onNext(Track track) {
                         mNextTrack = track;
-                        if (!mPlayback.loadNextTrack(track.toBundle())) {
+                        if (!mPlayback.loadNextTrack(readAhead(track).toBundle())) {
                             Timber.e("Player rejected track %s ... skipping", track.getUri());
                             //will call into onQueueChanged
                             mQueue.remove(mQueue.getNextPos());
+                        } else {
+                            stageNext(track);
                         }
                     }
                 });
     }
 
+    /*
+     * Local playback reads our copy if we have one, remote renderers fetch it themselves
+     */
+    private Track readAhead(Track track) {
+        return (mPlayback == mLocalRenderer) ? mReadAheadCache.resolve(track) : track;
+    }
+
+    /*
+     * The read ahead stats count tracks that start playing, not lookups
+     */
+    private void notePlayed(@Nullable Track track) {
+        if (track != null && mPlayback == mLocalRenderer) {
+            mReadAheadCache.notePlayed(track.getResources().get(0));
+        }
+    }
+
+    private void prefetchUpcoming() {
+        RxUtils.unsubscribe(mReadAheadSub);
+        if (mPlayback != mLocalRenderer) {
+            return;
+        }
+        final List<Uri> upcoming = mQueue.getUpcoming(ReadAheadCache.LOOKAHEAD);
+        mReadAheadSub = Observable.from(upcoming)
+                .concatMap(new Func1<Uri, Observable<Track.Res>>() {
+                    @Override
+                    public Observable<Track.Res> call(Uri uri) {
+                        return mIndexClient.getTrack(uri).first()
+                                .map(new Func1<Track, Track.Res>() {
+                                    @Override
+                                    public Track.Res call(Track track) {
+                                        return track.getResources().get(0);
+                                    }
+                                })
+                                //skip the ones we can't find
+                                .onErrorResumeNext(Observable.<Track.Res>empty());
+                    }
+                })
+                .toList()
+                .subscribeOn(Schedulers.io())
+                .subscribe(new Action1<List<Track.Res>>() {
+                    @Override
+                    public void call(List<Track.Res> res) {
+                        mReadAheadCache.prefetch(res);
+                    }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        Timber.w(throwable, "prefetchUpcoming");
+                    }
+                });
+    }
+
     class MediaSessionCallback implements IMediaSessionProxy.Callback {
         @Override
         @DebugLog
@@ -771,6 +991,21 @@ public class PlaybackService {
                     }
                     break;
                 }
+                case CMD.DUMP_LATENCY: {
+                    String dump = mLatencyTracer.dump();
+                    Timber.i("Latency %s", dump);
+                    if (cb != null) {
+                        cb.send(0, BundleHelper.b().putString(dump).get());
+                    }
+                    break;
+                }
+                case CMD.SET_CROSSFADE_DURATION: {
+                    mCrossfadeDuration = BundleHelper.getInt(args);
+                    if (mPlayback == mLocalRenderer) {
+                        mLocalRenderer.setCrossfadeDuration(mCrossfadeDuration);
+                    }
+                    break;
+                }
                 case CMD.GET_CURRENT_RENDERER: {
                     if (cb != null) {
                         BundleHelper.Builder bob = BundleHelper.b();
@@ -810,6 +1045,14 @@ public class PlaybackService {
                 } else {
                     //TODO make random queue
                 }
+            } else if (mFastStarted && mPlayback.hasCurrent()) {
+                //snapshot track is already loaded, no need to wait on the queue
+                mSessionHolder.setActive(true);
+                mPlayWhenReady = false;
+                mHasPreviouslyBeenPlaying = true;
+                if (!mPlayback.isPlaying()) {
+                    mPlayback.play();
+                }
             } else {
                 //If we were started from a mediabutton
                 //we will be called before the queue has a chance to
@@ -822,6 +1065,7 @@ public class PlaybackService {
         @DebugLog
         public void onPlayFromMediaId(String mediaId, Bundle extras) {
             onPause();
+            mLatencyTracer.begin("playFromMediaId");
             if (StringUtils.equals(PlaybackConstants.MEDIA_ID_RAW_URI, mediaId)) {
                 //TODO
             } else if (StringUtils.startsWith(mediaId, PlaybackConstants.MEDIA_ID_CONTAINER)
@@ -845,6 +1089,7 @@ public class PlaybackService {
                         .subscribe(new Action1<List<Uri>>() {
                             @Override
                             public void call(List<Uri> uris) {
+                                abandonQueueLoad();
                                 mPlayWhenReady = true;
                                 mQueue.replace(uris);
                             }
@@ -856,7 +1101,16 @@ public class PlaybackService {
 
         @Override
         @DebugLog
-        public void onSkipToQueueItem(long id) {
+        public void onSkipToQueueItem(final long id) {
+            if (mQueueLoading) {
+                deferQueueCmd(new Runnable() {
+                    @Override
+                    public void run() {
+                        onSkipToQueueItem(id);
+                    }
+                });
+                return;
+            }
             if (mQueue.isReady() && mQueue.notEmpty()) {
                 int pos = mQueue.getPosOfId(id);
                 if (pos >= 0) {
@@ -864,6 +1118,7 @@ public class PlaybackService {
                         if (mQueue.getNextPos() == pos) {
                             onSkipToNext();
                         } else {
+                            mLatencyTracer.begin("skipToQueueItem");
                             mHandler.removeCallbacks(mProgressCheckRunnable);
                             mPlayWhenReady = true;
                             mPlayback.prepareForTrack();
@@ -880,6 +1135,7 @@ public class PlaybackService {
         @DebugLog
         public void onPause() {
             mHandler.removeCallbacks(mProgressCheckRunnable);
+            mLatencyTracer.abandon();
             mPlayWhenReady = false;
             mPlayback.pause();
             saveState(true);
@@ -893,7 +1149,13 @@ public class PlaybackService {
                 return;
             }
             mHandler.removeCallbacks(mProgressCheckRunnable);
+            mLatencyTracer.begin("skipToNext");
             if (mPlayback.hasNext()) {
+                //already loaded, only the hand off to time
+                if (mNextTrack != null) {
+                    mLatencyTracer.setAuthority(mNextTrack.getUri().getAuthority());
+                }
+                mLatencyTracer.mark(LatencyTracer.STAGE_RENDERER_LOADED);
                 mPlayback.goToNext();
             } else if (mQueue.notEmpty()) {
                 if (mQueue.hasNext()) {
@@ -911,6 +1173,7 @@ public class PlaybackService {
                 onSeekTo(0);
             } else if (mQueue.notEmpty()) {
                 if (mQueue.hasPrevious()) {
+                    mLatencyTracer.begin("skipToPrevious");
                     mHandler.removeCallbacks(mProgressCheckRunnable);
                     mPlayWhenReady = true;
                     mPlayback.prepareForTrack();
@@ -939,7 +1202,16 @@ public class PlaybackService {
 
         @Override
         @DebugLog
-        public void onCustomAction(@NonNull String action, Bundle extras) {
+        public void onCustomAction(@NonNull final String action, final Bundle extras) {
+            if (mQueueLoading && QUEUE_EDIT_ACTIONS.contains(action)) {
+                deferQueueCmd(new Runnable() {
+                    @Override
+                    public void run() {
+                        onCustomAction(action, extras);
+                    }
+                });
+                return;
+            }
             switch (action) {
                 case ACTION.CYCLE_REPEAT: {
                     if (mQueue.isReady()) {
@@ -980,6 +1252,7 @@ public class PlaybackService {
                 case ACTION.PLAY_ALL: {
                     List<Uri> list = BundleHelper.getList(extras);
                     int startpos = BundleHelper.getInt(extras);
+                    abandonQueueLoad();
                     mPlayback.prepareForTrack();
                     mPlayWhenReady = true;
                     mQueue.replace(list, startpos);
@@ -1000,6 +1273,7 @@ public class PlaybackService {
                     break;
                 }
                 case ACTION.CLEAR_QUEUE: {
+                    abandonQueueLoad();
                     mQueue.clear();
                     break;
                 }
@@ -1026,6 +1300,12 @@ public class PlaybackService {
                     }
                     break;
                 }
+                case ACTION.SHOW_QUEUE_WINDOW: {
+                    int first = BundleHelper.getInt(extras);
+                    int last = BundleHelper.getInt2(extras);
+                    mQueue.setVisibleWindow(first, last);
+                    break;
+                }
                 case ACTION.TOGGLE_PLAYBACK: {
                     if (mPlayback.isPlaying() || mPlayWhenReady) {
                         onPause();
@@ -1078,6 +1358,20 @@ public class PlaybackService {
                     updatePlaybackState(null);
                     mSessionHolder.setActive(true);
                 }
+                if (mFastStarted) {
+                    mFastStarted = false;
+                    if (mCurrentTrack != null && mCurrentTrack.getUri().equals(mQueue.getCurrentUri())) {
+                        //snapshot was right, keep what is loaded and where it is
+                        mQueueReloaded = false;
+                        mSessionHolder.sendSessionEvent(EVENT.QUEUE_LOADED, null);
+                        if (mPlayWhenReady) {
+                            mSessionCallback.onPlay();
+                        }
+                        updatePlaybackState(null);
+                        setNextTrack();
+                        return;
+                    }
+                }
                 setTrack();
             } else {
                 Timber.i("Queue is gone. stopping playback");
@@ -1103,6 +1397,7 @@ public class PlaybackService {
         void onMovedToNextReal() {
             mCurrentTrack = mNextTrack;
             mNextTrack = null;
+            notePlayed(mCurrentTrack);
             updateMeta();
             updatePlaybackState(null);
             setNextTrack();
@@ -1115,6 +1410,8 @@ public class PlaybackService {
         @Override
         public void onPlaybackStatusChanged(final int state) {
             if (Looper.myLooper() == getHandler().getLooper()) {
+                mLatencyTracer.onState(PlaybackStateHelper.isPlaying(state),
+                        PlaybackStateHelper.isLoading(state), getRendererName());
                 updatePlaybackState(null);
             } else {
                 getHandler().post(new Runnable() {
@@ -1168,6 +1465,7 @@ public class PlaybackService {
         @DebugLog
         public void onError(final String error) {
             if (Looper.myLooper() == getHandler().getLooper()) {
+                mLatencyTracer.abandon();
                 updatePlaybackState(error);
                 setupLocalRenderer();
                 handleStop();
@@ -1206,11 +1504,121 @@ public class PlaybackService {
         @Override
         public void run() {
             resetState();
-            mQueue.load();
-            mQueueReloaded = true;
+            mQueueLoading = true;
+            fastStart();
+            //reading the queue out of the index is slow, dont hold the handler
+            RxUtils.unsubscribe(mQueueLoadSub);
+            mQueueLoadSub = Observable.create(new Observable.OnSubscribe<PlaybackQueue.Snapshot>() {
+                        @Override
+                        public void call(Subscriber<? super PlaybackQueue.Snapshot> subscriber) {
+                            PlaybackQueue.Snapshot saved = mQueue.readSaved();
+                            if (!subscriber.isUnsubscribed()) {
+                                subscriber.onNext(saved);
+                                subscriber.onCompleted();
+                            }
+                        }
+                    })
+                    .subscribeOn(Schedulers.io())
+                    .observeOn(getScheduler())
+                    .subscribe(new Subscriber<PlaybackQueue.Snapshot>() {
+                        @Override public void onCompleted() {
+                        }
+                        @Override public void onError(Throwable e) {
+                            Timber.e(e, "Unable to read saved queue");
+                            mQueueLoading = false;
+                            mFastStarted = false;
+                            runDeferredQueueCmds();
+                        }
+                        @Override public void onNext(PlaybackQueue.Snapshot saved) {
+                            mQueue.restore(saved);
+                            mQueueReloaded = true;
+                            mQueueLoading = false;
+                            runDeferredQueueCmds();
+                        }
+                    });
         }
     };
 
+    /*
+     * Custom actions that edit the queue, they have to wait on the saved queue
+     * else they are applied to an empty one and then overwritten by it
+     */
+    static final Set<String> QUEUE_EDIT_ACTIONS = new HashSet<>(Arrays.asList(
+            ACTION.CYCLE_REPEAT,
+            ACTION.CYCLE_SHUFFLE,
+            ACTION.SHUFFLE_QUEUE,
+            ACTION.ENQUEUE,
+            ACTION.REMOVE_QUEUE_ITEM,
+            ACTION.REMOVE_QUEUE_ITEM_AT,
+            ACTION.MOVE_QUEUE_ITEM_TO,
+            ACTION.MOVE_QUEUE_ITEM,
+            ACTION.MOVE_QUEUE_ITEM_TO_NEXT
+    ));
+
+    //handler thread
+    void deferQueueCmd(Runnable cmd) {
+        Timber.d("Queue still loading, deferring command");
+        mDeferredQueueCmds.add(cmd);
+    }
+
+    //handler thread
+    void runDeferredQueueCmds() {
+        if (mDeferredQueueCmds.isEmpty()) {
+            return;
+        }
+        List<Runnable> cmds = new ArrayList<>(mDeferredQueueCmds);
+        mDeferredQueueCmds.clear();
+        for (Runnable cmd : cmds) {
+            cmd.run();
+        }
+    }
+
+    /*
+     * The queue is being replaced, so the saved one no longer matters. Dropping it
+     * keeps it from landing on top of the new queue, and lets saveState write the
+     * new queue instead of waiting on the old one.
+     */
+    //handler thread
+    void abandonQueueLoad() {
+        if (!mQueueLoading) {
+            return;
+        }
+        Timber.d("Queue replaced while loading, dropping the saved queue");
+        RxUtils.unsubscribe(mQueueLoadSub);
+        mQueueLoadSub = null;
+        mQueueLoading = false;
+        mFastStarted = false;
+        //edits to the queue we just dropped
+        mDeferredQueueCmds.clear();
+    }
+
+    /*
+     * Loads the track we were on when we were killed so play can start
+     * before the queue is back
+     */
+    //handler thread
+    void fastStart() {
+        final ColdStartSnapshot.Entry entry = mColdStart.read();
+        if (entry == null) {
+            return;
+        }
+        Timber.d("Fast starting %s at %d", entry.track.getUri(), entry.seekPos);
+        mCurrentTrack = entry.track;
+        mPlayback.prepareForTrack();
+        if (!mPlayback.loadTrack(readAhead(entry.track).toBundle())) {
+            Timber.w("Player rejected snapshot track %s", entry.track.getUri());
+            mCurrentTrack = null;
+            return;
+        }
+        mFastStarted = true;
+        notePlayed(entry.track);
+        if (entry.seekPos > 0) {
+            mPlayback.seekTo(entry.seekPos);
+        }
+        updateMeta();
+        updatePlaybackState(null);
+    }
+
     final Runnable mProgressCheckRunnable = new Runnable() {
         @Override
         public void run() {
@@ -1225,6 +1633,16 @@ public class PlaybackService {
         }
     };
 
+    static final class StagedTrack {
+        final Track track;
+        final MediaMetadataCompat meta;
+
+        StagedTrack(Track track, MediaMetadataCompat meta) {
+            this.track = track;
+            this.meta = meta;
+        }
+    }
+
     static final class RendererServiceConnection implements Closeable {
         private final Context context;
         private final ServiceConnection serviceConnection;
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.playback.service;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.annotation.Nullable;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.opensilk.common.core.util.BundleHelper;
+import org.opensilk.music.playback.MediaMetadataHelper;
+
+import java.util.Set;
+
+import timber.log.Timber;
+
+/**
+ * Merges playback state and metadata pushes made within a frame of each other into one
+ * push to the session, and drops pushes that wouldn't change what controllers see. Every
+ * push is a binder call to every controller and usually a notification rebuild.
+ *
+ * All calls must be made on the handler thread.
+ *
+ * Created by drew on 12/8/15.
+ */
+class SessionUpdater implements Runnable {
+
+    static final long FRAME_MS = 16;
+    //position drift we don't bother telling controllers about
+    static final long POSITION_SLOP_MS = 250;
+
+    interface Listener {
+        /**
+         * Called after a push went out
+         */
+        void onPublished(boolean metadataChanged, boolean stateChanged);
+    }
+
+    private final MediaSessionHolder mSessionHolder;
+    private final Handler mHandler;
+    private final Listener mListener;
+
+    //volatile since the state gets read when saving from the main thread
+    private volatile PlaybackStateCompat mPendingState;
+    private MediaMetadataCompat mPendingMetadata;
+    private volatile PlaybackStateCompat mLastState;
+    private MediaMetadataCompat mLastMetadata;
+    private boolean mScheduled;
+
+    private int mRequested;
+    private int mPublished;
+
+    SessionUpdater(MediaSessionHolder sessionHolder, Handler handler, Listener listener) {
+        mSessionHolder = sessionHolder;
+        mHandler = handler;
+        mListener = listener;
+    }
+
+    void setPlaybackState(PlaybackStateCompat state) {
+        mRequested++;
+        mPendingState = state;
+        schedule();
+    }
+
+    void setMetadata(MediaMetadataCompat metadata) {
+        mRequested++;
+        mPendingMetadata = metadata;
+        schedule();
+    }
+
+    /**
+     * Corrects the duration of the newest metadata if it is wrong, so the fix goes
+     * out with the rest of the frame instead of as its own push
+     */
+    void setDuration(long duration) {
+        MediaMetadataCompat current = getMetadata();
+        if (current != null && MediaMetadataHelper.getDuration(current) != duration) {
+            Timber.d("Updating meta with proper duration old=%d, new=%d",
+                    MediaMetadataHelper.getDuration(current), duration);
+            setMetadata(new MediaMetadataCompat.Builder(current)
+                    .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, duration)
+                    .build());
+        }
+    }
+
+    /**
+     * @return newest state, whether or not it went out yet
+     */
+    @Nullable PlaybackStateCompat getPlaybackState() {
+        return mPendingState != null ? mPendingState : mLastState;
+    }
+
+    /**
+     * @return newest metadata, whether or not it went out yet
+     */
+    @Nullable MediaMetadataCompat getMetadata() {
+        return mPendingMetadata != null ? mPendingMetadata : mLastMetadata;
+    }
+
+    void cancel() {
+        mHandler.removeCallbacks(this);
+        mScheduled = false;
+        mPendingState = null;
+        mPendingMetadata = null;
+    }
+
+    int getRequestedCount() {
+        return mRequested;
+    }
+
+    int getPublishedCount() {
+        return mPublished;
+    }
+
+    private void schedule() {
+        if (!mScheduled) {
+            mScheduled = true;
+            mHandler.postDelayed(this, FRAME_MS);
+        }
+    }
+
+    @Override
+    public void run() {
+        mScheduled = false;
+        boolean metadataChanged = false;
+        boolean stateChanged = false;
+        //metadata first so controllers see the new track before its state
+        if (mPendingMetadata != null) {
+            if (!sameMetadata(mLastMetadata, mPendingMetadata)) {
+                mSessionHolder.setMetadata(mPendingMetadata);
+                mLastMetadata = mPendingMetadata;
+                metadataChanged = true;
+                mPublished++;
+            }
+            mPendingMetadata = null;
+        }
+        if (mPendingState != null) {
+            if (!sameState(mLastState, mPendingState)) {
+                mSessionHolder.setPlaybackState(mPendingState);
+                mLastState = mPendingState;
+                stateChanged = true;
+                mPublished++;
+            }
+            mPendingState = null;
+        }
+        if (metadataChanged || stateChanged) {
+            mListener.onPublished(metadataChanged, stateChanged);
+        }
+    }
+
+    static boolean sameMetadata(@Nullable MediaMetadataCompat a, @Nullable MediaMetadataCompat b) {
+        if (a == b) {
+            return true;
+        } else if (a == null || b == null) {
+            return false;
+        }
+        final Bundle ab = a.getBundle();
+        final Bundle bb = b.getBundle();
+        final Set<String> keys = ab.keySet();
+        if (!keys.equals(bb.keySet())) {
+            return false;
+        }
+        for (String key : keys) {
+            //bitmaps compare by identity, same as the session would
+            if (!ObjectUtils.equals(ab.get(key), bb.get(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean sameState(@Nullable PlaybackStateCompat a, @Nullable PlaybackStateCompat b) {
+        if (a == b) {
+            return true;
+        } else if (a == null || b == null) {
+            return false;
+        }
+        if (a.getState() != b.getState()
+                || a.getActions() != b.getActions()
+                || a.getActiveQueueItemId() != b.getActiveQueueItemId()
+                || a.getBufferedPosition() != b.getBufferedPosition()
+                || a.getPlaybackSpeed() != b.getPlaybackSpeed()
+                || !StringUtils.equals(a.getErrorMessage(), b.getErrorMessage())
+                || durationOf(a) != durationOf(b)) {
+            return false;
+        }
+        //controllers extrapolate the position so only a jump is news
+        final long expected = expectedPosition(a, b.getLastPositionUpdateTime());
+        return Math.abs(b.getPosition() - expected) < POSITION_SLOP_MS;
+    }
+
+    static long expectedPosition(PlaybackStateCompat state, long atTime) {
+        if (state.getState() != PlaybackStateCompat.STATE_PLAYING) {
+            return state.getPosition();
+        }
+        final long elapsed = atTime - state.getLastPositionUpdateTime();
+        return state.getPosition() + (long) (elapsed * state.getPlaybackSpeed());
+    }
+
+    static long durationOf(PlaybackStateCompat state) {
+        final Bundle extras = state.getExtras();
+        return extras != null ? BundleHelper.getLong(extras) : -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SessionUpdater{requested=%d, published=%d}", mRequested, mPublished);
+    }
+
+}
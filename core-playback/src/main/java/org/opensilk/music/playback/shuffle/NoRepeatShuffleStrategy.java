@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.playback.shuffle;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Random;
+
+import rx.functions.Func1;
+
+/**
+ * Random shuffle that avoids playing two tracks with the same key, ie the artist,
+ * back to back when it can. Positions without a key never conflict.
+ *
+ * Created by drew on 12/8/15.
+ */
+public class NoRepeatShuffleStrategy extends RandomShuffleStrategy {
+
+    final Func1<Integer, String> mKeyOf;
+
+    /**
+     * @param keyOf returns the key for a queue position, may return null
+     */
+    public NoRepeatShuffleStrategy(Func1<Integer, String> keyOf) {
+        mKeyOf = keyOf;
+    }
+
+    @Override
+    public void arrange(int[] positions, int from, int to, Random random) {
+        super.arrange(positions, from, to, random);
+        String prevKey = from > 0 ? mKeyOf.call(positions[from - 1]) : null;
+        for (int ii=from; ii<to; ii++) {
+            String key = mKeyOf.call(positions[ii]);
+            if (key != null && StringUtils.equals(key, prevKey)) {
+                //pull the first later track that doesn't conflict forward
+                int jj = ii + 1;
+                while (jj < to && StringUtils.equals(key, mKeyOf.call(positions[jj]))) {
+                    jj++;
+                }
+                if (jj == to) {
+                    //everything left has the same key, tuck them in earlier instead
+                    for (int kk=ii; kk<to; kk++) {
+                        tuckIn(positions, from, kk, key);
+                    }
+                    return;
+                }
+                int tmp = positions[ii];
+                positions[ii] = positions[jj];
+                positions[jj] = tmp;
+                key = mKeyOf.call(positions[ii]);
+            }
+            prevKey = key;
+        }
+    }
+
+    /*
+     * Moves positions[idx] to the first gap in [from, idx) between two other keys
+     */
+    void tuckIn(int[] positions, int from, int idx, String key) {
+        for (int gap=from; gap<idx; gap++) {
+            String left = gap > 0 ? mKeyOf.call(positions[gap - 1]) : null;
+            String right = mKeyOf.call(positions[gap]);
+            if (!StringUtils.equals(key, left) && !StringUtils.equals(key, right)) {
+                int tmp = positions[idx];
+                System.arraycopy(positions, gap, positions, gap + 1, idx - gap);
+                positions[gap] = tmp;
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.playback.shuffle;
+
+import java.util.Random;
+
+/**
+ * Uniform Fisher-Yates shuffle, the default.
+ *
+ * Created by drew on 12/8/15.
+ */
+public class RandomShuffleStrategy implements ShuffleStrategy {
+
+    @Override
+    public void arrange(int[] positions, int from, int to, Random random) {
+        for (int ii=to-1; ii>from; ii--) {
+            int jj = from + random.nextInt(ii - from + 1);
+            int tmp = positions[ii];
+            positions[ii] = positions[jj];
+            positions[jj] = tmp;
+        }
+    }
+
+}
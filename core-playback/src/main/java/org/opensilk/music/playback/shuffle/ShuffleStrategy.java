@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.playback.shuffle;
+
+import java.util.Random;
+
+/**
+ * Decides the play order of queue positions when shuffle is on.
+ *
+ * Created by drew on 12/8/15.
+ */
+public interface ShuffleStrategy {
+
+    /**
+     * Rearrange positions[from, to) in place into the order they should be played.
+     * If from > 0 positions[from - 1] is the track that plays right before them.
+     */
+    void arrange(int[] positions, int from, int to, Random random);
+
+}
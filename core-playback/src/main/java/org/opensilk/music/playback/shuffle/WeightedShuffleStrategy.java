@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.playback.shuffle;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import rx.functions.Func1;
+
+/**
+ * Weighted random order, tracks with a larger weight tend to come up sooner.
+ * Each position gets an exponential key with rate equal to its weight
+ * (Efraimidis-Spirakis) and positions are played by ascending key.
+ *
+ * Created by drew on 12/8/15.
+ */
+public class WeightedShuffleStrategy implements ShuffleStrategy {
+
+    final Func1<Integer, Double> mWeightOf;
+
+    /**
+     * @param weightOf returns the weight for a queue position, non positive weights
+     *                 sink to the end
+     */
+    public WeightedShuffleStrategy(Func1<Integer, Double> weightOf) {
+        mWeightOf = weightOf;
+    }
+
+    @Override
+    public void arrange(int[] positions, int from, int to, Random random) {
+        final int count = to - from;
+        if (count < 2) {
+            return;
+        }
+        final double[] keys = new double[count];
+        final Integer[] idx = new Integer[count];
+        for (int ii=0; ii<count; ii++) {
+            final Double weight = mWeightOf.call(positions[from + ii]);
+            final double u = 1.0 - random.nextDouble(); //(0,1]
+            keys[ii] = (weight != null && weight > 0) ? -Math.log(u) / weight : Double.MAX_VALUE;
+            idx[ii] = ii;
+        }
+        Arrays.sort(idx, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return Double.compare(keys[lhs], keys[rhs]);
+            }
+        });
+        final int[] sorted = new int[count];
+        for (int ii=0; ii<count; ii++) {
+            sorted[ii] = positions[from + idx[ii]];
+        }
+        System.arraycopy(sorted, 0, positions, from, count);
+    }
+
+}
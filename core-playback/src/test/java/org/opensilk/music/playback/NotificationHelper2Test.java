@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opensilk.music.playback;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.v4.media.MediaMetadataCompat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 12/8/15.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(
+        constants = org.opensilk.music.index.BuildConfig.class,
+        sdk = Build.VERSION_CODES.LOLLIPOP
+)
+public class NotificationHelper2Test {
+
+    static final String ART_URI = "content://artwork/album/1";
+
+    @Test
+    public void testArtComparedByUriAndGeneration() {
+        MediaMetadataCompat a = meta(1000, ART_URI, 1).build();
+        //what comes back through the session, a new bitmap object but the same generation
+        MediaMetadataCompat b = meta(2000, ART_URI, 1).build();
+        assertThat(MediaMetadataHelper.getIcon(a)).isNotSameAs(MediaMetadataHelper.getIcon(b));
+        assertThat(NotificationHelper2.sameVisibleMetadata(a, b)).isTrue();
+        //placeholder replaced by the real art
+        assertThat(NotificationHelper2.sameVisibleMetadata(a, meta(1000, ART_URI, 2).build())).isFalse();
+        assertThat(NotificationHelper2.sameVisibleMetadata(a,
+                meta(1000, "content://artwork/album/2", 1).build())).isFalse();
+    }
+
+    static MediaMetadataCompat.Builder meta(long duration, String artUri, long artGeneration) {
+        return new MediaMetadataCompat.Builder()
+                .putString(MediaMetadataCompat.METADATA_KEY_TITLE, "track")
+                .putString(MediaMetadataCompat.METADATA_KEY_ARTIST, "artist")
+                .putString(MediaMetadataCompat.METADATA_KEY_ALBUM, "album")
+                .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, duration)
+                .putString(MediaMetadataCompat.METADATA_KEY_ART_URI, artUri)
+                .putBitmap(MediaMetadataCompat.METADATA_KEY_ART, Bitmap.createBitmap(10, 10, Bitmap.Config.RGB_565))
+                .putLong(MediaMetadataHelper.KEY_ART_GENERATION, artGeneration);
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.playback;
+
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.index.client.IndexClient;
+import org.opensilk.music.playback.service.PlaybackServiceProxy;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import rx.schedulers.Schedulers;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.opensilk.music.playback.PlaybackQueueTestUtil.checkListsMatch;
+import static org.opensilk.music.playback.PlaybackQueueTestUtil.describeAll;
+import static org.opensilk.music.playback.PlaybackQueueTestUtil.makeUris;
+
+/**
+ * Micro benchmark for queue operations on big queues, reconciling the queue items
+ * used to be quadratic so 50k took minutes, everything should be roughly linear now.
+ * Timings are only printed, remove the @Ignore to run it by hand.
+ *
+ * Created by drew on 12/7/15.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class PlaybackQueueBenchmark {
+
+    IndexClient mClient;
+    PlaybackServiceProxy mService;
+
+    @Before
+    public void setup() {
+        mClient = mock(IndexClient.class);
+        when(mClient.getLastQueue()).thenReturn(Collections.<Uri>emptyList());
+        when(mClient.getLastQueuePosition()).thenReturn(-1);
+        when(mClient.getLastQueueRepeatMode()).thenReturn(-1);
+        when(mClient.getLastQueueShuffleMode()).thenReturn(-1);
+        describeAll(mClient);
+        mService = mock(PlaybackServiceProxy.class);
+        when(mService.getScheduler()).thenReturn(Schedulers.immediate());
+    }
+
+    @Test
+    @Ignore("benchmark, run by hand")
+    public void benchQueueOperations() {
+        //warm up
+        bench(1000);
+        long t1k = bench(1000);
+        long t10k = bench(10000);
+        long t50k = bench(50000);
+        System.out.printf("PlaybackQueue total: 1k=%.2fms 10k=%.2fms 50k=%.2fms%n",
+                t1k / 1e6, t10k / 1e6, t50k / 1e6);
+    }
+
+    PlaybackQueue newQueue() {
+        PlaybackQueue queue = new PlaybackQueue(mClient, mService);
+        queue.load();
+        return queue;
+    }
+
+    long bench(int size) {
+        PlaybackQueue queue = newQueue();
+        List<Uri> uris = makeUris(size);
+        List<Uri> more = new ArrayList<>(100);
+        for (int ii=0; ii<100; ii++) {
+            more.add(Uri.parse("content://test/more/" + ii));
+        }
+        long total = 0;
+        long start = System.nanoTime();
+        queue.replace(uris);
+        total += report(size, "replace", start);
+        start = System.nanoTime();
+        queue.addEnd(more);
+        total += report(size, "addEnd", start);
+        start = System.nanoTime();
+        queue.addNext(more);
+        total += report(size, "addNext", start);
+        start = System.nanoTime();
+        queue.moveItem(1, size / 2);
+        total += report(size, "move", start);
+        start = System.nanoTime();
+        queue.remove(more.subList(0, 10));
+        total += report(size, "remove", start);
+        start = System.nanoTime();
+        queue.shuffle();
+        total += report(size, "shuffle", start);
+        start = System.nanoTime();
+        for (int ii=0; ii<100; ii++) {
+            queue.getPosOfId(ii);
+        }
+        total += report(size, "getPosOfId x100", start);
+        checkListsMatch(queue.get(), queue.getQueueItems());
+        return total;
+    }
+
+    static long report(int size, String op, long start) {
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("PlaybackQueue %d %s: %.2fms%n", size, op, elapsed / 1e6);
+        return elapsed;
+    }
+
+}
@@ -26,10 +26,12 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.opensilk.music.index.client.IndexClient;
+import org.opensilk.music.index.model.QueueOp;
 import org.opensilk.music.playback.service.PlaybackServiceProxy;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -235,5 +237,103 @@ public class PlaybackQueueTest {
         assertThat(mPlaybackQueue.getPreviousPos()).isEqualTo(-1);
     }
 
+    @Test
+    public void testDuplicatesGetTheirOwnItems() {
+        describeAll(mClient);
+        List<Uri> uris = makeUris(10);
+        uris.addAll(makeUris(10));
+        mPlaybackQueue.replace(uris);
+        checkListsMatch(mPlaybackQueue.get(), mPlaybackQueue.getQueueItems(), 20);
+        //every position must be addressable by its id
+        for (int ii=0; ii<20; ii++) {
+            assertThat(mPlaybackQueue.getPosOfId(mPlaybackQueue.getQueueItems().get(ii).getQueueId())).isEqualTo(ii);
+        }
+        //and adding another copy must not need a lookup
+        mPlaybackQueue.addEnd(makeUris(1));
+        checkListsMatch(mPlaybackQueue.get(), mPlaybackQueue.getQueueItems(), 21);
+        assertThat(mPlaybackQueue.getPosOfId(mPlaybackQueue.getQueueItems().get(20).getQueueId())).isEqualTo(20);
+    }
+
+    @Test
+    public void testSnapshotJournalsEdits() {
+        describeAll(mClient);
+        mPlaybackQueue.replace(makeUris(10));
+        PlaybackQueue.Snapshot snapshot = mPlaybackQueue.snapshot(true);
+        assertThat(snapshot.q).hasSize(10);
+        assertThat(snapshot.ops).isNull();
+        List<Uri> saved = new ArrayList<>(snapshot.q);
+
+        mPlaybackQueue.addEnd(Collections.singletonList(Uri.parse("content://test/more/0")));
+        mPlaybackQueue.moveItem(0, 5);
+        mPlaybackQueue.remove(Uri.parse("content://test/track/3"));
+        assertThat(mPlaybackQueue.snapshot(false).ops).isNull();
+        snapshot = mPlaybackQueue.snapshot(true);
+        assertThat(snapshot.q).isNull();
+        assertThat(snapshot.ops).hasSize(3);
+        for (QueueOp op : snapshot.ops) {
+            op.apply(saved);
+        }
+        assertThat(saved).isEqualTo(mPlaybackQueue.get());
+        assertThat(mPlaybackQueue.snapshot(true).ops).isEmpty();
+
+        mPlaybackQueue.shuffle();
+        assertThat(mPlaybackQueue.snapshot(true).q).isEqualTo(mPlaybackQueue.get());
+    }
+
+    @Test
+    public void testUpcomingFollowsPlayOrder() {
+        describeAll(mClient);
+        List<Uri> uris = makeUris(5);
+        mPlaybackQueue.replace(uris);
+        assertThat(mPlaybackQueue.getUpcoming(3)).containsExactly(uris.get(1), uris.get(2), uris.get(3));
+        mPlaybackQueue.goToItem(3);
+        //repeat all wraps, but never back to the current
+        assertThat(mPlaybackQueue.getUpcoming(10)).containsExactly(uris.get(4), uris.get(0), uris.get(1), uris.get(2));
+
+        mPlaybackQueue.toggleShuffle();
+        List<Uri> upcoming = mPlaybackQueue.getUpcoming(10);
+        assertThat(upcoming).isNotEmpty().doesNotContain(mPlaybackQueue.getCurrentUri()).doesNotHaveDuplicates();
+        assertThat(upcoming.get(0)).isEqualTo(mPlaybackQueue.getNextUri());
+    }
+
+    @Test
+    public void testBigQueueFillsInWindows() {
+        describeAll(mClient);
+        final int size = PlaybackQueue.MAX_EAGER_LOOKUP * 10;
+        List<Uri> uris = makeUris(size);
+        mPlaybackQueue.replace(uris);
+        //only waits on what is about to play
+        verify(mClient).getDescriptions(Arrays.asList(uris.get(0), uris.get(1)));
+        assertThat(mPlaybackQueue.isReady()).isTrue();
+        List<MediaSessionCompat.QueueItem> items = mPlaybackQueue.getQueueItems();
+        checkListsMatch(mPlaybackQueue.get(), items, size);
+        //the playhead window was filled in right after
+        assertThat(items.get(0).getDescription().getTitle()).isNotNull();
+        assertThat(items.get(PlaybackQueue.WINDOW_AHEAD).getDescription().getTitle()).isNotNull();
+        final int far = size / 2;
+        assertThat(items.get(far).getDescription().getTitle()).isNull();
+        final long farId = items.get(far).getQueueId();
+
+        mPlaybackQueue.setVisibleWindow(far, far + 10);
+        items = mPlaybackQueue.getQueueItems();
+        checkListsMatch(mPlaybackQueue.get(), items, size);
+        for (int ii=far; ii<=far+10; ii++) {
+            assertThat(items.get(ii).getDescription().getTitle()).isNotNull();
+        }
+        assertThat(items.get(size - 1).getDescription().getTitle()).isNull();
+        //placeholders keep their queue ids
+        assertThat(items.get(far).getQueueId()).isEqualTo(farId);
+        assertThat(mPlaybackQueue.getPosOfId(farId)).isEqualTo(far);
+    }
+
+    @Test
+    public void testReplaceForgetsOldPlaceholders() {
+        describeAll(mClient);
+        mPlaybackQueue.replace(makeUris(PlaybackQueue.MAX_EAGER_LOOKUP * 10));
+        assertThat(mPlaybackQueue.getUnresolvedCount()).isGreaterThan(0);
+        //the head of the old queue was filled in, nothing else carries over
+        mPlaybackQueue.replace(makeUris(10));
+        assertThat(mPlaybackQueue.getUnresolvedCount()).isEqualTo(0);
+    }
 
 }
@@ -32,7 +32,9 @@ import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowLog;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import rx.Observable;
 import rx.schedulers.Schedulers;
@@ -121,4 +123,53 @@ public class PlaybackQueueTest5 {
         assertThat(mPlaybackQueue.getCurrentPos()).isEqualTo(current);
     }
 
+    @Test
+    public void testRepeatAllLapsStartWithDifferentTracks() {
+        mPlaybackQueue.setRepeatMode(PlaybackConstants.REPEAT_ALL);
+        Set<Integer> lapFirsts = new HashSet<>();
+        Set<Integer> lap = new HashSet<>();
+        lap.add(mPlaybackQueue.getCurrentPos());
+        for (int ii=0; ii<20; ii++) {
+            int last = mPlaybackQueue.getCurrentPos();
+            for (int jj=1; jj<10; jj++) {
+                mPlaybackQueue.moveToNext();
+                lap.add(mPlaybackQueue.getCurrentPos());
+                last = mPlaybackQueue.getCurrentPos();
+            }
+            //every lap plays everything once
+            assertThat(lap).hasSize(10);
+            lap.clear();
+            mPlaybackQueue.moveToNext();
+            int first = mPlaybackQueue.getCurrentPos();
+            assertThat(first).isNotEqualTo(last);
+            lapFirsts.add(first);
+            lap.add(first);
+        }
+        assertThat(lapFirsts.size()).isGreaterThan(1);
+    }
+
+    @Test
+    public void testSnapshotOnlyCarriesChangedShuffleOrder() {
+        //nothing was saved so load made a new order
+        PlaybackQueue.Snapshot snapshot = mPlaybackQueue.snapshot(false);
+        assertThat(snapshot.shuffleOrderChanged).isTrue();
+        assertThat(snapshot.shuffleOrder).hasSize(10);
+        snapshot = mPlaybackQueue.snapshot(false);
+        assertThat(snapshot.shuffleOrderChanged).isFalse();
+        assertThat(snapshot.shuffleOrder).isNull();
+        //moving along doesn't change the order
+        mPlaybackQueue.moveToNext();
+        assertThat(mPlaybackQueue.snapshot(false).shuffleOrderChanged).isFalse();
+        //playing out of turn does
+        mPlaybackQueue.goToItem((mPlaybackQueue.getCurrentPos() + 1) % 10);
+        snapshot = mPlaybackQueue.snapshot(false);
+        assertThat(snapshot.shuffleOrderChanged).isTrue();
+        assertThat(snapshot.shuffleOrder).hasSize(10);
+        //turning shuffle off clears it
+        mPlaybackQueue.setShuffleMode(PlaybackConstants.SHUFFLE_NONE);
+        snapshot = mPlaybackQueue.snapshot(false);
+        assertThat(snapshot.shuffleOrderChanged).isTrue();
+        assertThat(snapshot.shuffleOrder).isNull();
+    }
+
 }
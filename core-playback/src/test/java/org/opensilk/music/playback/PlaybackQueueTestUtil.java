@@ -18,12 +18,22 @@
 package org.opensilk.music.playback;
 
 import android.net.Uri;
+import android.support.v4.media.MediaDescriptionCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opensilk.music.index.client.IndexClient;
+
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import rx.Observable;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.when;
 
 /**
  * Created by drew on 1/5/16.
@@ -54,4 +64,33 @@ public class PlaybackQueueTestUtil {
         }
     }
 
+    static List<Uri> makeUris(int size) {
+        List<Uri> uris = new ArrayList<>(size + 200);
+        for (int ii=0; ii<size; ii++) {
+            uris.add(Uri.parse("content://test/track/" + ii));
+        }
+        return uris;
+    }
+
+    /**
+     * Makes the mock client describe any uris it is asked about, titled by their last segment
+     */
+    static void describeAll(IndexClient client) {
+        when(client.getDescriptions(anyListOf(Uri.class))).thenAnswer(
+                new Answer<Observable<List<MediaDescriptionCompat>>>() {
+                    @Override
+                    public Observable<List<MediaDescriptionCompat>> answer(InvocationOnMock invocation) throws Throwable {
+                        @SuppressWarnings("unchecked")
+                        List<Uri> uris = (List<Uri>) invocation.getArguments()[0];
+                        List<MediaDescriptionCompat> descs = new ArrayList<>(uris.size());
+                        for (Uri uri : uris) {
+                            descs.add(new MediaDescriptionCompat.Builder()
+                                    .setMediaId(uri.toString())
+                                    .setTitle(uri.getLastPathSegment()).build());
+                        }
+                        return Observable.just(descs);
+                    }
+                });
+    }
+
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.playback;
+
+import org.junit.Test;
+import org.opensilk.music.playback.shuffle.NoRepeatShuffleStrategy;
+import org.opensilk.music.playback.shuffle.RandomShuffleStrategy;
+import org.opensilk.music.playback.shuffle.WeightedShuffleStrategy;
+
+import java.util.Random;
+
+import rx.functions.Func1;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 12/8/15.
+ */
+public class ShuffleOrderTest {
+
+    @Test
+    public void testWalkVisitsEveryPositionOnce() {
+        ShuffleOrder order = new ShuffleOrder(50, 7, new RandomShuffleStrategy(), new Random(1));
+        assertThat(order.first()).isEqualTo(7);
+        assertThat(order.previous(7)).isEqualTo(-1);
+        boolean[] seen = new boolean[50];
+        int pos = 7;
+        int count = 0;
+        while (pos >= 0) {
+            assertThat(seen[pos]).isFalse();
+            seen[pos] = true;
+            int next = order.next(pos);
+            if (next >= 0) {
+                assertThat(order.previous(next)).isEqualTo(pos);
+            }
+            pos = next;
+            count++;
+        }
+        assertThat(count).isEqualTo(50);
+    }
+
+    @Test
+    public void testInsertKeepsPlayedPart() {
+        ShuffleOrder order = new ShuffleOrder(10, 0, new RandomShuffleStrategy(), new Random(2));
+        int[] before = order.toArray();
+        int current = before[4];
+        order.insert(current + 1, 5, current);
+        int[] after = order.toArray();
+        assertThat(after).hasSize(15);
+        //what was played stays in front, shifted past the insertion
+        for (int ii=0; ii<=4; ii++) {
+            int expected = before[ii] > current ? before[ii] + 5 : before[ii];
+            assertThat(after[ii]).isEqualTo(expected);
+        }
+        assertThat(ShuffleOrder.restore(after, 15, new RandomShuffleStrategy(), new Random())).isNotNull();
+    }
+
+    @Test
+    public void testRemoveAndMoveRemap() {
+        ShuffleOrder order = new ShuffleOrder(5, 2, new RandomShuffleStrategy(), new Random(3));
+        int[] before = order.toArray();
+        //drop position 0
+        order.remap(new int[]{-1, 0, 1, 2, 3}, 4, -1);
+        int[] after = order.toArray();
+        int jj = 0;
+        for (int pos : before) {
+            if (pos != 0) {
+                assertThat(after[jj++]).isEqualTo(pos - 1);
+            }
+        }
+        //move 0 to the end
+        order.remap(ShuffleOrder.moveMap(4, 0, 3), 4, -1);
+        int[] moved = order.toArray();
+        for (int ii=0; ii<4; ii++) {
+            assertThat(moved[ii]).isEqualTo(after[ii] == 0 ? 3 : after[ii] - 1);
+        }
+    }
+
+    @Test
+    public void testMoveAfter() {
+        ShuffleOrder order = new ShuffleOrder(6, 0, new RandomShuffleStrategy(), new Random(4));
+        int[] o = order.toArray();
+        order.moveAfter(o[5], o[1]);
+        assertThat(order.next(o[1])).isEqualTo(o[5]);
+        assertThat(order.next(o[5])).isEqualTo(o[2]);
+        order.moveAfter(o[1], o[4]);
+        assertThat(order.next(o[4])).isEqualTo(o[1]);
+        assertThat(order.next(o[0])).isEqualTo(o[5]);
+    }
+
+    @Test
+    public void testRestoreRejectsGarbage() {
+        RandomShuffleStrategy s = new RandomShuffleStrategy();
+        assertThat(ShuffleOrder.restore(null, 3, s, new Random())).isNull();
+        assertThat(ShuffleOrder.restore(new int[]{0, 1}, 3, s, new Random())).isNull();
+        assertThat(ShuffleOrder.restore(new int[]{0, 1, 1}, 3, s, new Random())).isNull();
+        assertThat(ShuffleOrder.restore(new int[]{2, 0, 1}, 3, s, new Random()).next(2)).isEqualTo(0);
+    }
+
+    @Test
+    public void testNoRepeatStrategy() {
+        final String[] artists = new String[] {"a", "a", "a", "b", "b", "c"};
+        ShuffleOrder order = new ShuffleOrder(6, -1, new NoRepeatShuffleStrategy(
+                new Func1<Integer, String>() {
+                    @Override
+                    public String call(Integer pos) {
+                        return artists[pos];
+                    }
+                }), new Random(5));
+        int[] o = order.toArray();
+        for (int ii=1; ii<o.length; ii++) {
+            assertThat(artists[o[ii]]).isNotEqualTo(artists[o[ii-1]]);
+        }
+    }
+
+    @Test
+    public void testWeightedStrategy() {
+        //position 0 outweighs the rest by so much it should nearly always lead,
+        //non positive weights always go last
+        WeightedShuffleStrategy s = new WeightedShuffleStrategy(new Func1<Integer, Double>() {
+            @Override
+            public Double call(Integer pos) {
+                return pos == 0 ? 1000.0 : pos == 9 ? 0.0 : 1.0;
+            }
+        });
+        Random random = new Random(6);
+        int firsts = 0;
+        for (int ii=0; ii<100; ii++) {
+            int[] o = new ShuffleOrder(10, -1, s, random).toArray();
+            assertThat(o).hasSize(10);
+            assertThat(o[9]).isEqualTo(9);
+            if (o[0] == 0) {
+                firsts++;
+            }
+        }
+        assertThat(firsts).isGreaterThan(90);
+    }
+
+}
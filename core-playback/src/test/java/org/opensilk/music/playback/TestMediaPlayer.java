@@ -25,6 +25,8 @@ import android.os.Looper;
 import org.opensilk.music.playback.renderer.IMediaPlayer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -33,9 +35,12 @@ import java.util.Map;
 public class TestMediaPlayer implements IMediaPlayer {
 
     public static class Factory implements IMediaPlayer.Factory {
+        public final List<TestMediaPlayer> created = new ArrayList<>();
         @Override
         public IMediaPlayer create(Context context) {
-            return new TestMediaPlayer();
+            TestMediaPlayer player = new TestMediaPlayer();
+            created.add(player);
+            return player;
         }
     }
 
@@ -47,6 +52,11 @@ public class TestMediaPlayer implements IMediaPlayer {
 
     Callback mCallback;
     boolean isPlaying;
+    long position;
+    long duration;
+    float volume = 1.0f;
+    int startCount;
+    IMediaPlayer next;
 
     @Override
     public boolean isPlaying() {
@@ -55,7 +65,43 @@ public class TestMediaPlayer implements IMediaPlayer {
 
     @Override
     public long getCurrentPosition() {
-        return 0;
+        return position;
+    }
+
+    public void setPosition(long position) {
+        this.position = position;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public float getVolume() {
+        return volume;
+    }
+
+    public int getStartCount() {
+        return startCount;
+    }
+
+    /**
+     * Plays out the track, starting the chained player like the platform would,
+     * the chained player only reports it started with {@link #startedAsNext()}
+     */
+    public void complete() {
+        isPlaying = false;
+        position = duration;
+        if (next != null) {
+            next.start();
+        }
+        mCallback.onCompletion(this);
+    }
+
+    /**
+     * Reports we were started by the player chained to us, like MEDIA_INFO_STARTED_AS_NEXT
+     */
+    public void startedAsNext() {
+        mCallback.onStartedAsNext(this);
     }
 
     @Override
@@ -90,12 +136,13 @@ public class TestMediaPlayer implements IMediaPlayer {
 
     @Override
     public void setVolume(float left, float right) {
-
+        volume = left;
     }
 
     @Override
     public void start() {
         isPlaying = true;
+        startCount++;
     }
 
     @Override
@@ -106,6 +153,8 @@ public class TestMediaPlayer implements IMediaPlayer {
     @Override
     public void reset() {
         isPlaying = false;
+        position = 0;
+        next = null;
     }
 
     @Override
@@ -115,6 +164,12 @@ public class TestMediaPlayer implements IMediaPlayer {
 
     @Override
     public long getDuration() {
-        return 0;
+        return duration;
+    }
+
+    @Override
+    public boolean setNextMediaPlayer(IMediaPlayer next) {
+        this.next = next;
+        return true;
     }
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.playback.cache;
+
+import android.net.Uri;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.opensilk.music.model.Track;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 12/8/15.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ReadAheadCacheTest {
+
+    @Rule public final MockWebServer server = new MockWebServer();
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    ExecutorService mExecutor;
+    File mDir;
+
+    @Before
+    public void setup() throws Exception {
+        mExecutor = Executors.newSingleThreadExecutor();
+        mDir = folder.newFolder("readahead");
+    }
+
+    @After
+    public void teardown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testUpcomingServedFromDisk() throws Exception {
+        ReadAheadCache cache = newCache(1000);
+        Track.Res one = res("one");
+        Track.Res two = res("two");
+        server.enqueue(new MockResponse().setBody(body('1', 100)));
+        server.enqueue(new MockResponse().setBody(body('2', 100)));
+        cache.prefetch(Arrays.asList(one, two));
+        drain();
+
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        RecordedRequest request = server.takeRequest();
+        assertThat(request.getPath()).isEqualTo("/one");
+        assertThat(request.getHeader("Authorization")).isEqualTo("token");
+        assertThat(cache.getBytesFetched()).isEqualTo(200);
+
+        Track.Res local = cache.resolve(one);
+        assertThat(local.getUri().getScheme()).isEqualTo("file");
+        assertThat(FileUtils.readFileToString(new File(local.getUri().getPath()))).isEqualTo(body('1', 100));
+        Track.Res three = res("three");
+        assertThat(cache.resolve(three).getUri()).isEqualTo(three.getUri());
+        //staged as next then resolved again as current, still one play
+        cache.resolve(one);
+        assertThat(cache.getHits()).isEqualTo(0);
+        cache.notePlayed(one);
+        cache.notePlayed(one);
+        cache.notePlayed(three);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getBytesSaved()).isEqualTo(100);
+    }
+
+    @Test
+    public void testPartialDownloadResumes() throws Exception {
+        ReadAheadCache cache = newCache(1000);
+        Track.Res one = res("one");
+        File part = new File(mDir, ReadAheadCache.keyFor(one) + ReadAheadCache.PART);
+        File validator = new File(mDir, ReadAheadCache.keyFor(one) + ReadAheadCache.VALIDATOR);
+        FileUtils.writeStringToFile(part, body('1', 40));
+        FileUtils.writeStringToFile(validator, "\"v1\"");
+        server.enqueue(new MockResponse().setResponseCode(206).setBody(body('1', 60)));
+        cache.prefetch(Collections.singletonList(one));
+        drain();
+
+        RecordedRequest request = server.takeRequest();
+        assertThat(request.getHeader("Range")).isEqualTo("bytes=40-");
+        assertThat(request.getHeader("If-Range")).isEqualTo("\"v1\"");
+        assertThat(part.exists()).isFalse();
+        assertThat(validator.exists()).isFalse();
+        assertThat(cache.getBytesFetched()).isEqualTo(60);
+        File file = new File(cache.resolve(one).getUri().getPath());
+        assertThat(file.length()).isEqualTo(100);
+    }
+
+    @Test
+    public void testChangedFileStartsOver() throws Exception {
+        ReadAheadCache cache = newCache(1000);
+        Track.Res one = res("one");
+        File part = new File(mDir, ReadAheadCache.keyFor(one) + ReadAheadCache.PART);
+        File validator = new File(mDir, ReadAheadCache.keyFor(one) + ReadAheadCache.VALIDATOR);
+        FileUtils.writeStringToFile(part, body('1', 40));
+        FileUtils.writeStringToFile(validator, "\"v1\"");
+        //If-Range didn't match, the server sends the new file whole
+        server.enqueue(new MockResponse().setHeader("ETag", "\"v2\"").setBody(body('2', 100)));
+        cache.prefetch(Collections.singletonList(one));
+        drain();
+
+        assertThat(server.takeRequest().getHeader("If-Range")).isEqualTo("\"v1\"");
+        File file = new File(cache.resolve(one).getUri().getPath());
+        assertThat(FileUtils.readFileToString(file)).isEqualTo(body('2', 100));
+    }
+
+    @Test
+    public void testPartWithoutValidatorStartsOver() throws Exception {
+        ReadAheadCache cache = newCache(1000);
+        Track.Res one = res("one");
+        File part = new File(mDir, ReadAheadCache.keyFor(one) + ReadAheadCache.PART);
+        FileUtils.writeStringToFile(part, body('1', 40));
+        server.enqueue(new MockResponse().setBody(body('1', 100)));
+        cache.prefetch(Collections.singletonList(one));
+        drain();
+
+        assertThat(server.takeRequest().getHeader("Range")).isNull();
+        File file = new File(cache.resolve(one).getUri().getPath());
+        assertThat(file.length()).isEqualTo(100);
+    }
+
+    @Test
+    public void testValidatorPrefersStrongEtag() throws Exception {
+        final String lastMod = "Tue, 08 Dec 2015 00:00:00 GMT";
+        assertThat(ReadAheadCache.validatorOf(response()
+                .header("ETag", "\"v1\"").header("Last-Modified", lastMod).build())).isEqualTo("\"v1\"");
+        //weak etags aren't allowed in If-Range
+        assertThat(ReadAheadCache.validatorOf(response()
+                .header("ETag", "W/\"v1\"").header("Last-Modified", lastMod).build())).isEqualTo(lastMod);
+        assertThat(ReadAheadCache.validatorOf(response().build())).isNull();
+    }
+
+    @Test
+    public void testEvictsByDistance() throws Exception {
+        ReadAheadCache cache = newCache(250);
+        Track.Res one = res("one");
+        Track.Res two = res("two");
+        Track.Res three = res("three");
+        server.enqueue(new MockResponse().setBody(body('1', 100)));
+        server.enqueue(new MockResponse().setBody(body('2', 100)));
+        server.enqueue(new MockResponse().setBody(body('3', 100)));
+        cache.prefetch(Arrays.asList(one, two, three));
+        drain();
+        //three doesn't fit
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        assertThat(new File(mDir, ReadAheadCache.keyFor(one)).exists()).isTrue();
+        assertThat(new File(mDir, ReadAheadCache.keyFor(two)).exists()).isTrue();
+        assertThat(new File(mDir, ReadAheadCache.keyFor(three)).exists()).isFalse();
+
+        //one has played, it goes before anything upcoming
+        cache.prefetch(Arrays.asList(two, three));
+        drain();
+        assertThat(new File(mDir, ReadAheadCache.keyFor(one)).exists()).isFalse();
+        assertThat(new File(mDir, ReadAheadCache.keyFor(two)).exists()).isTrue();
+        assertThat(new File(mDir, ReadAheadCache.keyFor(three)).exists()).isTrue();
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    Response.Builder response() {
+        return new Response.Builder()
+                .request(new Request.Builder().url(server.url("/one")).build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200);
+    }
+
+    ReadAheadCache newCache(long maxBytes) {
+        return new ReadAheadCache(mDir, new OkHttpClient(), maxBytes, mExecutor);
+    }
+
+    /*
+     * Executor is serial so this runs after anything already queued
+     */
+    void drain() throws Exception {
+        mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+    }
+
+    Track.Res res(String name) {
+        return Track.Res.builder()
+                .setUri(Uri.parse(server.url("/" + name).toString()))
+                .setSize(100)
+                .addHeader("Authorization", "token")
+                .build();
+    }
+
+    static String body(char c, int len) {
+        char[] chars = new char[len];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.playback.renderer;
+
+import android.media.AudioManager;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.model.Track;
+import org.opensilk.music.playback.TestMediaPlayer;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Created by drew on 12/8/15.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(
+        constants = org.opensilk.music.index.BuildConfig.class,
+        sdk = Build.VERSION_CODES.LOLLIPOP
+)
+public class LocalRendererTest {
+
+    AudioManager mAudioManager;
+    TestMediaPlayer.Factory mFactory;
+    IMusicRenderer.Callback mCallback;
+    LocalRenderer mRenderer;
+
+    @Before
+    public void setup() {
+        ShadowLooper.pauseMainLooper();
+        mAudioManager = mock(AudioManager.class);
+        when(mAudioManager.requestAudioFocus(any(AudioManager.OnAudioFocusChangeListener.class),
+                anyInt(), anyInt())).thenReturn(AudioManager.AUDIOFOCUS_REQUEST_GRANTED);
+        mFactory = new TestMediaPlayer.Factory();
+        mCallback = mock(IMusicRenderer.Callback.class);
+        mRenderer = new LocalRenderer(RuntimeEnvironment.application, mAudioManager, mFactory,
+                new Crossfader(new Handler(Looper.getMainLooper())));
+        mRenderer.setCallback(mCallback);
+    }
+
+    @Test
+    public void testGaplessHandOff() {
+        startPlaying();
+        TestMediaPlayer first = mFactory.created.get(0);
+        TestMediaPlayer second = mFactory.created.get(1);
+        assertThat(first.getStartCount()).isEqualTo(1);
+        assertThat(second.isPlaying()).isFalse();
+
+        first.complete();
+        //started by the chain, not by us
+        assertThat(second.isPlaying()).isTrue();
+        assertThat(second.getStartCount()).isEqualTo(1);
+        assertThat(mRenderer.getState()).isEqualTo(PlaybackStateCompat.STATE_PLAYING);
+        verify(mCallback).onWentToNext();
+        //not measured until the platform says when next started
+        assertThat(mRenderer.getTransitionCount()).isEqualTo(0);
+
+        ShadowLooper.idleMainLooper(25);
+        second.startedAsNext();
+        assertThat(mRenderer.getTransitionCount()).isEqualTo(1);
+        assertThat(mRenderer.getLastTransitionGap()).isEqualTo(25);
+    }
+
+    @Test
+    public void testGaplessStartedBeforeCompletion() {
+        startPlaying();
+        TestMediaPlayer first = mFactory.created.get(0);
+        TestMediaPlayer second = mFactory.created.get(1);
+        //next reports in before the completion of the one before it is delivered
+        second.startedAsNext();
+        ShadowLooper.idleMainLooper(10);
+        first.complete();
+        assertThat(mRenderer.getTransitionCount()).isEqualTo(1);
+        assertThat(mRenderer.getLastTransitionGap()).isEqualTo(-10);
+    }
+
+    @Test
+    public void testPauseDropsUnmeasuredTransition() {
+        startPlaying();
+        TestMediaPlayer first = mFactory.created.get(0);
+        TestMediaPlayer second = mFactory.created.get(1);
+        first.complete();
+        mRenderer.pause();
+        second.startedAsNext();
+        assertThat(mRenderer.getTransitionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testCrossfadeOverlaps() {
+        mRenderer.setCrossfadeDuration(5000);
+        startPlaying();
+        TestMediaPlayer first = mFactory.created.get(0);
+        TestMediaPlayer second = mFactory.created.get(1);
+        //not near the end yet
+        assertThat(second.isPlaying()).isFalse();
+
+        first.setPosition(first.getDuration() - 4000);
+        ShadowLooper.idleMainLooper(Crossfader.WATCH_MS);
+        assertThat(second.isPlaying()).isTrue();
+        assertThat(mRenderer.getState()).isEqualTo(PlaybackStateCompat.STATE_PLAYING);
+        ShadowLooper.idleMainLooper(2000);
+
+        first.complete();
+        assertThat(second.getStartCount()).isEqualTo(1);
+        assertThat(second.getVolume()).isEqualTo(LocalRenderer.VOLUME_NORMAL);
+        assertThat(mRenderer.getTransitionCount()).isEqualTo(1);
+        assertThat(mRenderer.getLastTransitionGap()).isLessThanOrEqualTo(0);
+        verify(mCallback).onWentToNext();
+    }
+
+    @Test
+    public void testPauseCancelsCrossfade() {
+        mRenderer.setCrossfadeDuration(5000);
+        startPlaying();
+        TestMediaPlayer first = mFactory.created.get(0);
+        TestMediaPlayer second = mFactory.created.get(1);
+        first.setPosition(first.getDuration() - 1000);
+        ShadowLooper.idleMainLooper(Crossfader.WATCH_MS);
+        assertThat(second.isPlaying()).isTrue();
+
+        mRenderer.pause();
+        assertThat(first.isPlaying()).isFalse();
+        assertThat(second.isPlaying()).isFalse();
+        assertThat(second.getCurrentPosition()).isEqualTo(0);
+        assertThat(mRenderer.getTransitionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFadedOutPlayerIsReusedAudible() {
+        mRenderer.setCrossfadeDuration(5000);
+        startPlaying();
+        TestMediaPlayer first = mFactory.created.get(0);
+        TestMediaPlayer second = mFactory.created.get(1);
+        first.setPosition(first.getDuration() - 1000);
+        ShadowLooper.idleMainLooper(Crossfader.WATCH_MS);
+        ShadowLooper.idleMainLooper(2000);
+        assertThat(first.getVolume()).isEqualTo(0f);
+
+        first.complete();
+        //first is now the next player, and plays gapless if there is no crossfade
+        assertThat(first.getVolume()).isEqualTo(LocalRenderer.VOLUME_NORMAL);
+        mRenderer.setCrossfadeDuration(0);
+        assertThat(mRenderer.loadNextTrack(track(2))).isTrue();
+        ShadowLooper.runUiThreadTasks();
+        assertThat(mFactory.created).hasSize(2);
+        assertThat(first.getVolume()).isEqualTo(LocalRenderer.VOLUME_NORMAL);
+        assertThat(second.getVolume()).isEqualTo(LocalRenderer.VOLUME_NORMAL);
+    }
+
+    @Test
+    public void testCancelledCrossfadeRestoresVolume() {
+        mRenderer.setCrossfadeDuration(5000);
+        startPlaying();
+        TestMediaPlayer first = mFactory.created.get(0);
+        TestMediaPlayer second = mFactory.created.get(1);
+        first.setPosition(first.getDuration() - 4000);
+        ShadowLooper.idleMainLooper(Crossfader.WATCH_MS);
+        ShadowLooper.idleMainLooper(1000);
+        assertThat(first.getVolume()).isLessThan(LocalRenderer.VOLUME_NORMAL);
+
+        mRenderer.pause();
+        assertThat(first.getVolume()).isEqualTo(LocalRenderer.VOLUME_NORMAL);
+        assertThat(second.getVolume()).isEqualTo(LocalRenderer.VOLUME_NORMAL);
+    }
+
+    void startPlaying() {
+        assertThat(mRenderer.loadTrack(track(0))).isTrue();
+        ShadowLooper.runUiThreadTasks();
+        mFactory.created.get(0).setDuration(200000);
+        mRenderer.play();
+        assertThat(mRenderer.getState()).isEqualTo(PlaybackStateCompat.STATE_PLAYING);
+        assertThat(mRenderer.loadNextTrack(track(1))).isTrue();
+        ShadowLooper.runUiThreadTasks();
+    }
+
+    static Bundle track(int num) {
+        return Track.builder()
+                .setUri(Uri.parse("content://test/track/" + num))
+                .setParentUri(Uri.parse("content://test/track"))
+                .setName("track" + num)
+                .addRes(Track.Res.builder().setUri(Uri.parse("content://test/res/" + num)).build())
+                .build().toBundle();
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.playback.service;
+
+import android.net.Uri;
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.model.Track;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 12/8/15.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(
+        constants = org.opensilk.music.index.BuildConfig.class,
+        sdk = Build.VERSION_CODES.LOLLIPOP
+)
+public class ColdStartSnapshotTest {
+
+    File mFile;
+    ColdStartSnapshot mSnapshot;
+    Track mTrack;
+
+    @Before
+    public void setup() {
+        mFile = new File(RuntimeEnvironment.application.getCacheDir(), "snapshot_test");
+        mFile.delete();
+        mSnapshot = new ColdStartSnapshot(mFile);
+        mTrack = Track.builder().setUri(Uri.parse("content://test/m/1"))
+                .setParentUri(Uri.parse("content://test/m")).setName("Song1").setArtistName("Artist1")
+                .addRes(Track.Res.builder().setUri(Uri.parse("http://example.com/song1"))
+                        .setMimeType("audio/mp3").setSize(1000).addHeader("Authorization", "Bearer token")
+                        .build()).build();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        assertThat(mSnapshot.read()).isNull();
+        mSnapshot.save(mTrack, 3, 12345);
+        ColdStartSnapshot.Entry entry = mSnapshot.read();
+        assertThat(entry).isNotNull();
+        assertThat(entry.track).isEqualTo(mTrack);
+        assertThat(entry.track.getArtistName()).isEqualTo("Artist1");
+        assertThat(entry.track.getAlbumName()).isNull();
+        Track.Res res = entry.track.getResources().get(0);
+        assertThat(res.getUri()).isEqualTo(Uri.parse("http://example.com/song1"));
+        assertThat(res.getMimeType()).isEqualTo("audio/mp3");
+        assertThat(res.getSize()).isEqualTo(1000);
+        assertThat(res.getHeaders()).containsEntry("Authorization", "Bearer token");
+        assertThat(entry.queuePos).isEqualTo(3);
+        assertThat(entry.seekPos).isEqualTo(12345);
+
+        mSnapshot.saveSeekPosition(500);
+        entry = mSnapshot.read();
+        assertThat(entry.track).isEqualTo(mTrack);
+        assertThat(entry.seekPos).isEqualTo(500);
+    }
+
+    @Test
+    public void testNoTrackClears() {
+        mSnapshot.save(mTrack, 0, 0);
+        mSnapshot.save(null, -1, 0);
+        assertThat(mFile.exists()).isFalse();
+        assertThat(mSnapshot.read()).isNull();
+    }
+
+    @Test
+    public void testGarbageIsIgnored() throws Exception {
+        FileOutputStream out = new FileOutputStream(mFile);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+        assertThat(mSnapshot.read()).isNull();
+    }
+
+}
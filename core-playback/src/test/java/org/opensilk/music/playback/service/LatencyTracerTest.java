@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.playback.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 12/8/15.
+ */
+public class LatencyTracerTest {
+
+    long mNow;
+    LatencyTracer mTracer;
+
+    @Before
+    public void setup() {
+        mNow = 1000;
+        mTracer = new LatencyTracer() {
+            @Override
+            long now() {
+                return mNow;
+            }
+        };
+    }
+
+    @Test
+    public void testStagesAreTimedFromThePreviousStage() {
+        transition("slow.provider", 10, 200, 30, 40);
+        assertThat(mTracer.isActive()).isFalse();
+        assertThat(mTracer.getPercentile("authority/slow.provider",
+                LatencyTracer.STAGE_TRACK_RESOLVED, 50)).isEqualTo(200);
+        assertThat(mTracer.getPercentile("renderer/local",
+                LatencyTracer.STAGE_PREPARED, 50)).isEqualTo(40);
+        assertThat(mTracer.getTotalPercentile("renderer/local", 50)).isEqualTo(280);
+        assertThat(mTracer.dump()).contains("authority/slow.provider").contains("getTrack");
+    }
+
+    @Test
+    public void testPercentiles() {
+        for (int ii=1; ii<=100; ii++) {
+            transition("fast.provider", 0, ii, 0, 0);
+        }
+        assertThat(mTracer.getPercentile("authority/fast.provider",
+                LatencyTracer.STAGE_TRACK_RESOLVED, 50)).isEqualTo(50);
+        assertThat(mTracer.getPercentile("authority/fast.provider",
+                LatencyTracer.STAGE_TRACK_RESOLVED, 95)).isEqualTo(95);
+        assertThat(mTracer.getPercentile("authority/fast.provider",
+                LatencyTracer.STAGE_TRACK_RESOLVED, 99)).isEqualTo(99);
+        //window only keeps the most recent
+        for (int ii=0; ii<LatencyTracer.WINDOW; ii++) {
+            transition("fast.provider", 0, 5, 0, 0);
+        }
+        assertThat(mTracer.getPercentile("authority/fast.provider",
+                LatencyTracer.STAGE_TRACK_RESOLVED, 99)).isEqualTo(5);
+    }
+
+    @Test
+    public void testOldTrackStateIsIgnored() {
+        mTracer.begin("skipToNext");
+        //still playing the old track
+        mTracer.onState(true, false, "local");
+        assertThat(mTracer.isActive()).isTrue();
+        mTracer.begin("skipToNext");
+        mTracer.abandon();
+        assertThat(mTracer.isActive()).isFalse();
+        assertThat(mTracer.dump()).contains("abandoned=2");
+        assertThat(mTracer.getTotalPercentile("renderer/local", 50)).isEqualTo(-1);
+    }
+
+    void transition(String authority, long setTrack, long getTrack, long load, long prepare) {
+        mTracer.begin("skipToNext");
+        mNow += setTrack;
+        mTracer.mark(LatencyTracer.STAGE_SET_TRACK);
+        mNow += getTrack;
+        mTracer.setAuthority(authority);
+        mTracer.mark(LatencyTracer.STAGE_TRACK_RESOLVED);
+        mNow += load;
+        mTracer.mark(LatencyTracer.STAGE_RENDERER_LOADED);
+        mTracer.onState(false, true, "local");
+        mNow += prepare;
+        mTracer.onState(true, false, "local");
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.opensilk.music.playback.service;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Created by drew on 12/8/15.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(
+        constants = org.opensilk.music.index.BuildConfig.class,
+        sdk = Build.VERSION_CODES.LOLLIPOP
+)
+public class SessionUpdaterTest {
+
+    MediaSessionHolder mSessionHolder;
+    SessionUpdater.Listener mListener;
+    SessionUpdater mUpdater;
+
+    @Before
+    public void setup() {
+        ShadowLooper.pauseMainLooper();
+        mSessionHolder = mock(MediaSessionHolder.class);
+        mListener = mock(SessionUpdater.Listener.class);
+        mUpdater = new SessionUpdater(mSessionHolder, new Handler(Looper.getMainLooper()), mListener);
+    }
+
+    @Test
+    public void testBurstIsMerged() {
+        for (int ii=0; ii<10; ii++) {
+            mUpdater.setMetadata(meta("track" + ii, 1000));
+            mUpdater.setPlaybackState(state(PlaybackStateCompat.STATE_CONNECTING, 0, ii));
+        }
+        verify(mSessionHolder, never()).setMetadata(any(MediaMetadataCompat.class));
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        verify(mSessionHolder, times(1)).setMetadata(any(MediaMetadataCompat.class));
+        verify(mSessionHolder, times(1)).setPlaybackState(any(PlaybackStateCompat.class));
+        verify(mListener, times(1)).onPublished(true, true);
+        assertThat(mUpdater.getMetadata().getString(MediaMetadataCompat.METADATA_KEY_TITLE))
+                .isEqualTo("track9");
+        assertThat(mUpdater.getPlaybackState().getActiveQueueItemId()).isEqualTo(9);
+        assertThat(mUpdater.getRequestedCount()).isEqualTo(20);
+        assertThat(mUpdater.getPublishedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testIdenticalPushesAreSkipped() {
+        mUpdater.setMetadata(meta("track", 1000));
+        mUpdater.setPlaybackState(state(PlaybackStateCompat.STATE_PAUSED, 500, 1));
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        mUpdater.setMetadata(meta("track", 1000));
+        mUpdater.setPlaybackState(state(PlaybackStateCompat.STATE_PAUSED, 500, 1));
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        verify(mSessionHolder, times(1)).setMetadata(any(MediaMetadataCompat.class));
+        verify(mSessionHolder, times(1)).setPlaybackState(any(PlaybackStateCompat.class));
+        verify(mListener, times(1)).onPublished(true, true);
+
+        //fixing the duration is a real change
+        mUpdater.setDuration(2000);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        verify(mSessionHolder, times(2)).setMetadata(any(MediaMetadataCompat.class));
+        verify(mListener).onPublished(true, false);
+        mUpdater.setDuration(2000);
+        assertThat(mUpdater.getRequestedCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void testPlayingPositionIsExtrapolated() {
+        PlaybackStateCompat playing = new PlaybackStateCompat.Builder()
+                .setState(PlaybackStateCompat.STATE_PLAYING, 1000, 1.0f, 10000).build();
+        //two seconds later right where controllers expect it
+        PlaybackStateCompat later = new PlaybackStateCompat.Builder()
+                .setState(PlaybackStateCompat.STATE_PLAYING, 3050, 1.0f, 12000).build();
+        PlaybackStateCompat seeked = new PlaybackStateCompat.Builder()
+                .setState(PlaybackStateCompat.STATE_PLAYING, 60000, 1.0f, 12000).build();
+        assertThat(SessionUpdater.sameState(playing, later)).isTrue();
+        assertThat(SessionUpdater.sameState(playing, seeked)).isFalse();
+        PlaybackStateCompat paused = new PlaybackStateCompat.Builder()
+                .setState(PlaybackStateCompat.STATE_PAUSED, 1000, 1.0f, 10000).build();
+        assertThat(SessionUpdater.sameState(paused, new PlaybackStateCompat.Builder()
+                .setState(PlaybackStateCompat.STATE_PAUSED, 1000, 1.0f, 12000).build())).isTrue();
+        assertThat(SessionUpdater.sameState(playing, paused)).isFalse();
+    }
+
+    static MediaMetadataCompat meta(String title, long duration) {
+        return new MediaMetadataCompat.Builder()
+                .putString(MediaMetadataCompat.METADATA_KEY_TITLE, title)
+                .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, duration)
+                .build();
+    }
+
+    static PlaybackStateCompat state(int state, long position, long activeId) {
+        return new PlaybackStateCompat.Builder()
+                .setState(state, position, 1.0f, 0)
+                .setActiveQueueItemId(activeId)
+                .build();
+    }
+
+}
@@ -53,7 +53,12 @@ public interface Constants {
     String TRACKS_QUERY = "trashed=false and " +
             "(mimeType contains '" + AUDIO_MIME_WILDCARD + "' or mimeType='" + AUDIO_OGG_MIMETYPE + "')";
 
-    String LIST_FIELDS = "items/id,items/mimeType,items/parents,items/title," +
+    String LIST_FIELDS = "nextPageToken,items/id,items/etag,items/mimeType,items/parents,items/title," +
             "items/downloadUrl,items/modifiedDate,items/fileSize";
 
+    String ABOUT_FIELDS = "largestChangeId";
+
+    String CHANGES_FIELDS = "nextPageToken,largestChangeId,items/fileId,items/deleted," +
+            "items/file(id,etag,mimeType,parents(id,isRoot),title,downloadUrl,modifiedDate,fileSize,labels/trashed)";
+
 }
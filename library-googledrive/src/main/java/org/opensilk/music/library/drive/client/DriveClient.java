@@ -23,9 +23,11 @@ import com.google.android.gms.auth.GoogleAuthException;
 import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
 import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAuthIOException;
 import com.google.api.client.googleapis.extensions.android.gms.auth.UserRecoverableAuthIOException;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.ChangeList;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
 
@@ -33,6 +35,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.RecursiveToStringStyle;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.opensilk.common.core.util.BundleHelper;
+import org.opensilk.music.library.drive.provider.DriveFileCache;
 import org.opensilk.music.library.drive.provider.DriveLibraryProvider;
 import org.opensilk.music.library.drive.provider.DriveLibraryUris;
 import org.opensilk.music.library.internal.LibraryException;
@@ -44,6 +47,7 @@ import org.opensilk.music.model.Track;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -57,7 +61,9 @@ import rx.functions.Func0;
 import rx.functions.Func1;
 import timber.log.Timber;
 
+import static org.opensilk.music.library.drive.Constants.ABOUT_FIELDS;
 import static org.opensilk.music.library.drive.Constants.BASE_QUERY;
+import static org.opensilk.music.library.drive.Constants.CHANGES_FIELDS;
 import static org.opensilk.music.library.drive.Constants.LIST_FIELDS;
 import static org.opensilk.music.library.drive.client.ModelUtil.IS_AUDIO;
 import static org.opensilk.music.library.drive.client.ModelUtil.IS_FOLDER;
@@ -74,10 +80,16 @@ import static org.opensilk.music.library.internal.LibraryException.Kind.UNKNOWN;
  */
 @DriveClientScope
 public class DriveClient {
+    static final long CHANGES_SYNC_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
     final Drive mDrive;
     final GoogleAccountCredential mCredential;
     final String mAuthority;
     final String mAccount;
+    final DriveFileCache mCache;
+
+    //check the changes feed at most this often, a scan lists lots of folders in quick succession
+    long mChangesInterval = CHANGES_SYNC_INTERVAL;
 
     @Inject
     public DriveClient(
@@ -85,18 +97,28 @@ public class DriveClient {
             JsonFactory jsonFactory,
             GoogleAccountCredential credential,
             @Named("AppIdentifier") String appIdentifier,
-            @Named("driveLibraryAuthority") String authority
+            @Named("driveLibraryAuthority") String authority,
+            DriveFileCache cache
+    ) {
+        this(new Drive.Builder(httpTransport, jsonFactory, credential)
+                .setApplicationName(appIdentifier).build(), credential, authority, cache);
+    }
+
+    DriveClient(
+            Drive drive,
+            GoogleAccountCredential credential,
+            String authority,
+            DriveFileCache cache
     ) {
-        mDrive = new Drive.Builder(httpTransport, jsonFactory, credential)
-                .setApplicationName(appIdentifier).build();
+        mDrive = drive;
         mCredential = credential;
         mAuthority = authority;
         mAccount = credential.getSelectedAccountName();
+        mCache = cache;
     }
 
     public Observable<Model> listFolder(final String identity) {
-        final String q = "'" + identity + "'" + BASE_QUERY;
-        return getFiles(q)
+        return getFolderListing(identity)
                 .collect(collectorFactory, collectAction)
                 .flatMap(new Func1<Collector, Observable<Model>>() {
                     @Override
@@ -158,36 +180,38 @@ public class DriveClient {
                 });
     }
 
+    /**
+     * Emits the cached listing of the folder after applying any new changes to the cache,
+     * lists the folder from the network if we don't have it.
+     */
     @DebugLog
-    Observable<List<File>> getFiles(final String query) {
+    Observable<List<File>> getFolderListing(final String identity) {
         return Observable.create(new Observable.OnSubscribe<List<File>>() {
             @Override
             public void call(Subscriber<? super List<File>> subscriber) {
                 try {
-                    String paginationToken = null;
-                    do {
-                        Timber.d("q=%s", query);
+                    final long now = System.currentTimeMillis();
+                    trySyncChanges(now);
+                    List<File> files = mCache.getFolder(mAccount, identity, now);
+                    if (files == null) {
+                        //grab the change id first so nothing that happens while listing is missed
+                        final boolean startChanges = mCache.getChangeId(mAccount) < 0;
+                        final long changeId = startChanges ? getLargestChangeId() : -1;
+                        files = getFiles("'" + identity + "'" + BASE_QUERY, subscriber);
                         if (subscriber.isUnsubscribed()) {
-                            return; //Shortcircuit if nobody listening
+                            return; //dont cache partial listing
                         }
-                        Drive.Files.List req = mDrive.files().list()
-                                .setQ(query)
-                                .setFields(LIST_FIELDS);
-                        if (!StringUtils.isEmpty(paginationToken)) {
-                            req.setPageToken(paginationToken);
-                        }
-                        FileList resp = req.execute();
-                        Timber.v(ReflectionToStringBuilder.toString(resp, RecursiveToStringStyle.MULTI_LINE_STYLE));
-                        //TODO cache response
-                        if (!subscriber.isUnsubscribed()) {
-                            List<File> files = resp.getItems();
-                            if (files != null && !files.isEmpty()) {
-                                subscriber.onNext(files);
-                            }
+                        mCache.putFolder(mAccount, identity, files, now);
+                        if (startChanges) {
+                            mCache.putChangeState(mAccount, changeId, now);
                         }
-                        paginationToken = resp.getNextPageToken();
-                    } while (!StringUtils.isEmpty(paginationToken) && !subscriber.isUnsubscribed());
+                    } else {
+                        Timber.d("Using cached listing of %s", identity);
+                    }
                     if (!subscriber.isUnsubscribed()) {
+                        if (!files.isEmpty()) {
+                            subscriber.onNext(files);
+                        }
                         subscriber.onCompleted();
                     }
                 } catch (Exception e) {
@@ -197,6 +221,101 @@ public class DriveClient {
         });
     }
 
+    List<File> getFiles(String query, Subscriber<?> subscriber) throws IOException {
+        List<File> files = new ArrayList<>();
+        String paginationToken = null;
+        do {
+            Timber.d("q=%s", query);
+            if (subscriber.isUnsubscribed()) {
+                break; //Shortcircuit if nobody listening
+            }
+            Drive.Files.List req = mDrive.files().list()
+                    .setQ(query)
+                    .setFields(LIST_FIELDS);
+            if (!StringUtils.isEmpty(paginationToken)) {
+                req.setPageToken(paginationToken);
+            }
+            FileList resp = req.execute();
+            Timber.v(ReflectionToStringBuilder.toString(resp, RecursiveToStringStyle.MULTI_LINE_STYLE));
+            if (resp.getItems() != null) {
+                files.addAll(resp.getItems());
+            }
+            paginationToken = resp.getNextPageToken();
+        } while (!StringUtils.isEmpty(paginationToken));
+        return files;
+    }
+
+    long getLargestChangeId() throws IOException {
+        Long id = mDrive.about().get().setFields(ABOUT_FIELDS).execute().getLargestChangeId();
+        return id != null ? id : 0;
+    }
+
+    /**
+     * Like {@link #syncChanges(long)} but a failure only costs us freshness, the cached
+     * listings are still served. If the feed rejects our change id we can't know what we
+     * missed so everything is dropped and listed again.
+     */
+    void trySyncChanges(long now) throws IOException {
+        try {
+            syncChanges(now);
+        } catch (GoogleAuthIOException e) {
+            throw e;
+        } catch (HttpResponseException e) {
+            final int code = e.getStatusCode();
+            if (code == 400 || code == 404 || code == 410) {
+                Timber.w(e, "Changes feed rejected change id, dropping cache");
+                mCache.resetChanges(mAccount);
+            } else {
+                Timber.w(e, "Unable to sync changes, using cache");
+                backoffChanges(now);
+            }
+        } catch (IOException e) {
+            Timber.w(e, "Unable to sync changes, using cache");
+            backoffChanges(now);
+        }
+    }
+
+    /*
+     * Counts as a sync so we don't hit the feed on every browse while it is failing,
+     * changes already applied are applied again next time which is harmless
+     */
+    void backoffChanges(long now) {
+        final long changeId = mCache.getChangeId(mAccount);
+        if (changeId >= 0) {
+            mCache.putChangeState(mAccount, changeId, now);
+        }
+    }
+
+    /**
+     * Brings the cache up to date with everything that changed since we last looked
+     */
+    void syncChanges(long now) throws IOException {
+        final long changeId = mCache.getChangeId(mAccount);
+        if (changeId < 0 || now - mCache.getChangesSynced(mAccount) < mChangesInterval) {
+            return;
+        }
+        long largestChangeId = changeId;
+        String paginationToken = null;
+        do {
+            Drive.Changes.List req = mDrive.changes().list()
+                    .setStartChangeId(changeId + 1)
+                    .setIncludeDeleted(true)
+                    .setFields(CHANGES_FIELDS);
+            if (!StringUtils.isEmpty(paginationToken)) {
+                req.setPageToken(paginationToken);
+            }
+            ChangeList resp = req.execute();
+            if (resp.getItems() != null && !resp.getItems().isEmpty()) {
+                mCache.applyChanges(mAccount, resp.getItems());
+            }
+            if (resp.getLargestChangeId() != null) {
+                largestChangeId = Math.max(largestChangeId, resp.getLargestChangeId());
+            }
+            paginationToken = resp.getNextPageToken();
+        } while (!StringUtils.isEmpty(paginationToken));
+        mCache.putChangeState(mAccount, largestChangeId, now);
+    }
+
     Folder buildFolder(String parentFolder, File f) {
         final String id = f.getId();
         final Uri uri = DriveLibraryUris.folder(mAuthority, mAccount, id);
@@ -64,6 +64,19 @@ public class ModelUtil {
         }
     };
 
+    /**
+     * Same files {@link org.opensilk.music.library.drive.Constants#BASE_QUERY} selects,
+     * for files we learn about from the changes feed
+     */
+    public static final Func1<File, Boolean> IS_LISTABLE = new Func1<File, Boolean>() {
+        @Override
+        public Boolean call(File file) {
+            return IS_FOLDER.call(file) || IS_AUDIO.call(file)
+                    || (IS_IMAGE.call(file) && StringUtils.containsAny(
+                            StringUtils.lowerCase(file.getTitle()), "cover", "album", "front"));
+        }
+    };
+
     public static File pickSuitableImage(List<File> images) {
         if (images.size() == 1) {
             if (isAlbumArt(images.get(0).getTitle())) {
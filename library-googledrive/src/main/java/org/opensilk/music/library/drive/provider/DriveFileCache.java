@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.library.drive.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.Nullable;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.ParentReference;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import timber.log.Timber;
+
+import static org.opensilk.music.library.drive.Constants.DEFAULT_ROOT_FOLDER;
+import static org.opensilk.music.library.drive.Constants.FOLDER_MIMETYPE;
+import static org.opensilk.music.library.drive.client.ModelUtil.IS_LISTABLE;
+import static org.opensilk.music.library.drive.provider.DriveLibraryDB.SCHEMA.CHANGE_STATE;
+import static org.opensilk.music.library.drive.provider.DriveLibraryDB.SCHEMA.FILE_CACHE;
+import static org.opensilk.music.library.drive.provider.DriveLibraryDB.SCHEMA.FOLDER_CACHE;
+
+/**
+ * Folder listings we have fetched, kept current by applying the drive changes feed.
+ * Folders whose listing is older than {@link #FOLDER_MAX_AGE} are considered missing
+ * so anything the changes feed missed eventually gets corrected.
+ *
+ * Created by drew on 12/6/15.
+ */
+@DriveLibraryProviderScope
+public class DriveFileCache {
+
+    public static final long FOLDER_MAX_AGE = TimeUnit.DAYS.toMillis(1);
+
+    final DriveLibraryDB mDB;
+
+    @Inject
+    public DriveFileCache(DriveLibraryDB db) {
+        mDB = db;
+    }
+
+    static final String[] fileCols = new String[] {
+            FILE_CACHE.FILE_ID,
+            FILE_CACHE.ETAG,
+            FILE_CACHE.TITLE,
+            FILE_CACHE.MIME_TYPE,
+            FILE_CACHE.DOWNLOAD_URL,
+            FILE_CACHE.MODIFIED_DATE,
+            FILE_CACHE.FILE_SIZE,
+    };
+    static final String folderSel = FOLDER_CACHE.ACCOUNT + "=? AND " + FOLDER_CACHE.FOLDER_ID + "=?";
+    static final String filesInFolderSel = FILE_CACHE.ACCOUNT + "=? AND " + FILE_CACHE.FOLDER_ID + "=?";
+    static final String fileSel = FILE_CACHE.ACCOUNT + "=? AND " + FILE_CACHE.FILE_ID + "=?";
+    static final String subfoldersSel = filesInFolderSel + " AND " + FILE_CACHE.MIME_TYPE + "=?";
+
+    /**
+     * @return the cached listing or null if we don't have one or it is too old
+     */
+    public @Nullable List<File> getFolder(String account, String folderId, long now) {
+        final SQLiteDatabase db = mDB.getReadableDatabase();
+        Cursor c = null;
+        try {
+            c = db.query(FOLDER_CACHE.TABLE, new String[]{FOLDER_CACHE.SYNCED},
+                    folderSel, new String[]{account, folderId}, null, null, null);
+            if (c == null || !c.moveToFirst() || now - c.getLong(0) > FOLDER_MAX_AGE) {
+                return null;
+            }
+            c.close();
+            c = db.query(FILE_CACHE.TABLE, fileCols, filesInFolderSel,
+                    new String[]{account, folderId}, null, null, null);
+            List<File> files = new ArrayList<>(c != null ? c.getCount() : 0);
+            if (c != null && c.moveToFirst()) {
+                do {
+                    files.add(buildFile(c, folderId));
+                } while (c.moveToNext());
+            }
+            return files;
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
+    /**
+     * Replaces the listing for the folder
+     */
+    public void putFolder(String account, String folderId, List<File> files, long now) {
+        final SQLiteDatabase db = mDB.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(FILE_CACHE.TABLE, filesInFolderSel, new String[]{account, folderId});
+            for (File f : files) {
+                insertFile(db, account, folderId, f);
+            }
+            ContentValues cv = new ContentValues(3);
+            cv.put(FOLDER_CACHE.ACCOUNT, account);
+            cv.put(FOLDER_CACHE.FOLDER_ID, folderId);
+            cv.put(FOLDER_CACHE.SYNCED, now);
+            db.insert(FOLDER_CACHE.TABLE, null, cv);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return largest change id we have applied or -1 if we havent started following changes
+     */
+    public long getChangeId(String account) {
+        return getChangeState(account, CHANGE_STATE.CHANGE_ID, -1);
+    }
+
+    /**
+     * @return time we last checked the changes feed
+     */
+    public long getChangesSynced(String account) {
+        return getChangeState(account, CHANGE_STATE.SYNCED, 0);
+    }
+
+    long getChangeState(String account, String col, long def) {
+        Cursor c = null;
+        try {
+            c = mDB.getReadableDatabase().query(CHANGE_STATE.TABLE, new String[]{col},
+                    CHANGE_STATE.ACCOUNT + "=?", new String[]{account}, null, null, null);
+            if (c != null && c.moveToFirst()) {
+                return c.getLong(0);
+            }
+        } finally {
+            if (c != null) c.close();
+        }
+        return def;
+    }
+
+    public void putChangeState(String account, long changeId, long now) {
+        ContentValues cv = new ContentValues(3);
+        cv.put(CHANGE_STATE.ACCOUNT, account);
+        cv.put(CHANGE_STATE.CHANGE_ID, changeId);
+        cv.put(CHANGE_STATE.SYNCED, now);
+        mDB.getWritableDatabase().insert(CHANGE_STATE.TABLE, null, cv);
+    }
+
+    /**
+     * Updates every cached listing the changed files were, or now are, in.
+     * Changes for folders we haven't listed are ignored.
+     *
+     * @return number of changes that touched the cache
+     */
+    public int applyChanges(String account, List<Change> changes) {
+        int applied = 0;
+        final SQLiteDatabase db = mDB.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Change change : changes) {
+                final String fileId = change.getFileId();
+                if (fileId == null) {
+                    continue;
+                }
+                final File f = change.getFile();
+                final String[] sel = new String[]{account, fileId};
+                if (Boolean.TRUE.equals(change.getDeleted()) || f == null
+                        || (f.getLabels() != null && Boolean.TRUE.equals(f.getLabels().getTrashed()))) {
+                    int num = db.delete(FILE_CACHE.TABLE, fileSel, sel);
+                    //if it was a folder its listing, and those of everything under it, go too
+                    num += dropListings(db, account, fileId);
+                    if (num > 0) applied++;
+                    continue;
+                }
+                List<String> parents = cachedParents(db, account, f);
+                if (!parents.isEmpty() && isUnchanged(db, account, fileId, f, parents)) {
+                    continue;
+                }
+                int num = db.delete(FILE_CACHE.TABLE, fileSel, sel);
+                if (IS_LISTABLE.call(f)) {
+                    for (String parent : parents) {
+                        insertFile(db, account, parent, f);
+                        num++;
+                    }
+                }
+                if (num > 0) applied++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Timber.d("Applied %d of %d changes", applied, changes.size());
+        return applied;
+    }
+
+    /*
+     * Removes the listing of the folder and of every subfolder we have listed beneath it
+     */
+    int dropListings(SQLiteDatabase db, String account, String folderId) {
+        int num = 0;
+        final LinkedList<String> pending = new LinkedList<>();
+        final Set<String> seen = new HashSet<>();
+        pending.add(folderId);
+        while (!pending.isEmpty()) {
+            final String id = pending.removeFirst();
+            if (!seen.add(id)) {
+                continue;
+            }
+            final String[] sel = new String[]{account, id};
+            Cursor c = null;
+            try {
+                c = db.query(FILE_CACHE.TABLE, new String[]{FILE_CACHE.FILE_ID},
+                        subfoldersSel, new String[]{account, id, FOLDER_MIMETYPE}, null, null, null);
+                while (c != null && c.moveToNext()) {
+                    pending.add(c.getString(0));
+                }
+            } finally {
+                if (c != null) c.close();
+            }
+            num += db.delete(FILE_CACHE.TABLE, filesInFolderSel, sel);
+            num += db.delete(FOLDER_CACHE.TABLE, folderSel, sel);
+        }
+        return num;
+    }
+
+    /**
+     * Forgets every listing and where we were in the changes feed, used when the
+     * feed can no longer tell us what we missed.
+     */
+    public void resetChanges(String account) {
+        final SQLiteDatabase db = mDB.getWritableDatabase();
+        final String[] sel = new String[]{account};
+        db.beginTransaction();
+        try {
+            db.delete(CHANGE_STATE.TABLE, CHANGE_STATE.ACCOUNT + "=?", sel);
+            db.delete(FOLDER_CACHE.TABLE, FOLDER_CACHE.ACCOUNT + "=?", sel);
+            db.delete(FILE_CACHE.TABLE, FILE_CACHE.ACCOUNT + "=?", sel);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /*
+     * Parents of the file that we have listings for
+     */
+    List<String> cachedParents(SQLiteDatabase db, String account, File f) {
+        List<String> parents = new ArrayList<>();
+        if (f.getParents() == null) {
+            return parents;
+        }
+        for (ParentReference p : f.getParents()) {
+            //we list the root by its alias
+            final String id = Boolean.TRUE.equals(p.getIsRoot()) ? DEFAULT_ROOT_FOLDER : p.getId();
+            Cursor c = null;
+            try {
+                c = db.query(FOLDER_CACHE.TABLE, new String[]{FOLDER_CACHE._ID},
+                        folderSel, new String[]{account, id}, null, null, null);
+                if (c != null && c.moveToFirst()) {
+                    parents.add(id);
+                }
+            } finally {
+                if (c != null) c.close();
+            }
+        }
+        return parents;
+    }
+
+    /*
+     * Same etag in the same folders means nothing we care about changed
+     */
+    boolean isUnchanged(SQLiteDatabase db, String account, String fileId, File f, List<String> parents) {
+        if (f.getEtag() == null) {
+            return false;
+        }
+        Cursor c = null;
+        try {
+            c = db.query(FILE_CACHE.TABLE, new String[]{FILE_CACHE.FOLDER_ID, FILE_CACHE.ETAG},
+                    fileSel, new String[]{account, fileId}, null, null, null);
+            if (c == null || c.getCount() != parents.size()) {
+                return false;
+            }
+            while (c.moveToNext()) {
+                if (!parents.contains(c.getString(0)) || !StringUtils.equals(f.getEtag(), c.getString(1))) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
+    static void insertFile(SQLiteDatabase db, String account, String folderId, File f) {
+        ContentValues cv = new ContentValues(10);
+        cv.put(FILE_CACHE.ACCOUNT, account);
+        cv.put(FILE_CACHE.FOLDER_ID, folderId);
+        cv.put(FILE_CACHE.FILE_ID, f.getId());
+        cv.put(FILE_CACHE.ETAG, f.getEtag());
+        cv.put(FILE_CACHE.TITLE, f.getTitle());
+        cv.put(FILE_CACHE.MIME_TYPE, f.getMimeType());
+        cv.put(FILE_CACHE.DOWNLOAD_URL, f.getDownloadUrl());
+        if (f.getModifiedDate() != null) {
+            cv.put(FILE_CACHE.MODIFIED_DATE, f.getModifiedDate().getValue());
+        }
+        cv.put(FILE_CACHE.FILE_SIZE, f.getFileSize());
+        db.insert(FILE_CACHE.TABLE, null, cv);
+    }
+
+    static File buildFile(Cursor c, String folderId) {
+        File f = new File()
+                .setId(c.getString(0))
+                .setEtag(c.getString(1))
+                .setTitle(c.getString(2))
+                .setMimeType(c.getString(3))
+                .setDownloadUrl(c.getString(4))
+                .setParents(new ArrayList<ParentReference>(1));
+        f.getParents().add(new ParentReference().setId(folderId));
+        if (!c.isNull(5)) {
+            f.setModifiedDate(new DateTime(c.getLong(5)));
+        }
+        if (!c.isNull(6)) {
+            f.setFileSize(c.getLong(6));
+        }
+        return f;
+    }
+
+}
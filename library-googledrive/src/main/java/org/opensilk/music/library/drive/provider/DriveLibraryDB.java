@@ -33,7 +33,7 @@ import javax.inject.Inject;
 public class DriveLibraryDB extends SQLiteOpenHelper {
 
     static final String DB_NAME = "driveaccounts.db";
-    static final int DB_VERSION = 1;
+    static final int DB_VERSION = 2;
 
     @Inject
     public DriveLibraryDB(@ForApplication Context context) {
@@ -61,6 +61,35 @@ public class DriveLibraryDB extends SQLiteOpenHelper {
                     "account_id INTEGER REFERENCES account(_id) ON DELETE CASCADE ON UPDATE CASCADE " +
                     ");");
         }
+        if (oldVersion < 2) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS folder_cache (" +
+                    "_id INTEGER PRIMARY KEY, " +
+                    "account TEXT NOT NULL, " +
+                    "folder_id TEXT NOT NULL, " +
+                    "synced INTEGER NOT NULL, " +
+                    "UNIQUE(account, folder_id) ON CONFLICT REPLACE " +
+                    ");");
+            db.execSQL("CREATE TABLE IF NOT EXISTS file_cache (" +
+                    "_id INTEGER PRIMARY KEY, " +
+                    "account TEXT NOT NULL, " +
+                    "folder_id TEXT NOT NULL, " +
+                    "file_id TEXT NOT NULL, " +
+                    "etag TEXT, " +
+                    "title TEXT, " +
+                    "mime_type TEXT, " +
+                    "download_url TEXT, " +
+                    "modified_date INTEGER, " +
+                    "file_size INTEGER, " +
+                    "UNIQUE(account, folder_id, file_id) ON CONFLICT REPLACE " +
+                    ");");
+            //changes are applied by file id
+            db.execSQL("CREATE INDEX IF NOT EXISTS file_cache_file_idx ON file_cache(account, file_id);");
+            db.execSQL("CREATE TABLE IF NOT EXISTS change_state (" +
+                    "account TEXT PRIMARY KEY ON CONFLICT REPLACE, " +
+                    "change_id INTEGER NOT NULL, " +
+                    "synced INTEGER NOT NULL " +
+                    ");");
+        }
     }
 
     @Override
@@ -85,5 +114,29 @@ public class DriveLibraryDB extends SQLiteOpenHelper {
             String TITLE = "title";
             String ACCOUNT_ID = "account_id";
         }
+        interface FOLDER_CACHE extends BaseColumns {
+            String TABLE = "folder_cache";
+            String ACCOUNT = "account";
+            String FOLDER_ID = "folder_id";
+            String SYNCED = "synced";
+        }
+        interface FILE_CACHE extends BaseColumns {
+            String TABLE = "file_cache";
+            String ACCOUNT = "account";
+            String FOLDER_ID = "folder_id";
+            String FILE_ID = "file_id";
+            String ETAG = "etag";
+            String TITLE = "title";
+            String MIME_TYPE = "mime_type";
+            String DOWNLOAD_URL = "download_url";
+            String MODIFIED_DATE = "modified_date";
+            String FILE_SIZE = "file_size";
+        }
+        interface CHANGE_STATE {
+            String TABLE = "change_state";
+            String ACCOUNT = "account";
+            String CHANGE_ID = "change_id";
+            String SYNCED = "synced";
+        }
     }
 }
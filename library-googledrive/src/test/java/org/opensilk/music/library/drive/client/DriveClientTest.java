@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.library.drive.client;
+
+import com.google.api.client.extensions.android.json.AndroidJsonFactory;
+import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.File;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.opensilk.music.library.drive.provider.DriveFileCache;
+import org.opensilk.music.library.drive.provider.DriveLibraryDB;
+import org.opensilk.music.library.drive.transport.OkHttpTransport;
+import org.opensilk.music.model.Model;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.opensilk.music.library.drive.Constants.FOLDER_MIMETYPE;
+
+/**
+ * Created by drew on 12/6/15.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DriveClientTest {
+
+    @Rule public final MockWebServer server = new MockWebServer();
+
+    DriveFileCache mCache;
+    DriveClient mClient;
+
+    @Before
+    public void setup() throws Exception {
+        GoogleAccountCredential credential = Mockito.mock(GoogleAccountCredential.class);
+        Mockito.when(credential.getSelectedAccountName()).thenReturn("test@example.com");
+        Mockito.when(credential.getToken()).thenReturn("token");
+        Drive drive = new Drive.Builder(new OkHttpTransport(new OkHttpClient()),
+                AndroidJsonFactory.getDefaultInstance(), credential)
+                .setRootUrl(server.url("/").toString())
+                .setApplicationName("test")
+                .build();
+        mCache = new DriveFileCache(new DriveLibraryDB(RuntimeEnvironment.application));
+        mClient = new DriveClient(drive, credential, "drive.test", mCache);
+    }
+
+    @Test
+    public void testListingIsCached() throws Exception {
+        server.enqueue(json("{\"largestChangeId\":\"100\"}"));
+        server.enqueue(json("{\"nextPageToken\":\"page2\",\"items\":[" + file("t1", "one.mp3", "audio/mpeg") + "]}"));
+        server.enqueue(json("{\"items\":[" + file("t2", "two.mp3", "audio/mpeg") + ","
+                + file("f1", "sub", "application/vnd.google-apps.folder") + "]}"));
+
+        List<String> first = names(mClient.listFolder("folder1").toList().toBlocking().single());
+        assertThat(first).containsOnly("one.mp3", "two.mp3", "sub");
+        assertThat(server.getRequestCount()).isEqualTo(3);
+        assertThat(server.takeRequest().getPath()).contains("/about");
+        assertThat(server.takeRequest().getPath()).contains("/files");
+        assertThat(server.takeRequest().getPath()).contains("pageToken=page2");
+        assertThat(mCache.getChangeId("test@example.com")).isEqualTo(100);
+
+        //within the changes interval, straight from the cache
+        List<String> second = names(mClient.listFolder("folder1").toList().toBlocking().single());
+        assertThat(second).containsOnlyElementsOf(first);
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testChangesAreApplied() throws Exception {
+        server.enqueue(json("{\"largestChangeId\":\"100\"}"));
+        server.enqueue(json("{\"items\":[" + file("t1", "one.mp3", "audio/mpeg") + ","
+                + file("t2", "two.mp3", "audio/mpeg") + "]}"));
+        mClient.listFolder("folder1").toList().toBlocking().single();
+
+        mClient.mChangesInterval = 0;
+        server.enqueue(json("{\"largestChangeId\":\"103\",\"items\":[" +
+                "{\"fileId\":\"t1\",\"deleted\":true}," +
+                "{\"fileId\":\"t3\",\"file\":" + file("t3", "three.mp3", "audio/mpeg") + "}," +
+                "{\"fileId\":\"t4\",\"file\":" + file("t4", "notes.txt", "text/plain") + "}" +
+                "]}"));
+        List<String> names = names(mClient.listFolder("folder1").toList().toBlocking().single());
+        assertThat(names).containsOnly("two.mp3", "three.mp3");
+        assertThat(server.getRequestCount()).isEqualTo(3);
+        server.takeRequest();
+        server.takeRequest();
+        RecordedRequest changes = server.takeRequest();
+        assertThat(changes.getPath()).contains("/changes").contains("startChangeId=101");
+        assertThat(mCache.getChangeId("test@example.com")).isEqualTo(103);
+    }
+
+    @Test
+    public void testChangesFailureServesCache() throws Exception {
+        server.enqueue(json("{\"largestChangeId\":\"100\"}"));
+        server.enqueue(json("{\"items\":[" + file("t1", "one.mp3", "audio/mpeg") + "]}"));
+        mClient.listFolder("folder1").toList().toBlocking().single();
+
+        mClient.mChangesInterval = 0;
+        server.enqueue(new MockResponse().setResponseCode(500));
+        List<String> names = names(mClient.listFolder("folder1").toList().toBlocking().single());
+        assertThat(names).containsOnly("one.mp3");
+        assertThat(server.getRequestCount()).isEqualTo(3);
+        assertThat(mCache.getChangeId("test@example.com")).isEqualTo(100);
+    }
+
+    @Test
+    public void testRejectedChangeIdRelists() throws Exception {
+        server.enqueue(json("{\"largestChangeId\":\"100\"}"));
+        server.enqueue(json("{\"items\":[" + file("t1", "one.mp3", "audio/mpeg") + "]}"));
+        mClient.listFolder("folder1").toList().toBlocking().single();
+
+        mClient.mChangesInterval = 0;
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(json("{\"largestChangeId\":\"200\"}"));
+        server.enqueue(json("{\"items\":[" + file("t2", "two.mp3", "audio/mpeg") + "]}"));
+        List<String> names = names(mClient.listFolder("folder1").toList().toBlocking().single());
+        assertThat(names).containsOnly("two.mp3");
+        assertThat(server.getRequestCount()).isEqualTo(5);
+        assertThat(mCache.getChangeId("test@example.com")).isEqualTo(200);
+    }
+
+    @Test
+    public void testTrashedFolderDropsNestedListings() throws Exception {
+        final String account = "test@example.com";
+        final long now = System.currentTimeMillis();
+        mCache.putFolder(account, "folder1", Collections.singletonList(
+                new File().setId("f1").setTitle("sub").setMimeType(FOLDER_MIMETYPE)), now);
+        mCache.putFolder(account, "f1", Collections.singletonList(
+                new File().setId("f2").setTitle("subsub").setMimeType(FOLDER_MIMETYPE)), now);
+        mCache.putFolder(account, "f2", Collections.singletonList(
+                new File().setId("t1").setTitle("one.mp3").setMimeType("audio/mpeg")), now);
+        mCache.applyChanges(account, Collections.singletonList(new Change().setFileId("f1").setDeleted(true)));
+        assertThat(mCache.getFolder(account, "folder1", now)).isEmpty();
+        assertThat(mCache.getFolder(account, "f1", now)).isNull();
+        assertThat(mCache.getFolder(account, "f2", now)).isNull();
+    }
+
+    static MockResponse json(String body) {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json; charset=UTF-8")
+                .setBody(body);
+    }
+
+    static String file(String id, String title, String mime) {
+        return "{\"id\":\"" + id + "\",\"etag\":\"\\\"" + id + "\\\"\",\"title\":\"" + title +
+                "\",\"mimeType\":\"" + mime + "\",\"downloadUrl\":\"http://example.com/" + id +
+                "\",\"modifiedDate\":\"2015-12-01T00:00:00.000Z\",\"fileSize\":\"1000\"," +
+                "\"parents\":[{\"id\":\"folder1\",\"isRoot\":false}]}";
+    }
+
+    static List<String> names(List<Model> models) {
+        List<String> names = new ArrayList<>(models.size());
+        for (Model m : models) {
+            names.add(m.getName());
+        }
+        return names;
+    }
+
+}
@@ -131,25 +131,25 @@ public class FoldersLibraryProvider extends LibraryProvider implements PlaylistL
     protected void listObjsInternal(Uri uri, IBinder binder, Bundle args) {
         switch (mUriMatcher.match(uri)) {
             case FoldersUris.M_ALBUMS: {
-                final BundleableSubscriber<Album> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Album> subscriber = newSubscriber(binder, args);
                 mComponent.newLoaderComponent().albumsLoader()
                         .setSortOrder(LibraryExtras.getSortOrder(args))
                         .createObservable()
-                        .toList()
+                        .compose(new BundleableListTransformer<Album>(null, LibraryExtras.getChunkSize(args)))
                         .subscribe(subscriber);
                 return;
             }
             case FoldersUris.M_ARTISTS: {
-                final BundleableSubscriber<Artist> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Artist> subscriber = newSubscriber(binder, args);
                 mComponent.newLoaderComponent().artistsLoader()
                         .setSortOrder(LibraryExtras.getSortOrder(args))
                         .createObservable()
-                        .toList()
+                        .compose(new BundleableListTransformer<Artist>(null, LibraryExtras.getChunkSize(args)))
                         .subscribe(subscriber);
                 return;
             }
             case FoldersUris.M_GENRES: {
-                final BundleableSubscriber<Genre> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Genre> subscriber = newSubscriber(binder, args);
                 String sort = LibraryExtras.getSortOrder(args);
                 if (!StringUtils.equals(BaseSortOrder.A_Z, sort) || !StringUtils.equals(BaseSortOrder.Z_A, sort)) {
                     sort = BaseSortOrder.A_Z;
@@ -157,22 +157,22 @@ public class FoldersLibraryProvider extends LibraryProvider implements PlaylistL
                 mComponent.newLoaderComponent().genresLoader()
                         .setSortOrder(sort)
                         .createObservable()
-                        .toList()
+                        .compose(new BundleableListTransformer<Genre>(null, LibraryExtras.getChunkSize(args)))
                         .subscribe(subscriber);
                 return;
             }
             case FoldersUris.M_TRACKS: {
-                final BundleableSubscriber<Track> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Track> subscriber = newSubscriber(binder, args);
                 mComponent.newLoaderComponent().tracksLoader()
                         .setSortOrder(LibraryExtras.getSortOrder(args))
                         .createObservable()
-                        .toList()
+                        .compose(new BundleableListTransformer<Track>(null, LibraryExtras.getChunkSize(args)))
                         .subscribe(subscriber);
                 return;
             }
             case FoldersUris.M_ALBUM_TRACKS:
             case FoldersUris.M_ALBUM_DETAILS: {
-                final BundleableSubscriber<Track> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Track> subscriber = newSubscriber(binder, args);
                 final List<String> segments = uri.getPathSegments();
                 final String album = segments.get(segments.size() - 2);
                 mComponent.newLoaderComponent().tracksLoader()
@@ -187,12 +187,12 @@ public class FoldersLibraryProvider extends LibraryProvider implements PlaylistL
                                         track.getSortName(), track.getArtistName(), track.getAlbumArtistName(), track.getTrackNumber());
                             }
                         })
-                        .toList()
+                        .compose(new BundleableListTransformer<Track>(null, LibraryExtras.getChunkSize(args)))
                         .subscribe(subscriber);
                 return;
             }
             case FoldersUris.M_ARTIST_TRACKS: {
-                final BundleableSubscriber<Track> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Track> subscriber = newSubscriber(binder, args);
                 final List<String> segments = uri.getPathSegments();
                 final String artist = segments.get(segments.size() - 2);
                 mComponent.newLoaderComponent().tracksLoader()
@@ -207,12 +207,12 @@ public class FoldersLibraryProvider extends LibraryProvider implements PlaylistL
                                         track.getSortName(), track.getArtistName(), track.getAlbumArtistName());
                             }
                         })
-                        .toList()
+                        .compose(new BundleableListTransformer<Track>(null, LibraryExtras.getChunkSize(args)))
                         .subscribe(subscriber);
                 return;
             }
             case FoldersUris.M_GENRE_TRACKS: {
-                final BundleableSubscriber<Track> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Track> subscriber = newSubscriber(binder, args);
                 final List<String> segments = uri.getPathSegments();
                 final String genre = segments.get(segments.size() - 2);
                 mComponent.newLoaderComponent().tracksLoader()
@@ -227,12 +227,12 @@ public class FoldersLibraryProvider extends LibraryProvider implements PlaylistL
                                         track.getSortName(), track.getArtistName(), track.getAlbumArtistName());
                             }
                         })
-                        .toList()
+                        .compose(new BundleableListTransformer<Track>(null, LibraryExtras.getChunkSize(args)))
                         .subscribe(subscriber);
                 return;
             }
             case FoldersUris.M_ARTIST_DETAILS: {
-                final BundleableSubscriber<Model> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Model> subscriber = newSubscriber(binder, args);
                 final List<String> segments = uri.getPathSegments();
                 final String artist = segments.get(segments.size() - 2);
                 final Artist artistM = MediaStoreHelper.getArtist(getContext(), mAuthority, artist);
@@ -259,18 +259,18 @@ public class FoldersLibraryProvider extends LibraryProvider implements PlaylistL
                         .createObservable()
                         .cast(Model.class)
                         .startWith(tlb.build())
-                        .toList()
+                        .compose(new BundleableListTransformer<Model>(null, LibraryExtras.getChunkSize(args)))
                         .subscribe(subscriber);
                 return;
             }
             case FoldersUris.M_GENRE_DETAILS: {
-                final BundleableSubscriber<Model> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Model> subscriber = newSubscriber(binder, args);
                 //TODO
                 subscriber.onError(new UnsupportedOperationException());
                 return;
             }
             case FoldersUris.M_PLAYLISTS: {
-                final BundleableSubscriber<Playlist> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Playlist> subscriber = newSubscriber(binder, args);
                 final List<Playlist> playlists = PlaylistUtil.getPlaylists(getContext(), mAuthority);
                 if (playlists == null) {
                     subscriber.onError(new NullPointerException("Unable to obtain cursor"));
@@ -281,7 +281,7 @@ public class FoldersLibraryProvider extends LibraryProvider implements PlaylistL
                 return;
             }
             case FoldersUris.M_PLAYLIST_TRACKS: {
-                final BundleableSubscriber<Track> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Track> subscriber = newSubscriber(binder, args);
                 final List<String> segs = uri.getPathSegments();
                 final String plst = segs.get(segs.size() - 2);
                 final List<StorageLookup.StorageVolume> volumes = mStorageLookup.getStorageVolumes();
@@ -295,9 +295,11 @@ public class FoldersLibraryProvider extends LibraryProvider implements PlaylistL
                 return;
             }
             default: {
-                final BundleableSubscriber<Model> subscriber = new BundleableSubscriber<>(binder);
+                final BundleableSubscriber<Model> subscriber = newSubscriber(binder, args);
                 getListObjsObservable(uri, args)
-                        .compose(new BundleableListTransformer<Model>(FolderTrackCompare.func(LibraryExtras.getSortOrder(args))))
+                        .subscribeOn(getScheduler())
+                        .compose(new BundleableListTransformer<Model>(FolderTrackCompare.func(LibraryExtras.getSortOrder(args)),
+                                LibraryExtras.getChunkSize(args)))
                         .subscribe(subscriber);
                 return;
             }
@@ -306,16 +308,26 @@ public class FoldersLibraryProvider extends LibraryProvider implements PlaylistL
 
     @Override
     protected Observable<Model> getListObjsObservable(final Uri uri, final Bundle args) {
+        return getFoldersObservable(uri, args, false);
+    }
+
+    @Override
+    protected Observable<Model> getScanObjsObservable(final Uri uri, final Bundle args) {
+        //the scanner is the only one that needs the change stamps
+        return getFoldersObservable(uri, args, true);
+    }
+
+    Observable<Model> getFoldersObservable(final Uri uri, final Bundle args, final boolean withChangeStamps) {
         return Observable.create(new Observable.OnSubscribe<Model>() {
             @Override
             public void call(Subscriber<? super Model> subscriber) {
                 switch (mUriMatcher.match(uri)) {
                     case FoldersUris.M_FOLDERS: {
-                        browseFolders(uri.getPathSegments().get(0), null, subscriber, args);
+                        browseFolders(uri.getPathSegments().get(0), null, withChangeStamps, subscriber, args);
                         return;
                     }
                     case FoldersUris.M_FOLDER: {
-                        browseFolders(uri.getPathSegments().get(0), uri.getLastPathSegment(), subscriber, args);
+                        browseFolders(uri.getPathSegments().get(0), uri.getLastPathSegment(), withChangeStamps, subscriber, args);
                         return;
                     }
                     default:
@@ -448,7 +460,8 @@ public class FoldersLibraryProvider extends LibraryProvider implements PlaylistL
         return volume;
     }
 
-    void browseFolders(String library, String identity, Subscriber<? super Model> subscriber, Bundle args) {
+    void browseFolders(String library, String identity, boolean withChangeStamps,
+                       Subscriber<? super Model> subscriber, Bundle args) {
         final StorageLookup.StorageVolume volume = getStorageVolume(library);
         if (volume == null) {
             subscriber.onError(new IllegalArgumentException("Unknown volume " + library));
@@ -471,7 +484,7 @@ public class FoldersLibraryProvider extends LibraryProvider implements PlaylistL
                 continue;
             }
             if (f.isDirectory()) {
-                subscriber.onNext(FilesHelper.makeFolder(mAuthority, volume, f));
+                subscriber.onNext(FilesHelper.makeFolder(mAuthority, volume, f, withChangeStamps));
             } else if (f.isFile()) {
                 files.add(f);
             }
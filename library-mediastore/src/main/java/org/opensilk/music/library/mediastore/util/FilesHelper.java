@@ -142,17 +142,54 @@ public class FilesHelper {
     }
 
     public static @NonNull Folder makeFolder(String authority, StorageVolume volume, File dir) {
-        final String[] children = dir.list();
+        return makeFolder(authority, volume, dir, false);
+    }
+
+    /**
+     * @param withChangeStamp only the scanner looks at the stamp and it stats every child,
+     *                        so plain browsing leaves it out
+     */
+    public static @NonNull Folder makeFolder(String authority, StorageVolume volume, File dir, boolean withChangeStamp) {
+        final File[] children = dir.listFiles();
         return Folder.builder()
                 .setUri(FoldersUris.folder(authority, String.valueOf(volume.id), toRelativePath(volume.path, dir)))
                 .setParentUri(findParentUri(authority, volume, dir))
                 .setName(dir.getName())
                 .setChildCount(children != null ? children.length : 0)
                 .setDateModified(formatDate(dir.lastModified()))
+                .setChangeStamp(withChangeStamp ? makeChangeStamp(dir, children) : null)
                 .setFlags(dir.canWrite() ? (LibraryConfig.FLAG_SUPPORTS_DELETE | LibraryConfig.FLAG_SUPPORTS_RENAME) : 0)
                 .build();
     }
 
+    /**
+     * Fingerprint of everything under the directory, the dir mtime catches adds/removes/renames
+     * but not files modified in place so we also fold in each childs mtime and size, and
+     * subdirectories are folded in recursively so the scanner can skip unchanged subtrees whole.
+     * Order independent since listFiles() makes no guarantees.
+     */
+    public static String makeChangeStamp(File dir, File[] children) {
+        return (children != null ? children.length : 0) + ":"
+                + dir.lastModified() + ":" + Long.toHexString(hashTree(children));
+    }
+
+    static long hashTree(File[] children) {
+        long hash = 0;
+        if (children != null) {
+            for (File f : children) {
+                long h = f.getName().hashCode();
+                h = 31 * h + f.lastModified();
+                if (f.isDirectory()) {
+                    h = 31 * h + hashTree(f.listFiles());
+                } else {
+                    h = 31 * h + f.length();
+                }
+                hash += h * 0x9E3779B97F4A7C15L;
+            }
+        }
+        return hash;
+    }
+
     public static @NonNull Track makeTrackFromFile(String authority, StorageVolume volume, File f) {
         return Track.builder()
                 .setUri(FoldersUris.track(authority, String.valueOf(volume.id),